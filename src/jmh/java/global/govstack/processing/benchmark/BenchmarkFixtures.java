@@ -0,0 +1,122 @@
+package global.govstack.processing.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import global.govstack.registration.receiver.service.masterdata.MasterDataCache;
+import global.govstack.registration.receiver.service.metadata.GovStackDataMapper;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.service.normalization.LovOptionIndex;
+import global.govstack.registration.receiver.util.FormDefinitionReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Shared test data and Joget stand-ins for the benchmarks
+ *
+ * The Joget-backed parts of the mapper are replaced before any mapper is created:
+ * master data code tables come from an in-memory loader and the LOV option index is
+ * built from doc-forms, so no application context or database is needed.
+ */
+final class BenchmarkFixtures {
+
+    static final String SERVICE_ID = "farmers_registry";
+    static final String TEST_DATA = "docs-metadata/test-data.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static boolean stubsInstalled;
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Read the sample registration request
+     */
+    static JsonNode loadTestData() throws IOException {
+        try (InputStream in = BenchmarkFixtures.class.getClassLoader().getResourceAsStream(TEST_DATA)) {
+            if (in == null) {
+                throw new IOException("Test data not found on classpath: " + TEST_DATA);
+            }
+            return MAPPER.readTree(in);
+        }
+    }
+
+    /**
+     * Build a request whose household, crop and livestock arrays have the given number of rows
+     * @param rows Rows per array section, 0 returns the sample request unchanged
+     * @return The request as JSON text
+     */
+    static String requestWithArrayRows(int rows) throws IOException {
+        JsonNode root = loadTestData();
+        if (rows > 0) {
+            ObjectNode data = (ObjectNode) GovStackDataMapper.unwrapTestData(root);
+            resize(data, "relatedPerson", rows);
+            resize((ObjectNode) data.path("extension").path("agriculturalData"), "crops", rows);
+            resize((ObjectNode) data.path("extension"), "livestockDetails", rows);
+        }
+        return MAPPER.writeValueAsString(root);
+    }
+
+    private static void resize(ObjectNode parent, String field, int rows) {
+        JsonNode template = parent.get(field);
+        if (template == null || !template.isArray() || template.size() == 0) {
+            return;
+        }
+        ArrayNode resized = parent.putArray(field);
+        for (int i = 0; i < rows; i++) {
+            resized.add(template.get(i % template.size()).deepCopy());
+        }
+    }
+
+    /**
+     * Load the service configuration used by every benchmark
+     */
+    static YamlMetadataService loadMetadata() throws Exception {
+        YamlMetadataService metadataService = new YamlMetadataService();
+        metadataService.loadMetadata(SERVICE_ID);
+        return metadataService;
+    }
+
+    /**
+     * Replace the Joget-backed caches with in-memory data
+     * Must run before the first GovStackDataMapper is created
+     */
+    static synchronized void installJogetStubs(YamlMetadataService metadataService) throws Exception {
+        if (stubsInstalled) {
+            return;
+        }
+
+        // Every value of the sample request is a known code, so reject mode never fires
+        Map<String, String> codes = new HashMap<>();
+        collectValues(loadTestData(), codes);
+
+        Map<String, MasterDataCache.Source> sources = new HashMap<>();
+        for (Map.Entry<String, Map<String, String>> entry : metadataService.getMasterDataSources().entrySet()) {
+            sources.put(entry.getKey(), MasterDataCache.Source.fromConfig(entry.getValue()));
+        }
+        MasterDataCache.getInstance().register(sources, source -> codes, 0);
+
+        File docForms = new File("doc-forms");
+        if (docForms.isDirectory()) {
+            LovOptionIndex.setShared(LovOptionIndex.build(FormDefinitionReader.readFromDirectory(docForms)));
+        }
+        stubsInstalled = true;
+    }
+
+    private static void collectValues(JsonNode node, Map<String, String> codes) {
+        if (node.isValueNode()) {
+            codes.put(node.asText(), node.asText());
+        } else if (node.isContainerNode()) {
+            Iterator<JsonNode> elements = node.elements();
+            while (elements.hasNext()) {
+                collectValues(elements.next(), codes);
+            }
+        }
+    }
+}
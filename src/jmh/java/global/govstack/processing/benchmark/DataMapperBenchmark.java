@@ -0,0 +1,56 @@
+package global.govstack.processing.benchmark;
+
+import global.govstack.registration.receiver.service.metadata.DataTransformer;
+import global.govstack.registration.receiver.service.metadata.GovStackDataMapper;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of mapping a full registration request to Joget form data
+ *
+ * arrayRows 0 is the sample request; larger values repeat the household, crop and
+ * livestock rows to show how mapping cost grows with array sections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataMapperBenchmark {
+
+    @Param({"0", "100", "1000"})
+    public int arrayRows;
+
+    private GovStackDataMapper mapper;
+    private String request;
+
+    @Setup
+    public void setUp() throws Exception {
+        YamlMetadataService metadataService = BenchmarkFixtures.loadMetadata();
+        BenchmarkFixtures.installJogetStubs(metadataService);
+        mapper = new GovStackDataMapper(metadataService, new DataTransformer());
+        request = BenchmarkFixtures.requestWithArrayRows(arrayRows);
+
+        // Fail fast if the stubs let the request be rejected
+        mapper.mapToMultipleForms(request);
+    }
+
+    @Benchmark
+    public Map<String, Object> mapToMultipleForms() throws Exception {
+        return mapper.mapToMultipleForms(request);
+    }
+}
@@ -0,0 +1,54 @@
+package global.govstack.processing.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import global.govstack.registration.receiver.service.metadata.GovStackDataMapper;
+import global.govstack.registration.receiver.util.JsonPathExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of single path lookups on the sample request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonPathBenchmark {
+
+    @Param({
+            "gender",
+            "name.given[0]",
+            "identifiers[0].value",
+            "extension.agriculturalActivities.engagedInCropProduction",
+            "extension.agriculturalData.crops[2].cropType"
+    })
+    public String path;
+
+    private JsonNode data;
+
+    @Setup
+    public void setUp() throws Exception {
+        data = GovStackDataMapper.unwrapTestData(BenchmarkFixtures.loadTestData());
+        if (JsonPathExtractor.extractValue(data, path) == null) {
+            throw new IllegalStateException("Path not found in test data: " + path);
+        }
+    }
+
+    @Benchmark
+    public String extractValue() {
+        return JsonPathExtractor.extractValue(data, path);
+    }
+}
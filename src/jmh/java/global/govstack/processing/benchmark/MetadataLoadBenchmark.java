@@ -0,0 +1,41 @@
+package global.govstack.processing.benchmark;
+
+import global.govstack.registration.receiver.service.metadata.MetadataSnapshotStore;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading, parsing and checking a service YAML configuration
+ * Paid once per service and again on each reload of a changed file, not per request.
+ * requestMetadata is the per-request cost, a lookup of the shared snapshot, for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataLoadBenchmark {
+
+    private final MetadataSnapshotStore store = new MetadataSnapshotStore(null, 0);
+
+    @Benchmark
+    public MetadataSnapshotStore.Snapshot loadSnapshot() throws Exception {
+        return store.load(BenchmarkFixtures.SERVICE_ID);
+    }
+
+    @Benchmark
+    public YamlMetadataService requestMetadata() throws Exception {
+        return BenchmarkFixtures.loadMetadata();
+    }
+}
@@ -0,0 +1,92 @@
+package global.govstack.processing.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import global.govstack.registration.receiver.service.metadata.DataTransformer;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.service.normalization.ValueNormalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of value normalisation and transformation for each kind of field
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NormalizationBenchmark {
+
+    private static final JsonNode TEXT_YES = TextNode.valueOf("Yes");
+    private static final JsonNode NUMERIC_TWO = IntNode.valueOf(2);
+    private static final JsonNode CUSTOM_OPTION = TextNode.valueOf("Seasonal");
+    private static final JsonNode MASTER_DATA_CODE = TextNode.valueOf("berea");
+
+    private ValueNormalizer normalizer;
+    private DataTransformer transformer;
+
+    @Setup
+    public void setUp() throws Exception {
+        YamlMetadataService metadataService = BenchmarkFixtures.loadMetadata();
+        BenchmarkFixtures.installJogetStubs(metadataService);
+        normalizer = new ValueNormalizer(metadataService);
+        transformer = new DataTransformer();
+    }
+
+    @Benchmark
+    public void normalizeYesNo(Blackhole blackhole) {
+        blackhole.consume(normalizer.normalizeToLOV(BooleanNode.TRUE, "cropProduction"));
+        blackhole.consume(normalizer.normalizeToLOV(TEXT_YES, "cropProduction"));
+    }
+
+    @Benchmark
+    public void normalizeOneTwo(Blackhole blackhole) {
+        blackhole.consume(normalizer.normalizeToLOV(BooleanNode.FALSE, "participatesInAgriculture"));
+        blackhole.consume(normalizer.normalizeToLOV(NUMERIC_TWO, "participatesInAgriculture"));
+    }
+
+    @Benchmark
+    public String normalizeCustomOption() {
+        return normalizer.normalizeToLOV(CUSTOM_OPTION, "supportFrequency");
+    }
+
+    @Benchmark
+    public String normalizeMasterData() {
+        return normalizer.normalizeToLOV(MASTER_DATA_CODE, "district");
+    }
+
+    @Benchmark
+    public String transformDate() {
+        return transformer.transformValue("1985-03-15", "date_ISO8601");
+    }
+
+    @Benchmark
+    public String transformNumeric() {
+        return transformer.transformValue("2.5 ha", "numeric");
+    }
+
+    @Benchmark
+    public String transformYesNoBoolean() {
+        return transformer.transformValue("true", "yesNoBoolean");
+    }
+
+    @Benchmark
+    public String transformMultiCheckbox() {
+        return transformer.transformValue("[\"maize\",\"beans\",\"sorghum\"]", "multiCheckbox");
+    }
+}
@@ -0,0 +1,35 @@
+package org.joget.commons.util;
+
+/**
+ * Benchmark stand-in for Joget's LogUtil
+ *
+ * Shadows the wflow-core class on the benchmark classpath so the plugin code runs
+ * outside a Joget server. Messages are still built by the callers, so the cost of
+ * composing log lines stays in the measurements; only the log I/O is dropped.
+ * Set -Dbenchmark.log=true to print warnings and errors while debugging a benchmark.
+ */
+public class LogUtil {
+
+    private static final boolean PRINT = Boolean.getBoolean("benchmark.log");
+
+    public static void info(String className, String message) {
+    }
+
+    public static void debug(String className, String message) {
+    }
+
+    public static void warn(String className, String message) {
+        if (PRINT) {
+            System.err.println("WARN " + className + " - " + message);
+        }
+    }
+
+    public static void error(String className, Throwable e, String message) {
+        if (PRINT) {
+            System.err.println("ERROR " + className + " - " + message);
+            if (e != null) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
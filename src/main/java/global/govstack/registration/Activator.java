@@ -4,6 +4,22 @@ import java.util.ArrayList;
 import java.util.Collection;
 
 import global.govstack.registration.receiver.lib.RegistrationServiceProvider;
+import global.govstack.registration.receiver.service.archive.PayloadArchiveRegistry;
+import global.govstack.registration.receiver.service.attachment.AttachmentPipeline;
+import global.govstack.registration.receiver.service.bulk.BulkImportRegistry;
+import global.govstack.registration.receiver.service.changes.ChangeFeed;
+import global.govstack.registration.receiver.service.identity.IdentifierIndexRegistry;
+import global.govstack.registration.receiver.service.masterdata.MasterDataCache;
+import global.govstack.registration.receiver.service.metadata.GovStackDataAssembler;
+import global.govstack.registration.receiver.service.metadata.MetadataSnapshotStore;
+import global.govstack.registration.receiver.service.normalization.LovOptionIndex;
+import global.govstack.registration.receiver.service.metrics.RequestMetrics;
+import global.govstack.registration.receiver.service.metrics.SlowRequestRecorder;
+import global.govstack.registration.receiver.service.read.ApplicationCache;
+import global.govstack.registration.receiver.service.read.ApplicationReader;
+import global.govstack.registration.receiver.service.validation.MetadataValidationRegistry;
+import global.govstack.registration.receiver.service.validation.RequestShapeValidator;
+import global.govstack.registration.receiver.util.SchemaCache;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
@@ -36,7 +52,7 @@ public class Activator implements BundleActivator {
 
     /**
      * Called when the OSGi bundle stops.
-     * Unregisters all service providers.
+     * Unregisters all service providers and releases shared caches.
      *
      * @param context The bundle context
      */
@@ -44,5 +60,21 @@ public class Activator implements BundleActivator {
         for (ServiceRegistration registration : registrationList) {
             registration.unregister();
         }
+        MasterDataCache.shutdownAll();
+        MetadataSnapshotStore.getInstance().shutdown();
+        MetadataValidationRegistry.getInstance().shutdown();
+        SchemaCache.clearShared();
+        LovOptionIndex.clearShared();
+        RequestShapeValidator.clearCompiled();
+        RequestMetrics.getInstance().reset();
+        SlowRequestRecorder.getInstance().reset();
+        ApplicationReader.shutdown();
+        ApplicationCache.getInstance().clear();
+        GovStackDataAssembler.clearCompiled();
+        IdentifierIndexRegistry.getInstance().shutdown();
+        ChangeFeed.getInstance().shutdown();
+        AttachmentPipeline.clearCompiled();
+        BulkImportRegistry.getInstance().shutdown();
+        PayloadArchiveRegistry.getInstance().shutdown();
     }
 }
\ No newline at end of file
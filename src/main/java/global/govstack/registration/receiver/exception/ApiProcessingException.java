@@ -1,11 +1,14 @@
 package global.govstack.registration.receiver.exception;
 
+import org.json.JSONObject;
+
 /**
  * Base exception for API processing errors
  */
 public class ApiProcessingException extends Exception {
     private final int statusCode;
     private final String errorType;
+    private JSONObject details;
 
     public ApiProcessingException(String message, String errorType, int statusCode) {
         super(message);
@@ -27,6 +30,14 @@ public class ApiProcessingException extends Exception {
         return errorType;
     }
 
+    /**
+     * Get structured details about the error, included in the error response
+     * @return The details, or null if there are none
+     */
+    public JSONObject getDetails() {
+        return details;
+    }
+
     /**
      * Create an exception for invalid requests (400)
      */
@@ -41,6 +52,43 @@ public class ApiProcessingException extends Exception {
         return new ApiProcessingException(message, "Form submission error", 400);
     }
 
+    /**
+     * Create an exception for resources that do not exist (404)
+     */
+    public static ApiProcessingException notFound(String message) {
+        return new ApiProcessingException(message, "Not found", 404);
+    }
+
+    /**
+     * Create an exception for requests that conflict with stored data (409)
+     */
+    public static ApiProcessingException conflict(String message, JSONObject details) {
+        ApiProcessingException exception = new ApiProcessingException(message, "Conflict", 409);
+        exception.details = details;
+        return exception;
+    }
+
+    /**
+     * Create an exception for references to data that is no longer available (410)
+     */
+    public static ApiProcessingException gone(String message) {
+        return new ApiProcessingException(message, "Gone", 410);
+    }
+
+    /**
+     * Create an exception for request content over a size limit (413)
+     */
+    public static ApiProcessingException payloadTooLarge(String message) {
+        return new ApiProcessingException(message, "Payload too large", 413);
+    }
+
+    /**
+     * Create an exception for request bodies in an unsupported encoding (415)
+     */
+    public static ApiProcessingException unsupportedMediaType(String message) {
+        return new ApiProcessingException(message, "Unsupported media type", 415);
+    }
+
     /**
      * Create an exception for workflow processing errors (500)
      */
@@ -65,4 +113,13 @@ public class ApiProcessingException extends Exception {
     public static ApiProcessingException validationError(String message) {
         return new ApiProcessingException(message, "Validation Error", 400);
     }
+
+    /**
+     * Create a validation exception carrying the individual problems (400)
+     */
+    public static ApiProcessingException validationError(String message, JSONObject details) {
+        ApiProcessingException exception = validationError(message);
+        exception.details = details;
+        return exception;
+    }
 }
\ No newline at end of file
@@ -11,6 +11,11 @@ import org.joget.commons.util.LogUtil;
 import global.govstack.registration.receiver.service.ApiRequestProcessor;
 import global.govstack.registration.receiver.service.RegistrationServiceFactory;
 import global.govstack.registration.receiver.service.GovStackRegistrationService;
+import global.govstack.registration.receiver.service.export.ExportJob;
+import global.govstack.registration.receiver.service.metrics.RequestMetrics;
+import global.govstack.registration.receiver.service.metrics.SlowRequestRecorder;
+import global.govstack.registration.receiver.service.read.ApplicationCache;
+import global.govstack.registration.receiver.util.ProcessingLog;
 import org.joget.plugin.property.model.PropertyEditable;
 
 /**
@@ -29,6 +34,7 @@ import org.joget.plugin.property.model.PropertyEditable;
  */
 public class RegistrationServiceProvider extends BaseServiceProvider implements PropertyEditable {
     private static final String CLASS_NAME = "global.govstack.registration.receiver.lib.RegistrationServiceProvider";
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(RegistrationServiceProvider.class);
 
     @Override
     public String getName() {
@@ -86,10 +92,214 @@ public class RegistrationServiceProvider extends BaseServiceProvider implements
             @Param(value = "body") String requestBody
     ) {
         // Use the generic request processing with serviceId from URL path
-        LogUtil.info(CLASS_NAME, "Processing request for serviceId: " + serviceId);
+        LOG.debug("Processing request for serviceId: {}", serviceId);
         return processServiceRequest(serviceId, requestBody);
     }
 
+    @Operation(
+            path = "/services/{serviceId}/applications",
+            type = Operation.MethodType.GET,
+            summary = "@@RegistrationServiceProvider.findApplications.summary@@",
+            description = "@@RegistrationServiceProvider.findApplications.description@@"
+    )
+    @Responses({
+            @Response(responseCode = 200, description = "Success"),
+            @Response(responseCode = 400, description = "Bad Request."),
+            @Response(responseCode = 500, description = "Server error")
+    })
+    public ApiResponse findApplications(
+            @Param(value = "serviceId", required = true) String serviceId,
+            @Param(value = "identifier", required = true) String identifier,
+            @Param(value = "type", required = false) String type
+    ) {
+        return executeOperation(() -> createGovStackService(serviceId).findApplications(identifier, type));
+    }
+
+    @Operation(
+            path = "/services/{serviceId}/changes",
+            type = Operation.MethodType.GET,
+            summary = "@@RegistrationServiceProvider.getChanges.summary@@",
+            description = "@@RegistrationServiceProvider.getChanges.description@@"
+    )
+    @Responses({
+            @Response(responseCode = 200, description = "Success"),
+            @Response(responseCode = 400, description = "Bad Request."),
+            @Response(responseCode = 410, description = "Gone."),
+            @Response(responseCode = 500, description = "Server error")
+    })
+    public ApiResponse getChanges(
+            @Param(value = "serviceId", required = true) String serviceId,
+            @Param(value = "after", required = false) String after,
+            @Param(value = "limit", required = false) String limit,
+            @Param(value = "epoch", required = false) String epoch
+    ) {
+        return executeOperation(() -> createGovStackService(serviceId).getChanges(after, limit, epoch));
+    }
+
+    @Operation(
+            path = "/services/{serviceId}/archive",
+            type = Operation.MethodType.GET,
+            summary = "@@RegistrationServiceProvider.getArchive.summary@@",
+            description = "@@RegistrationServiceProvider.getArchive.description@@"
+    )
+    @Responses({
+            @Response(responseCode = 200, description = "Success"),
+            @Response(responseCode = 400, description = "Bad Request."),
+            @Response(responseCode = 500, description = "Server error")
+    })
+    public ApiResponse getArchive(
+            @Param(value = "serviceId", required = true) String serviceId
+    ) {
+        return executeOperation(() -> createGovStackService(serviceId).getArchiveSegments());
+    }
+
+    @Operation(
+            path = "/services/{serviceId}/archive/replay",
+            type = Operation.MethodType.POST,
+            summary = "@@RegistrationServiceProvider.replayArchive.summary@@",
+            description = "@@RegistrationServiceProvider.replayArchive.description@@"
+    )
+    @Responses({
+            @Response(responseCode = 200, description = "Success"),
+            @Response(responseCode = 400, description = "Bad Request."),
+            @Response(responseCode = 500, description = "Server error")
+    })
+    public ApiResponse replayArchive(
+            @Param(value = "serviceId", required = true) String serviceId,
+            @Param(value = "from", required = false) String from,
+            @Param(value = "to", required = false) String to
+    ) {
+        return executeOperation(() -> createGovStackService(serviceId).replayArchive(from, to));
+    }
+
+    @Operation(
+            path = "/services/{serviceId}/imports",
+            type = Operation.MethodType.POST,
+            summary = "@@RegistrationServiceProvider.startImport.summary@@",
+            description = "@@RegistrationServiceProvider.startImport.description@@"
+    )
+    @Responses({
+            @Response(responseCode = 200, description = "Success"),
+            @Response(responseCode = 400, description = "Bad Request."),
+            @Response(responseCode = 404, description = "Not Found."),
+            @Response(responseCode = 409, description = "Conflict."),
+            @Response(responseCode = 500, description = "Server error")
+    })
+    public ApiResponse startImport(
+            @Param(value = "serviceId", required = true) String serviceId,
+            @Param(value = "file", required = true) String file,
+            @Param(value = "format", required = false) String format
+    ) {
+        return executeOperation(() -> createGovStackService(serviceId).startImport(file, format));
+    }
+
+    @Operation(
+            path = "/services/{serviceId}/imports",
+            type = Operation.MethodType.GET,
+            summary = "@@RegistrationServiceProvider.getImport.summary@@",
+            description = "@@RegistrationServiceProvider.getImport.description@@"
+    )
+    @Responses({
+            @Response(responseCode = 200, description = "Success"),
+            @Response(responseCode = 404, description = "Not Found."),
+            @Response(responseCode = 500, description = "Server error")
+    })
+    public ApiResponse getImport(
+            @Param(value = "serviceId", required = true) String serviceId
+    ) {
+        return executeOperation(() -> createGovStackService(serviceId).getImportStatus());
+    }
+
+    @Operation(
+            path = "/services/{serviceId}/export",
+            type = Operation.MethodType.GET,
+            summary = "@@RegistrationServiceProvider.exportApplications.summary@@",
+            description = "@@RegistrationServiceProvider.exportApplications.description@@"
+    )
+    @Responses({
+            @Response(responseCode = 200, description = "Success"),
+            @Response(responseCode = 400, description = "Bad Request."),
+            @Response(responseCode = 500, description = "Server error")
+    })
+    public ApiResponse exportApplications(
+            @Param(value = "serviceId", required = true) String serviceId,
+            @Param(value = "format", required = false) String format,
+            @Param(value = "since", required = false) String since
+    ) {
+        LogUtil.info(CLASS_NAME, "Export requested for serviceId: " + serviceId);
+        return executeStreamingOperation(() -> {
+            ExportJob export = createGovStackService(serviceId).prepareExport(format, since);
+            return new StreamedBody(export.getContentType(), export.getFileName(), export::writeTo);
+        });
+    }
+
+    @Operation(
+            path = "/services/{serviceId}/applications/{applicationId}",
+            type = Operation.MethodType.GET,
+            summary = "@@RegistrationServiceProvider.getApplication.summary@@",
+            description = "@@RegistrationServiceProvider.getApplication.description@@"
+    )
+    @Responses({
+            @Response(responseCode = 200, description = "Success"),
+            @Response(responseCode = 404, description = "Application not found"),
+            @Response(responseCode = 500, description = "Server error")
+    })
+    public ApiResponse getApplication(
+            @Param(value = "serviceId", required = true) String serviceId,
+            @Param(value = "applicationId", required = true) String applicationId
+    ) {
+        // A cached application is returned without loading the service configuration
+        return executeTextOperation(() -> ApplicationCache.getInstance().get(serviceId, applicationId,
+                () -> createGovStackService(serviceId).readApplication(applicationId)));
+    }
+
+    @Operation(
+            path = "/services/{serviceId}/metadata/validate",
+            type = Operation.MethodType.POST,
+            summary = "@@RegistrationServiceProvider.validateMetadata.summary@@",
+            description = "@@RegistrationServiceProvider.validateMetadata.description@@"
+    )
+    @Responses({
+            @Response(responseCode = 200, description = "Success"),
+            @Response(responseCode = 400, description = "Bad Request."),
+            @Response(responseCode = 500, description = "Server error")
+    })
+    public ApiResponse validateMetadata(
+            @Param(value = "serviceId", required = true) String serviceId
+    ) {
+        LogUtil.info(CLASS_NAME, "Metadata revalidation requested for serviceId: " + serviceId);
+        return executeOperation(() -> createGovStackService(serviceId).revalidateMetadata());
+    }
+
+    @Operation(
+            path = "/metrics",
+            type = Operation.MethodType.GET,
+            summary = "@@RegistrationServiceProvider.metrics.summary@@",
+            description = "@@RegistrationServiceProvider.metrics.description@@"
+    )
+    @Responses({
+            @Response(responseCode = 200, description = "Success"),
+            @Response(responseCode = 500, description = "Server error")
+    })
+    public ApiResponse getMetrics() {
+        return executeTextOperation("text/plain; version=0.0.4; charset=UTF-8",
+                () -> RequestMetrics.getInstance().toPrometheusText());
+    }
+
+    @Operation(
+            path = "/diagnostics/slow-requests",
+            type = Operation.MethodType.GET,
+            summary = "@@RegistrationServiceProvider.slowRequests.summary@@",
+            description = "@@RegistrationServiceProvider.slowRequests.description@@"
+    )
+    @Responses({
+            @Response(responseCode = 200, description = "Success"),
+            @Response(responseCode = 500, description = "Server error")
+    })
+    public ApiResponse getSlowRequests() {
+        return executeOperation(() -> SlowRequestRecorder.getInstance().toJson(System.currentTimeMillis()));
+    }
+
     /**
      * Creates the request processor for registration services.
      * Implements the abstract method from BaseServiceProvider.
@@ -108,32 +318,42 @@ public class RegistrationServiceProvider extends BaseServiceProvider implements
         String useGovStack = getPropertyString("useGovStack");
 
         if ("true".equalsIgnoreCase(useGovStack)) {
-            // Validate serviceId format
-            if (serviceId == null || serviceId.trim().isEmpty()) {
-                throw new IllegalArgumentException("ServiceId is required in URL path");
-            }
-
-            if (!serviceId.matches("^[a-z0-9_]+$")) {
-                throw new IllegalArgumentException("Invalid serviceId format: " + serviceId +
-                    ". Use lowercase, numbers, underscore only.");
-            }
-
-            try {
-                // Use configuration-driven GovStack service (transport layer only)
-                // ServiceId comes from URL path parameter, NOT plugin configuration
-                LogUtil.info(CLASS_NAME, "Using GovStackRegistrationService for serviceId from URL: " + serviceId);
-
-                GovStackRegistrationService govStackService = new GovStackRegistrationService(serviceId);
-                // Service configuration will be loaded from docs-metadata/{serviceId}.yml
-                return govStackService;
-            } catch (Exception e) {
-                LogUtil.error(CLASS_NAME, e, "Error creating GovStack service for serviceId '" + serviceId + "': " + e.getMessage());
-                throw new RuntimeException("Failed to initialize GovStack service for '" + serviceId + "': " + e.getMessage(), e);
-            }
+            return createGovStackService(serviceId);
         } else {
             // Use legacy implementation (ignores serviceId parameter)
             LogUtil.warn(CLASS_NAME, "Using legacy mode - serviceId parameter ignored");
             return RegistrationServiceFactory.createRequestProcessor();
         }
     }
+
+    /**
+     * Creates the configuration-driven GovStack service for a serviceId.
+     *
+     * @param serviceId The service identifier from URL path parameter
+     * @return The GovStack service, configured from docs-metadata/{serviceId}.yml
+     */
+    private GovStackRegistrationService createGovStackService(String serviceId) {
+        // Validate serviceId format
+        if (serviceId == null || serviceId.trim().isEmpty()) {
+            throw new IllegalArgumentException("ServiceId is required in URL path");
+        }
+
+        if (!serviceId.matches("^[a-z0-9_]+$")) {
+            throw new IllegalArgumentException("Invalid serviceId format: " + serviceId +
+                ". Use lowercase, numbers, underscore only.");
+        }
+
+        try {
+            // Use configuration-driven GovStack service (transport layer only)
+            // ServiceId comes from URL path parameter, NOT plugin configuration
+            LOG.debug("Using GovStackRegistrationService for serviceId from URL: {}", serviceId);
+
+            GovStackRegistrationService govStackService = new GovStackRegistrationService(serviceId);
+            // Service configuration will be loaded from docs-metadata/{serviceId}.yml
+            return govStackService;
+        } catch (Exception e) {
+            LogUtil.error(CLASS_NAME, e, "Error creating GovStack service for serviceId '" + serviceId + "': " + e.getMessage());
+            throw new RuntimeException("Failed to initialize GovStack service for '" + serviceId + "': " + e.getMessage(), e);
+        }
+    }
 }
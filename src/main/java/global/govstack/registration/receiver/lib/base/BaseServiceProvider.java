@@ -3,6 +3,8 @@ package global.govstack.registration.receiver.lib.base;
 import global.govstack.registration.receiver.exception.ApiProcessingException;
 import global.govstack.registration.receiver.service.ApiRequestProcessor;
 import global.govstack.registration.receiver.util.ErrorResponseUtil;
+import global.govstack.registration.receiver.util.HttpCompression;
+import global.govstack.registration.receiver.util.ProcessingLog;
 import global.govstack.registration.receiver.util.UserContextUtil;
 import org.joget.api.model.ApiPluginAbstract;
 import org.joget.api.model.ApiResponse;
@@ -11,6 +13,11 @@ import org.joget.commons.util.LogUtil;
 import org.joget.workflow.model.service.WorkflowUserManager;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Base abstract class for all GovStack service provider plugins.
  *
@@ -26,11 +33,77 @@ import org.json.JSONObject;
  * 2. Implement createRequestProcessor() to provide their specific service
  * 3. Provide plugin metadata (name, version, description, etc.)
  *
+ * Compressed and streamed responses are written to the servlet response directly, and the
+ * operation then returns null. This relies on how the Joget DX8 API builder treats a null
+ * ApiResponse, which is not part of the documented plugin API: it sends nothing more and
+ * leaves the written response as it is. ApiResponse only carries a String body, so there is
+ * no documented way to return gzip bytes. Compressed responses are therefore off unless
+ * -D{@value #COMPRESSION_PROPERTY}=true is set, and every other response is returned as an
+ * ApiResponse; exports always stream.
+ *
+ * Compressed request bodies are not supported: the API builder reads the body parameter as
+ * text before the operation runs, so the gzip bytes are gone by then.
+ *
  * @see ApiRequestProcessor
  * @see ApiProcessingException
  */
 public abstract class BaseServiceProvider extends ApiPluginAbstract {
 
+    protected static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    /**
+     * Responses smaller than this are sent uncompressed, gzip would save little
+     */
+    static final int COMPRESSION_THRESHOLD_CHARS = 1024;
+
+    /**
+     * System property that turns on gzip compressed responses when set to true
+     */
+    public static final String COMPRESSION_PROPERTY = "govstack.compression.enabled";
+
+    /**
+     * An operation that produces a JSON response body
+     */
+    protected interface OperationHandler {
+        JSONObject handle() throws Exception;
+    }
+
+    /**
+     * An operation that produces a plain text response body
+     */
+    protected interface TextOperationHandler {
+        String handle() throws Exception;
+    }
+
+    /**
+     * An operation whose response body is streamed rather than built in memory
+     */
+    protected interface StreamingOperationHandler {
+        /**
+         * Validate the request, called before anything is written so errors are still returned normally
+         */
+        StreamedBody prepare() throws Exception;
+    }
+
+    /**
+     * A response body written straight to the HTTP response
+     */
+    protected static class StreamedBody {
+        private final String contentType;
+        private final String fileName;
+        private final BodyWriter writer;
+
+        public StreamedBody(String contentType, String fileName, BodyWriter writer) {
+            this.contentType = contentType;
+            this.fileName = fileName;
+            this.writer = writer;
+        }
+    }
+
+    protected interface BodyWriter {
+        void write(OutputStream out) throws Exception;
+    }
+
     /**
      * Generic request processing flow with service ID support.
      *
@@ -46,17 +119,69 @@ public abstract class BaseServiceProvider extends ApiPluginAbstract {
      * @return ApiResponse with status code and response body
      */
     protected ApiResponse processServiceRequest(String serviceId, String requestBody) {
-        WorkflowUserManager workflowUserManager = getWorkflowUserManager();
+        // Tag log lines with the request and honour the debug header
+        ProcessingLog.RequestContext logContext = ProcessingLog.beginRequest(serviceId);
+        logContext.setDebugRequested("true".equalsIgnoreCase(getRequestHeader(ProcessingLog.DEBUG_HEADER)));
+        try {
+            return executeOperation(() -> {
+                String body = decodeRequestBody(requestBody);
 
-        return UserContextUtil.executeAsSystemUser(workflowUserManager, () -> {
-            try {
                 // Get the service-specific processor
-                ApiRequestProcessor processor = createRequestProcessor(serviceId, requestBody);
+                ApiRequestProcessor processor = createRequestProcessor(serviceId, body);
 
                 // Process the request
-                JSONObject response = processor.processRequest(requestBody);
+                return processor.processRequest(body);
+            });
+        } finally {
+            ProcessingLog.endRequest();
+        }
+    }
 
-                return new ApiResponse(200, response.toString());
+    /**
+     * Generic operation flow for endpoints other than request processing.
+     *
+     * Runs the handler as system user with the same error handling as
+     * processServiceRequest, so every endpoint returns standardized errors.
+     *
+     * @param handler The operation to run
+     * @return ApiResponse with status code and response body
+     */
+    protected ApiResponse executeOperation(OperationHandler handler) {
+        return executeTextOperation(() -> handler.handle().toString());
+    }
+
+    /**
+     * Generic operation flow for endpoints returning a JSON document as text.
+     *
+     * @param handler The operation to run
+     * @return ApiResponse with status code and response body
+     */
+    protected ApiResponse executeTextOperation(TextOperationHandler handler) {
+        return executeTextOperation(JSON_CONTENT_TYPE, handler);
+    }
+
+    /**
+     * Generic operation flow for endpoints returning plain text, such as metrics.
+     *
+     * Errors are still returned as standardized JSON error responses. A successful body over
+     * COMPRESSION_THRESHOLD_CHARS is sent gzip compressed when compression is enabled and the
+     * client accepts it.
+     *
+     * @param contentType Content type of a compressed body
+     * @param handler The operation to run
+     * @return ApiResponse with status code and response body, or null when a compressed body was
+     *         written to the servlet response (see the class comment)
+     */
+    protected ApiResponse executeTextOperation(String contentType, TextOperationHandler handler) {
+        WorkflowUserManager workflowUserManager = getWorkflowUserManager();
+
+        return UserContextUtil.executeAsSystemUser(workflowUserManager, () -> {
+            try {
+                String body = handler.handle();
+                if (sendCompressed(contentType, body)) {
+                    return null;
+                }
+                return new ApiResponse(200, body);
             } catch (ApiProcessingException e) {
                 // Handle known processing exceptions
                 return handleError(e.getStatusCode(), e.getErrorType(), e);
@@ -67,6 +192,161 @@ public abstract class BaseServiceProvider extends ApiPluginAbstract {
         });
     }
 
+    /**
+     * Generic operation flow for endpoints streaming a large response body, such as exports.
+     *
+     * The body is written to the servlet response as it is produced, so its size is not
+     * limited by memory. Errors raised while preparing are returned as standardized JSON
+     * error responses; once streaming has started the status is sent, so a later failure
+     * is logged and the client receives a truncated body.
+     *
+     * @param handler The operation to run
+     * @return An error response, or null when the body was streamed
+     */
+    protected ApiResponse executeStreamingOperation(StreamingOperationHandler handler) {
+        WorkflowUserManager workflowUserManager = getWorkflowUserManager();
+
+        return UserContextUtil.executeAsSystemUser(workflowUserManager, () -> {
+            StreamedBody body;
+            Object response;
+            try {
+                body = handler.prepare();
+                response = getHttpServletResponse();
+                if (response == null) {
+                    throw ApiProcessingException.serverError("Streaming responses need an HTTP request");
+                }
+            } catch (ApiProcessingException e) {
+                return handleError(e.getStatusCode(), e.getErrorType(), e);
+            } catch (Exception e) {
+                return handleError(500, "Internal server error", e);
+            }
+
+            try {
+                Map<String, String> headers = new LinkedHashMap<>();
+                if (body.fileName != null) {
+                    headers.put("Content-Disposition", "attachment; filename=\"" + body.fileName + "\"");
+                }
+                boolean gzip = isCompressionEnabled() && HttpCompression.acceptsGzip(getRequestHeader("Accept-Encoding"));
+                if (gzip) {
+                    headers.put("Content-Encoding", HttpCompression.GZIP);
+                    headers.put("Vary", "Accept-Encoding");
+                }
+                OutputStream out = openResponseStream(response, body.contentType, headers);
+                if (gzip) {
+                    // Closing writes the gzip trailer
+                    try (OutputStream compressed = HttpCompression.gzip(out)) {
+                        body.writer.write(compressed);
+                    }
+                } else {
+                    body.writer.write(out);
+                    out.flush();
+                }
+            } catch (Exception e) {
+                Throwable cause = e instanceof java.lang.reflect.InvocationTargetException ? e.getCause() : e;
+                logError(500, e, "Streaming response failed: " + cause);
+            }
+            // The body has been written, there is nothing left for the API builder to send (see the class comment)
+            return null;
+        });
+    }
+
+    /**
+     * Set the status and headers of a servlet response and open its body for writing
+     */
+    private OutputStream openResponseStream(Object response, String contentType, Map<String, String> headers)
+            throws Exception {
+        Class<?> responseType = Class.forName("javax.servlet.http.HttpServletResponse", false,
+                response.getClass().getClassLoader());
+        responseType.getMethod("setStatus", int.class).invoke(response, 200);
+        responseType.getMethod("setContentType", String.class).invoke(response, contentType);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            responseType.getMethod("setHeader", String.class, String.class).invoke(response,
+                    header.getKey(), header.getValue());
+        }
+        return (OutputStream) responseType.getMethod("getOutputStream").invoke(response);
+    }
+
+    /**
+     * @return true if -D{@value #COMPRESSION_PROPERTY}=true turned on compressed responses
+     */
+    static boolean isCompressionEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(COMPRESSION_PROPERTY));
+    }
+
+    /**
+     * Send a response body gzip compressed if it is large enough and the client accepts gzip
+     *
+     * @return true if the body was sent, false if it should be returned uncompressed
+     */
+    private boolean sendCompressed(String contentType, String body) {
+        if (body == null || body.length() < COMPRESSION_THRESHOLD_CHARS
+                || !isCompressionEnabled()
+                || !HttpCompression.acceptsGzip(getRequestHeader("Accept-Encoding"))) {
+            return false;
+        }
+        Object response = getHttpServletResponse();
+        if (response == null) {
+            return false;
+        }
+
+        byte[] compressed;
+        try {
+            compressed = HttpCompression.gzip(body);
+        } catch (IOException e) {
+            LogUtil.warn(getClassName(), "Response sent uncompressed: " + e.getMessage());
+            return false;
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Content-Encoding", HttpCompression.GZIP);
+        headers.put("Vary", "Accept-Encoding");
+        headers.put("Content-Length", String.valueOf(compressed.length));
+        try {
+            OutputStream out = openResponseStream(response, contentType, headers);
+            out.write(compressed);
+            out.flush();
+        } catch (Exception e) {
+            Throwable cause = e instanceof java.lang.reflect.InvocationTargetException ? e.getCause() : e;
+            logError(500, e, "Sending compressed response failed: " + cause);
+        }
+        return true;
+    }
+
+    /**
+     * Get the text of a request body, rejecting a body sent with a Content-Encoding
+     *
+     * The API builder has read the body parameter as UTF-8 text before the operation runs, which
+     * replaces the bytes of a gzip stream that are not valid UTF-8, and the servlet request
+     * stream is consumed by then. A compressed body therefore cannot be decompressed here.
+     *
+     * @param requestBody The body as passed to the operation
+     * @return The body text
+     * @throws ApiProcessingException 415 if the body was sent with a Content-Encoding
+     */
+    protected String decodeRequestBody(String requestBody) throws ApiProcessingException {
+        String encoding = getRequestHeader("Content-Encoding");
+        if (encoding == null || encoding.trim().isEmpty() || "identity".equalsIgnoreCase(encoding.trim())) {
+            return requestBody;
+        }
+        throw ApiProcessingException.unsupportedMediaType("Content-Encoding " + encoding.trim()
+                + " is not supported, send the request body uncompressed");
+    }
+
+    /**
+     * Gets the HTTP response of the request being handled, looked up reflectively
+     * like the request in getRequestHeader.
+     *
+     * @return The response, or null outside an HTTP request
+     */
+    protected Object getHttpServletResponse() {
+        try {
+            return Class.forName("org.joget.workflow.util.WorkflowUtil")
+                    .getMethod("getHttpServletResponse").invoke(null);
+        } catch (Exception e) {
+            LogUtil.debug(getClassName(), "HTTP response unavailable: " + e);
+            return null;
+        }
+    }
+
     /**
      * Creates the service-specific request processor.
      *
@@ -89,6 +369,32 @@ public abstract class BaseServiceProvider extends ApiPluginAbstract {
                 .getBean("workflowUserManager");
     }
 
+    /**
+     * Reads a header of the HTTP request being handled.
+     *
+     * The servlet API is not on the plugin's compile classpath, so the request
+     * is looked up reflectively through WorkflowUtil.
+     *
+     * @param name The header name
+     * @return The header value, or null if absent or outside an HTTP request
+     */
+    protected String getRequestHeader(String name) {
+        try {
+            Object request = Class.forName("org.joget.workflow.util.WorkflowUtil")
+                    .getMethod("getHttpServletRequest").invoke(null);
+            if (request == null) {
+                return null;
+            }
+            // Call through the interface, the container's request class need not be public
+            Class<?> requestType = Class.forName("javax.servlet.http.HttpServletRequest", false,
+                    request.getClass().getClassLoader());
+            return (String) requestType.getMethod("getHeader", String.class).invoke(request, name);
+        } catch (Exception e) {
+            LogUtil.debug(getClassName(), "Request header " + name + " unavailable: " + e);
+            return null;
+        }
+    }
+
     /**
      * Creates a standardized error response.
      *
@@ -109,6 +415,11 @@ public abstract class BaseServiceProvider extends ApiPluginAbstract {
             errorMessage = "An unexpected error occurred";
         }
 
+        if (e instanceof ApiProcessingException && ((ApiProcessingException) e).getDetails() != null) {
+            return new ApiResponse(statusCode, ErrorResponseUtil.createDetailedErrorResponse(
+                    errorType, errorMessage, ((ApiProcessingException) e).getDetails()));
+        }
+
         return new ApiResponse(statusCode,
                 ErrorResponseUtil.createErrorResponse(errorType, errorMessage));
     }
@@ -10,6 +10,7 @@ import org.joget.apps.form.model.FormData;
 import org.joget.commons.util.LogUtil;
 import org.joget.commons.util.UuidGenerator;
 import global.govstack.registration.receiver.exception.FormSubmissionException;
+import global.govstack.registration.receiver.service.metrics.ProcessingEvents;
 import global.govstack.registration.receiver.util.FormRowBuilder;
 
 import java.util.HashMap;
@@ -122,11 +123,18 @@ public class FormSubmissionManager {
                     .addFields(inputFields)
                     .buildRowSet();
 
-            FormRowSet storedData = this.appService.storeFormData(
-                    form,
-                    rowSet,
-                    primaryKey
-            );
+            ProcessingEvents.Span event = ProcessingEvents.begin(ProcessingEvents.Type.FORM_STORE, "form_store")
+                    .formId(formId).rowCount(rowSet.size()).primaryKey(primaryKey);
+            FormRowSet storedData = null;
+            try {
+                storedData = this.appService.storeFormData(
+                        form,
+                        rowSet,
+                        primaryKey
+                );
+            } finally {
+                event.end(storedData != null && !storedData.isEmpty());
+            }
 
             if (storedData == null || storedData.isEmpty()) {
                 throw new FormSubmissionException("Failed to store form data: No data returned");
@@ -1,19 +1,54 @@
 package global.govstack.registration.receiver.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import global.govstack.registration.receiver.exception.*;
 import global.govstack.registration.receiver.exception.ConfigurationException;
+import global.govstack.registration.receiver.service.archive.ArchivedPayload;
+import global.govstack.registration.receiver.service.archive.PayloadArchive;
+import global.govstack.registration.receiver.service.archive.PayloadArchiveRegistry;
+import global.govstack.registration.receiver.service.archive.PayloadReplayer;
+import global.govstack.registration.receiver.service.attachment.AttachmentPipeline;
+import global.govstack.registration.receiver.service.bulk.BulkImportJob;
+import global.govstack.registration.receiver.service.bulk.BulkImportRegistry;
+import global.govstack.registration.receiver.service.attachment.ContentAddressedTarget;
+import global.govstack.registration.receiver.service.attachment.JogetUploadTarget;
+import global.govstack.registration.receiver.service.changes.ChangeFeed;
+import global.govstack.registration.receiver.service.changes.ChangeLog;
+import global.govstack.registration.receiver.service.export.ExportJob;
+import global.govstack.registration.receiver.service.export.RegistrationExporter;
+import global.govstack.registration.receiver.service.identity.IdentifierIndexRegistry;
+import global.govstack.registration.receiver.service.identity.JogetIdentifierStore;
 import global.govstack.registration.receiver.service.metadata.*;
+import global.govstack.registration.receiver.service.metrics.RequestMetrics;
+import global.govstack.registration.receiver.service.read.ApplicationCache;
+import global.govstack.registration.receiver.service.read.ApplicationReader;
+import global.govstack.registration.receiver.service.validation.MetadataValidationRegistry;
+import global.govstack.registration.receiver.service.validation.RequestShapeValidator;
 import global.govstack.registration.receiver.service.validation.ServiceMetadataValidator;
+import global.govstack.registration.receiver.util.ProcessingLog;
 import org.joget.commons.util.LogUtil;
 import org.joget.commons.util.UuidGenerator;
 import org.json.JSONObject;
 import org.json.JSONArray;
 import javax.sql.DataSource;
+import org.joget.apps.app.model.AppDefinition;
+import org.joget.apps.app.service.AppService;
 import org.joget.apps.app.service.AppUtil;
-
+import org.joget.apps.form.dao.FormDataDao;
+import org.joget.workflow.model.service.WorkflowUserManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * GovStack Registration Service that saves to multiple forms
@@ -21,6 +56,12 @@ import java.util.Map;
  */
 public class GovStackRegistrationService implements ApiRequestProcessor {
     private static final String CLASS_NAME = GovStackRegistrationService.class.getName();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(GovStackRegistrationService.class);
+
+    private static final int DEFAULT_CHANGES_LIMIT = 100;
+    private static final int MAX_CHANGES_LIMIT = 1000;
+    private static final String REPLAY_METRICS_SUFFIX = ":replay";
 
     private final String serviceId;
     private final YamlMetadataService metadataService;
@@ -46,7 +87,7 @@ public class GovStackRegistrationService implements ApiRequestProcessor {
             // Validate services.yml against database schema
             validateMetadataConfiguration();
 
-            LogUtil.info(CLASS_NAME, "GovStackRegistrationService initialized for service: " + serviceId);
+            LOG.debug("GovStackRegistrationService initialized for service: {}", serviceId);
 
         } catch (Exception e) {
             throw new ConfigurationException("Failed to initialize GovStackRegistrationService: " + e.getMessage(), e);
@@ -55,116 +96,638 @@ public class GovStackRegistrationService implements ApiRequestProcessor {
 
     /**
      * Validate services.yml configuration against database schema
+     * Runs in the background and only when the YAML or schema changed since the last run
      */
     private void validateMetadataConfiguration() {
         try {
-            // Get DataSource from Joget
-            DataSource dataSource = (DataSource) AppUtil.getApplicationContext().getBean("setupDataSource");
+            MetadataValidationRegistry.getInstance().validateIfChanged(metadataService, getDataSource());
+        } catch (Exception e) {
+            LogUtil.error(CLASS_NAME, e, "Error scheduling metadata validation: " + e.getMessage());
+            // Don't fail startup, just log the error
+        }
+    }
+
+    /**
+     * Trigger revalidation of this service's configuration
+     * @return The cached validation report, which is replaced once revalidation completes
+     */
+    public JSONObject revalidateMetadata() {
+        MetadataValidationRegistry registry = MetadataValidationRegistry.getInstance();
+        registry.revalidate(metadataService, getDataSource());
 
-            ServiceMetadataValidator validator = new ServiceMetadataValidator(dataSource);
-            ServiceMetadataValidator.ValidationResult result = validator.validate();
+        JSONObject response = new JSONObject();
+        response.put("serviceId", serviceId);
+        response.put("contentHash", metadataService.getContentHash());
+        response.put("revalidating", registry.isPending(serviceId));
+
+        MetadataValidationRegistry.Entry entry = registry.getEntry(serviceId);
+        if (entry == null) {
+            response.put("status", "PENDING");
+            return response;
+        }
 
-            if (!result.valid) {
-                LogUtil.error(CLASS_NAME, null, "Services.yml validation failed:\n" + result.getReport());
-                // Log errors but don't fail startup to allow fixing configuration
-                for (ServiceMetadataValidator.ValidationError error : result.errors) {
-                    LogUtil.error(CLASS_NAME, null, "Configuration Error: " + error);
-                }
-            } else {
-                LogUtil.info(CLASS_NAME, "Services.yml validation passed");
+        ServiceMetadataValidator.ValidationResult result = entry.getResult();
+        response.put("status", result.valid ? "VALID" : "INVALID");
+        response.put("validatedContentHash", entry.getContentHash());
+        response.put("schemaVersion", entry.getSchemaVersion());
+        response.put("validatedAt", entry.getValidatedAt());
+
+        JSONArray errors = new JSONArray();
+        for (ServiceMetadataValidator.ValidationError error : result.errors) {
+            errors.put(error.toString());
+        }
+        JSONArray warnings = new JSONArray();
+        for (ServiceMetadataValidator.ValidationWarning warning : result.warnings) {
+            warnings.put(warning.toString());
+        }
+        response.put("errors", errors);
+        response.put("warnings", warnings);
+        response.put("report", result.getReport());
+        return response;
+    }
+
+    /**
+     * Read a registration back in the GovStack request shape
+     * @param applicationId The application's primary key
+     * @return The application as JSON text
+     * @throws ApiProcessingException 404 if the application does not exist
+     */
+    public String readApplication(String applicationId) throws ApiProcessingException {
+        try {
+            return new ApplicationReader(metadataService).read(applicationId);
+        } catch (ConfigurationException e) {
+            throw ApiProcessingException.configError(e.getMessage());
+        }
+    }
+
+    /**
+     * Find the applications holding an identifier
+     * @param identifier The identifier value
+     * @param type The identifier type, or null to search every indexed type
+     * @return The matching applications
+     */
+    public JSONObject findApplications(String identifier, String type) throws ApiProcessingException {
+        if (identifier == null || identifier.trim().isEmpty()) {
+            throw ApiProcessingException.invalidRequest("The identifier parameter is required");
+        }
+        if (!metadataService.isIdentifierIndexEnabled()) {
+            throw ApiProcessingException.invalidRequest("Identifier lookups are disabled for service: " + serviceId);
+        }
+        IdentifierIndexRegistry registry = IdentifierIndexRegistry.getInstance();
+        if (type != null && !type.isEmpty() && !registry.getIndexedTypes(metadataService).contains(type)) {
+            throw ApiProcessingException.invalidRequest("Identifier type is not indexed: " + type
+                    + ", indexed types are " + registry.getIndexedTypes(metadataService));
+        }
+
+        List<IdentifierIndexRegistry.Match> matches;
+        try {
+            matches = registry.find(metadataService, new JogetIdentifierStore(),
+                    type != null && !type.isEmpty() ? type : null, identifier);
+        } catch (Exception e) {
+            LOG.error(e, "Error looking up identifier: {}", e.getMessage());
+            throw ApiProcessingException.serverError("Error looking up identifier: " + e.getMessage());
+        }
+
+        JSONArray applications = new JSONArray();
+        for (IdentifierIndexRegistry.Match match : matches) {
+            JSONObject application = new JSONObject();
+            application.put("applicationId", match.getApplicationId());
+            application.put("identifierType", match.getType());
+            applications.put(application);
+        }
+        JSONObject response = new JSONObject();
+        response.put("serviceId", serviceId);
+        response.put("identifier", identifier.trim());
+        response.put("applications", applications);
+        return response;
+    }
+
+    /**
+     * Read the service's change feed
+     * @param after Sequence number of the last change already seen, empty for the start of the feed
+     * @param limit The maximum number of changes, defaults to 100 and is capped at 1000
+     * @param epoch The epoch of the response the cursor came from, may be empty
+     * @return The changes and the cursor for the next page
+     * @throws ApiProcessingException 410 if the cursor belongs to a log that no longer exists
+     */
+    public JSONObject getChanges(String after, String limit, String epoch) throws ApiProcessingException {
+        if (!ChangeFeed.getInstance().isAvailable(metadataService)) {
+            throw ApiProcessingException.invalidRequest("The change feed is not enabled for service: " + serviceId);
+        }
+        long afterSequence = parseCount("after", after, 0);
+        int pageSize = (int) Math.min(parseCount("limit", limit, DEFAULT_CHANGES_LIMIT), MAX_CHANGES_LIMIT);
+        if (pageSize == 0) {
+            throw ApiProcessingException.invalidRequest("The limit parameter must be at least 1");
+        }
+
+        List<ChangeLog.Change> changes;
+        long lastSequence;
+        String currentEpoch;
+        try {
+            ChangeFeed feed = ChangeFeed.getInstance();
+            currentEpoch = feed.getEpoch(metadataService);
+            if (epoch != null && !epoch.trim().isEmpty() && !epoch.trim().equals(currentEpoch)) {
+                throw ApiProcessingException.gone("The change feed was reset, epoch " + epoch.trim()
+                        + " is now " + currentEpoch + "; read again from the start");
+            }
+            changes = feed.read(metadataService, afterSequence, pageSize);
+            lastSequence = feed.getLastSequence(metadataService);
+        } catch (IOException e) {
+            LOG.error(e, "Error reading change feed: {}", e.getMessage());
+            throw ApiProcessingException.serverError("Error reading change feed: " + e.getMessage());
+        }
+        if (afterSequence > lastSequence) {
+            // A cursor from a log that was lost, which would otherwise wait for changes forever
+            throw ApiProcessingException.gone("The change feed ends at sequence " + lastSequence
+                    + ", before " + afterSequence + "; it was reset, read again from the start");
+        }
+
+        JSONArray items = new JSONArray();
+        for (ChangeLog.Change change : changes) {
+            JSONObject item = new JSONObject();
+            item.put("sequence", change.getSequence());
+            item.put("applicationId", change.getApplicationId());
+            item.put("operation", change.getOperation());
+            item.put("timestamp", Instant.ofEpochMilli(change.getTimestamp()).toString());
+            items.put(item);
+        }
+        long next = changes.isEmpty() ? afterSequence : changes.get(changes.size() - 1).getSequence();
+        JSONObject response = new JSONObject();
+        response.put("serviceId", serviceId);
+        response.put("epoch", currentEpoch);
+        response.put("changes", items);
+        response.put("next", next);
+        response.put("lastSequence", lastSequence);
+        response.put("hasMore", next < lastSequence);
+        return response;
+    }
+
+    /**
+     * Map archived payloads again with the current metadata and save the corrected applications
+     * @param from The first sequence number to replay, defaults to the start of the archive
+     * @param to The last sequence number to replay, defaults to the newest payload
+     * @return The number of payloads replayed and failed, with the first failures
+     */
+    public JSONObject replayArchive(String from, String to) throws ApiProcessingException {
+        if (!metadataService.isArchiveEnabled()) {
+            throw ApiProcessingException.invalidRequest("The payload archive is disabled for service: " + serviceId);
+        }
+        long fromSequence = Math.max(1, parseCount("from", from, 1));
+        long toSequence = parseCount("to", to, Long.MAX_VALUE);
+        if (toSequence < fromSequence) {
+            throw ApiProcessingException.invalidRequest("The to parameter must not be before from");
+        }
+
+        // The workers need the request's app and system user, both are thread-local in Joget
+        AppDefinition appDef = AppUtil.getCurrentAppDefinition();
+        WorkflowUserManager workflowUserManager =
+                (WorkflowUserManager) AppUtil.getApplicationContext().getBean("workflowUserManager");
+        PayloadReplayer.Result result;
+        long lastSequence;
+        try {
+            PayloadArchive archive = PayloadArchiveRegistry.getInstance().getArchive(metadataService);
+            archive.seal();
+            lastSequence = archive.getLastSequence();
+            result = new PayloadReplayer(metadataService.getReplayThreads()).replay(archive, fromSequence, toSequence,
+                    payload -> {
+                        AppUtil.setCurrentAppDefinition(appDef);
+                        if (workflowUserManager != null) {
+                            workflowUserManager.setSystemThreadUser(true);
+                        }
+                        replayApplication(payload);
+                    });
+        } catch (IOException e) {
+            LOG.error(e, "Error reading payload archive: {}", e.getMessage());
+            throw ApiProcessingException.serverError("Error reading payload archive: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw ApiProcessingException.serverError("Replay interrupted");
+        }
+
+        JSONObject versions = new JSONObject();
+        for (Map.Entry<String, Long> version : result.getMetadataVersions().entrySet()) {
+            versions.put(version.getKey(), version.getValue());
+        }
+        JSONArray failures = new JSONArray();
+        for (PayloadReplayer.Failure failure : result.getFailures()) {
+            JSONObject item = new JSONObject();
+            item.put("sequence", failure.getSequence());
+            item.put("applicationId", failure.getApplicationId());
+            item.put("message", failure.getMessage());
+            failures.put(item);
+        }
+        JSONObject response = new JSONObject();
+        response.put("serviceId", serviceId);
+        response.put("metadataVersion", metadataService.getMetadataVersion());
+        response.put("from", fromSequence);
+        response.put("to", Math.min(toSequence, lastSequence));
+        response.put("replayed", result.getReplayed());
+        response.put("failed", result.getFailed());
+        response.put("archivedWith", versions);
+        response.put("failures", failures);
+        response.put("durationMs", result.getDurationMillis());
+        return response;
+    }
+
+    /**
+     * List the segment files of the service's payload archive
+     */
+    public JSONObject getArchiveSegments() throws ApiProcessingException {
+        if (!metadataService.isArchiveEnabled()) {
+            throw ApiProcessingException.invalidRequest("The payload archive is disabled for service: " + serviceId);
+        }
+        PayloadArchive archive;
+        try {
+            archive = PayloadArchiveRegistry.getInstance().getArchive(metadataService);
+        } catch (IOException e) {
+            LOG.error(e, "Error opening payload archive: {}", e.getMessage());
+            throw ApiProcessingException.serverError("Error opening payload archive: " + e.getMessage());
+        }
+
+        JSONArray segments = new JSONArray();
+        for (PayloadArchive.Segment segment : archive.getSegments()) {
+            JSONObject item = new JSONObject();
+            item.put("firstSequence", segment.getFirstSequence());
+            item.put("bytes", segment.getBytes());
+            item.put("blocks", segment.getBlocks());
+            segments.put(item);
+        }
+        JSONObject response = new JSONObject();
+        response.put("serviceId", serviceId);
+        response.put("segments", segments);
+        response.put("lastSequence", archive.getLastSequence());
+        return response;
+    }
+
+    /**
+     * Start importing a file of registrations in the background
+     * @param file Name of a JSON or NDJSON file in metadata.bulkImport.dir
+     * @param format json or ndjson, detected from the file extension if empty
+     * @return The progress of the started import
+     * @throws ApiProcessingException 404 if the file does not exist, 409 if an import of the service is running
+     */
+    public JSONObject startImport(String file, String format) throws ApiProcessingException {
+        if (file == null || file.trim().isEmpty()) {
+            throw ApiProcessingException.invalidRequest("The file parameter is required");
+        }
+        File directory = new File(metadataService.getBulkImportDir());
+        File source = new File(directory, file.trim());
+        try {
+            if (!source.getCanonicalFile().getParentFile().equals(directory.getCanonicalFile())) {
+                throw ApiProcessingException.invalidRequest("The file must be in the import directory: " + file);
             }
+        } catch (IOException e) {
+            throw ApiProcessingException.invalidRequest("Invalid file name: " + file);
+        }
+        if (!source.isFile()) {
+            throw ApiProcessingException.notFound("Import file not found: " + file);
+        }
+        BulkImportJob.Format importFormat = format == null || format.isEmpty()
+                ? BulkImportJob.Format.detect(source) : BulkImportJob.Format.fromName(format);
+        if (importFormat == null) {
+            throw ApiProcessingException.invalidRequest("Unknown import format: " + format + ", use json or ndjson");
+        }
 
-            // Log warnings
-            for (ServiceMetadataValidator.ValidationWarning warning : result.warnings) {
-                LogUtil.warn(CLASS_NAME, "Configuration Warning: " + warning);
+        // The import threads need the request's app and system user, both are thread-local in Joget
+        AppDefinition appDef = AppUtil.getCurrentAppDefinition();
+        WorkflowUserManager workflowUserManager =
+                (WorkflowUserManager) AppUtil.getApplicationContext().getBean("workflowUserManager");
+        BulkImportJob.Sink sink = record -> {
+            AppUtil.setCurrentAppDefinition(appDef);
+            if (workflowUserManager != null) {
+                workflowUserManager.setSystemThreadUser(true);
             }
+            JSONObject response = processRequest(OBJECT_MAPPER.writeValueAsString(record));
+            return response.getString("applicationId");
+        };
+        BulkImportJob job = new BulkImportJob(source, importFormat, sink);
+        job.setThreads(metadataService.getBulkImportThreads());
+        job.setTargetChunkMillis(metadataService.getBulkImportTargetChunkMillis());
+
+        if (!BulkImportRegistry.getInstance().start(serviceId, job)) {
+            throw ApiProcessingException.conflict("An import is already running for service: " + serviceId, null);
+        }
+        LOG.info("Started import of {} for service {}", source, serviceId);
+        return toImportStatus(job);
+    }
 
-        } catch (Exception e) {
-            LogUtil.error(CLASS_NAME, e, "Error validating metadata configuration: " + e.getMessage());
-            // Don't fail startup, just log the error
+    /**
+     * Get the progress of the service's running or last import
+     * @throws ApiProcessingException 404 if no import was started
+     */
+    public JSONObject getImportStatus() throws ApiProcessingException {
+        BulkImportJob job = BulkImportRegistry.getInstance().get(serviceId);
+        if (job == null) {
+            throw ApiProcessingException.notFound("No import was started for service: " + serviceId);
         }
+        return toImportStatus(job);
+    }
+
+    private JSONObject toImportStatus(BulkImportJob job) {
+        BulkImportJob.Progress progress = job.getProgress();
+        JSONObject response = new JSONObject();
+        response.put("serviceId", serviceId);
+        response.put("status", progress.getStatus());
+        response.put("records", progress.getRecords());
+        response.put("imported", progress.getImported());
+        response.put("failed", progress.getFailed());
+        response.put("offset", progress.getOffset());
+        response.put("fileBytes", progress.getFileBytes());
+        if (progress.getLastCommittedId() != null) {
+            response.put("lastCommittedId", progress.getLastCommittedId());
+        }
+        response.put("chunkSize", progress.getChunkSize());
+        response.put("recordsPerSecond", Math.round(progress.getRecordsPerSecond()));
+        response.put("elapsedMs", progress.getElapsedMillis());
+        response.put("errorReport", job.getErrorFile().getName());
+        if (progress.getError() != null) {
+            response.put("error", progress.getError());
+        }
+        return response;
+    }
+
+    private static long parseCount(String name, String value, long defaultValue) throws ApiProcessingException {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            long count = Long.parseLong(value.trim());
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw ApiProcessingException.invalidRequest("The " + name + " parameter must be a non-negative number: " + value);
+    }
+
+    /**
+     * Prepare an export of every application of the service
+     * @param format ndjson (the default) or csv
+     * @param since Only applications modified since then: epoch milliseconds or an ISO-8601 date or date-time
+     * @return The export, written to the response by the caller
+     * @throws ApiProcessingException 400 for an unknown format or invalid since
+     */
+    public ExportJob prepareExport(String format, String since) throws ApiProcessingException {
+        RegistrationExporter.Format exportFormat = format == null || format.isEmpty()
+                ? RegistrationExporter.Format.NDJSON : RegistrationExporter.Format.fromName(format);
+        if (exportFormat == null) {
+            throw ApiProcessingException.invalidRequest("Unknown export format: " + format + ", use ndjson or csv");
+        }
+        Timestamp sinceTime;
+        try {
+            sinceTime = ExportJob.parseSince(since);
+        } catch (IllegalArgumentException e) {
+            throw ApiProcessingException.invalidRequest(e.getMessage());
+        }
+
+        try {
+            GovStackDataAssembler assembler = GovStackDataAssembler.forMetadata(metadataService);
+            Map<String, String> tableNames = new HashMap<>();
+            for (String formId : assembler.getSectionFormIds()) {
+                tableNames.put(formId, getPhysicalTableName(formId));
+            }
+            for (GovStackDataAssembler.GridPlan grid : assembler.getGrids()) {
+                tableNames.put(grid.getFormId(), getPhysicalTableName(grid.getFormId()));
+            }
+            return new ExportJob(serviceId, exportFormat, sinceTime, assembler, getDataSource(),
+                    getPhysicalTableName(assembler.getParentFormId()), tableNames);
+        } catch (ConfigurationException e) {
+            throw ApiProcessingException.configError(e.getMessage());
+        }
+    }
+
+    /**
+     * Get the database table of a form, e.g. app_fd_farmer_basic_data
+     */
+    private String getPhysicalTableName(String formId) throws ConfigurationException {
+        AppDefinition appDef = AppUtil.getCurrentAppDefinition();
+        AppService appService = (AppService) AppUtil.getApplicationContext().getBean("appService");
+        String tableName = appService.getFormTableName(appDef, formId);
+        if (tableName == null || tableName.isEmpty()) {
+            throw new ConfigurationException("No table for form: " + formId);
+        }
+        return tableName.startsWith("app_fd_") ? tableName : "app_fd_" + tableName;
+    }
+
+    private DataSource getDataSource() {
+        return (DataSource) AppUtil.getApplicationContext().getBean("setupDataSource");
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public JSONObject processRequest(String requestBody) throws ApiProcessingException {
+        return process(requestBody, null);
+    }
+
+    /**
+     * Map an archived payload again with the current metadata and save it over its application
+     */
+    private void replayApplication(ArchivedPayload payload) throws ApiProcessingException {
+        process(payload.getPayload(), payload.getApplicationId());
+    }
+
+    /**
+     * @param replayApplicationId The application an archived payload is replayed into, null for a new request
+     */
+    private JSONObject process(String requestBody, String replayApplicationId) throws ApiProcessingException {
+        // The provider opens the context when it handles the HTTP request, so the debug header is seen
+        ProcessingLog.RequestContext logContext = ProcessingLog.currentRequest();
+        boolean ownsLogContext = logContext == null;
+        if (ownsLogContext) {
+            logContext = ProcessingLog.beginRequest(serviceId);
+        }
+        logContext.applySettings(metadataService.getLoggingConfig());
+
+        RequestMetrics.StageTimer timer = RequestMetrics.getInstance().startRequest(
+                replayApplicationId == null ? serviceId : serviceId + REPLAY_METRICS_SUFFIX);
+        timer.payload(requestBody);
         try {
-            LogUtil.info(CLASS_NAME, "Processing GovStack registration request for service: " + serviceId);
+            JSONObject response = processRegistration(requestBody, timer, logContext, replayApplicationId);
+            timer.complete();
+            return response;
+        } catch (ApiProcessingException e) {
+            timer.fail(e.getStatusCode() < 500 ? RequestMetrics.OUTCOME_CLIENT_ERROR : RequestMetrics.OUTCOME_SERVER_ERROR);
+            throw e;
+        } finally {
+            if (ownsLogContext) {
+                ProcessingLog.endRequest();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONObject processRegistration(String requestBody, RequestMetrics.StageTimer timer,
+                                           ProcessingLog.RequestContext logContext, String replayApplicationId)
+            throws ApiProcessingException {
+        AttachmentPipeline attachmentPipeline = AttachmentPipeline.forMetadata(metadataService);
+        AttachmentPipeline.ParsedRequest parsedRequest = null;
+        Map<String, String> reservedIdentifiers = Collections.emptyMap();
+        String reservedFor = null;
+        try {
+            LOG.debug("Processing GovStack registration request");
 
             // Validate request
+            timer.stage("parse");
             validateRequest(requestBody);
+            JsonNode rootNode;
+            if (attachmentPipeline.hasFields()) {
+                // Documents are decoded to staged files instead of being parsed into the tree
+                parsedRequest = parseWithAttachments(attachmentPipeline, requestBody);
+                rootNode = parsedRequest.getRoot();
+            } else {
+                rootNode = parseRequest(requestBody);
+            }
 
             // Check metadata version compatibility
-            checkMetadataVersionCompatibility(requestBody);
+            timer.stage("validate");
+            checkMetadataVersionCompatibility(rootNode);
+
+            // Reject malformed requests with every problem listed, before anything is saved
+            validateRequestShape(rootNode);
 
             // Map GovStack data to multiple Joget forms
-            Map<String, Object> mappedData = dataMapper.mapToMultipleForms(requestBody);
+            timer.stage("mapping");
+            Map<String, Object> mappedData = dataMapper.mapJsonToMultipleForms(rootNode);
 
             // Extract components
             Map<String, Map<String, String>> formData = (Map<String, Map<String, String>>) mappedData.get("formData");
             List<Map<String, Object>> arrayData = (List<Map<String, Object>>) mappedData.get("arrayData");
             String primaryKey = (String) mappedData.get("primaryKey");
 
-            if (primaryKey == null || primaryKey.trim().isEmpty()) {
+            boolean generatedKey = primaryKey == null || primaryKey.trim().isEmpty();
+            if (replayApplicationId != null) {
+                // A replay corrects the application the payload was saved as
+                primaryKey = replayApplicationId;
+                generatedKey = false;
+            } else if (generatedKey) {
                 primaryKey = UuidGenerator.getInstance().getUuid();
             }
 
-            LogUtil.info(CLASS_NAME, "Using primary key: " + primaryKey);
-
-            // First, create parent record in main form - get from configuration
-            String parentFormId = metadataService.getParentFormId(); // Gets from config or defaults to "farmerRegistrationForm"
-            java.util.List<String> parentReferenceFields = metadataService.getParentReferenceFields(); // Gets from YAML config
-
-            try {
-                boolean parentCreated = multiFormManager.createParentRecord(parentFormId, primaryKey, parentReferenceFields);
-                if (parentCreated) {
-                    LogUtil.info(CLASS_NAME, "✓ Created parent record in form: " + parentFormId);
-                } else {
-                    LogUtil.warn(CLASS_NAME, "Failed to create parent record in form: " + parentFormId);
+            // Identifiers already held by another application
+            timer.stage("identifiers");
+            Map<String, String> identifiers = extractIdentifiers(rootNode);
+            String submittedKey = primaryKey;
+            if (replayApplicationId == null) {
+                if (reserveIdentifiers(identifiers, primaryKey)) {
+                    reservedIdentifiers = identifiers;
+                    reservedFor = primaryKey;
                 }
-            } catch (Exception e) {
-                LogUtil.error(CLASS_NAME, e, "Error creating parent record: " + e.getMessage());
-                // Continue anyway - sub-forms might still work
+                primaryKey = resolveDuplicateIdentifiers(identifiers, primaryKey);
             }
 
-            // Then save to multiple sub-forms
-            if (formData != null && !formData.isEmpty()) {
-                Map<String, Boolean> saveResults = multiFormManager.saveToMultipleForms(formData, primaryKey);
-
-                // Log results
-                for (Map.Entry<String, Boolean> entry : saveResults.entrySet()) {
-                    if (entry.getValue()) {
-                        LogUtil.info(CLASS_NAME, "✓ Saved to form: " + entry.getKey());
-                    } else {
-                        LogUtil.warn(CLASS_NAME, "✗ Failed to save to form: " + entry.getKey());
-                    }
-                }
+            logContext.setApplicationId(primaryKey);
+            timer.primaryKey(primaryKey);
 
-                // Check if at least one form was saved successfully
-                boolean anySuccess = saveResults.values().stream().anyMatch(Boolean::booleanValue);
-                if (!anySuccess) {
-                    throw new FormSubmissionException("Failed to save to any forms");
-                }
+            String changeOperation = null;
+            if (ChangeFeed.getInstance().isAvailable(metadataService)) {
+                changeOperation = !primaryKey.equals(submittedKey) || (!generatedKey && applicationExists(primaryKey))
+                        ? ChangeLog.OPERATION_UPDATE : ChangeLog.OPERATION_CREATE;
             }
 
-            // Save array data (grids)
-            if (arrayData != null && !arrayData.isEmpty()) {
-                try {
-                    tableDataHandler.saveArrayData(arrayData, primaryKey);
-                    LogUtil.info(CLASS_NAME, "Saved array data for " + arrayData.size() + " grids");
-                } catch (Exception e) {
-                    LogUtil.error(CLASS_NAME, e, "Error saving array data: " + e.getMessage());
+            if (parsedRequest != null && !parsedRequest.getAttachments().isEmpty()) {
+                timer.stage("attachments");
+                storeAttachments(attachmentPipeline, parsedRequest, formData, primaryKey);
+            }
+
+            try {
+                saveApplication(primaryKey, formData, arrayData, timer);
+                if (!identifiers.isEmpty()) {
+                    IdentifierIndexRegistry.getInstance().record(metadataService, primaryKey, identifiers);
+                }
+                if (changeOperation != null) {
+                    ChangeFeed.getInstance().record(metadataService, primaryKey, changeOperation);
                 }
+                if (replayApplicationId == null) {
+                    PayloadArchiveRegistry.getInstance().record(metadataService, primaryKey, requestBody);
+                }
+            } finally {
+                // Even a partly saved application must be read again
+                ApplicationCache.getInstance().invalidate(serviceId, primaryKey);
             }
 
             // Build success response
+            timer.stage("response");
             return buildSuccessResponse(primaryKey);
 
+        } catch (ApiProcessingException e) {
+            throw e;
+        } catch (ValidationException e) {
+            throw ApiProcessingException.validationError(e.getMessage());
         } catch (FormSubmissionException e) {
             throw ApiProcessingException.formSubmissionError(e.getMessage());
         } catch (Exception e) {
-            LogUtil.error(CLASS_NAME, e, "Unexpected error processing request");
+            LOG.error(e, "Unexpected error processing request");
             throw ApiProcessingException.serverError("Error processing registration: " + e.getMessage());
+        } finally {
+            if (reservedFor != null) {
+                // Held until the identifiers are indexed, or given up when the submission failed
+                IdentifierIndexRegistry.getInstance().release(metadataService, reservedIdentifiers, reservedFor);
+            }
+            if (parsedRequest != null) {
+                // Attachments of a failed request are not kept
+                parsedRequest.discard();
+            }
+        }
+    }
+
+    /**
+     * Save the parent record, the section forms and the grids of an application
+     */
+    private void saveApplication(String primaryKey, Map<String, Map<String, String>> formData,
+                                 List<Map<String, Object>> arrayData, RequestMetrics.StageTimer timer)
+            throws ConfigurationException, FormSubmissionException {
+        // First, create parent record in main form - get from configuration
+        String parentFormId = metadataService.getParentFormId(); // Gets from config or defaults to "farmerRegistrationForm"
+        java.util.List<String> parentReferenceFields = metadataService.getParentReferenceFields(); // Gets from YAML config
+
+        timer.stage("parent_record", parentFormId);
+        try {
+            boolean parentCreated = multiFormManager.createParentRecord(parentFormId, primaryKey, parentReferenceFields);
+            if (parentCreated) {
+                LOG.debug("Created parent record in form: {}", parentFormId);
+            } else {
+                LOG.warn("Failed to create parent record in form: {}", parentFormId);
+            }
+        } catch (Exception e) {
+            LOG.error(e, "Error creating parent record: {}", e.getMessage());
+            // Continue anyway - sub-forms might still work
+        }
+
+        // Then save to multiple sub-forms
+        if (formData != null && !formData.isEmpty()) {
+            timer.stage("subforms");
+            Map<String, Boolean> saveResults = multiFormManager.saveToMultipleForms(formData, primaryKey,
+                    (formId, success, startNanos) -> timer.recordForm("subform", formId, success, startNanos));
+
+            // Log results
+            for (Map.Entry<String, Boolean> entry : saveResults.entrySet()) {
+                if (entry.getValue()) {
+                    LOG.debug("Saved to form: {}", entry.getKey());
+                } else {
+                    LOG.warn("Failed to save to form: {}", entry.getKey());
+                }
+            }
+
+            // Check if at least one form was saved successfully
+            boolean anySuccess = saveResults.values().stream().anyMatch(Boolean::booleanValue);
+            if (!anySuccess) {
+                throw new FormSubmissionException("Failed to save to any forms");
+            }
+        }
+
+        // Save array data (grids)
+        if (arrayData != null && !arrayData.isEmpty()) {
+            timer.stage("grids");
+            for (Map<String, Object> grid : arrayData) {
+                Object rows = grid.get("rows");
+                timer.gridRows((String) grid.get("gridName"), rows instanceof List ? ((List<?>) rows).size() : 0);
+            }
+            try {
+                tableDataHandler.saveArrayData(arrayData, primaryKey);
+                LOG.debug("Saved array data for {} grids", arrayData.size());
+            } catch (Exception e) {
+                LOG.error(e, "Error saving array data: {}", e.getMessage());
+            }
         }
     }
 
@@ -186,6 +749,182 @@ public class GovStackRegistrationService implements ApiRequestProcessor {
         }
     }
 
+    private JsonNode parseRequest(String requestBody) throws FormSubmissionException {
+        try {
+            return OBJECT_MAPPER.readTree(requestBody);
+        } catch (IOException e) {
+            throw new FormSubmissionException("Invalid JSON format: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parse a request whose attachment fields are decoded into staged files
+     * @throws ApiProcessingException 413 if an attachment is too large, 400 if it is not valid base64
+     */
+    private AttachmentPipeline.ParsedRequest parseWithAttachments(AttachmentPipeline pipeline, String requestBody)
+            throws ApiProcessingException {
+        try {
+            return pipeline.parse(requestBody);
+        } catch (AttachmentPipeline.AttachmentTooLargeException e) {
+            throw ApiProcessingException.payloadTooLarge(e.getMessage());
+        } catch (IOException e) {
+            throw ApiProcessingException.invalidRequest("Invalid JSON or attachment: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Move the staged attachments to the configured storage and reference them in the form data
+     */
+    private void storeAttachments(AttachmentPipeline pipeline, AttachmentPipeline.ParsedRequest parsedRequest,
+                                  Map<String, Map<String, String>> formData, String primaryKey)
+            throws ApiProcessingException {
+        AttachmentPipeline.Target target = "local".equals(metadataService.getAttachmentStorage())
+                ? new ContentAddressedTarget(new File(metadataService.getAttachmentDir(), "store"))
+                : new JogetUploadTarget();
+        try {
+            pipeline.store(parsedRequest, formData, primaryKey, target);
+        } catch (IOException e) {
+            LOG.error(e, "Error storing attachments: {}", e.getMessage());
+            throw ApiProcessingException.serverError("Error storing attachments: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Validate the request against the validator compiled from the service metadata
+     * @throws ApiProcessingException with the list of violations if the request is invalid
+     */
+    private void validateRequestShape(JsonNode rootNode) throws ApiProcessingException {
+        if (!metadataService.isRequestValidationEnabled()) {
+            return;
+        }
+
+        List<RequestShapeValidator.Violation> violations = RequestShapeValidator.forMetadata(metadataService)
+                .validate(GovStackDataMapper.unwrapTestData(rootNode));
+        if (!violations.isEmpty()) {
+            LOG.warn("Request rejected with {} validation errors: {}", violations.size(), violations);
+            throw ApiProcessingException.validationError(
+                    "Request has " + violations.size() + " invalid or missing fields",
+                    RequestShapeValidator.toDetails(violations));
+        }
+    }
+
+    /**
+     * Get the indexed identifiers of a request
+     * @return Map of identifier type to value, empty if the identifier index is disabled
+     */
+    private Map<String, String> extractIdentifiers(JsonNode rootNode) {
+        if (!metadataService.isIdentifierIndexEnabled()) {
+            return Collections.emptyMap();
+        }
+        return IdentifierIndexRegistry.getInstance()
+                .extractIdentifiers(metadataService, GovStackDataMapper.unwrapTestData(rootNode));
+    }
+
+    /**
+     * Reserve a submission's identifiers so a concurrent submission cannot pass the duplicate check
+     * with the same identifiers before this one is saved. Not used by the warn policy, which
+     * accepts duplicates.
+     * @return true if the identifiers are reserved and must be released
+     * @throws ApiProcessingException 409 if another submission in flight holds an identifier
+     */
+    private boolean reserveIdentifiers(Map<String, String> identifiers, String primaryKey)
+            throws ApiProcessingException {
+        String policy = metadataService.getDuplicateIdentifierPolicy();
+        if (identifiers.isEmpty() || (!"reject".equals(policy) && !"update".equals(policy))) {
+            return false;
+        }
+        List<IdentifierIndexRegistry.Match> holders = IdentifierIndexRegistry.getInstance()
+                .reserve(metadataService, identifiers, primaryKey);
+        if (holders.isEmpty()) {
+            return true;
+        }
+        Set<String> pending = new LinkedHashSet<>();
+        for (IdentifierIndexRegistry.Match holder : holders) {
+            pending.add(holder.getApplicationId());
+        }
+        throw ApiProcessingException.conflict("Identifier is being registered by application "
+                + pending.iterator().next(), conflictDetails(holders));
+    }
+
+    /**
+     * Apply the duplicate identifier policy of the service
+     * @return The primary key to save under, which is the existing application's for the update policy
+     * @throws ApiProcessingException 409 if the policy rejects the duplicate
+     */
+    private String resolveDuplicateIdentifiers(Map<String, String> identifiers, String primaryKey)
+            throws ApiProcessingException {
+        if (identifiers.isEmpty()) {
+            return primaryKey;
+        }
+
+        List<IdentifierIndexRegistry.Match> duplicates;
+        try {
+            duplicates = IdentifierIndexRegistry.getInstance()
+                    .findDuplicates(metadataService, new JogetIdentifierStore(), identifiers, primaryKey);
+        } catch (Exception e) {
+            // The check must not block registrations when the forms cannot be read
+            LOG.warn("Duplicate identifier check skipped: {}", e.getMessage());
+            return primaryKey;
+        }
+        if (duplicates.isEmpty()) {
+            return primaryKey;
+        }
+
+        Set<String> existing = new LinkedHashSet<>();
+        for (IdentifierIndexRegistry.Match duplicate : duplicates) {
+            existing.add(duplicate.getApplicationId());
+        }
+        String policy = metadataService.getDuplicateIdentifierPolicy();
+        if ("reject".equals(policy) || ("update".equals(policy) && existing.size() > 1)) {
+            throw ApiProcessingException.conflict(existing.size() > 1
+                    ? "Identifiers belong to different applications: " + existing
+                    : "Identifier already registered to application " + existing.iterator().next(),
+                    conflictDetails(duplicates));
+        }
+        if ("update".equals(policy)) {
+            String applicationId = existing.iterator().next();
+            LOG.info("Submission {} updates application {} holding the same identifiers", primaryKey, applicationId);
+            return applicationId;
+        }
+
+        // Only the identifier types, the values are personal data
+        List<String> shared = new ArrayList<>();
+        for (IdentifierIndexRegistry.Match duplicate : duplicates) {
+            shared.add(duplicate.getType() + " -> " + duplicate.getApplicationId());
+        }
+        LOG.warn("Application {} shares identifiers with other applications: {}", primaryKey, shared);
+        return primaryKey;
+    }
+
+    private static JSONObject conflictDetails(List<IdentifierIndexRegistry.Match> matches) {
+        JSONArray conflicts = new JSONArray();
+        for (IdentifierIndexRegistry.Match match : matches) {
+            JSONObject conflict = new JSONObject();
+            conflict.put("identifierType", match.getType());
+            conflict.put("applicationId", match.getApplicationId());
+            conflicts.put(conflict);
+        }
+        JSONObject details = new JSONObject();
+        details.put("conflicts", conflicts);
+        return details;
+    }
+
+    /**
+     * Check whether the parent record of an application is already stored
+     */
+    private boolean applicationExists(String primaryKey) {
+        try {
+            String parentFormId = metadataService.getParentFormId();
+            AppService appService = (AppService) AppUtil.getApplicationContext().getBean("appService");
+            FormDataDao formDataDao = (FormDataDao) AppUtil.getApplicationContext().getBean("formDataDao");
+            String tableName = appService.getFormTableName(AppUtil.getCurrentAppDefinition(), parentFormId);
+            return formDataDao.load(parentFormId, tableName, primaryKey) != null;
+        } catch (Exception e) {
+            LOG.warn("Could not check for an existing application {}: {}", primaryKey, e.getMessage());
+            return false;
+        }
+    }
+
     private JSONObject buildSuccessResponse(String applicationId) {
         JSONObject response = new JSONObject();
 
@@ -199,7 +938,7 @@ public class GovStackRegistrationService implements ApiRequestProcessor {
         serviceInfo.put("version", "2.0");
         response.put("service", serviceInfo);
 
-        LogUtil.info(CLASS_NAME, "Built success response for application: " + applicationId);
+        LOG.info("Registration completed for application: {}", applicationId);
 
         return response;
     }
@@ -208,13 +947,10 @@ public class GovStackRegistrationService implements ApiRequestProcessor {
      * Check metadata version compatibility between client and server
      * Logs a warning if versions don't match, but doesn't fail the request
      */
-    @SuppressWarnings("unchecked")
-    private void checkMetadataVersionCompatibility(String requestBody) {
+    private void checkMetadataVersionCompatibility(JsonNode rootNode) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            Map<String, Object> request = mapper.readValue(requestBody, Map.class);
-
-            String clientMetadataVersion = (String) request.get("metadataVersion");
+            JsonNode versionNode = rootNode.get("metadataVersion");
+            String clientMetadataVersion = versionNode != null && !versionNode.isNull() ? versionNode.asText() : null;
             if (clientMetadataVersion != null) {
                 String serverMetadataVersion = metadataService.getMetadataVersion();
 
@@ -227,13 +963,11 @@ public class GovStackRegistrationService implements ApiRequestProcessor {
                     LogUtil.warn(CLASS_NAME, warning);
                     // Don't fail - log warning and continue (backward compatibility)
                 } else {
-                    LogUtil.info(CLASS_NAME, String.format(
-                        "Metadata version check passed. Client: %s, Server: %s",
-                        clientMetadataVersion, serverMetadataVersion
-                    ));
+                    LOG.debug("Metadata version check passed. Client: {}, Server: {}",
+                            clientMetadataVersion, serverMetadataVersion);
                 }
             } else {
-                LogUtil.info(CLASS_NAME, "No metadataVersion in request - skipping version check (legacy client)");
+                LOG.debug("No metadataVersion in request - skipping version check (legacy client)");
             }
         } catch (Exception e) {
             LogUtil.warn(CLASS_NAME, "Failed to check metadata version compatibility: " + e.getMessage());
@@ -8,7 +8,9 @@ import org.joget.apps.form.model.FormRow;
 import org.joget.apps.form.model.FormRowSet;
 import org.joget.apps.form.model.FormData;
 import org.joget.commons.util.LogUtil;
+import global.govstack.registration.receiver.util.ProcessingLog;
 import global.govstack.registration.receiver.exception.FormSubmissionException;
+import global.govstack.registration.receiver.service.metrics.ProcessingEvents;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -18,6 +20,7 @@ import java.util.Map;
  */
 public class MultiFormSubmissionManager {
     private static final String CLASS_NAME = MultiFormSubmissionManager.class.getName();
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(MultiFormSubmissionManager.class);
     private final AppService appService;
     private final String appId;
     private final String appVersion;
@@ -38,7 +41,7 @@ public class MultiFormSubmissionManager {
      */
     public boolean saveToForm(String formId, Map<String, String> data, String primaryKey) throws FormSubmissionException {
         try {
-            LogUtil.info(CLASS_NAME, "Saving to form: " + formId + " with primary key: " + primaryKey);
+            LOG.debug("Saving to form: {} with primary key: {}", formId, primaryKey);
 
             // Create form data
             FormData formData = new FormData();
@@ -72,13 +75,20 @@ public class MultiFormSubmissionManager {
             rowSet.add(row);
 
             // Save the data
-            FormRowSet result = appService.storeFormData(form, rowSet, primaryKey);
+            ProcessingEvents.Span event = ProcessingEvents.begin(ProcessingEvents.Type.FORM_STORE, "form_store")
+                    .formId(formId).rowCount(rowSet.size()).primaryKey(primaryKey);
+            FormRowSet result = null;
+            try {
+                result = appService.storeFormData(form, rowSet, primaryKey);
+            } finally {
+                event.end(result != null && !result.isEmpty());
+            }
 
             if (result != null && !result.isEmpty()) {
-                LogUtil.info(CLASS_NAME, "Successfully saved " + data.size() + " fields to form: " + formId);
+                LOG.debug("Successfully saved {} fields to form: {}", data.size(), formId);
                 return true;
             } else {
-                LogUtil.warn(CLASS_NAME, "No data returned after saving to form: " + formId);
+                LOG.warn("No data returned after saving to form: {}", formId);
                 return false;
             }
 
@@ -97,7 +107,7 @@ public class MultiFormSubmissionManager {
      */
     public boolean createParentRecord(String parentFormId, String primaryKey, java.util.List<String> parentReferenceFields) throws FormSubmissionException {
         try {
-            LogUtil.info(CLASS_NAME, "Creating parent record in form: " + parentFormId + " with primary key: " + primaryKey);
+            LOG.debug("Creating parent record in form: {} with primary key: {}", parentFormId, primaryKey);
 
             // Create parent record with reference fields that link to sub-forms
             Map<String, String> parentData = new HashMap<>();
@@ -107,13 +117,13 @@ public class MultiFormSubmissionManager {
             if (parentReferenceFields != null && !parentReferenceFields.isEmpty()) {
                 for (String fieldName : parentReferenceFields) {
                     parentData.put(fieldName, primaryKey);
-                    LogUtil.info(CLASS_NAME, "Added parent reference field: " + fieldName + " = " + primaryKey);
+                    LOG.debug("Added parent reference field: {} = {}", fieldName, primaryKey);
                 }
             } else {
-                LogUtil.warn(CLASS_NAME, "No parent reference fields configured - parent record will have no links to sub-forms");
+                LOG.warn("No parent reference fields configured - parent record will have no links to sub-forms");
             }
 
-            LogUtil.info(CLASS_NAME, "Populating parent record with " + parentData.size() + " reference fields pointing to: " + primaryKey);
+            LOG.debug("Populating parent record with {} reference fields pointing to: {}", parentData.size(), primaryKey);
 
             return saveToForm(parentFormId, parentData, primaryKey);
         } catch (Exception e) {
@@ -129,21 +139,48 @@ public class MultiFormSubmissionManager {
      * @return Map of formId to success status
      */
     public Map<String, Boolean> saveToMultipleForms(Map<String, Map<String, String>> formsData, String primaryKey) {
+        return saveToMultipleForms(formsData, primaryKey, null);
+    }
+
+    /**
+     * Save data to multiple forms with the same primary key, reporting each save
+     * @param formsData Map of formId to data
+     * @param primaryKey The shared primary key
+     * @param listener Notified after each form is saved, may be null
+     * @return Map of formId to success status
+     */
+    public Map<String, Boolean> saveToMultipleForms(Map<String, Map<String, String>> formsData, String primaryKey,
+                                                    FormSaveListener listener) {
         Map<String, Boolean> results = new HashMap<>();
 
         for (Map.Entry<String, Map<String, String>> entry : formsData.entrySet()) {
             String formId = entry.getKey();
             Map<String, String> data = entry.getValue();
+            long start = System.nanoTime();
 
+            boolean success;
             try {
-                boolean success = saveToForm(formId, data, primaryKey);
-                results.put(formId, success);
+                success = saveToForm(formId, data, primaryKey);
             } catch (Exception e) {
                 LogUtil.error(CLASS_NAME, e, "Failed to save to form " + formId);
-                results.put(formId, false);
+                success = false;
+            }
+            results.put(formId, success);
+            if (listener != null) {
+                listener.formSaved(formId, success, start);
             }
         }
 
         return results;
     }
+
+    /**
+     * Callback for the outcome of each form save
+     */
+    public interface FormSaveListener {
+        /**
+         * @param startNanos Value of System.nanoTime() when the save started
+         */
+        void formSaved(String formId, boolean success, long startNanos);
+    }
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ import global.govstack.registration.receiver.exception.InvalidRequestException;
 import global.govstack.registration.receiver.exception.WorkflowProcessingException;
 import global.govstack.registration.receiver.exception.ApiProcessingException;
 import global.govstack.registration.receiver.exception.ValidationException;
+import global.govstack.registration.receiver.service.metrics.RequestMetrics;
 import global.govstack.registration.receiver.util.UserContextUtil;
 import org.json.JSONObject;
 import org.joget.workflow.model.service.WorkflowUserManager;
@@ -26,6 +27,8 @@ public class RegistrationService implements ApiRequestProcessor {
     private final ResponseBuilder responseBuilder;
     private final WorkflowUserManager workflowUserManager;
     private static final String CLASS_NAME = RegistrationService.class.getName();
+    /** Service label for the metrics of the configuration-driven registration flow */
+    private static final String METRICS_SERVICE_ID = "registration";
 
     /**
      * Constructor with dependency injection
@@ -73,7 +76,27 @@ public class RegistrationService implements ApiRequestProcessor {
             throws InvalidRequestException, ValidationException, FormSubmissionException,
             WorkflowProcessingException, ConfigurationException {
 
+        RequestMetrics.StageTimer timer = RequestMetrics.getInstance().startRequest(METRICS_SERVICE_ID);
+        timer.payload(requestBody);
+        try {
+            JSONObject response = processApplicationSteps(requestBody, timer);
+            timer.complete();
+            return response;
+        } catch (InvalidRequestException | ValidationException e) {
+            timer.fail(RequestMetrics.OUTCOME_CLIENT_ERROR);
+            throw e;
+        } catch (FormSubmissionException | WorkflowProcessingException | ConfigurationException | RuntimeException e) {
+            timer.fail(RequestMetrics.OUTCOME_SERVER_ERROR);
+            throw e;
+        }
+    }
+
+    private JSONObject processApplicationSteps(String requestBody, RequestMetrics.StageTimer timer)
+            throws InvalidRequestException, ValidationException, FormSubmissionException,
+            WorkflowProcessingException, ConfigurationException {
+
         // Step 1: Validate request and load configuration
+        timer.stage("config");
         Map<String, String> configValues = validateAndLoadConfig(requestBody);
         JsonObject configJson = getConfigJson();
 
@@ -88,18 +111,24 @@ public class RegistrationService implements ApiRequestProcessor {
         String configJsonStr = new Gson().toJson(configJson);
 
         // Step 3: Submit form data
+        timer.stage("form_submit", formId);
         String submittedFormId = submitFormData(requestBody, formId, configJsonStr, registrantUsername, adminUsername);
+        timer.primaryKey(submittedFormId);
 
         // Step 4: Start workflow process
+        timer.stage("workflow_start");
         String processId = startWorkflowProcess(processDefId, submittedFormId, registrantUsername, adminUsername);
 
         // Step 5: Process submit activity
+        timer.stage("submit_activity");
         processSubmitActivity(processId, processDefId, submitActivityId, registrantUsername, adminUsername, submittedFormId);
 
         // Step 6: Process review activity
+        timer.stage("review_activity");
         processReviewActivity(processId, processDefId, reviewActivityId, adminUsername, chiefReviewerUsername);
 
         // Step 7: Build and return response
+        timer.stage("response");
         return responseBuilder.buildResponse(processId, submittedFormId);
     }
 
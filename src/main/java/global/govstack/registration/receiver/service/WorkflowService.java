@@ -2,6 +2,7 @@ package global.govstack.registration.receiver.service;
 
 import org.joget.commons.util.LogUtil;
 import global.govstack.registration.receiver.exception.WorkflowProcessingException;
+import global.govstack.registration.receiver.service.metrics.ProcessingEvents;
 import org.joget.workflow.model.WorkflowActivity;
 import org.joget.workflow.model.WorkflowProcessResult;
 import org.joget.workflow.model.service.WorkflowManager;
@@ -28,6 +29,20 @@ public class WorkflowService {
     public String startWorkflowProcess(String processDefId, Map<String, String> variables,
                                        String username, String formId)
             throws WorkflowProcessingException {
+        ProcessingEvents.Span event = ProcessingEvents.begin(ProcessingEvents.Type.WORKFLOW, "process_start")
+                .formId(formId).primaryKey(formId);
+        String processId = null;
+        try {
+            processId = startProcess(processDefId, variables, username, formId);
+            return processId;
+        } finally {
+            event.end(processId != null);
+        }
+    }
+
+    private String startProcess(String processDefId, Map<String, String> variables,
+                                String username, String formId)
+            throws WorkflowProcessingException {
         try {
             String exactProcessDefId = workflowManager.getConvertedLatestProcessDefId(processDefId);
 
@@ -63,6 +78,19 @@ public class WorkflowService {
     public boolean processSubmitActivity(String processId, String processDefId,
                                          String submitActivityId, String username,
                                          Map<String, String> variables) {
+        ProcessingEvents.Span event = ProcessingEvents.begin(ProcessingEvents.Type.WORKFLOW, "submit_activity");
+        boolean completed = false;
+        try {
+            completed = completeSubmitActivity(processId, processDefId, submitActivityId, username, variables);
+            return completed;
+        } finally {
+            event.end(completed);
+        }
+    }
+
+    private boolean completeSubmitActivity(String processId, String processDefId,
+                                           String submitActivityId, String username,
+                                           Map<String, String> variables) {
         try {
             // Get the first activity (should be submitFarmerApplication)
             Collection<WorkflowActivity> activities = workflowManager.getActivityList(
@@ -126,6 +154,19 @@ public class WorkflowService {
     public boolean processReviewActivity(String processId, String processDefId,
                                          String reviewActivityId, String adminUsername,
                                          String reviewerUsername) {
+        ProcessingEvents.Span event = ProcessingEvents.begin(ProcessingEvents.Type.WORKFLOW, "review_activity");
+        boolean reassigned = false;
+        try {
+            reassigned = reassignReviewActivity(processId, processDefId, reviewActivityId, adminUsername, reviewerUsername);
+            return reassigned;
+        } finally {
+            event.end(reassigned);
+        }
+    }
+
+    private boolean reassignReviewActivity(String processId, String processDefId,
+                                           String reviewActivityId, String adminUsername,
+                                           String reviewerUsername) {
         try {
             // Get the current user
             String originalUser = workflowUserManager.getCurrentUsername();
@@ -0,0 +1,56 @@
+package global.govstack.registration.receiver.service.archive;
+
+/**
+ * A request body as it was accepted, with what it was mapped with and where it was saved
+ */
+public class ArchivedPayload {
+    private final long sequence;
+    private final long timestamp;
+    private final String serviceId;
+    private final String metadataVersion;
+    private final String applicationId;
+    private final String payload;
+
+    public ArchivedPayload(long sequence, long timestamp, String serviceId, String metadataVersion,
+                           String applicationId, String payload) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.serviceId = serviceId;
+        this.metadataVersion = metadataVersion;
+        this.applicationId = applicationId;
+        this.payload = payload;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return When the payload was accepted, in epoch milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getServiceId() {
+        return serviceId;
+    }
+
+    /**
+     * @return The metadataVersion of the service configuration the payload was first mapped with
+     */
+    public String getMetadataVersion() {
+        return metadataVersion;
+    }
+
+    public String getApplicationId() {
+        return applicationId;
+    }
+
+    /**
+     * @return The request body
+     */
+    public String getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,594 @@
+package global.govstack.registration.receiver.service.archive;
+
+import global.govstack.registration.receiver.util.ProcessingLog;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only archive of the request bodies accepted by one service
+ *
+ * Payloads are numbered in order and collected into blocks of about 256 KB, which are
+ * deflate compressed as a whole: registrations repeat the same keys and code values, so a
+ * block compresses far better than a single payload. Blocks are appended to segment files
+ * that are rolled at a configured size and named after their first sequence number. Next to
+ * each segment a sparse index holds the first sequence number and file offset of every
+ * block, so a read from a sequence number seeks straight to the block that holds it.
+ *
+ * Until its block is full a payload is kept in pending.log, uncompressed, so nothing accepted
+ * is lost in a crash. When the archive is opened, a block cut short is dropped from the last
+ * segment and the pending payloads are taken back into the open block.
+ */
+public class PayloadArchive {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(PayloadArchive.class);
+
+    static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    static final int DEFAULT_BLOCK_BYTES = 256 * 1024;
+
+    private static final String SEGMENT_PREFIX = "payloads-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String PENDING_FILE = "pending.log";
+
+    // raw length, compressed length, record count, first sequence, CRC32 of the raw block
+    private static final int BLOCK_HEADER_BYTES = 24;
+    private static final int INDEX_ENTRY_BYTES = 16;
+    private static final int MAX_RECORD_BYTES = 256 * 1024 * 1024;
+    private static final int COMPRESSION_LEVEL = 6;
+
+    /**
+     * Receives the payloads of a read, in sequence order
+     */
+    public interface Visitor {
+        void visit(ArchivedPayload payload) throws IOException, InterruptedException;
+    }
+
+    /**
+     * A segment file of the archive
+     */
+    public static class Segment {
+        private final long firstSequence;
+        private final long bytes;
+        private final long blocks;
+
+        public Segment(long firstSequence, long bytes, long blocks) {
+            this.firstSequence = firstSequence;
+            this.bytes = bytes;
+            this.blocks = blocks;
+        }
+
+        public long getFirstSequence() {
+            return firstSequence;
+        }
+
+        /**
+         * @return The compressed size of the segment
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getBlocks() {
+            return blocks;
+        }
+    }
+
+    private final File directory;
+    private final long segmentBytes;
+    private final int blockBytes;
+    private final TreeMap<Long, File> segments = new TreeMap<>();
+    private final Deflater deflater = new Deflater(COMPRESSION_LEVEL);
+
+    // The open block, its payloads are also in pending.log
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+    private int blockRecords;
+    private long blockFirstSequence;
+    private OutputStream pending;
+
+    private OutputStream segmentOut;
+    private OutputStream indexOut;
+    private long segmentLength;
+    private boolean closed;
+
+    private volatile long lastSequence;
+    private volatile long sealedSequence;
+
+    /**
+     * Open the archive in a directory, creating it if needed
+     */
+    public PayloadArchive(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_BLOCK_BYTES);
+    }
+
+    /**
+     * Open the archive in a directory, creating it if needed
+     * @param segmentBytes The size a segment file is rolled at
+     * @param blockBytes The uncompressed size a block is compressed at
+     */
+    public PayloadArchive(File directory, long segmentBytes, int blockBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.blockBytes = blockBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create payload archive directory: " + directory);
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String number = file.getName().substring(SEGMENT_PREFIX.length(),
+                        file.getName().length() - SEGMENT_SUFFIX.length());
+                try {
+                    segments.put(Long.parseLong(number), file);
+                } catch (NumberFormatException e) {
+                    LOG.warn("Ignoring unexpected file in payload archive: {}", file);
+                }
+            }
+        }
+
+        if (!segments.isEmpty()) {
+            Map.Entry<Long, File> last = segments.lastEntry();
+            sealedSequence = recoverSegment(last.getValue(), last.getKey() - 1);
+        }
+        lastSequence = sealedSequence;
+        recoverPending();
+    }
+
+    /**
+     * Drop a partly written last block and index the blocks the index is missing
+     * @return The last sequence number in the segment
+     */
+    private long recoverSegment(File segment, long before) throws IOException {
+        File indexFile = indexFile(segment);
+        long[] index = readIndex(indexFile);
+        int entries = index.length / 2;
+        if (indexFile.length() != (long) entries * INDEX_ENTRY_BYTES) {
+            try (RandomAccessFile file = new RandomAccessFile(indexFile, "rw")) {
+                file.setLength((long) entries * INDEX_ENTRY_BYTES);
+            }
+        }
+
+        long last = before;
+        List<long[]> unindexed = new ArrayList<>();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long length = file.length();
+            long position = entries > 0 ? index[index.length - 1] : 0;
+            while (position + BLOCK_HEADER_BYTES <= length) {
+                file.seek(position);
+                file.readInt();
+                int compressedLength = file.readInt();
+                int records = file.readInt();
+                long firstSequence = file.readLong();
+                if (compressedLength < 0 || position + BLOCK_HEADER_BYTES + compressedLength > length) {
+                    break;
+                }
+                if (entries == 0 || position > index[index.length - 1]) {
+                    unindexed.add(new long[]{firstSequence, position});
+                }
+                last = firstSequence + records - 1;
+                position += BLOCK_HEADER_BYTES + compressedLength;
+            }
+            if (position < length) {
+                LOG.warn("Dropping {} bytes of an incomplete block in {}", length - position, segment);
+                file.setLength(position);
+            }
+            segmentLength = position;
+        }
+
+        if (!unindexed.isEmpty()) {
+            try (OutputStream out = new FileOutputStream(indexFile, true)) {
+                for (long[] entry : unindexed) {
+                    out.write(indexEntry(entry[0], entry[1]));
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Take the complete payloads of pending.log that are not in a segment back into the open block
+     */
+    private void recoverPending() throws IOException {
+        File file = new File(directory, PENDING_FILE);
+        File recovered = new File(directory, PENDING_FILE + ".tmp");
+        if (file.isFile()) {
+            int dropped = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                 OutputStream out = new FileOutputStream(recovered)) {
+                while (true) {
+                    byte[] record = readFrame(in);
+                    if (record == null) {
+                        break;
+                    }
+                    long sequence = ByteBuffer.wrap(record).getLong();
+                    if (sequence <= sealedSequence) {
+                        dropped++;
+                        continue;
+                    }
+                    out.write(frame(record));
+                    addToBlock(record, sequence);
+                    lastSequence = sequence;
+                }
+            }
+            Files.move(recovered.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (blockRecords > 0 || dropped > 0) {
+                LOG.info("Recovered {} pending payloads in {}, {} were already archived", blockRecords, directory, dropped);
+            }
+        }
+        pending = new FileOutputStream(file, true);
+    }
+
+    /**
+     * @return The record of a pending.log frame, or null at the end of the file or a frame cut short
+     */
+    private static byte[] readFrame(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES) {
+                return null;
+            }
+            byte[] record = new byte[length];
+            in.readFully(record);
+            int checksum = in.readInt();
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            return (int) crc.getValue() == checksum ? record : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static byte[] frame(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return ByteBuffer.allocate(record.length + 8).putInt(record.length).put(record)
+                .putInt((int) crc.getValue()).array();
+    }
+
+    /**
+     * Archive an accepted request body
+     * @param metadataVersion Version of the service metadata the payload was mapped with
+     * @return The archived payload with its sequence number
+     */
+    public synchronized ArchivedPayload append(String serviceId, String metadataVersion, String applicationId,
+                                               String payload) throws IOException {
+        if (closed) {
+            throw new IOException("Payload archive is closed: " + directory);
+        }
+        long sequence = lastSequence + 1;
+        ArchivedPayload archived = new ArchivedPayload(sequence, System.currentTimeMillis(), serviceId,
+                metadataVersion, applicationId, payload);
+        byte[] record = encode(archived);
+        pending.write(frame(record));
+        pending.flush();
+        addToBlock(record, sequence);
+        lastSequence = sequence;
+
+        if (block.size() >= blockBytes) {
+            sealBlock();
+        }
+        return archived;
+    }
+
+    private void addToBlock(byte[] record, long sequence) {
+        if (blockRecords == 0) {
+            blockFirstSequence = sequence;
+        }
+        block.write(record.length >>> 24);
+        block.write(record.length >>> 16);
+        block.write(record.length >>> 8);
+        block.write(record.length);
+        block.write(record, 0, record.length);
+        blockRecords++;
+    }
+
+    /**
+     * Compress the open block, so every payload archived so far can be read
+     */
+    public synchronized void seal() throws IOException {
+        if (blockRecords > 0 && !closed) {
+            sealBlock();
+        }
+    }
+
+    private void sealBlock() throws IOException {
+        if (segmentOut == null || segmentLength >= segmentBytes) {
+            openSegment(blockFirstSequence);
+        }
+
+        byte[] raw = block.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+        byte[] buffer = new byte[8192];
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        long offset = segmentLength;
+        segmentOut.write(ByteBuffer.allocate(BLOCK_HEADER_BYTES).putInt(raw.length).putInt(compressed.size())
+                .putInt(blockRecords).putLong(blockFirstSequence).putInt((int) crc.getValue()).array());
+        compressed.writeTo(segmentOut);
+        segmentOut.flush();
+        segmentLength += BLOCK_HEADER_BYTES + compressed.size();
+        // The index entry is written after the block, so an indexed block is always complete
+        indexOut.write(indexEntry(blockFirstSequence, offset));
+        indexOut.flush();
+        sealedSequence = blockFirstSequence + blockRecords - 1;
+
+        // The payloads are in the segment now, the pending file starts over
+        pending.close();
+        pending = new FileOutputStream(new File(directory, PENDING_FILE), false);
+        block.reset();
+        blockRecords = 0;
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        File file;
+        if (segmentOut == null && !segments.isEmpty() && segmentLength < segmentBytes) {
+            // Continue the last segment after a restart
+            file = segments.lastEntry().getValue();
+        } else {
+            closeSegment();
+            file = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+            segmentLength = 0;
+            synchronized (segments) {
+                segments.put(firstSequence, file);
+            }
+        }
+        segmentOut = new FileOutputStream(file, true);
+        indexOut = new FileOutputStream(indexFile(file), true);
+    }
+
+    private void closeSegment() throws IOException {
+        if (segmentOut != null) {
+            segmentOut.close();
+            indexOut.close();
+            segmentOut = null;
+            indexOut = null;
+        }
+    }
+
+    /**
+     * Read the compressed payloads in a range of sequence numbers, oldest first
+     *
+     * Payloads still in the open block are not read, call seal() first to include them.
+     *
+     * @param from The first sequence number to read
+     * @param to The last sequence number to read
+     * @return The number of payloads read
+     */
+    public long read(long from, long to, Visitor visitor) throws IOException, InterruptedException {
+        long last = Math.min(to, sealedSequence);
+        if (from > last) {
+            return 0;
+        }
+
+        List<Map.Entry<Long, File>> files = new ArrayList<>();
+        synchronized (segments) {
+            Long first = segments.floorKey(from);
+            files.addAll((first != null ? segments.tailMap(first) : segments).entrySet());
+        }
+
+        long count = 0;
+        for (Map.Entry<Long, File> segment : files) {
+            if (segment.getKey() > last) {
+                break;
+            }
+            count += readSegment(segment.getValue(), from, last, visitor);
+        }
+        return count;
+    }
+
+    private long readSegment(File segment, long from, long last, Visitor visitor)
+            throws IOException, InterruptedException {
+        long[] index = readIndex(indexFile(segment));
+        int blocks = index.length / 2;
+
+        // The last block starting at or before from holds it
+        int start = 0;
+        int low = 0;
+        int high = blocks - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (index[middle * 2] <= from) {
+                start = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        long count = 0;
+        byte[] header = new byte[BLOCK_HEADER_BYTES];
+        Inflater inflater = new Inflater();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "r")) {
+            for (int i = start; i < blocks && index[i * 2] <= last; i++) {
+                long offset = index[i * 2 + 1];
+                file.seek(offset);
+                file.readFully(header);
+                ByteBuffer fields = ByteBuffer.wrap(header);
+                int rawLength = fields.getInt();
+                byte[] compressed = new byte[fields.getInt()];
+                int records = fields.getInt();
+                fields.getLong();
+                int checksum = fields.getInt();
+                file.readFully(compressed);
+
+                byte[] raw = inflate(inflater, compressed, rawLength);
+                CRC32 crc = new CRC32();
+                crc.update(raw);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Corrupt block at offset " + offset + " of " + segment);
+                }
+
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+                for (int r = 0; r < records; r++) {
+                    byte[] record = new byte[in.readInt()];
+                    in.readFully(record);
+                    long sequence = ByteBuffer.wrap(record).getLong();
+                    if (sequence > last) {
+                        return count;
+                    }
+                    if (sequence >= from) {
+                        visitor.visit(decode(record));
+                        count++;
+                    }
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        return count;
+    }
+
+    private static byte[] inflate(Inflater inflater, byte[] compressed, int rawLength) throws IOException {
+        inflater.reset();
+        inflater.setInput(compressed);
+        byte[] raw = new byte[rawLength];
+        try {
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw new IOException("Archive block holds " + length + " bytes, expected " + rawLength);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt archive block: " + e.getMessage(), e);
+        }
+        return raw;
+    }
+
+    /**
+     * @return The segments of the archive, oldest first
+     */
+    public List<Segment> getSegments() {
+        List<Segment> result = new ArrayList<>();
+        synchronized (segments) {
+            for (Map.Entry<Long, File> segment : segments.entrySet()) {
+                result.add(new Segment(segment.getKey(), segment.getValue().length(),
+                        indexFile(segment.getValue()).length() / INDEX_ENTRY_BYTES));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The sequence number of the newest payload, 0 if the archive is empty
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return The sequence number of the newest payload that can be read
+     */
+    public long getSealedSequence() {
+        return sealedSequence;
+    }
+
+    /**
+     * Compress the open block and close the files
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            seal();
+        } catch (IOException e) {
+            LOG.warn("Open block of payload archive {} stays pending: {}", directory, e.getMessage());
+        }
+        closed = true;
+        try {
+            closeSegment();
+            pending.close();
+        } catch (IOException e) {
+            LOG.warn("Error closing payload archive {}: {}", directory, e.getMessage());
+        }
+        deflater.end();
+    }
+
+    private static File indexFile(File segment) {
+        String name = segment.getName();
+        return new File(segment.getParentFile(), name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    /**
+     * @return First sequence number and offset of every block, a trailing partial entry is ignored
+     */
+    private static long[] readIndex(File indexFile) throws IOException {
+        if (!indexFile.isFile()) {
+            return new long[0];
+        }
+        byte[] content = Files.readAllBytes(indexFile.toPath());
+        int entries = content.length / INDEX_ENTRY_BYTES;
+        long[] index = new long[entries * 2];
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        for (int i = 0; i < index.length; i++) {
+            index[i] = buffer.getLong();
+        }
+        return index;
+    }
+
+    private static byte[] indexEntry(long firstSequence, long offset) {
+        return ByteBuffer.allocate(INDEX_ENTRY_BYTES).putLong(firstSequence).putLong(offset).array();
+    }
+
+    private static byte[] encode(ArchivedPayload payload) throws IOException {
+        byte[] body = payload.getPayload().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(payload.getSequence());
+        out.writeLong(payload.getTimestamp());
+        out.writeUTF(payload.getServiceId());
+        out.writeUTF(payload.getMetadataVersion() != null ? payload.getMetadataVersion() : "");
+        out.writeUTF(payload.getApplicationId());
+        out.writeInt(body.length);
+        out.write(body);
+        return bytes.toByteArray();
+    }
+
+    private static ArchivedPayload decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        long sequence = in.readLong();
+        long timestamp = in.readLong();
+        String serviceId = in.readUTF();
+        String metadataVersion = in.readUTF();
+        String applicationId = in.readUTF();
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new ArchivedPayload(sequence, timestamp, serviceId, metadataVersion.isEmpty() ? null : metadataVersion,
+                applicationId, new String(body, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,79 @@
+package global.govstack.registration.receiver.service.archive;
+
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.util.ProcessingLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-service payload archives
+ *
+ * A service's archive is kept in its own subdirectory of metadata.archive.dir and opened on
+ * first use. Archiving never fails a submission: the application is already saved, so an
+ * error writing the archive is only reported.
+ */
+public class PayloadArchiveRegistry {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(PayloadArchiveRegistry.class);
+
+    private static final PayloadArchiveRegistry INSTANCE = new PayloadArchiveRegistry();
+
+    private final ConcurrentMap<String, PayloadArchive> archives = new ConcurrentHashMap<>();
+
+    public static PayloadArchiveRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Archive the request body of a saved application
+     * @return The archived payload, or null if the archive is disabled or the payload could not be written
+     */
+    public ArchivedPayload record(YamlMetadataService metadataService, String applicationId, String payload) {
+        if (!metadataService.isArchiveEnabled()) {
+            return null;
+        }
+        try {
+            return getArchive(metadataService).append(metadataService.getServiceId(),
+                    metadataService.getMetadataVersion(), applicationId, payload);
+        } catch (Exception e) {
+            LOG.error(e, "Error archiving payload of application {}: {}", applicationId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Get the archive of a service, opening it if needed
+     */
+    public PayloadArchive getArchive(YamlMetadataService metadataService) throws IOException {
+        File directory = new File(metadataService.getArchiveDir(), metadataService.getServiceId()).getAbsoluteFile();
+        String key = directory.getPath();
+        PayloadArchive archive = archives.get(key);
+        if (archive != null) {
+            return archive;
+        }
+        synchronized (archives) {
+            archive = archives.get(key);
+            if (archive == null) {
+                archive = new PayloadArchive(directory, metadataService.getArchiveSegmentBytes(),
+                        PayloadArchive.DEFAULT_BLOCK_BYTES);
+                archives.put(key, archive);
+                LOG.info("Opened payload archive {} at sequence {}", directory, archive.getLastSequence());
+            }
+            return archive;
+        }
+    }
+
+    /**
+     * Close every open archive, they are reopened on next use
+     */
+    public void shutdown() {
+        synchronized (archives) {
+            for (PayloadArchive archive : archives.values()) {
+                archive.close();
+            }
+            archives.clear();
+        }
+    }
+}
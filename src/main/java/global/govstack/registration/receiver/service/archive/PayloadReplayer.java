@@ -0,0 +1,194 @@
+package global.govstack.registration.receiver.service.archive;
+
+import global.govstack.registration.receiver.util.ProcessingLog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs archived payloads through a handler on several threads
+ *
+ * The archive is read and decompressed on the calling thread, which hands each payload to
+ * the worker its application id hashes to. All payloads of an application therefore go
+ * through the same worker in sequence order, so a later correction is never overwritten by
+ * an older one, while different applications are saved in parallel. The queues are bounded,
+ * so reading never runs far ahead of saving.
+ */
+public class PayloadReplayer {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(PayloadReplayer.class);
+
+    static final int MAX_REPORTED_FAILURES = 20;
+    private static final int QUEUE_CAPACITY = 256;
+    private static final ArchivedPayload END = new ArchivedPayload(0, 0, "", null, "", "");
+
+    /**
+     * Processes one archived payload, called on a worker thread
+     */
+    public interface Handler {
+        void replay(ArchivedPayload payload) throws Exception;
+    }
+
+    /**
+     * A payload the handler failed on
+     */
+    public static class Failure {
+        private final long sequence;
+        private final String applicationId;
+        private final String message;
+
+        public Failure(long sequence, String applicationId, String message) {
+            this.sequence = sequence;
+            this.applicationId = applicationId;
+            this.message = message;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getApplicationId() {
+            return applicationId;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * Outcome of a replay
+     */
+    public static class Result {
+        private final AtomicLong replayed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final ConcurrentMap<String, AtomicLong> metadataVersions = new ConcurrentHashMap<>();
+        private final List<Failure> failures = Collections.synchronizedList(new ArrayList<>());
+        private long durationMillis;
+
+        public long getReplayed() {
+            return replayed.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * @return The number of payloads read per metadata version they were first mapped with
+         */
+        public Map<String, Long> getMetadataVersions() {
+            Map<String, Long> counts = new TreeMap<>();
+            for (Map.Entry<String, AtomicLong> entry : metadataVersions.entrySet()) {
+                counts.put(entry.getKey(), entry.getValue().get());
+            }
+            return counts;
+        }
+
+        /**
+         * @return The first failures, at most MAX_REPORTED_FAILURES
+         */
+        public List<Failure> getFailures() {
+            synchronized (failures) {
+                return new ArrayList<>(failures);
+            }
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        private void fail(ArchivedPayload payload, Exception e) {
+            failed.incrementAndGet();
+            synchronized (failures) {
+                if (failures.size() < MAX_REPORTED_FAILURES) {
+                    failures.add(new Failure(payload.getSequence(), payload.getApplicationId(), String.valueOf(e.getMessage())));
+                }
+            }
+        }
+    }
+
+    private final int threads;
+
+    /**
+     * @param threads The number of payloads handled at the same time
+     */
+    public PayloadReplayer(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Replay the payloads in a range of sequence numbers
+     * A payload the handler fails on is counted and reported, the replay carries on.
+     *
+     * @param from The first sequence number to replay
+     * @param to The last sequence number to replay
+     */
+    public Result replay(PayloadArchive archive, long from, long to, Handler handler)
+            throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        Result result = new Result();
+
+        List<BlockingQueue<ArchivedPayload>> queues = new ArrayList<>(threads);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            BlockingQueue<ArchivedPayload> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            queues.add(queue);
+            Thread worker = new Thread(() -> work(queue, handler, result), "govstack-replay-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+
+        try {
+            archive.read(from, to, payload -> {
+                result.metadataVersions.computeIfAbsent(String.valueOf(payload.getMetadataVersion()),
+                        version -> new AtomicLong()).incrementAndGet();
+                queues.get(Math.floorMod(payload.getApplicationId().hashCode(), threads)).put(payload);
+            });
+        } finally {
+            for (BlockingQueue<ArchivedPayload> queue : queues) {
+                queue.put(END);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            result.durationMillis = System.currentTimeMillis() - start;
+        }
+
+        LOG.info("Replayed {} payloads, {} failed, in {} ms", result.getReplayed(), result.getFailed(),
+                result.getDurationMillis());
+        return result;
+    }
+
+    private static void work(BlockingQueue<ArchivedPayload> queue, Handler handler, Result result) {
+        while (true) {
+            ArchivedPayload payload;
+            try {
+                payload = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (payload == END) {
+                return;
+            }
+            try {
+                handler.replay(payload);
+                result.replayed.incrementAndGet();
+            } catch (Exception e) {
+                LOG.warn("Replay of payload {} for application {} failed: {}", payload.getSequence(),
+                        payload.getApplicationId(), e.getMessage());
+                result.fail(payload, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package global.govstack.registration.receiver.service.attachment;
+
+import java.io.File;
+
+/**
+ * A document decoded from a request into a staged file
+ */
+public class Attachment {
+    private final AttachmentPipeline.Field field;
+    private final File file;
+    private final String sha256;
+    private final long size;
+
+    Attachment(AttachmentPipeline.Field field, File file, String sha256, long size) {
+        this.field = field;
+        this.file = file;
+        this.sha256 = sha256;
+        this.size = size;
+    }
+
+    public AttachmentPipeline.Field getField() {
+        return field;
+    }
+
+    /**
+     * @return The staged file, gone once the attachment is stored or discarded
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return Hex SHA-256 of the decoded content
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Guess the file extension from the leading bytes of the content
+     */
+    public String getExtension() {
+        return AttachmentPipeline.sniffExtension(file);
+    }
+
+    /**
+     * Delete the staged file if it was not stored
+     */
+    public void discard() {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return field.getPath() + " (" + size + " bytes, sha256 " + sha256 + ")";
+    }
+}
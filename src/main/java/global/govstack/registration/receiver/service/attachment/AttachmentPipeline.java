@@ -0,0 +1,410 @@
+package global.govstack.registration.receiver.service.attachment;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.util.ContentHashUtil;
+import global.govstack.registration.receiver.util.ProcessingLog;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decodes base64 documents (photos, ID scans) out of requests without holding them in memory
+ *
+ * Fields are attachments when their mapping uses a transformation of type "attachment". The
+ * request is read with the streaming parser and the value of each attachment field is decoded
+ * a buffer at a time into a staged file while its size is checked and its SHA-256 computed.
+ * The parsed request gets the hash in place of the base64 text, so neither the tree, the
+ * mapped form values nor the saved row ever hold the document. Once the primary key is
+ * known the staged files are handed to a {@link Target} and the form rows get its reference.
+ *
+ * Attachments are supported in section fields; fields inside array sections stay inline.
+ * Pipelines are shared per service and replaced when the YAML content changes.
+ */
+public class AttachmentPipeline {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(AttachmentPipeline.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final Map<String, AttachmentPipeline> COMPILED = new ConcurrentHashMap<>();
+
+    static final String TRANSFORMATION_TYPE = "attachment";
+    private static final String TEST_DATA_PREFIX = "testData[0].";
+
+    /**
+     * Keeps decoded attachments
+     */
+    public interface Target {
+        /**
+         * Move an attachment to its final place
+         * @return The reference saved in the form field
+         */
+        String store(Attachment attachment, String primaryKey) throws IOException;
+    }
+
+    /**
+     * Raised when an attachment is larger than metadata.attachments.maxBytes
+     */
+    public static class AttachmentTooLargeException extends IOException {
+        public AttachmentTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A section field holding an attachment
+     */
+    public static class Field {
+        private final String path;
+        private final String formId;
+        private final String jogetField;
+
+        Field(String path, String formId, String jogetField) {
+            this.path = path;
+            this.formId = formId;
+            this.jogetField = jogetField;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getFormId() {
+            return formId;
+        }
+
+        public String getJogetField() {
+            return jogetField;
+        }
+    }
+
+    /**
+     * A request parsed with its attachments staged
+     */
+    public static class ParsedRequest {
+        private final JsonNode root;
+        private final List<Attachment> attachments;
+
+        ParsedRequest(JsonNode root, List<Attachment> attachments) {
+            this.root = root;
+            this.attachments = attachments;
+        }
+
+        public JsonNode getRoot() {
+            return root;
+        }
+
+        public List<Attachment> getAttachments() {
+            return attachments;
+        }
+
+        /**
+         * Delete the staged files that were not stored
+         */
+        public void discard() {
+            for (Attachment attachment : attachments) {
+                attachment.discard();
+            }
+        }
+    }
+
+    private final String contentHash;
+    private final Map<String, Field> fields;
+    private final Set<String> fieldNames;
+    private final File stagingDir;
+    private final long maxBytes;
+
+    AttachmentPipeline(String contentHash, Map<String, Field> fields, File stagingDir, long maxBytes) {
+        this.contentHash = contentHash;
+        this.fields = Collections.unmodifiableMap(fields);
+        this.stagingDir = stagingDir;
+        this.maxBytes = maxBytes;
+
+        Set<String> names = new HashSet<>();
+        for (String path : fields.keySet()) {
+            names.add(path.substring(path.lastIndexOf('.') + 1));
+        }
+        this.fieldNames = names;
+    }
+
+    /**
+     * Get the pipeline of a service, compiling it on first use or when the YAML changed
+     */
+    public static AttachmentPipeline forMetadata(YamlMetadataService metadataService) {
+        String serviceId = metadataService.getServiceId();
+        String hash = metadataService.getContentHash();
+        AttachmentPipeline current = COMPILED.get(serviceId);
+        if (current != null && hash != null && hash.equals(current.contentHash)) {
+            return current;
+        }
+
+        AttachmentPipeline compiled = compile(metadataService);
+        COMPILED.put(serviceId, compiled);
+        if (!compiled.fields.isEmpty()) {
+            LOG.info("Compiled attachment pipeline for {}: {}", serviceId, compiled.fields.keySet());
+        }
+        return compiled;
+    }
+
+    /**
+     * Drop all compiled pipelines
+     */
+    public static void clearCompiled() {
+        COMPILED.clear();
+    }
+
+    /**
+     * Find the section fields mapped with an attachment transformation
+     */
+    @SuppressWarnings("unchecked")
+    public static AttachmentPipeline compile(YamlMetadataService metadataService) {
+        Map<String, Map<String, Object>> transformations = metadataService.getTransformations();
+        Map<String, String> sectionToForm = metadataService.getSectionToFormMap() != null
+                ? metadataService.getSectionToFormMap() : Collections.<String, String>emptyMap();
+        Map<String, Field> fields = new HashMap<>();
+
+        for (Map.Entry<String, Object> entry : metadataService.getAllFormMappings().entrySet()) {
+            if (!(entry.getValue() instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> section = (Map<String, Object>) entry.getValue();
+            String formId = sectionToForm.get(entry.getKey());
+            if ("array".equals(section.get("type")) || formId == null || !(section.get("fields") instanceof List)) {
+                continue;
+            }
+            for (Map<String, Object> field : (List<Map<String, Object>>) section.get("fields")) {
+                String transformation = (String) field.get("transform");
+                if (transformation == null) {
+                    transformation = (String) field.get("transformation");
+                }
+                Map<String, Object> definition = transformation != null ? transformations.get(transformation) : null;
+                if (definition == null || !TRANSFORMATION_TYPE.equals(definition.get("type"))) {
+                    continue;
+                }
+                // Read the same path the mapper reads: jsonPath overrides the govstack path
+                String path = (String) (field.get("jsonPath") != null ? field.get("jsonPath") : field.get("govstack"));
+                String jogetField = (String) field.get("joget");
+                if (path != null && jogetField != null) {
+                    fields.put(path, new Field(path, formId, jogetField));
+                }
+            }
+        }
+
+        return new AttachmentPipeline(metadataService.getContentHash(), fields,
+                new File(metadataService.getAttachmentDir(), "staging"), metadataService.getAttachmentMaxBytes());
+    }
+
+    /**
+     * @return true if the service has attachment fields
+     */
+    public boolean hasFields() {
+        return !fields.isEmpty();
+    }
+
+    /**
+     * Parse a request, decoding every attachment into a staged file
+     * Staged files are deleted again if the request cannot be parsed.
+     *
+     * @throws AttachmentTooLargeException if an attachment exceeds the size limit
+     * @throws IOException if the request is not valid JSON or an attachment is not valid base64
+     */
+    public ParsedRequest parse(String requestBody) throws IOException {
+        List<Attachment> attachments = new ArrayList<>();
+        boolean parsed = false;
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(new StringReader(requestBody))) {
+            TokenBuffer buffer = new TokenBuffer(parser);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                Field field = token == JsonToken.VALUE_STRING ? match(parser.getParsingContext()) : null;
+                if (field == null) {
+                    buffer.copyCurrentEvent(parser);
+                    continue;
+                }
+                Attachment attachment = stage(field, parser);
+                if (attachment != null) {
+                    attachments.add(attachment);
+                    buffer.writeString(attachment.getSha256());
+                } else {
+                    buffer.writeString("");
+                }
+            }
+            JsonNode root = OBJECT_MAPPER.readTree(buffer.asParser());
+            parsed = true;
+            return new ParsedRequest(root, attachments);
+        } finally {
+            if (!parsed) {
+                for (Attachment attachment : attachments) {
+                    attachment.discard();
+                }
+            }
+        }
+    }
+
+    /**
+     * Store the staged attachments and put their references into the form data
+     * @param formData Map of form ID to field values, updated in place
+     */
+    public void store(ParsedRequest request, Map<String, Map<String, String>> formData, String primaryKey,
+                      Target target) throws IOException {
+        for (Attachment attachment : request.getAttachments()) {
+            String reference = target.store(attachment, primaryKey);
+            formData.computeIfAbsent(attachment.getField().getFormId(), k -> new HashMap<>())
+                    .put(attachment.getField().getJogetField(), reference);
+            LOG.debug("Stored attachment {} as {}", attachment, reference);
+        }
+    }
+
+    /**
+     * Find the attachment field at the parser's current value
+     */
+    private Field match(JsonStreamContext context) {
+        if (!context.inObject() || !fieldNames.contains(context.getCurrentName())) {
+            return null;
+        }
+        String path = toPath(context);
+        if (path.startsWith(TEST_DATA_PREFIX)) {
+            path = path.substring(TEST_DATA_PREFIX.length());
+        }
+        return fields.get(path);
+    }
+
+    /**
+     * Dotted path of a value, with array indexes in brackets: extension.documents[0].scan
+     */
+    private static String toPath(JsonStreamContext context) {
+        List<JsonStreamContext> chain = new ArrayList<>();
+        for (JsonStreamContext c = context; c != null && !c.inRoot(); c = c.getParent()) {
+            chain.add(c);
+        }
+        StringBuilder path = new StringBuilder();
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            JsonStreamContext c = chain.get(i);
+            if (c.inArray()) {
+                path.append('[').append(c.getCurrentIndex()).append(']');
+            } else {
+                if (path.length() > 0) {
+                    path.append('.');
+                }
+                path.append(c.getCurrentName());
+            }
+        }
+        return path.toString();
+    }
+
+    /**
+     * Decode the current base64 value into a staged file
+     * @return The attachment, or null if the value is empty
+     */
+    private Attachment stage(Field field, JsonParser parser) throws IOException {
+        if (!stagingDir.isDirectory() && !stagingDir.mkdirs()) {
+            throw new IOException("Cannot create attachment directory: " + stagingDir);
+        }
+        File file = File.createTempFile("upload-", ".part", stagingDir);
+        MessageDigest digest = ContentHashUtil.newDigest();
+        long size;
+        boolean staged = false;
+        try {
+            try (LimitedOutputStream out = new LimitedOutputStream(new DigestOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file)), digest), field, maxBytes)) {
+                parser.readBinaryValue(Base64Variants.MIME, out);
+                size = out.count;
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Attachment " + field.getPath() + " is not valid base64: " + e.getMessage(), e);
+            }
+            staged = size > 0;
+        } finally {
+            if (!staged && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+        return staged ? new Attachment(field, file, ContentHashUtil.toHex(digest), size) : null;
+    }
+
+    /**
+     * Counts the bytes written and fails once they exceed the limit
+     */
+    private static class LimitedOutputStream extends FilterOutputStream {
+        private final Field field;
+        private final long maxBytes;
+        long count;
+
+        LimitedOutputStream(OutputStream out, Field field, long maxBytes) {
+            super(out);
+            this.field = field;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkLimit(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkLimit(len);
+            out.write(b, off, len);
+        }
+
+        private void checkLimit(int len) throws AttachmentTooLargeException {
+            count += len;
+            if (count > maxBytes) {
+                throw new AttachmentTooLargeException("Attachment " + field.getPath() + " exceeds the limit of "
+                        + maxBytes + " bytes");
+            }
+        }
+    }
+
+    /**
+     * Guess a file extension from the leading bytes of a file
+     * @return jpg, png, gif, pdf or tif, bin if the content is not recognised
+     */
+    static String sniffExtension(File file) {
+        byte[] head = new byte[8];
+        int read;
+        try (InputStream in = new FileInputStream(file)) {
+            read = in.read(head);
+        } catch (IOException e) {
+            return "bin";
+        }
+        if (read >= 3 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xD8 && (head[2] & 0xFF) == 0xFF) {
+            return "jpg";
+        }
+        if (read >= 8 && (head[0] & 0xFF) == 0x89 && head[1] == 'P' && head[2] == 'N' && head[3] == 'G') {
+            return "png";
+        }
+        if (read >= 4 && head[0] == 'G' && head[1] == 'I' && head[2] == 'F' && head[3] == '8') {
+            return "gif";
+        }
+        if (read >= 4 && head[0] == '%' && head[1] == 'P' && head[2] == 'D' && head[3] == 'F') {
+            return "pdf";
+        }
+        if (read >= 4 && ((head[0] == 'I' && head[1] == 'I' && head[2] == 42 && head[3] == 0)
+                || (head[0] == 'M' && head[1] == 'M' && head[2] == 0 && head[3] == 42))) {
+            return "tif";
+        }
+        return "bin";
+    }
+}
@@ -0,0 +1,60 @@
+package global.govstack.registration.receiver.service.attachment;
+
+import global.govstack.registration.receiver.util.ProcessingLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores attachments in a local directory named by their SHA-256
+ *
+ * A document is kept once however many applications submit it: a file already stored under
+ * the same hash and size is reused and the staged copy dropped. Files live in a subdirectory
+ * per first two hash characters to keep directories small. The form field holds sha256:&lt;hash&gt;.
+ */
+public class ContentAddressedTarget implements AttachmentPipeline.Target {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(ContentAddressedTarget.class);
+
+    public static final String REFERENCE_PREFIX = "sha256:";
+
+    private final File directory;
+
+    public ContentAddressedTarget(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public String store(Attachment attachment, String primaryKey) throws IOException {
+        String hash = attachment.getSha256();
+        File target = resolve(hash);
+        if (target.isFile() && target.length() == attachment.getSize()) {
+            attachment.discard();
+            return REFERENCE_PREFIX + hash;
+        }
+        if (target.exists()) {
+            LOG.warn("Replacing stored attachment {} with unexpected size {}", target, target.length());
+        }
+
+        File parent = target.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create attachment directory: " + parent);
+        }
+        try {
+            Files.move(attachment.getFile().toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(attachment.getFile().toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return REFERENCE_PREFIX + hash;
+    }
+
+    /**
+     * @return Where the attachment with a hash is stored
+     */
+    public File resolve(String sha256) {
+        return new File(new File(directory, sha256.substring(0, 2)), sha256);
+    }
+}
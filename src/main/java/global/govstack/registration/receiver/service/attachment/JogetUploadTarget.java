@@ -0,0 +1,54 @@
+package global.govstack.registration.receiver.service.attachment;
+
+import org.joget.apps.app.model.AppDefinition;
+import org.joget.apps.app.service.AppService;
+import org.joget.apps.app.service.AppUtil;
+import org.joget.apps.form.service.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores attachments where Joget's file upload fields keep their files
+ *
+ * The file is moved into the upload directory of the form's table and the application's
+ * primary key, and named after the field and the content hash, e.g. passport_photo-3f2a9c1e04b7.jpg.
+ * The form field holds the file name, as it does for files uploaded through the form.
+ */
+public class JogetUploadTarget implements AttachmentPipeline.Target {
+
+    private static final int HASH_PREFIX_LENGTH = 12;
+
+    private final AppDefinition appDef;
+
+    public JogetUploadTarget() {
+        this.appDef = AppUtil.getCurrentAppDefinition();
+    }
+
+    @Override
+    public String store(Attachment attachment, String primaryKey) throws IOException {
+        String formId = attachment.getField().getFormId();
+        AppService appService = (AppService) AppUtil.getApplicationContext().getBean("appService");
+        String tableName = appService.getFormTableName(appDef, formId);
+        if (tableName == null || tableName.isEmpty()) {
+            throw new IOException("No table for attachment form: " + formId);
+        }
+
+        File directory = new File(FileUtil.getUploadPath(tableName, primaryKey));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create upload directory: " + directory);
+        }
+        String fileName = attachment.getField().getJogetField() + "-"
+                + attachment.getSha256().substring(0, HASH_PREFIX_LENGTH) + "." + attachment.getExtension();
+        File target = new File(directory, fileName);
+        Files.move(attachment.getFile().toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        if (target.length() != attachment.getSize()) {
+            throw new IOException("Stored attachment " + target + " has " + target.length() + " bytes, expected "
+                    + attachment.getSize());
+        }
+        return fileName;
+    }
+}
@@ -0,0 +1,645 @@
+package global.govstack.registration.receiver.service.bulk;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import global.govstack.registration.receiver.util.ProcessingLog;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports the registrations of a large file in parallel chunks, with a checkpoint to resume from
+ *
+ * Records are streamed from a JSON array (plain or inside the testData wrapper) or from an
+ * NDJSON file, so the file is never held in memory, and every record of the array is imported,
+ * not only the first. They are grouped into chunks that run on a pool of threads; each record
+ * of a chunk goes through the sink, which maps and saves it.
+ *
+ * Chunks finish in any order but are committed in file order: after the oldest running chunk
+ * is done, the checkpoint file records the byte offset after its last record and the id of
+ * that record. A restarted import continues from that offset, so records are imported at least
+ * once; records with an id are saved over the same application when imported again.
+ *
+ * The chunk size follows the observed chunk latency: it is halved when a chunk takes longer
+ * than the target and grown by a quarter when it takes less than half of it. Small chunks keep
+ * the checkpoint close behind a slow database, large ones keep the threads busy when it is fast.
+ *
+ * While it runs the job rewrites a progress report after every commit and appends each failed
+ * record to an error report.
+ */
+public class BulkImportJob {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(BulkImportJob.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory FACTORY = MAPPER.getFactory();
+
+    static final int INITIAL_CHUNK_SIZE = 50;
+    static final int MIN_CHUNK_SIZE = 5;
+    static final int MAX_CHUNK_SIZE = 1000;
+    static final long DEFAULT_TARGET_CHUNK_MILLIS = 2000;
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_COMPLETED = "completed";
+    public static final String STATUS_FAILED = "failed";
+    public static final String STATUS_CANCELLED = "cancelled";
+
+    /**
+     * Layout of the import file
+     */
+    public enum Format {
+        /** A JSON array of records, or an object holding them in a testData array */
+        JSON,
+        /** One JSON record per line */
+        NDJSON;
+
+        /**
+         * @return The format of a name (json, ndjson, jsonl), or null if unknown
+         */
+        public static Format fromName(String name) {
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "json":
+                    return JSON;
+                case "ndjson":
+                case "jsonl":
+                    return NDJSON;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * @return NDJSON for .ndjson and .jsonl files, JSON otherwise
+         */
+        public static Format detect(File file) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            return name.endsWith(".ndjson") || name.endsWith(".jsonl") ? NDJSON : JSON;
+        }
+    }
+
+    /**
+     * Maps and saves one record, called on a pool thread
+     */
+    public interface Sink {
+        /**
+         * @return The application id the record was saved as
+         */
+        String write(JsonNode record) throws Exception;
+    }
+
+    /**
+     * Counters of a running or finished import
+     */
+    public static class Progress {
+        private final String status;
+        private final long records;
+        private final long imported;
+        private final long failed;
+        private final long offset;
+        private final long fileBytes;
+        private final String lastCommittedId;
+        private final int chunkSize;
+        private final long elapsedMillis;
+        private final String error;
+
+        Progress(String status, long records, long imported, long failed, long offset, long fileBytes,
+                 String lastCommittedId, int chunkSize, long elapsedMillis, String error) {
+            this.status = status;
+            this.records = records;
+            this.imported = imported;
+            this.failed = failed;
+            this.offset = offset;
+            this.fileBytes = fileBytes;
+            this.lastCommittedId = lastCommittedId;
+            this.chunkSize = chunkSize;
+            this.elapsedMillis = elapsedMillis;
+            this.error = error;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        /**
+         * @return The records committed, imported or failed, including those of earlier runs
+         */
+        public long getRecords() {
+            return records;
+        }
+
+        /**
+         * @return The records imported by this run
+         */
+        public long getImported() {
+            return imported;
+        }
+
+        /**
+         * @return The records that failed in this run
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return The byte offset of the checkpoint
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getFileBytes() {
+            return fileBytes;
+        }
+
+        public String getLastCommittedId() {
+            return lastCommittedId;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return Records committed per second by this run
+         */
+        public double getRecordsPerSecond() {
+            return elapsedMillis > 0 ? (imported + failed) * 1000.0 / elapsedMillis : 0;
+        }
+
+        /**
+         * @return Why the import stopped, or null
+         */
+        public String getError() {
+            return error;
+        }
+
+        public ObjectNode toJson() {
+            ObjectNode json = MAPPER.createObjectNode();
+            json.put("status", status);
+            json.put("records", records);
+            json.put("imported", imported);
+            json.put("failed", failed);
+            json.put("offset", offset);
+            json.put("fileBytes", fileBytes);
+            json.put("lastCommittedId", lastCommittedId);
+            json.put("chunkSize", chunkSize);
+            json.put("elapsedMs", elapsedMillis);
+            json.put("recordsPerSecond", Math.round(getRecordsPerSecond() * 10) / 10.0);
+            if (error != null) {
+                json.put("error", error);
+            }
+            json.put("updated", Instant.now().toString());
+            return json;
+        }
+    }
+
+    private final File source;
+    private final Format format;
+    private final Sink sink;
+    private int threads = 4;
+    private long targetChunkMillis = DEFAULT_TARGET_CHUNK_MILLIS;
+    private File checkpointFile;
+    private File progressFile;
+    private File errorFile;
+
+    private volatile String status = STATUS_RUNNING;
+    private volatile boolean cancelled;
+    private volatile long startMillis;
+    private volatile long endMillis;
+    private volatile long committedRecords;
+    private volatile long committedOffset;
+    private volatile String lastCommittedId;
+    private volatile long imported;
+    private volatile long failed;
+    private volatile int chunkSize = INITIAL_CHUNK_SIZE;
+    private volatile String error;
+    private Writer errorWriter;
+
+    public BulkImportJob(File source, Format format, Sink sink) {
+        this.source = source;
+        this.format = format;
+        this.sink = sink;
+        this.checkpointFile = new File(source.getPath() + ".checkpoint.json");
+        this.progressFile = new File(source.getPath() + ".progress.json");
+        this.errorFile = new File(source.getPath() + ".errors.ndjson");
+    }
+
+    /**
+     * @param threads The number of chunks imported at the same time
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param targetChunkMillis The time a chunk should take, the chunk size is adapted to it
+     */
+    public void setTargetChunkMillis(long targetChunkMillis) {
+        this.targetChunkMillis = Math.max(1, targetChunkMillis);
+    }
+
+    /**
+     * Keep the checkpoint and reports in another directory than the file
+     */
+    public void setReportDirectory(File directory) {
+        this.checkpointFile = new File(directory, source.getName() + ".checkpoint.json");
+        this.progressFile = new File(directory, source.getName() + ".progress.json");
+        this.errorFile = new File(directory, source.getName() + ".errors.ndjson");
+    }
+
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public File getProgressFile() {
+        return progressFile;
+    }
+
+    public File getErrorFile() {
+        return errorFile;
+    }
+
+    /**
+     * Stop after the running chunks, the checkpoint is kept for a later run
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public Progress getProgress() {
+        long elapsed = startMillis > 0 ? (endMillis > 0 ? endMillis : System.currentTimeMillis()) - startMillis : 0;
+        return new Progress(status, committedRecords, imported, failed, committedOffset, source.length(),
+                lastCommittedId, chunkSize, elapsed, error);
+    }
+
+    /**
+     * Import the file, from the checkpoint if there is one
+     * @return The final progress
+     */
+    public Progress run() throws IOException, InterruptedException {
+        startMillis = System.currentTimeMillis();
+        readCheckpoint();
+        if (committedOffset > 0) {
+            LOG.info("Resuming import of {} at byte {} after {} records", source, committedOffset, committedRecords);
+        }
+
+        File reportDirectory = progressFile.getAbsoluteFile().getParentFile();
+        if (!reportDirectory.isDirectory() && !reportDirectory.mkdirs()) {
+            throw new IOException("Cannot create report directory: " + reportDirectory);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "govstack-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<ChunkResult>> running = new ArrayDeque<>();
+        try (RecordReader reader = new RecordReader(source, format, committedOffset);
+             Writer errors = new OutputStreamWriter(new FileOutputStream(errorFile, committedOffset > 0),
+                     StandardCharsets.UTF_8)) {
+            errorWriter = errors;
+            long nextRecord = committedRecords;
+            while (!cancelled) {
+                Chunk chunk = reader.readChunk(chunkSize, nextRecord);
+                if (chunk.records.isEmpty()) {
+                    break;
+                }
+                nextRecord += chunk.records.size();
+                running.add(pool.submit(() -> importChunk(chunk)));
+                // Reading stays a bounded number of chunks ahead of the commits
+                while (running.size() >= threads * 2) {
+                    commit(running.poll());
+                }
+            }
+            while (!running.isEmpty()) {
+                commit(running.poll());
+            }
+            status = cancelled ? STATUS_CANCELLED : STATUS_COMPLETED;
+        } catch (IOException | RuntimeException e) {
+            status = STATUS_FAILED;
+            error = e.getMessage();
+            throw e;
+        } catch (InterruptedException e) {
+            status = STATUS_CANCELLED;
+            throw e;
+        } finally {
+            pool.shutdownNow();
+            errorWriter = null;
+            endMillis = System.currentTimeMillis();
+            writeProgress();
+            LOG.info("Import of {} {}: {} imported, {} failed", source, status, imported, failed);
+        }
+        return getProgress();
+    }
+
+    /**
+     * Wait for the oldest running chunk and move the checkpoint past it
+     */
+    private void commit(Future<ChunkResult> future) throws IOException, InterruptedException {
+        ChunkResult result;
+        try {
+            result = future.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Import chunk failed: " + e.getCause(), e.getCause());
+        }
+
+        imported += result.imported;
+        failed += result.failed;
+        committedRecords = result.chunk.firstRecord + result.chunk.records.size();
+        committedOffset = result.chunk.endOffset;
+        if (result.lastId != null) {
+            lastCommittedId = result.lastId;
+        }
+        writeCheckpoint();
+        adaptChunkSize(result.millis);
+        writeProgress();
+    }
+
+    private void adaptChunkSize(long chunkMillis) {
+        int size = chunkSize;
+        if (chunkMillis > targetChunkMillis) {
+            size = Math.max(MIN_CHUNK_SIZE, size / 2);
+        } else if (chunkMillis < targetChunkMillis / 2) {
+            size = Math.min(MAX_CHUNK_SIZE, size + Math.max(1, size / 4));
+        }
+        if (size != chunkSize) {
+            LOG.debug("Chunk of {} records took {} ms, next chunks have {}", chunkSize, chunkMillis, size);
+            chunkSize = size;
+        }
+    }
+
+    private ChunkResult importChunk(Chunk chunk) throws IOException {
+        long start = System.currentTimeMillis();
+        ChunkResult result = new ChunkResult(chunk);
+        for (int i = 0; i < chunk.records.size(); i++) {
+            JsonNode record = chunk.records.get(i);
+            try {
+                String applicationId = sink.write(record);
+                result.imported++;
+                result.lastId = applicationId != null ? applicationId : result.lastId;
+            } catch (Exception e) {
+                result.failed++;
+                reportError(chunk.firstRecord + i, record, e);
+            }
+        }
+        result.millis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    private void reportError(long recordNumber, JsonNode record, Exception e) throws IOException {
+        ObjectNode line = MAPPER.createObjectNode();
+        line.put("record", recordNumber + 1);
+        JsonNode id = record.get("id");
+        if (id != null && id.isValueNode()) {
+            line.put("id", id.asText());
+        }
+        line.put("error", String.valueOf(e.getMessage()));
+        synchronized (this) {
+            if (errorWriter != null) {
+                errorWriter.write(MAPPER.writeValueAsString(line));
+                errorWriter.write('\n');
+                errorWriter.flush();
+            }
+        }
+    }
+
+    private void readCheckpoint() throws IOException {
+        if (!checkpointFile.isFile()) {
+            return;
+        }
+        JsonNode checkpoint = MAPPER.readTree(checkpointFile);
+        long offset = checkpoint.path("offset").asLong();
+        if (offset > source.length()) {
+            throw new IOException("Checkpoint " + checkpointFile + " is past the end of " + source
+                    + ", delete it to import the file again");
+        }
+        committedOffset = offset;
+        committedRecords = checkpoint.path("records").asLong();
+        lastCommittedId = checkpoint.hasNonNull("lastCommittedId") ? checkpoint.get("lastCommittedId").asText() : null;
+    }
+
+    private void writeCheckpoint() throws IOException {
+        ObjectNode checkpoint = MAPPER.createObjectNode();
+        checkpoint.put("source", source.getAbsolutePath());
+        checkpoint.put("offset", committedOffset);
+        checkpoint.put("records", committedRecords);
+        checkpoint.put("lastCommittedId", lastCommittedId);
+        checkpoint.put("updated", Instant.now().toString());
+        writeAtomically(checkpointFile, MAPPER.writeValueAsBytes(checkpoint));
+    }
+
+    private void writeProgress() {
+        try {
+            ObjectNode progress = getProgress().toJson();
+            progress.put("source", source.getAbsolutePath());
+            writeAtomically(progressFile, MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(progress));
+        } catch (IOException e) {
+            LOG.warn("Cannot write import progress {}: {}", progressFile, e.getMessage());
+        }
+    }
+
+    private static void writeAtomically(File file, byte[] content) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            out.write(content);
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static class Chunk {
+        final long firstRecord;
+        final List<JsonNode> records;
+        final long endOffset;
+
+        Chunk(long firstRecord, List<JsonNode> records, long endOffset) {
+            this.firstRecord = firstRecord;
+            this.records = records;
+            this.endOffset = endOffset;
+        }
+    }
+
+    private static class ChunkResult {
+        final Chunk chunk;
+        int imported;
+        int failed;
+        String lastId;
+        long millis;
+
+        ChunkResult(Chunk chunk) {
+            this.chunk = chunk;
+        }
+    }
+
+    /**
+     * Streams the records of a file and tracks the byte offset after each one
+     */
+    static class RecordReader implements Closeable {
+        private final JsonParser parser;
+        private final Format format;
+        private final long base;
+        private long recordEnd;
+        private boolean done;
+
+        RecordReader(File file, Format format, long offset) throws IOException {
+            this.format = format;
+            InputStream in = new BufferedInputStream(new FileInputStream(file), READ_BUFFER_BYTES);
+            try {
+                skipFully(in, offset);
+                if (format == Format.JSON && offset > 0) {
+                    // Resume inside the records array: drop the separator and read the rest as an array
+                    long skipped = skipSeparator(in);
+                    base = offset + skipped - 1;
+                    recordEnd = offset;
+                    parser = FACTORY.createParser(new SequenceInputStream(
+                            new ByteArrayInputStream(new byte[]{'['}), in));
+                    if (parser.nextToken() != JsonToken.START_ARRAY) {
+                        throw new IOException("Cannot resume " + file + " at byte " + offset);
+                    }
+                } else {
+                    base = offset;
+                    recordEnd = offset;
+                    parser = FACTORY.createParser(in);
+                    if (format == Format.JSON) {
+                        findRecords(file);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Move to the records array, the root array or the testData array of the root object
+         */
+        private void findRecords(File file) throws IOException {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                return;
+            }
+            if (token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("testData".equals(field) && value == JsonToken.START_ARRAY) {
+                        return;
+                    }
+                    parser.skipChildren();
+                }
+            }
+            throw new IOException("No array of records in " + file + ", expected [...] or {\"testData\": [...]}");
+        }
+
+        private static void skipFully(InputStream in, long bytes) throws IOException {
+            long remaining = bytes;
+            while (remaining > 0) {
+                long skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        throw new IOException("Checkpoint offset is past the end of the file");
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+        }
+
+        /**
+         * Skip the whitespace and comma after a record
+         * @return The number of bytes skipped
+         */
+        private static long skipSeparator(InputStream in) throws IOException {
+            long skipped = 0;
+            while (true) {
+                in.mark(1);
+                int b = in.read();
+                if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                    skipped++;
+                } else if (b == ',') {
+                    return skipped + 1;
+                } else {
+                    in.reset();
+                    return skipped;
+                }
+            }
+        }
+
+        /**
+         * @return The next record, or null at the end of the records
+         */
+        JsonNode next() throws IOException {
+            if (done) {
+                return null;
+            }
+            JsonToken token = parser.nextToken();
+            if (token == null || (format == Format.JSON && token == JsonToken.END_ARRAY)) {
+                // Whatever follows the records array is not read
+                done = true;
+                return null;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Record at byte " + (base + parser.getTokenLocation().getByteOffset())
+                        + " is not a JSON object");
+            }
+            JsonNode record = parser.readValueAsTree();
+            recordEnd = base + parser.getCurrentLocation().getByteOffset();
+            return record;
+        }
+
+        /**
+         * @return The byte offset after the last record read, where a resumed import starts
+         */
+        long offset() {
+            return recordEnd;
+        }
+
+        Chunk readChunk(int size, long firstRecord) throws IOException {
+            List<JsonNode> records = new ArrayList<>(size);
+            JsonNode record;
+            while (records.size() < size && (record = next()) != null) {
+                records.add(record);
+            }
+            return new Chunk(firstRecord, records, offset());
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package global.govstack.registration.receiver.service.bulk;
+
+import global.govstack.registration.receiver.util.ProcessingLog;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The bulk imports started through the API, at most one running per service
+ *
+ * An import runs on its own background thread. The last import of each service is kept so
+ * its progress can be read after it finished.
+ */
+public class BulkImportRegistry {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(BulkImportRegistry.class);
+
+    private static final BulkImportRegistry INSTANCE = new BulkImportRegistry();
+
+    private final Map<String, BulkImportJob> jobs = new HashMap<>();
+    private final Map<String, Thread> threads = new HashMap<>();
+
+    public static BulkImportRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start an import in the background
+     * @return false if an import of the service is already running
+     */
+    public synchronized boolean start(String serviceId, BulkImportJob job) {
+        Thread running = threads.get(serviceId);
+        if (running != null && running.isAlive()) {
+            return false;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                job.run();
+            } catch (InterruptedException e) {
+                LOG.warn("Import for service {} interrupted", serviceId);
+            } catch (Exception e) {
+                LOG.error(e, "Import for service {} failed: {}", serviceId, e.getMessage());
+            }
+        }, "govstack-import-" + serviceId);
+        thread.setDaemon(true);
+        jobs.put(serviceId, job);
+        threads.put(serviceId, thread);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * @return The running or last import of a service, or null if none was started
+     */
+    public synchronized BulkImportJob get(String serviceId) {
+        return jobs.get(serviceId);
+    }
+
+    /**
+     * Cancel the running imports, each stops after its running chunks
+     */
+    public void shutdown() {
+        Map<String, Thread> running;
+        synchronized (this) {
+            for (BulkImportJob job : jobs.values()) {
+                job.cancel();
+            }
+            running = new HashMap<>(threads);
+            jobs.clear();
+            threads.clear();
+        }
+        for (Thread thread : running.values()) {
+            try {
+                thread.join(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
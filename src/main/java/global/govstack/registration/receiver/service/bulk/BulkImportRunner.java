@@ -0,0 +1,103 @@
+package global.govstack.registration.receiver.service.bulk;
+
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+
+import java.io.File;
+
+/**
+ * Check a bulk import file against a service's metadata before importing it
+ *
+ * Usage: BulkImportRunner <serviceId> <file> [--format json|ndjson] [--threads <n>] [--report-dir <dir>]
+ *
+ * Every record is validated and mapped exactly as an import would, on the same plugin classes,
+ * but nothing is saved: saving needs the Joget forms, so the import itself is started in Joget
+ * with POST /services/{serviceId}/imports. The run writes the same progress and error reports
+ * and keeps a checkpoint, so a check of a large file can be resumed too.
+ */
+public class BulkImportRunner {
+
+    private static final String USAGE =
+            "Usage: BulkImportRunner <serviceId> <file> [--format json|ndjson] [--threads <n>] [--report-dir <dir>]";
+
+    public static void main(String[] args) throws Exception {
+        String serviceId = null;
+        String file = null;
+        BulkImportJob.Format format = null;
+        Integer threads = null;
+        String reportDir = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (("--format".equals(arg) || "--threads".equals(arg) || "--report-dir".equals(arg)) && i + 1 >= args.length) {
+                exitWithUsage("Missing value for " + arg);
+            }
+            switch (arg) {
+                case "--format":
+                    format = BulkImportJob.Format.fromName(args[++i]);
+                    if (format == null) {
+                        exitWithUsage("Unknown format: " + args[i]);
+                    }
+                    break;
+                case "--threads":
+                    try {
+                        threads = Integer.parseInt(args[++i]);
+                    } catch (NumberFormatException e) {
+                        exitWithUsage("Invalid thread count: " + args[i]);
+                    }
+                    break;
+                case "--report-dir":
+                    reportDir = args[++i];
+                    break;
+                default:
+                    if (arg.startsWith("--") || file != null) {
+                        exitWithUsage("Unexpected argument: " + arg);
+                    }
+                    if (serviceId == null) {
+                        serviceId = arg;
+                    } else {
+                        file = arg;
+                    }
+            }
+        }
+        if (serviceId == null || file == null) {
+            exitWithUsage("Missing service id or file");
+        }
+
+        YamlMetadataService metadataService = new YamlMetadataService();
+        metadataService.loadMetadata(serviceId);
+        File source = new File(file);
+        BulkImportJob job = new BulkImportJob(source, format != null ? format : BulkImportJob.Format.detect(source),
+                checkingSink(metadataService));
+        job.setThreads(threads != null ? threads : metadataService.getBulkImportThreads());
+        job.setTargetChunkMillis(metadataService.getBulkImportTargetChunkMillis());
+        if (reportDir != null) {
+            job.setReportDirectory(new File(reportDir));
+        }
+
+        BulkImportJob.Progress progress = job.run();
+        System.out.println("Checked " + progress.getRecords() + " records: " + progress.getImported() + " valid, "
+                + progress.getFailed() + " invalid, " + Math.round(progress.getRecordsPerSecond()) + " records/s");
+        System.out.println("Progress: " + job.getProgressFile());
+        if (progress.getFailed() > 0) {
+            System.out.println("Errors: " + job.getErrorFile());
+        }
+        System.exit(progress.getFailed() > 0 ? 1 : 0);
+    }
+
+    /**
+     * Validate and map each record without saving it
+     */
+    static BulkImportJob.Sink checkingSink(YamlMetadataService metadataService) {
+        RecordMapper mapper = new RecordMapper(metadataService);
+        return record -> {
+            Object primaryKey = mapper.map(record).get("primaryKey");
+            return primaryKey != null ? String.valueOf(primaryKey) : null;
+        };
+    }
+
+    private static void exitWithUsage(String message) {
+        System.err.println(message);
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+}
@@ -0,0 +1,532 @@
+package global.govstack.registration.receiver.service.bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import global.govstack.registration.receiver.exception.ConfigurationException;
+import global.govstack.registration.receiver.service.attachment.AttachmentPipeline;
+import global.govstack.registration.receiver.service.metadata.GovStackDataMapper;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.util.ProcessingLog;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the rows a submission would save as bulk load files, one per table
+ *
+ * Each record is validated and mapped with the service's metadata on the same classes as a
+ * submission, then laid out as Joget stores it: a parent row holding the reference fields, one
+ * row per section form keyed by the application id, and one row per grid entry pointing to the
+ * application with the grid's parent field. The files are tab separated with backslash escapes
+ * and \N for NULL, the default format of both MySQL LOAD DATA and PostgreSQL COPY, and a load
+ * script is written for each.
+ *
+ * Records are streamed and mapped in chunks on a pool of threads; chunks are written in file
+ * order with a bounded number in flight, so memory use does not grow with the file. Ids are
+ * deterministic: a record without an id gets a name-based UUID from the file name and record
+ * number, and grid rows get one from the application id, grid and row number, so generating
+ * the same file again gives the same rows.
+ *
+ * Ids must be unique in the input, an application submitted twice fails the load on the
+ * primary key instead of being updated.
+ */
+public class LoadFileGenerator {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(LoadFileGenerator.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    static final int CHUNK_SIZE = 200;
+    static final String NULL = "\\N";
+    private static final String TABLE_PREFIX = "app_fd_";
+    private static final String COLUMN_PREFIX = "c_";
+    private static final String PARENT_ID_FIELD = "parent_id";
+
+    /** Columns of every Joget form table before the field columns */
+    static final String[] SYSTEM_COLUMNS =
+            {"id", "dateCreated", "dateModified", "createdBy", "createdByName", "modifiedBy", "modifiedByName"};
+
+    public static final String MYSQL_SCRIPT = "load-mysql.sql";
+    public static final String POSTGRES_SCRIPT = "load-postgres.sql";
+    public static final String ERROR_FILE = "errors.ndjson";
+
+    /**
+     * A form table and the fields written to it, in column order
+     */
+    public static class Table {
+        private final String formId;
+        private final String name;
+        private final Set<String> fields = new LinkedHashSet<>();
+
+        Table(String formId, String name) {
+            this.formId = formId;
+            this.name = name;
+        }
+
+        public String getFormId() {
+            return formId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public File getFile(File directory) {
+            return new File(directory, name + ".tsv");
+        }
+
+        /**
+         * @return The system columns followed by the c_ column of each field
+         */
+        public List<String> getColumns() {
+            List<String> columns = new ArrayList<>(SYSTEM_COLUMNS.length + fields.size());
+            Collections.addAll(columns, SYSTEM_COLUMNS);
+            for (String field : fields) {
+                columns.add(COLUMN_PREFIX + field);
+            }
+            return columns;
+        }
+    }
+
+    /**
+     * Counts of a finished generation
+     */
+    public static class Result {
+        private final long records;
+        private final long failed;
+        private final Map<String, Long> rows;
+        private final long elapsedMillis;
+
+        Result(long records, long failed, Map<String, Long> rows, long elapsedMillis) {
+            this.records = records;
+            this.failed = failed;
+            this.rows = rows;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * @return The records written to the load files
+         */
+        public long getRecords() {
+            return records;
+        }
+
+        /**
+         * @return The records that could not be mapped, listed in the error report
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return The rows written to each table, in load order
+         */
+        public Map<String, Long> getRows() {
+            return rows;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    private final YamlMetadataService metadataService;
+    private final File outputDirectory;
+    private final RecordMapper mapper;
+    private final String parentFormId;
+    private final List<String> parentReferenceFields;
+    /** Single row tables, the parent form first, by form id */
+    private final Map<String, Table> forms = new LinkedHashMap<>();
+    /** Grid tables by grid name */
+    private final Map<String, Table> grids = new LinkedHashMap<>();
+    private final Map<String, String> gridParentFields = new HashMap<>();
+    private int threads = 4;
+    private String user;
+
+    /**
+     * @param tableNames Table name of each form as set in its definition, without the app_fd_ prefix;
+     *                   forms not listed use their form id, as Joget does
+     * @throws ConfigurationException if a form or grid is not fully configured, or the service maps attachments
+     */
+    public LoadFileGenerator(YamlMetadataService metadataService, Map<String, String> tableNames, File outputDirectory)
+            throws ConfigurationException {
+        this.metadataService = metadataService;
+        this.outputDirectory = outputDirectory;
+        this.mapper = new RecordMapper(metadataService);
+        if (AttachmentPipeline.forMetadata(metadataService).hasFields()) {
+            throw new ConfigurationException("Service " + metadataService.getServiceId()
+                    + " maps attachments, which are stored as files: import it through the API instead");
+        }
+
+        this.parentFormId = metadataService.getParentFormId();
+        List<String> references = metadataService.getParentReferenceFields();
+        this.parentReferenceFields = references != null ? references : Collections.<String>emptyList();
+        table(forms, parentFormId, parentFormId, tableNames).fields.addAll(parentReferenceFields);
+        compileSections(tableNames);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void compileSections(Map<String, String> tableNames) throws ConfigurationException {
+        Map<String, String> sectionToFormMap = metadataService.getSectionToFormMap();
+        for (Map.Entry<String, Object> entry : metadataService.getAllFormMappings().entrySet()) {
+            if (!(entry.getValue() instanceof Map)) {
+                continue;
+            }
+            String sectionName = entry.getKey();
+            Map<String, Object> section = (Map<String, Object>) entry.getValue();
+            List<Map<String, Object>> fields = section.get("fields") instanceof List
+                    ? (List<Map<String, Object>>) section.get("fields")
+                    : Collections.<Map<String, Object>>emptyList();
+
+            Table table;
+            if ("array".equals(section.get("type"))) {
+                String formId = metadataService.getGridFormId(sectionName);
+                if (formId == null) {
+                    throw new ConfigurationException("No gridMappings." + sectionName + ".formId for array section "
+                            + sectionName);
+                }
+                if (forms.containsKey(formId)) {
+                    throw new ConfigurationException("Grid " + sectionName + " is stored in section form " + formId);
+                }
+                String parentField = metadataService.getGridParentField(sectionName);
+                if (parentField == null || parentField.isEmpty()) {
+                    parentField = metadataService.getDefaultGridParentField();
+                }
+                if (parentField == null || parentField.isEmpty()) {
+                    throw new ConfigurationException("No parentField for grid " + sectionName);
+                }
+                gridParentFields.put(sectionName, parentField);
+                table = table(grids, sectionName, formId, tableNames);
+                table.fields.add(parentField);
+            } else {
+                String formId = sectionToFormMap != null ? sectionToFormMap.get(sectionName) : null;
+                if (formId == null) {
+                    continue;
+                }
+                table = table(forms, formId, formId, tableNames);
+                table.fields.add(PARENT_ID_FIELD);
+            }
+            for (Map<String, Object> field : fields) {
+                // The mapper only writes fields with both sides mapped
+                if (field.get("joget") != null && field.get("govstack") != null) {
+                    table.fields.add((String) field.get("joget"));
+                }
+            }
+        }
+    }
+
+    private static Table table(Map<String, Table> tables, String key, String formId, Map<String, String> tableNames) {
+        return tables.computeIfAbsent(key, k -> {
+            String tableName = tableNames.get(formId);
+            if (tableName == null || tableName.isEmpty()) {
+                tableName = formId;
+            }
+            return new Table(formId, tableName.startsWith(TABLE_PREFIX) ? tableName : TABLE_PREFIX + tableName);
+        });
+    }
+
+    /**
+     * @param threads The number of threads mapping records
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param user Username written as creator and modifier of every row, null leaves them empty
+     */
+    public void setUser(String user) {
+        this.user = user;
+    }
+
+    /**
+     * @return The tables written, the single row forms first and then the grids
+     */
+    public List<Table> getTables() {
+        List<Table> tables = new ArrayList<>(forms.values());
+        tables.addAll(grids.values());
+        return tables;
+    }
+
+    /**
+     * Map every record of a file and write the load files and scripts, replacing earlier ones
+     */
+    public Result generate(File source, BulkImportJob.Format format) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Cannot create output directory: " + outputDirectory);
+        }
+        String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(start));
+        List<Table> tables = getTables();
+        Map<Table, Writer> writers = new LinkedHashMap<>();
+        Map<String, Long> rows = new LinkedHashMap<>();
+        long records = 0;
+        long failed = 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "govstack-load-files");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<ChunkOutput>> running = new ArrayDeque<>();
+        try (BulkImportJob.RecordReader reader = new BulkImportJob.RecordReader(source, format, 0);
+             Writer errors = writer(new File(outputDirectory, ERROR_FILE))) {
+            for (Table table : tables) {
+                writers.put(table, writer(table.getFile(outputDirectory)));
+                rows.put(table.getName(), 0L);
+            }
+            long nextRecord = 0;
+            while (true) {
+                BulkImportJob.Chunk chunk = reader.readChunk(CHUNK_SIZE, nextRecord);
+                if (!chunk.records.isEmpty()) {
+                    nextRecord += chunk.records.size();
+                    String prefix = source.getName();
+                    running.add(pool.submit(() -> encode(chunk, prefix, timestamp)));
+                }
+                // Mapping stays a bounded number of chunks ahead of the writes, which keep file order
+                while (!running.isEmpty() && (running.size() >= threads * 2 || chunk.records.isEmpty())) {
+                    ChunkOutput output = await(running.poll());
+                    for (Map.Entry<Table, StringBuilder> lines : output.lines.entrySet()) {
+                        writers.get(lines.getKey()).append(lines.getValue());
+                        rows.merge(lines.getKey().getName(), (long) output.rows.get(lines.getKey()), Long::sum);
+                    }
+                    errors.append(output.errors);
+                    records += output.records;
+                    failed += output.failed;
+                }
+                if (chunk.records.isEmpty()) {
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            for (Writer writer : writers.values()) {
+                writer.close();
+            }
+        }
+
+        writeScripts(tables, timestamp);
+        long elapsed = System.currentTimeMillis() - start;
+        LOG.info("Wrote load files of {} records from {} to {}, {} failed, in {} ms",
+                records, source, outputDirectory, failed, elapsed);
+        return new Result(records, failed, rows, elapsed);
+    }
+
+    private static Writer writer(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private static ChunkOutput await(Future<ChunkOutput> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Mapping chunk failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    private static class ChunkOutput {
+        final Map<Table, StringBuilder> lines = new LinkedHashMap<>();
+        final Map<Table, Integer> rows = new HashMap<>();
+        final StringBuilder errors = new StringBuilder();
+        int records;
+        int failed;
+
+        StringBuilder lines(Table table) {
+            rows.merge(table, 1, Integer::sum);
+            return lines.computeIfAbsent(table, t -> new StringBuilder(4096));
+        }
+    }
+
+    /**
+     * Map the records of a chunk to table lines, on a pool thread
+     */
+    private ChunkOutput encode(BulkImportJob.Chunk chunk, String sourceName, String timestamp) throws IOException {
+        ChunkOutput output = new ChunkOutput();
+        for (int i = 0; i < chunk.records.size(); i++) {
+            JsonNode record = chunk.records.get(i);
+            long recordNumber = chunk.firstRecord + i + 1;
+            Map<Table, List<Map<String, String>>> recordRows;
+            try {
+                recordRows = rows(record, sourceName + ":" + recordNumber);
+            } catch (Exception e) {
+                output.failed++;
+                ObjectNode line = MAPPER.createObjectNode();
+                line.put("record", recordNumber);
+                JsonNode id = GovStackDataMapper.unwrapTestData(record).get("id");
+                if (id != null && id.isValueNode()) {
+                    line.put("id", id.asText());
+                }
+                line.put("error", String.valueOf(e.getMessage()));
+                output.errors.append(MAPPER.writeValueAsString(line)).append('\n');
+                continue;
+            }
+            output.records++;
+            for (Map.Entry<Table, List<Map<String, String>>> table : recordRows.entrySet()) {
+                for (Map<String, String> row : table.getValue()) {
+                    appendLine(output.lines(table.getKey()), table.getKey(), row, timestamp);
+                }
+            }
+        }
+        return output;
+    }
+
+    /**
+     * The rows a submission saves for a record, with their ids
+     * @param recordName Unique name of the record in the input, the seed of a missing application id
+     */
+    @SuppressWarnings("unchecked")
+    Map<Table, List<Map<String, String>>> rows(JsonNode record, String recordName) throws Exception {
+        Map<String, Object> mapped = mapper.map(record);
+        Map<String, Map<String, String>> formData = (Map<String, Map<String, String>>) mapped.get("formData");
+        List<Map<String, Object>> arrayData = (List<Map<String, Object>>) mapped.get("arrayData");
+
+        String primaryKey = (String) mapped.get("primaryKey");
+        JsonNode id = GovStackDataMapper.unwrapTestData(record).get("id");
+        if (id == null || id.asText().trim().isEmpty()) {
+            // The mapper draws a random key, a name-based one gives the same rows on every run
+            primaryKey = nameUuid(recordName);
+        }
+
+        Map<Table, List<Map<String, String>>> rows = new LinkedHashMap<>();
+        Map<String, String> parent = new HashMap<>();
+        for (String field : parentReferenceFields) {
+            parent.put(field, primaryKey);
+        }
+        Map<String, Map<String, String>> formRows = new LinkedHashMap<>();
+        formRows.put(parentFormId, parent);
+        if (formData != null) {
+            for (Map.Entry<String, Map<String, String>> form : formData.entrySet()) {
+                // A section stored in the parent form is merged into the parent row, as Joget does
+                Map<String, String> row = formRows.computeIfAbsent(form.getKey(), k -> new HashMap<>());
+                row.putAll(form.getValue());
+                row.put(PARENT_ID_FIELD, primaryKey);
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> form : formRows.entrySet()) {
+            Table table = forms.get(form.getKey());
+            if (table == null) {
+                throw new IllegalStateException("No table for form " + form.getKey());
+            }
+            Map<String, String> row = form.getValue();
+            row.put(SYSTEM_COLUMNS[0], primaryKey);
+            rows.put(table, Collections.singletonList(row));
+        }
+
+        if (arrayData != null) {
+            for (Map<String, Object> grid : arrayData) {
+                String gridName = (String) grid.get("gridName");
+                Table table = grids.get(gridName);
+                if (table == null) {
+                    throw new IllegalStateException("No table for grid " + gridName);
+                }
+                List<Map<String, String>> gridRows = new ArrayList<>();
+                int rowNumber = 0;
+                for (Map<String, String> values : (List<Map<String, String>>) grid.get("rows")) {
+                    Map<String, String> row = new HashMap<>(values);
+                    row.put(gridParentFields.get(gridName), primaryKey);
+                    row.put(SYSTEM_COLUMNS[0], nameUuid(primaryKey + ":" + gridName + ":" + rowNumber++));
+                    gridRows.add(row);
+                }
+                rows.put(table, gridRows);
+            }
+        }
+        return rows;
+    }
+
+    private static String nameUuid(String name) {
+        return UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private void appendLine(StringBuilder out, Table table, Map<String, String> row, String timestamp) {
+        Map<String, String> values = new HashMap<>(row);
+        appendValue(out, values.remove(SYSTEM_COLUMNS[0]));
+        for (String value : new String[]{timestamp, timestamp, user, user, user, user}) {
+            out.append('\t');
+            appendValue(out, value);
+        }
+        for (String field : table.fields) {
+            out.append('\t');
+            appendValue(out, values.remove(field));
+        }
+        out.append('\n');
+        if (!values.isEmpty()) {
+            throw new IllegalStateException("Fields " + values.keySet() + " have no column in " + table.getName());
+        }
+    }
+
+    /**
+     * Escape a value for the text format of LOAD DATA and COPY
+     */
+    static void appendValue(StringBuilder out, String value) {
+        if (value == null) {
+            out.append(NULL);
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+
+    private void writeScripts(List<Table> tables, String timestamp) throws IOException {
+        String header = "-- Load files of " + metadataService.getServiceId() + ", generated " + timestamp + "\n";
+        StringBuilder mysql = new StringBuilder(header)
+                .append("-- Run from this directory: mysql --local-infile=1 <database> < ").append(MYSQL_SCRIPT).append("\n\n");
+        StringBuilder postgres = new StringBuilder(header)
+                .append("-- Run from this directory: psql -d <database> -f ").append(POSTGRES_SCRIPT).append("\n\n")
+                .append("BEGIN;\n");
+        for (Table table : tables) {
+            String columns = String.join(", ", table.getColumns());
+            String file = table.getFile(outputDirectory).getName();
+            mysql.append("LOAD DATA LOCAL INFILE '").append(file).append("' INTO TABLE ").append(table.getName())
+                    .append(" CHARACTER SET utf8mb4\n")
+                    .append("  FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n'\n")
+                    .append("  (").append(columns).append(");\n");
+            postgres.append("\\copy ").append(table.getName()).append(" (").append(columns).append(") FROM '")
+                    .append(file).append("' WITH (FORMAT text, ENCODING 'UTF8')\n");
+        }
+        postgres.append("COMMIT;\n");
+        try (Writer writer = writer(new File(outputDirectory, MYSQL_SCRIPT))) {
+            writer.write(mysql.toString());
+        }
+        try (Writer writer = writer(new File(outputDirectory, POSTGRES_SCRIPT))) {
+            writer.write(postgres.toString());
+        }
+    }
+}
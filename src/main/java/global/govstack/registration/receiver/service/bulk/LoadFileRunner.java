@@ -0,0 +1,130 @@
+package global.govstack.registration.receiver.service.bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Write the bulk load files of a registration file, for an initial load straight into the database
+ *
+ * Usage: LoadFileRunner <serviceId> <file> <outputDirectory> [--forms <dir>] [--format json|ndjson]
+ *                       [--threads <n>] [--user <username>]
+ *
+ * --forms points to the exported form definitions (doc-forms), whose tableName properties give the
+ * tables to load; without it each form's table is named after its id. The output directory gets one
+ * .tsv file per table, load-mysql.sql and load-postgres.sql, and errors.ndjson with the records that
+ * could not be mapped. Load the files with the Joget server stopped, so the identifier index is
+ * built from the loaded tables when it starts; loaded applications are not in the change feed.
+ */
+public class LoadFileRunner {
+
+    private static final String USAGE = "Usage: LoadFileRunner <serviceId> <file> <outputDirectory> [--forms <dir>]"
+            + " [--format json|ndjson] [--threads <n>] [--user <username>]";
+
+    public static void main(String[] args) throws Exception {
+        String serviceId = null;
+        String file = null;
+        String outputDirectory = null;
+        String formDirectory = null;
+        BulkImportJob.Format format = null;
+        Integer threads = null;
+        String user = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (("--forms".equals(arg) || "--format".equals(arg) || "--threads".equals(arg) || "--user".equals(arg))
+                    && i + 1 >= args.length) {
+                exitWithUsage("Missing value for " + arg);
+            }
+            switch (arg) {
+                case "--forms":
+                    formDirectory = args[++i];
+                    break;
+                case "--format":
+                    format = BulkImportJob.Format.fromName(args[++i]);
+                    if (format == null) {
+                        exitWithUsage("Unknown format: " + args[i]);
+                    }
+                    break;
+                case "--threads":
+                    try {
+                        threads = Integer.parseInt(args[++i]);
+                    } catch (NumberFormatException e) {
+                        exitWithUsage("Invalid thread count: " + args[i]);
+                    }
+                    break;
+                case "--user":
+                    user = args[++i];
+                    break;
+                default:
+                    if (arg.startsWith("--") || outputDirectory != null) {
+                        exitWithUsage("Unexpected argument: " + arg);
+                    }
+                    if (serviceId == null) {
+                        serviceId = arg;
+                    } else if (file == null) {
+                        file = arg;
+                    } else {
+                        outputDirectory = arg;
+                    }
+            }
+        }
+        if (serviceId == null || file == null || outputDirectory == null) {
+            exitWithUsage("Missing service id, file or output directory");
+        }
+
+        YamlMetadataService metadataService = new YamlMetadataService();
+        metadataService.loadMetadata(serviceId);
+        Map<String, String> tableNames = formDirectory != null
+                ? readTableNames(new File(formDirectory)) : new HashMap<>();
+        LoadFileGenerator generator = new LoadFileGenerator(metadataService, tableNames, new File(outputDirectory));
+        generator.setThreads(threads != null ? threads : metadataService.getBulkImportThreads());
+        generator.setUser(user);
+
+        File source = new File(file);
+        LoadFileGenerator.Result result = generator.generate(source,
+                format != null ? format : BulkImportJob.Format.detect(source));
+        System.out.println("Wrote " + result.getRecords() + " records in " + result.getElapsedMillis() + " ms, "
+                + result.getFailed() + " failed");
+        for (Map.Entry<String, Long> table : result.getRows().entrySet()) {
+            System.out.println("  " + table.getKey() + ": " + table.getValue() + " rows");
+        }
+        if (result.getFailed() > 0) {
+            System.out.println("Errors: " + new File(outputDirectory, LoadFileGenerator.ERROR_FILE));
+        }
+        System.exit(result.getFailed() > 0 ? 1 : 0);
+    }
+
+    /**
+     * Read the table of each form from exported form definitions
+     * @return Map of form ID to table name, for forms that set one
+     */
+    static Map<String, String> readTableNames(File formDirectory) throws IOException {
+        File[] files = formDirectory.listFiles((d, name) -> name.endsWith(".json"));
+        if (files == null) {
+            throw new IOException("Form directory not found: " + formDirectory);
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, String> tableNames = new HashMap<>();
+        for (File form : files) {
+            JsonNode properties = mapper.readTree(form).path("properties");
+            String formId = properties.path("id").asText();
+            String tableName = properties.path("tableName").asText();
+            if (!formId.isEmpty() && !tableName.isEmpty()) {
+                tableNames.put(formId, tableName);
+            }
+        }
+        return tableNames;
+    }
+
+    private static void exitWithUsage(String message) {
+        System.err.println(message);
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+}
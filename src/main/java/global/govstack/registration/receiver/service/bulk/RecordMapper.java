@@ -0,0 +1,47 @@
+package global.govstack.registration.receiver.service.bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import global.govstack.registration.receiver.exception.ValidationException;
+import global.govstack.registration.receiver.service.metadata.DataTransformer;
+import global.govstack.registration.receiver.service.metadata.GovStackDataMapper;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.service.validation.RequestShapeValidator;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validates and maps records outside a request, as a submission would
+ *
+ * Mappers are not shared between threads, each thread gets its own.
+ */
+class RecordMapper {
+    private final YamlMetadataService metadataService;
+    private final RequestShapeValidator validator;
+    private final ThreadLocal<GovStackDataMapper> mappers = new ThreadLocal<>();
+
+    RecordMapper(YamlMetadataService metadataService) {
+        this.metadataService = metadataService;
+        this.validator = metadataService.isRequestValidationEnabled()
+                ? RequestShapeValidator.forMetadata(metadataService) : null;
+    }
+
+    /**
+     * @return The mapped forms, as returned by {@link GovStackDataMapper#mapJsonToMultipleForms}
+     * @throws ValidationException if the record is invalid
+     */
+    Map<String, Object> map(JsonNode record) throws Exception {
+        if (validator != null) {
+            List<RequestShapeValidator.Violation> violations = validator.validate(GovStackDataMapper.unwrapTestData(record));
+            if (!violations.isEmpty()) {
+                throw new ValidationException(violations.size() + " invalid or missing fields: " + violations);
+            }
+        }
+        GovStackDataMapper mapper = mappers.get();
+        if (mapper == null) {
+            mapper = new GovStackDataMapper(metadataService, new DataTransformer());
+            mappers.set(mapper);
+        }
+        return mapper.mapJsonToMultipleForms(record);
+    }
+}
@@ -0,0 +1,125 @@
+package global.govstack.registration.receiver.service.changes;
+
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.util.ProcessingLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-service change logs of the applications written by this plugin
+ *
+ * The feed is off unless metadata.changeFeed.enabled is true. A service's log is kept in its own
+ * subdirectory of metadata.changeFeed.dir, or of the directory named by the govstack.changes.dir
+ * system property, and opened on first use. An enabled feed without either directory is not
+ * started, as a log in a temporary directory is lost on cleanup. Recording never fails a
+ * submission: the application is already saved, so an error writing the log is only reported.
+ */
+public class ChangeFeed {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(ChangeFeed.class);
+
+    private static final ChangeFeed INSTANCE = new ChangeFeed();
+
+    private final ConcurrentMap<String, ChangeLog> logs = new ConcurrentHashMap<>();
+    private final Set<String> missingDirReported = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public static ChangeFeed getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Check whether a service's changes are recorded: the feed is enabled and has a durable directory
+     * An enabled feed without a directory is reported once and stays off.
+     */
+    public boolean isAvailable(YamlMetadataService metadataService) {
+        if (!metadataService.isChangeFeedEnabled()) {
+            return false;
+        }
+        if (metadataService.getChangeFeedDir() == null) {
+            if (missingDirReported.add(metadataService.getServiceId())) {
+                LOG.warn("Change feed of service {} is enabled without a directory, set metadata.changeFeed.dir "
+                        + "or -D{}; the feed is not started", metadataService.getServiceId(),
+                        YamlMetadataService.CHANGE_FEED_DIR_PROPERTY);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Record that an application was created or updated
+     * @param operation ChangeLog.OPERATION_CREATE or ChangeLog.OPERATION_UPDATE
+     * @return The recorded change, or null if the feed is not available or the change could not be written
+     */
+    public ChangeLog.Change record(YamlMetadataService metadataService, String applicationId, String operation) {
+        if (!isAvailable(metadataService)) {
+            return null;
+        }
+        try {
+            return getLog(metadataService).append(applicationId, operation);
+        } catch (Exception e) {
+            LOG.error(e, "Error recording change of application {}: {}", applicationId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Read the changes after a sequence number, oldest first
+     */
+    public List<ChangeLog.Change> read(YamlMetadataService metadataService, long after, int limit) throws IOException {
+        return getLog(metadataService).read(after, limit);
+    }
+
+    /**
+     * @return The sequence number of the service's newest change, 0 if there are none
+     */
+    public long getLastSequence(YamlMetadataService metadataService) throws IOException {
+        return getLog(metadataService).getLastSequence();
+    }
+
+    /**
+     * @return The epoch of the service's log, see {@link ChangeLog#getEpoch()}
+     */
+    public String getEpoch(YamlMetadataService metadataService) throws IOException {
+        return getLog(metadataService).getEpoch();
+    }
+
+    private ChangeLog getLog(YamlMetadataService metadataService) throws IOException {
+        if (metadataService.getChangeFeedDir() == null) {
+            throw new IOException("No change feed directory for service " + metadataService.getServiceId());
+        }
+        File directory = new File(metadataService.getChangeFeedDir(), metadataService.getServiceId()).getAbsoluteFile();
+        String key = directory.getPath();
+        ChangeLog log = logs.get(key);
+        if (log != null) {
+            return log;
+        }
+        synchronized (logs) {
+            log = logs.get(key);
+            if (log == null) {
+                log = new ChangeLog(directory);
+                logs.put(key, log);
+                LOG.info("Opened change log {} at sequence {}, epoch {}", directory, log.getLastSequence(), log.getEpoch());
+            }
+            return log;
+        }
+    }
+
+    /**
+     * Close every open log, they are reopened on next use
+     */
+    public void shutdown() {
+        synchronized (logs) {
+            for (ChangeLog log : logs.values()) {
+                log.close();
+            }
+            logs.clear();
+        }
+        missingDirReported.clear();
+    }
+}
@@ -0,0 +1,304 @@
+package global.govstack.registration.receiver.service.changes;
+
+import global.govstack.registration.receiver.util.ProcessingLog;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Append-only log of the applications written to one service
+ *
+ * Every change gets the next sequence number and is appended as one line
+ * (sequence, epoch milliseconds, operation, application id, tab separated) to the current
+ * segment file. A segment is closed after a fixed number of changes and the next one is named
+ * after its first sequence number, so a read after a sequence opens the one segment that
+ * holds it and reads no more than one segment of older changes before the page it returns.
+ *
+ * A line cut short by a crash is dropped when the log is opened, and the sequence carries on
+ * from the last complete change.
+ *
+ * Each log has an epoch, a random id written to its directory when the log is created. If the
+ * directory is lost, sequences start again from 1 under a new epoch, so a consumer holding a
+ * cursor of the old log can tell that it has to resynchronise.
+ */
+public class ChangeLog {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(ChangeLog.class);
+
+    public static final String OPERATION_CREATE = "create";
+    public static final String OPERATION_UPDATE = "update";
+
+    static final int DEFAULT_SEGMENT_SIZE = 10000;
+    private static final String SEGMENT_PREFIX = "changes-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String EPOCH_FILE = "epoch";
+
+    /**
+     * One write to an application
+     */
+    public static class Change {
+        private final long sequence;
+        private final long timestamp;
+        private final String operation;
+        private final String applicationId;
+
+        public Change(long sequence, long timestamp, String operation, String applicationId) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.operation = operation;
+            this.applicationId = applicationId;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getApplicationId() {
+            return applicationId;
+        }
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final TreeMap<Long, File> segments = new TreeMap<>();
+    private final String epoch;
+
+    private Writer writer;
+    private long segmentStart;
+    private volatile long lastSequence;
+
+    /**
+     * Open the log in a directory, creating it if needed
+     */
+    public ChangeLog(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open the log in a directory, creating it if needed
+     * @param segmentSize The number of changes per segment file
+     */
+    public ChangeLog(File directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create change log directory: " + directory);
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String number = file.getName().substring(SEGMENT_PREFIX.length(),
+                        file.getName().length() - SEGMENT_SUFFIX.length());
+                try {
+                    segments.put(Long.parseLong(number), file);
+                } catch (NumberFormatException e) {
+                    LOG.warn("Ignoring unexpected file in change log: {}", file);
+                }
+            }
+        }
+
+        if (!segments.isEmpty()) {
+            Map.Entry<Long, File> last = segments.lastEntry();
+            segmentStart = last.getKey();
+            lastSequence = recover(last.getValue(), segmentStart - 1);
+        }
+        epoch = readEpoch(directory);
+    }
+
+    /**
+     * Read the epoch of the log in a directory, creating one for a new log
+     */
+    private static String readEpoch(File directory) throws IOException {
+        File file = new File(directory, EPOCH_FILE);
+        if (file.isFile()) {
+            String epoch = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+            if (!epoch.isEmpty()) {
+                return epoch;
+            }
+        }
+        String epoch = UUID.randomUUID().toString();
+        File written = new File(directory, EPOCH_FILE + ".tmp");
+        Files.write(written.toPath(), epoch.getBytes(StandardCharsets.UTF_8));
+        if (!written.renameTo(file) && !(file.delete() && written.renameTo(file))) {
+            throw new IOException("Cannot write change log epoch: " + file);
+        }
+        return epoch;
+    }
+
+    /**
+     * Drop a partly written last line and find the last sequence of a segment
+     */
+    private static long recover(File segment, long before) throws IOException {
+        byte[] content = Files.readAllBytes(segment.toPath());
+        int end = content.length;
+        while (end > 0 && content[end - 1] != '\n') {
+            end--;
+        }
+        if (end < content.length) {
+            LOG.warn("Dropping {} bytes of an incomplete change in {}", content.length - end, segment);
+            try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+                file.setLength(end);
+            }
+        }
+
+        long last = before;
+        int lineStart = 0;
+        for (int i = 0; i < end; i++) {
+            if (content[i] == '\n') {
+                Change change = parse(new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8));
+                if (change != null) {
+                    last = change.getSequence();
+                }
+                lineStart = i + 1;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Record a change
+     * @return The change with its sequence number
+     */
+    public synchronized Change append(String applicationId, String operation) throws IOException {
+        if (applicationId.indexOf('\t') >= 0 || applicationId.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Application id cannot be logged: " + applicationId);
+        }
+        long sequence = lastSequence + 1;
+        if (writer == null || sequence - segmentStart >= segmentSize) {
+            openSegment(sequence);
+        }
+
+        Change change = new Change(sequence, System.currentTimeMillis(), operation, applicationId);
+        writer.write(format(change));
+        writer.flush();
+        // Readers only see a change once its line is complete
+        lastSequence = sequence;
+        return change;
+    }
+
+    private void openSegment(long sequence) throws IOException {
+        File file;
+        if (writer == null && !segments.isEmpty() && sequence - segmentStart < segmentSize) {
+            // Continue the last segment after a restart
+            file = segments.lastEntry().getValue();
+        } else {
+            if (writer != null) {
+                writer.close();
+            }
+            segmentStart = sequence;
+            file = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+        }
+        writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+        synchronized (segments) {
+            segments.put(segmentStart, file);
+        }
+    }
+
+    /**
+     * Read the changes after a sequence number, oldest first
+     * @param after Sequence number of the last change already seen, 0 for the start of the log
+     * @param limit The maximum number of changes to return
+     */
+    public List<Change> read(long after, int limit) throws IOException {
+        long last = lastSequence;
+        if (after >= last || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        List<File> files = new ArrayList<>();
+        synchronized (segments) {
+            Long first = segments.floorKey(after + 1);
+            files.addAll((first != null ? segments.tailMap(first) : segments).values());
+        }
+
+        List<Change> changes = new ArrayList<>(Math.min(limit, (int) Math.min(last - after, segmentSize)));
+        for (File file : files) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Change change = parse(line);
+                    if (change == null || change.getSequence() <= after) {
+                        continue;
+                    }
+                    if (change.getSequence() > last) {
+                        return changes;
+                    }
+                    changes.add(change);
+                    if (changes.size() >= limit) {
+                        return changes;
+                    }
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * @return The sequence number of the newest change, 0 if the log is empty
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return The id of this log, which changes when the log is created again from nothing
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.warn("Error closing change log {}: {}", directory, e.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    private static String format(Change change) {
+        return change.getSequence() + "\t" + change.getTimestamp() + "\t" + change.getOperation() + "\t"
+                + change.getApplicationId() + "\n";
+    }
+
+    /**
+     * @return The change on a line, or null if the line is not a complete change
+     */
+    private static Change parse(String line) {
+        String[] parts = line.split("\t", 4);
+        if (parts.length < 4) {
+            return null;
+        }
+        try {
+            return new Change(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2], parts[3]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package global.govstack.registration.receiver.service.export;
+
+import global.govstack.registration.receiver.service.metadata.GovStackDataAssembler;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+/**
+ * A validated export request, ready to be written to a response
+ *
+ * Everything that needs the request thread (the app definition, table names) is resolved
+ * when the job is created, so problems are reported as errors before any output is sent.
+ */
+public class ExportJob {
+
+    private final String serviceId;
+    private final RegistrationExporter.Format format;
+    private final Timestamp since;
+    private final GovStackDataAssembler assembler;
+    private final DataSource dataSource;
+    private final String parentTable;
+    private final Map<String, String> tableNames;
+
+    public ExportJob(String serviceId, RegistrationExporter.Format format, Timestamp since,
+                     GovStackDataAssembler assembler, DataSource dataSource, String parentTable,
+                     Map<String, String> tableNames) {
+        this.serviceId = serviceId;
+        this.format = format;
+        this.since = since;
+        this.assembler = assembler;
+        this.dataSource = dataSource;
+        this.parentTable = parentTable;
+        this.tableNames = tableNames;
+    }
+
+    public String getContentType() {
+        return format.getContentType();
+    }
+
+    public String getFileName() {
+        return serviceId + "-export." + format.getExtension();
+    }
+
+    /**
+     * Write the export as UTF-8
+     * @return The number of applications written
+     */
+    public long writeTo(OutputStream out) throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            long count = new RegistrationExporter(assembler, new JdbcExportSource(connection, parentTable, tableNames))
+                    .export(format, since, writer);
+            writer.flush();
+            return count;
+        }
+    }
+
+    /**
+     * Parse the since parameter of an export
+     * @param since Epoch milliseconds, an ISO-8601 date (taken as UTC midnight) or date-time
+     *              (taken as UTC without an offset), or null
+     * @return The time, or null if since is empty
+     * @throws IllegalArgumentException if since is not in one of these forms
+     */
+    public static Timestamp parseSince(String since) {
+        if (since == null || since.trim().isEmpty()) {
+            return null;
+        }
+        String value = since.trim();
+        if (value.matches("\\d+")) {
+            return new Timestamp(Long.parseLong(value));
+        }
+        try {
+            if (value.length() == 10) {
+                return Timestamp.from(LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant());
+            }
+            if (value.endsWith("Z")) {
+                return Timestamp.from(Instant.parse(value));
+            }
+            try {
+                return Timestamp.from(OffsetDateTime.parse(value).toInstant());
+            } catch (DateTimeParseException e) {
+                return Timestamp.from(LocalDateTime.parse(value).toInstant(ZoneOffset.UTC));
+            }
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid since: " + since
+                    + ", use epoch milliseconds or an ISO-8601 date or date-time");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package global.govstack.registration.receiver.service.export;
+
+import global.govstack.registration.receiver.service.metadata.GovStackDataAssembler;
+import org.joget.apps.form.model.FormRow;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads export pages straight from the Joget form tables over one JDBC connection
+ *
+ * Application ids are paged with a keyset condition on the parent table's primary key
+ * (id &gt; last id, ordered by id), so every page costs the same however deep the export is.
+ * The page size is applied with setMaxRows rather than LIMIT, which is not portable across
+ * the databases Joget supports. Section and grid rows of a page are read with one IN query
+ * per table, streamed with the page size as JDBC fetch size.
+ */
+public class JdbcExportSource implements RegistrationExporter.Source {
+
+    private static final String COLUMN_PREFIX = "c_";
+
+    private final Connection connection;
+    private final String parentTable;
+    private final Map<String, String> tableNames;
+
+    /**
+     * @param connection Held for the whole export, closed by the caller
+     * @param parentTable Table of the parent form, e.g. app_fd_farmer_registry
+     * @param tableNames Table of each section and grid form, by form id
+     */
+    public JdbcExportSource(Connection connection, String parentTable, Map<String, String> tableNames) {
+        this.connection = connection;
+        this.parentTable = parentTable;
+        this.tableNames = tableNames;
+    }
+
+    @Override
+    public List<String> nextApplicationIds(String afterId, Timestamp since, int limit) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT id FROM ").append(parentTable);
+        List<Object> params = new ArrayList<>();
+        String joiner = " WHERE ";
+        if (afterId != null) {
+            sql.append(joiner).append("id > ?");
+            params.add(afterId);
+            joiner = " AND ";
+        }
+        if (since != null) {
+            sql.append(joiner).append("dateModified >= ?");
+            params.add(since);
+        }
+        sql.append(" ORDER BY id");
+
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            statement.setMaxRows(limit);
+            statement.setFetchSize(limit);
+            for (int i = 0; i < params.size(); i++) {
+                statement.setObject(i + 1, params.get(i));
+            }
+            List<String> ids = new ArrayList<>(limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getString(1));
+                }
+            }
+            return ids;
+        }
+    }
+
+    @Override
+    public Map<String, FormRow> loadRows(String formId, List<String> applicationIds) throws SQLException {
+        Map<String, FormRow> rows = new HashMap<>();
+        query(tableName(formId), "id", applicationIds, null, row -> rows.put(row.getId(), row));
+        return rows;
+    }
+
+    @Override
+    public Map<String, List<FormRow>> loadGridRows(GovStackDataAssembler.GridPlan grid, List<String> applicationIds)
+            throws SQLException {
+        Map<String, List<FormRow>> rows = new LinkedHashMap<>();
+        String parentColumn = grid.getParentColumn();
+        if (parentColumn == null) {
+            return rows;
+        }
+        String parentField = parentColumn.startsWith(COLUMN_PREFIX) ? parentColumn.substring(COLUMN_PREFIX.length())
+                : parentColumn;
+        query(tableName(grid.getFormId()), parentColumn, applicationIds, "dateCreated",
+                row -> rows.computeIfAbsent(row.getProperty(parentField), k -> new ArrayList<>()).add(row));
+        return rows;
+    }
+
+    private interface RowHandler {
+        void row(FormRow row);
+    }
+
+    private void query(String table, String keyColumn, List<String> keys, String orderBy, RowHandler handler)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT * FROM ").append(table)
+                .append(" WHERE ").append(keyColumn).append(" IN (");
+        for (int i = 0; i < keys.size(); i++) {
+            sql.append(i > 0 ? ",?" : "?");
+        }
+        sql.append(')');
+        if (orderBy != null) {
+            sql.append(" ORDER BY ").append(orderBy);
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            statement.setFetchSize(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                statement.setString(i + 1, keys.get(i));
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                String[] fields = new String[metaData.getColumnCount()];
+                for (int i = 0; i < fields.length; i++) {
+                    String column = metaData.getColumnLabel(i + 1);
+                    // Joget prefixes field columns, the row properties use the field ids
+                    fields[i] = column.regionMatches(true, 0, COLUMN_PREFIX, 0, COLUMN_PREFIX.length())
+                            ? column.substring(COLUMN_PREFIX.length()) : column;
+                }
+                while (resultSet.next()) {
+                    FormRow row = new FormRow();
+                    for (int i = 0; i < fields.length; i++) {
+                        String value = resultSet.getString(i + 1);
+                        if (value == null) {
+                            continue;
+                        }
+                        if ("id".equalsIgnoreCase(fields[i])) {
+                            row.setId(value);
+                        } else {
+                            row.setProperty(fields[i], value);
+                        }
+                    }
+                    handler.row(row);
+                }
+            }
+        }
+    }
+
+    private String tableName(String formId) throws SQLException {
+        String table = tableNames.get(formId);
+        if (table == null) {
+            throw new SQLException("No table for form: " + formId);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,258 @@
+package global.govstack.registration.receiver.service.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import global.govstack.registration.receiver.service.metadata.GovStackDataAssembler;
+import global.govstack.registration.receiver.util.ProcessingLog;
+import org.joget.apps.form.model.FormRow;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams every application of a service as NDJSON or CSV
+ *
+ * Applications are read a page at a time in primary key order, each page continuing after
+ * the last key of the previous one, and written before the next page is read. Only one page
+ * of rows is held at a time, so memory use does not grow with the size of the registry.
+ * NDJSON lines have the GovStack request shape of the compiled {@link GovStackDataAssembler};
+ * CSV has one column per mapped Joget field, with grid values of all rows joined by " | ".
+ */
+public class RegistrationExporter {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(RegistrationExporter.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    static final int DEFAULT_PAGE_SIZE = 500;
+    static final String GRID_VALUE_SEPARATOR = " | ";
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv; charset=UTF-8", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * @return The format, or null if the name is not a known format
+         */
+        public static Format fromName(String name) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Reads the stored rows of applications, a page at a time
+     */
+    public interface Source {
+        /**
+         * @param afterId Only applications whose primary key sorts after this one, null for the first page
+         * @param since Only applications modified at or after this time, null for all
+         * @return Up to limit application ids in primary key order
+         */
+        List<String> nextApplicationIds(String afterId, Timestamp since, int limit) throws Exception;
+
+        /**
+         * @return The rows of a section form for the applications, by application id
+         */
+        Map<String, FormRow> loadRows(String formId, List<String> applicationIds) throws Exception;
+
+        /**
+         * @return The rows of a grid for the applications, by application id, in creation order
+         */
+        Map<String, List<FormRow>> loadGridRows(GovStackDataAssembler.GridPlan grid, List<String> applicationIds)
+                throws Exception;
+    }
+
+    private final GovStackDataAssembler assembler;
+    private final Source source;
+    private final int pageSize;
+
+    public RegistrationExporter(GovStackDataAssembler assembler, Source source) {
+        this(assembler, source, DEFAULT_PAGE_SIZE);
+    }
+
+    public RegistrationExporter(GovStackDataAssembler assembler, Source source, int pageSize) {
+        this.assembler = assembler;
+        this.source = source;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Write the applications
+     * @param since Only applications modified at or after this time, null for all
+     * @return The number of applications written
+     */
+    public long export(Format format, Timestamp since, Writer out) throws Exception {
+        long start = System.currentTimeMillis();
+        List<String> columns = format == Format.CSV ? csvColumns() : null;
+        if (columns != null) {
+            writeCsvRow(out, columns);
+        }
+
+        long count = 0;
+        String afterId = null;
+        List<String> ids;
+        do {
+            ids = source.nextApplicationIds(afterId, since, pageSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            Map<String, Map<String, FormRow>> sectionRows = new HashMap<>();
+            for (String formId : assembler.getSectionFormIds()) {
+                sectionRows.put(formId, source.loadRows(formId, ids));
+            }
+            Map<String, Map<String, List<FormRow>>> gridRows = new HashMap<>();
+            for (GovStackDataAssembler.GridPlan grid : assembler.getGrids()) {
+                gridRows.put(grid.getGridName(), source.loadGridRows(grid, ids));
+            }
+
+            for (String id : ids) {
+                if (format == Format.CSV) {
+                    writeCsvRow(out, csvValues(columns, id, sectionRows, gridRows));
+                } else {
+                    writeJsonLine(out, id, sectionRows, gridRows);
+                }
+            }
+            out.flush();
+            count += ids.size();
+            afterId = ids.get(ids.size() - 1);
+        } while (ids.size() == pageSize);
+
+        LOG.info("Exported {} applications as {} in {} ms", count, format, System.currentTimeMillis() - start);
+        return count;
+    }
+
+    private void writeJsonLine(Writer out, String id, Map<String, Map<String, FormRow>> sectionRows,
+                               Map<String, Map<String, List<FormRow>>> gridRows) throws IOException {
+        Map<String, FormRow> rows = new HashMap<>();
+        for (Map.Entry<String, Map<String, FormRow>> section : sectionRows.entrySet()) {
+            FormRow row = section.getValue().get(id);
+            if (row != null) {
+                rows.put(section.getKey(), row);
+            }
+        }
+        Map<String, List<FormRow>> grids = new HashMap<>();
+        for (Map.Entry<String, Map<String, List<FormRow>>> grid : gridRows.entrySet()) {
+            List<FormRow> gridRowsOfApplication = grid.getValue().get(id);
+            grids.put(grid.getKey(), gridRowsOfApplication != null ? gridRowsOfApplication : Collections.<FormRow>emptyList());
+        }
+        out.write(OBJECT_MAPPER.writeValueAsString(assembler.assemble(id, rows, grids)));
+        out.write('\n');
+    }
+
+    /**
+     * Header of the CSV export: id, the section fields, then "grid.field" for every grid field
+     */
+    List<String> csvColumns() {
+        List<String> columns = new ArrayList<>();
+        columns.add("id");
+        for (String formId : assembler.getSectionFormIds()) {
+            for (String field : assembler.getSectionFieldNames(formId)) {
+                if (!columns.contains(field)) {
+                    columns.add(field);
+                }
+            }
+        }
+        for (GovStackDataAssembler.GridPlan grid : assembler.getGrids()) {
+            for (String field : grid.getFieldNames()) {
+                columns.add(grid.getGridName() + "." + field);
+            }
+        }
+        return columns;
+    }
+
+    private List<String> csvValues(List<String> columns, String id, Map<String, Map<String, FormRow>> sectionRows,
+                                   Map<String, Map<String, List<FormRow>>> gridRows) {
+        // A field mapped in more than one section takes its value from the first form that has it
+        Map<String, String> values = new HashMap<>();
+        for (String formId : assembler.getSectionFormIds()) {
+            FormRow row = sectionRows.get(formId).get(id);
+            if (row == null) {
+                continue;
+            }
+            for (String field : assembler.getSectionFieldNames(formId)) {
+                String value = row.getProperty(field);
+                if (value != null && !values.containsKey(field)) {
+                    values.put(field, value);
+                }
+            }
+        }
+
+        List<String> row = new ArrayList<>(columns.size());
+        row.add(id);
+        for (int i = 1; i < columns.size(); i++) {
+            String column = columns.get(i);
+            int dot = column.indexOf('.');
+            Map<String, List<FormRow>> grid = dot > 0 ? gridRows.get(column.substring(0, dot)) : null;
+            if (grid != null) {
+                row.add(joinGridValues(grid.get(id), column.substring(dot + 1)));
+            } else {
+                row.add(values.get(column));
+            }
+        }
+        return row;
+    }
+
+    private static String joinGridValues(List<FormRow> rows, String field) {
+        if (rows == null || rows.isEmpty()) {
+            return null;
+        }
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < rows.size(); i++) {
+            if (i > 0) {
+                joined.append(GRID_VALUE_SEPARATOR);
+            }
+            String value = rows.get(i).getProperty(field);
+            joined.append(value != null ? value : "");
+        }
+        return joined.toString();
+    }
+
+    /**
+     * Write a CSV record, quoting values that contain a separator, quote or line break
+     */
+    static void writeCsvRow(Writer out, List<String> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0
+                    || value.indexOf('\r') >= 0) {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+        out.write("\r\n");
+    }
+}
@@ -0,0 +1,262 @@
+package global.govstack.registration.receiver.service.identity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compact map from an identifier (type and value) to the application that holds it
+ *
+ * Identifiers are stored as 64-bit hashes in an open-addressing table of primitive arrays,
+ * and application ids as length-prefixed UTF-8 in a single byte arena, so an entry costs
+ * about 60 bytes instead of the few hundred of a HashMap of strings. Two identifiers with
+ * the same hash share a slot, which is why callers confirm a hit against the stored record.
+ */
+public class IdentifierIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final long EMPTY = 0L;
+    private static final int MAX_ID_BYTES = 0xFFFF;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int[] refs = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private byte[] arena = new byte[INITIAL_CAPACITY * 16];
+    private int arenaLength;
+    private int garbage;
+
+    /**
+     * Get the application holding an identifier
+     * @return The application id, or null if the identifier is not indexed
+     */
+    public String get(String type, String value) {
+        long key = hash(type, value);
+        lock.readLock().lock();
+        try {
+            int slot = find(key);
+            return slot >= 0 ? readId(refs[slot]) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Index an identifier, replacing the application it pointed to
+     * @return The application it pointed to before, or null
+     */
+    public String put(String type, String value, String applicationId) {
+        return put(hash(type, value), applicationId, true);
+    }
+
+    /**
+     * Index an identifier unless it is indexed already
+     * Used by the startup scan, which must not overwrite what a concurrent write indexed
+     * @return true if the identifier was added
+     */
+    public boolean putIfAbsent(String type, String value, String applicationId) {
+        return put(hash(type, value), applicationId, false) == null;
+    }
+
+    /**
+     * Remove an identifier if it still points to the given application
+     * @return true if it was removed
+     */
+    public boolean remove(String type, String value, String applicationId) {
+        long key = hash(type, value);
+        lock.writeLock().lock();
+        try {
+            int slot = find(key);
+            if (slot < 0 || !applicationId.equals(readId(refs[slot]))) {
+                return false;
+            }
+            garbage += idLength(refs[slot]);
+            deleteSlot(slot);
+            size--;
+            compactIfWasteful();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate heap used by the index
+     */
+    public long getMemoryBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) keys.length * Long.BYTES + (long) refs.length * Integer.BYTES + arena.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Hash an identifier, ignoring surrounding whitespace and letter case of the value
+     */
+    static long hash(String type, String value) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, type);
+        hash = (hash ^ 0xff) * 0x100000001b3L;
+        hash = mix(hash, value.trim().toUpperCase(Locale.ROOT));
+
+        // Spread the FNV-1a result so the low bits used for the slot are well distributed
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1L : hash;
+    }
+
+    private static long mix(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private String put(long key, String applicationId, boolean replace) {
+        byte[] id = applicationId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_ID_BYTES) {
+            throw new IllegalArgumentException("Application id too long to index: " + applicationId);
+        }
+
+        lock.writeLock().lock();
+        try {
+            int slot = find(key);
+            if (slot >= 0) {
+                String previous = readId(refs[slot]);
+                if (replace && !previous.equals(applicationId)) {
+                    garbage += idLength(refs[slot]);
+                    refs[slot] = appendId(id);
+                    compactIfWasteful();
+                }
+                return previous;
+            }
+
+            if (size + 1 > keys.length * LOAD_FACTOR) {
+                resize(keys.length * 2);
+            }
+            int ref = appendId(id);
+            insert(key, ref);
+            size++;
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        for (int slot = (int) key & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(long key, int ref) {
+        int mask = keys.length - 1;
+        int slot = (int) key & mask;
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        refs[slot] = ref;
+    }
+
+    /**
+     * Linear-probing delete: shift later entries of the probe run back so lookups never stop early
+     */
+    private void deleteSlot(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = (int) keys[next] & mask;
+            // Move the entry into the hole if its home slot is not between the hole and its position
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                refs[hole] = refs[next];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY;
+        refs[hole] = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldRefs = refs;
+        keys = new long[capacity];
+        refs = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                insert(oldKeys[i], oldRefs[i]);
+            }
+        }
+    }
+
+    private int appendId(byte[] id) {
+        int needed = arenaLength + 2 + id.length;
+        if (needed < 0) {
+            throw new IllegalStateException("Identifier index is full");
+        }
+        if (needed > arena.length) {
+            byte[] grown = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) needed, arena.length * 2L))];
+            System.arraycopy(arena, 0, grown, 0, arenaLength);
+            arena = grown;
+        }
+        int ref = arenaLength;
+        arena[ref] = (byte) (id.length >>> 8);
+        arena[ref + 1] = (byte) id.length;
+        System.arraycopy(id, 0, arena, ref + 2, id.length);
+        arenaLength = needed;
+        return ref;
+    }
+
+    private int idLength(int ref) {
+        return 2 + (((arena[ref] & 0xff) << 8) | (arena[ref + 1] & 0xff));
+    }
+
+    private String readId(int ref) {
+        return new String(arena, ref + 2, idLength(ref) - 2, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rewrite the arena without the ids of replaced and removed entries once they are half of it
+     */
+    private void compactIfWasteful() {
+        if (garbage < arenaLength / 2 || arenaLength < INITIAL_CAPACITY * 16) {
+            return;
+        }
+        byte[] compacted = new byte[Math.max(INITIAL_CAPACITY * 16, (arenaLength - garbage) * 2)];
+        int length = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                int idLength = idLength(refs[i]);
+                System.arraycopy(arena, refs[i], compacted, length, idLength);
+                refs[i] = length;
+                length += idLength;
+            }
+        }
+        arena = compacted;
+        arenaLength = length;
+        garbage = 0;
+    }
+}
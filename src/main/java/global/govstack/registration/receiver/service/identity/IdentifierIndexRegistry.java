@@ -0,0 +1,521 @@
+package global.govstack.registration.receiver.service.identity;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.util.ProcessingLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-service identifier indexes for lookups and duplicate detection
+ *
+ * The identifier types of entities.primary are indexed from the section form fields they
+ * are mapped to. A service's index is built by a background scan of those forms on first
+ * use and kept current by every successful submission. Until the scan completes, lookups
+ * fall back to querying the forms. Every hit is confirmed against the stored record, so
+ * hash collisions and identifiers changed outside this plugin never produce a wrong match.
+ * A submission reserves its identifiers before it checks for duplicates and keeps them
+ * until it is saved and indexed, so two concurrent submissions cannot both pass the check.
+ */
+public class IdentifierIndexRegistry {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(IdentifierIndexRegistry.class);
+
+    private static final IdentifierIndexRegistry INSTANCE = new IdentifierIndexRegistry();
+
+    /**
+     * Reads identifiers from the forms they are stored in
+     */
+    public interface Store {
+        /**
+         * Pass every stored value of an identifier to the handler, one page at a time
+         */
+        void scan(Source source, RowHandler handler) throws Exception;
+
+        /**
+         * @return The stored value of an identifier for an application, or null
+         */
+        String loadValue(Source source, String applicationId) throws Exception;
+
+        /**
+         * @return The applications whose stored identifier equals the value
+         */
+        List<String> findApplicationIds(Source source, String value) throws Exception;
+    }
+
+    public interface RowHandler {
+        void row(String applicationId, String value);
+    }
+
+    /**
+     * Where an identifier type is found in the request and in the forms
+     */
+    public static class Source {
+        private final String type;
+        private final String formId;
+        private final String field;
+        private final String arrayField;
+        private final String typeField;
+        private final String valueField;
+
+        public Source(String type, String formId, String field, String arrayField, String typeField, String valueField) {
+            this.type = type;
+            this.formId = formId;
+            this.field = field;
+            this.arrayField = arrayField;
+            this.typeField = typeField;
+            this.valueField = valueField;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getFormId() {
+            return formId;
+        }
+
+        /**
+         * @return The Joget field holding the identifier
+         */
+        public String getField() {
+            return field;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Source)) {
+                return false;
+            }
+            Source other = (Source) o;
+            return Objects.equals(type, other.type) && Objects.equals(formId, other.formId)
+                    && Objects.equals(field, other.field) && Objects.equals(arrayField, other.arrayField)
+                    && Objects.equals(typeField, other.typeField) && Objects.equals(valueField, other.valueField);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, formId, field, arrayField, typeField, valueField);
+        }
+
+        @Override
+        public String toString() {
+            return type + " (" + formId + "." + field + ")";
+        }
+    }
+
+    /**
+     * An application holding an identifier
+     */
+    public static class Match {
+        private final String type;
+        private final String value;
+        private final String applicationId;
+
+        public Match(String type, String value, String applicationId) {
+            this.type = type;
+            this.value = value;
+            this.applicationId = applicationId;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public String getApplicationId() {
+            return applicationId;
+        }
+
+        @Override
+        public String toString() {
+            // The value is left out, it is personal data and toString ends up in logs
+            return type + " -> " + applicationId;
+        }
+    }
+
+    private static final class ServiceIndex {
+        /** Newest metadata snapshot generation seen with these sources */
+        final AtomicLong generation;
+        final Map<String, Source> sources;
+        final IdentifierIndex index = new IdentifierIndex();
+        final IdentifierIndex reserved;
+        final CountDownLatch built = new CountDownLatch(1);
+        volatile boolean ready;
+
+        ServiceIndex(long generation, Map<String, Source> sources, IdentifierIndex reserved) {
+            this.generation = new AtomicLong(generation);
+            this.sources = sources;
+            this.reserved = reserved;
+        }
+    }
+
+    private final ConcurrentMap<String, ServiceIndex> services = new ConcurrentHashMap<>();
+    private final Set<ServiceIndex> building = Collections.newSetFromMap(new ConcurrentHashMap<ServiceIndex, Boolean>());
+    private ExecutorService executor;
+
+    public static IdentifierIndexRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Resolve the form fields holding the primary entity's identifier types
+     * A field is used when its typeValue is an identifier type and its paths name the value
+     * and type of a top-level array element, e.g. identifiers[0].value and identifiers[0].type.
+     *
+     * @return Map of identifier type to its source, in configuration order
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Source> resolveSources(YamlMetadataService metadataService) {
+        Set<String> types = new HashSet<>(metadataService.getIdentifierTypes());
+        Map<String, Source> sources = new LinkedHashMap<>();
+        if (types.isEmpty()) {
+            return sources;
+        }
+
+        Map<String, String> sectionToFormMap = metadataService.getSectionToFormMap();
+        for (Map.Entry<String, Object> entry : metadataService.getAllFormMappings().entrySet()) {
+            if (!(entry.getValue() instanceof Map) || "array".equals(((Map<String, Object>) entry.getValue()).get("type"))) {
+                continue;
+            }
+            String formId = sectionToFormMap != null ? sectionToFormMap.get(entry.getKey()) : null;
+            if (formId == null) {
+                continue;
+            }
+            for (Map<String, Object> field : metadataService.getFieldMappings(entry.getKey())) {
+                String typeValue = (String) field.get("typeValue");
+                if (typeValue == null || !types.contains(typeValue) || sources.containsKey(typeValue)) {
+                    continue;
+                }
+                String[] valuePath = splitElementPath((String) field.get("govstack"));
+                String[] typePath = splitElementPath((String) field.get("govstackType"));
+                if (valuePath == null || typePath == null || !valuePath[0].equals(typePath[0])) {
+                    LOG.warn("Identifier {} is not mapped to a top-level array element, not indexed", typeValue);
+                    continue;
+                }
+                sources.put(typeValue, new Source(typeValue, formId, (String) field.get("joget"),
+                        valuePath[0], typePath[1], valuePath[1]));
+            }
+        }
+
+        for (String type : types) {
+            if (!sources.containsKey(type)) {
+                LOG.debug("Identifier type {} is not mapped to a form field, not indexed", type);
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Split "identifiers[0].value" into the array field and the element field
+     */
+    private static String[] splitElementPath(String path) {
+        if (path == null) {
+            return null;
+        }
+        int bracket = path.indexOf('[');
+        int close = path.indexOf("].", bracket);
+        if (bracket <= 0 || close < 0 || path.indexOf('.') < bracket || path.indexOf('[', close) >= 0) {
+            return null;
+        }
+        String element = path.substring(close + 2);
+        return element.contains(".") ? null : new String[]{path.substring(0, bracket), element};
+    }
+
+    /**
+     * @return The identifier types indexed for a service
+     */
+    public Set<String> getIndexedTypes(YamlMetadataService metadataService) {
+        return Collections.unmodifiableSet(getService(metadataService).sources.keySet());
+    }
+
+    /**
+     * Get the indexed identifiers carried by a request
+     * @param request The unwrapped GovStack request
+     * @return Map of identifier type to value
+     */
+    public Map<String, String> extractIdentifiers(YamlMetadataService metadataService, JsonNode request) {
+        Map<String, String> identifiers = new LinkedHashMap<>();
+        for (Source source : getService(metadataService).sources.values()) {
+            JsonNode elements = request.get(source.arrayField);
+            if (elements == null || !elements.isArray()) {
+                continue;
+            }
+            for (JsonNode element : elements) {
+                JsonNode value = element.get(source.valueField);
+                if (source.type.equals(element.path(source.typeField).asText())
+                        && value != null && value.isValueNode() && !value.asText().trim().isEmpty()) {
+                    identifiers.put(source.type, value.asText().trim());
+                    break;
+                }
+            }
+        }
+        return identifiers;
+    }
+
+    /**
+     * Find the applications holding an identifier
+     * @param type The identifier type, or null to search every indexed type
+     * @return The confirmed matches, empty if there are none
+     */
+    public List<Match> find(YamlMetadataService metadataService, Store store, String type, String value)
+            throws Exception {
+        ServiceIndex service = ensureBuilding(metadataService, store);
+        List<Match> matches = new ArrayList<>();
+        for (Source source : service.sources.values()) {
+            if (type == null || source.type.equals(type)) {
+                find(service, store, source, value.trim(), matches);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Find the other applications holding any of a submission's identifiers
+     * @param applicationId The application being submitted, never reported as its own duplicate
+     */
+    public List<Match> findDuplicates(YamlMetadataService metadataService, Store store,
+                                      Map<String, String> identifiers, String applicationId) throws Exception {
+        ServiceIndex service = ensureBuilding(metadataService, store);
+        List<Match> duplicates = new ArrayList<>();
+        for (Map.Entry<String, String> identifier : identifiers.entrySet()) {
+            Source source = service.sources.get(identifier.getKey());
+            if (source == null) {
+                continue;
+            }
+            List<Match> matches = new ArrayList<>();
+            find(service, store, source, identifier.getValue(), matches);
+            for (Match match : matches) {
+                if (!match.applicationId.equals(applicationId)) {
+                    duplicates.add(match);
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Index the identifiers of a saved application
+     */
+    public void record(YamlMetadataService metadataService, String applicationId, Map<String, String> identifiers) {
+        ServiceIndex service = getService(metadataService);
+        for (Map.Entry<String, String> identifier : identifiers.entrySet()) {
+            String previous = service.index.put(identifier.getKey(), identifier.getValue(), applicationId);
+            if (previous != null && !previous.equals(applicationId)) {
+                LOG.debug("Identifier {} moved from application {} to {}", identifier.getKey(), previous, applicationId);
+            }
+        }
+    }
+
+    /**
+     * Reserve a submission's identifiers until it is saved
+     * Nothing is reserved when any identifier is reserved by another submission in flight.
+     * @return The submissions holding the identifiers, empty if all of them are now reserved
+     */
+    public List<Match> reserve(YamlMetadataService metadataService, Map<String, String> identifiers,
+                               String applicationId) {
+        ServiceIndex service = getService(metadataService);
+        List<Match> holders = new ArrayList<>();
+        Map<String, String> acquired = new LinkedHashMap<>();
+        for (Map.Entry<String, String> identifier : identifiers.entrySet()) {
+            if (!service.sources.containsKey(identifier.getKey())) {
+                continue;
+            }
+            String holder = reserve(service, identifier.getKey(), identifier.getValue(), applicationId);
+            if (holder == null) {
+                acquired.put(identifier.getKey(), identifier.getValue());
+                continue;
+            }
+            if (holder.equals(applicationId)) {
+                // Another request for the same application holds it, which is not a duplicate
+                continue;
+            }
+            holders.add(new Match(identifier.getKey(), identifier.getValue(), holder));
+        }
+        if (!holders.isEmpty()) {
+            release(service, acquired, applicationId);
+        }
+        return holders;
+    }
+
+    /**
+     * @return The application already holding the reservation, or null if it was reserved for this one
+     */
+    private static String reserve(ServiceIndex service, String type, String value, String applicationId) {
+        while (!service.reserved.putIfAbsent(type, value, applicationId)) {
+            String holder = service.reserved.get(type, value);
+            if (holder != null) {
+                return holder;
+            }
+            // Released between the two calls, try again
+        }
+        return null;
+    }
+
+    /**
+     * Release the identifiers reserved by a submission, after it is indexed or when it failed
+     */
+    public void release(YamlMetadataService metadataService, Map<String, String> identifiers, String applicationId) {
+        release(getService(metadataService), identifiers, applicationId);
+    }
+
+    private static void release(ServiceIndex service, Map<String, String> identifiers, String applicationId) {
+        for (Map.Entry<String, String> identifier : identifiers.entrySet()) {
+            service.reserved.remove(identifier.getKey(), identifier.getValue(), applicationId);
+        }
+    }
+
+    private void find(ServiceIndex service, Store store, Source source, String value, List<Match> matches)
+            throws Exception {
+        if (!service.ready) {
+            for (String applicationId : store.findApplicationIds(source, value)) {
+                matches.add(new Match(source.type, value, applicationId));
+            }
+            return;
+        }
+
+        String candidate = service.index.get(source.type, value);
+        if (candidate == null) {
+            return;
+        }
+        String stored = store.loadValue(source, candidate);
+        if (stored != null && stored.trim().equalsIgnoreCase(value)) {
+            matches.add(new Match(source.type, value, candidate));
+        } else {
+            // Changed or deleted since it was indexed, or a different identifier with the same hash
+            service.index.remove(source.type, value, candidate);
+            for (String applicationId : store.findApplicationIds(source, value)) {
+                service.index.put(source.type, value, applicationId);
+                matches.add(new Match(source.type, value, applicationId));
+            }
+        }
+    }
+
+    /**
+     * Get a service's index, replacing it when a newer configuration changed the identifier sources
+     * Requests still on an older snapshot use the current index, so a reload never swaps back and forth.
+     * Reservations are carried over to the replacement, they hold for submissions in flight.
+     */
+    private ServiceIndex getService(YamlMetadataService metadataService) {
+        String serviceId = metadataService.getServiceId();
+        long generation = metadataService.getSnapshotGeneration();
+        while (true) {
+            ServiceIndex service = services.get(serviceId);
+            if (service == null) {
+                ServiceIndex created = new ServiceIndex(generation, resolveSources(metadataService), new IdentifierIndex());
+                if (services.putIfAbsent(serviceId, created) == null) {
+                    return created;
+                }
+                continue;
+            }
+            if (generation <= service.generation.get()) {
+                return service;
+            }
+
+            Map<String, Source> sources = resolveSources(metadataService);
+            if (sources.equals(service.sources)) {
+                service.generation.accumulateAndGet(generation, Math::max);
+                return service;
+            }
+            ServiceIndex replacement = new ServiceIndex(generation, sources, service.reserved);
+            if (services.replace(serviceId, service, replacement)) {
+                LOG.info("Identifier sources of service {} changed, rebuilding its index", serviceId);
+                return replacement;
+            }
+        }
+    }
+
+    private ServiceIndex ensureBuilding(YamlMetadataService metadataService, Store store) {
+        ServiceIndex service = getService(metadataService);
+        if (!service.ready && service.built.getCount() > 0) {
+            startBuild(metadataService.getServiceId(), service, store);
+        }
+        return service;
+    }
+
+    private void startBuild(String serviceId, ServiceIndex service, Store store) {
+        if (!building.add(service)) {
+            return;
+        }
+        getExecutor().submit(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                for (Source source : service.sources.values()) {
+                    store.scan(source, (applicationId, value) -> {
+                        if (applicationId != null && value != null && !value.trim().isEmpty()) {
+                            service.index.putIfAbsent(source.type, value, applicationId);
+                        }
+                    });
+                }
+                service.ready = true;
+                service.built.countDown();
+                LOG.info("Indexed {} identifiers of service {} in {} ms", service.index.size(), serviceId,
+                        System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                // Lookups keep querying the forms, the next request retries the scan
+                LOG.warn("Could not build identifier index for service {}: {}", serviceId, e.getMessage());
+            } finally {
+                building.remove(service);
+            }
+        });
+    }
+
+    /**
+     * Wait for a service's index to be built
+     * @return true if the index is ready
+     */
+    public boolean awaitReady(String serviceId, long timeoutMillis) throws InterruptedException {
+        ServiceIndex service = services.get(serviceId);
+        return service != null && service.built.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return The number of indexed identifiers of a service, or -1 if its index is not built
+     */
+    public int size(String serviceId) {
+        ServiceIndex service = services.get(serviceId);
+        return service != null && service.ready ? service.index.size() : -1;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "govstack-identifier-index");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Stop any running scan and drop all indexes, used when the plugin is stopped
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        services.clear();
+        building.clear();
+    }
+}
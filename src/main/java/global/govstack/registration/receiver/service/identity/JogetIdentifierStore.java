@@ -0,0 +1,126 @@
+package global.govstack.registration.receiver.service.identity;
+
+import org.joget.apps.app.model.AppDefinition;
+import org.joget.apps.app.service.AppService;
+import org.joget.apps.app.service.AppUtil;
+import org.joget.apps.form.dao.FormDataDao;
+import org.joget.apps.form.model.FormRow;
+import org.joget.apps.form.model.FormRowSet;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads identifiers from Joget forms using FormDataDao
+ *
+ * The app definition is captured when the store is created (on a request thread) and
+ * re-applied on the index build thread, which has no app context of its own. The build
+ * scan reads only the id and identifier columns over JDBC, a page at a time with a keyset
+ * condition on id (id &gt; last id, ordered by id), so every page costs the same however
+ * large the form is and it is never held in memory at once.
+ */
+public class JogetIdentifierStore implements IdentifierIndexRegistry.Store {
+
+    static final int PAGE_SIZE = 2000;
+    private static final String TABLE_PREFIX = "app_fd_";
+
+    private final AppDefinition appDef;
+
+    public JogetIdentifierStore() {
+        this.appDef = AppUtil.getCurrentAppDefinition();
+    }
+
+    @Override
+    public void scan(IdentifierIndexRegistry.Source source, IdentifierIndexRegistry.RowHandler handler)
+            throws SQLException {
+        String tableName = withAppDefinition(() -> getTableName(source));
+        String table = tableName.startsWith(TABLE_PREFIX) ? tableName : TABLE_PREFIX + tableName;
+        String column = "c_" + source.getField();
+        DataSource dataSource = (DataSource) AppUtil.getApplicationContext().getBean("setupDataSource");
+        try (Connection connection = dataSource.getConnection()) {
+            String lastId = null;
+            while (true) {
+                String sql = "SELECT id, " + column + " FROM " + table
+                        + (lastId != null ? " WHERE id > ?" : "") + " ORDER BY id";
+                int count = 0;
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    // setMaxRows rather than LIMIT, which is not portable across the databases Joget supports
+                    statement.setMaxRows(PAGE_SIZE);
+                    statement.setFetchSize(PAGE_SIZE);
+                    if (lastId != null) {
+                        statement.setString(1, lastId);
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            lastId = resultSet.getString(1);
+                            handler.row(lastId, resultSet.getString(2));
+                            count++;
+                        }
+                    }
+                }
+                if (count < PAGE_SIZE) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String loadValue(IdentifierIndexRegistry.Source source, String applicationId) {
+        return withAppDefinition(() -> {
+            FormRow row = getFormDataDao().load(source.getFormId(), getTableName(source), applicationId);
+            return row != null ? row.getProperty(source.getField()) : null;
+        });
+    }
+
+    @Override
+    public List<String> findApplicationIds(IdentifierIndexRegistry.Source source, String value) {
+        return withAppDefinition(() -> {
+            FormRowSet rows = getFormDataDao().find(source.getFormId(), getTableName(source),
+                    "WHERE c_" + source.getField() + " = ?", new Object[]{value}, null, null, null, null);
+            List<String> applicationIds = new ArrayList<>();
+            if (rows != null) {
+                for (FormRow row : rows) {
+                    applicationIds.add(row.getId());
+                }
+            }
+            return applicationIds;
+        });
+    }
+
+    private String getTableName(IdentifierIndexRegistry.Source source) {
+        AppService appService = (AppService) AppUtil.getApplicationContext().getBean("appService");
+        String tableName = appService.getFormTableName(appDef, source.getFormId());
+        if (tableName == null || tableName.isEmpty()) {
+            throw new IllegalStateException("No table for identifier form: " + source.getFormId());
+        }
+        return tableName;
+    }
+
+    private static FormDataDao getFormDataDao() {
+        return (FormDataDao) AppUtil.getApplicationContext().getBean("formDataDao");
+    }
+
+    private interface Read<T> {
+        T run();
+    }
+
+    private <T> T withAppDefinition(Read<T> read) {
+        AppDefinition previous = AppUtil.getCurrentAppDefinition();
+        try {
+            if (previous == null && appDef != null) {
+                AppUtil.setCurrentAppDefinition(appDef);
+            }
+            return read.run();
+        } finally {
+            if (previous == null && appDef != null) {
+                AppUtil.setCurrentAppDefinition(null);
+            }
+        }
+    }
+}
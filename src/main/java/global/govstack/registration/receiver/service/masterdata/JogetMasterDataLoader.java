@@ -0,0 +1,60 @@
+package global.govstack.registration.receiver.service.masterdata;
+
+import org.joget.apps.app.model.AppDefinition;
+import org.joget.apps.app.service.AppService;
+import org.joget.apps.app.service.AppUtil;
+import org.joget.apps.form.dao.FormDataDao;
+import org.joget.apps.form.model.FormRow;
+import org.joget.apps.form.model.FormRowSet;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads master data code tables from Joget forms using FormDataDao
+ *
+ * The app definition is captured when the loader is created (on a request thread)
+ * and re-applied on the background refresh thread, which has no app context of its own.
+ */
+public class JogetMasterDataLoader implements MasterDataCache.Loader {
+
+    private final AppDefinition appDef;
+
+    public JogetMasterDataLoader() {
+        this.appDef = AppUtil.getCurrentAppDefinition();
+    }
+
+    @Override
+    public Map<String, String> loadCodes(MasterDataCache.Source source) throws Exception {
+        AppDefinition previous = AppUtil.getCurrentAppDefinition();
+        try {
+            if (previous == null && appDef != null) {
+                AppUtil.setCurrentAppDefinition(appDef);
+            }
+
+            AppService appService = (AppService) AppUtil.getApplicationContext().getBean("appService");
+            FormDataDao formDataDao = (FormDataDao) AppUtil.getApplicationContext().getBean("formDataDao");
+
+            String tableName = appService.getFormTableName(appDef, source.getFormId());
+            if (tableName == null || tableName.isEmpty()) {
+                throw new IllegalStateException("No table for master data form: " + source.getFormId());
+            }
+
+            FormRowSet rows = formDataDao.find(source.getFormId(), tableName, null, null, null, null, null, null);
+            Map<String, String> codes = new HashMap<>();
+            if (rows != null) {
+                for (FormRow row : rows) {
+                    String code = row.getProperty(source.getCodeColumn());
+                    if (code != null && !code.trim().isEmpty()) {
+                        codes.put(code.trim(), row.getProperty(source.getLabelColumn()));
+                    }
+                }
+            }
+            return codes;
+        } finally {
+            if (previous == null && appDef != null) {
+                AppUtil.setCurrentAppDefinition(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package global.govstack.registration.receiver.service.masterdata;
+
+import org.joget.apps.app.model.AppDefinition;
+import org.joget.commons.util.LogUtil;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory cache of master data code tables (district, cropType, relationship, ...)
+ *
+ * Code tables are loaded once from their Joget forms and kept as immutable hash maps,
+ * so validating and canonicalising a code at mapping time is a single O(1) lookup.
+ * Tables are refreshed by a background task and swapped in atomically, requests never
+ * wait on a reload after the first load.
+ *
+ * There is one cache per Joget app version (see {@link #getInstance(AppDefinition)}), shared by all services
+ * of the app, with code tables keyed by form ID. A table that fails to load is remembered
+ * with a growing backoff, so while the database is failing requests do not run the query
+ * again; when a background refresh is scheduled, only the refresh retries it.
+ */
+public class MasterDataCache {
+    private static final String CLASS_NAME = MasterDataCache.class.getName();
+
+    private static final ConcurrentMap<String, MasterDataCache> INSTANCES = new ConcurrentHashMap<>();
+
+    static final long INITIAL_BACKOFF_MILLIS = 30_000;
+    static final long MAX_BACKOFF_MILLIS = 15 * 60_000;
+
+    /**
+     * Loads the rows of a master data form as code → label pairs
+     */
+    public interface Loader {
+        Map<String, String> loadCodes(Source source) throws Exception;
+    }
+
+    /**
+     * Where the codes for a master data field come from
+     */
+    public static class Source {
+        private final String formId;
+        private final String codeColumn;
+        private final String labelColumn;
+
+        public Source(String formId, String codeColumn, String labelColumn) {
+            this.formId = formId;
+            this.codeColumn = codeColumn != null ? codeColumn : "code";
+            this.labelColumn = labelColumn != null ? labelColumn : "name";
+        }
+
+        public static Source fromConfig(Map<String, String> config) {
+            return new Source(config.get("formId"), config.get("codeColumn"), config.get("labelColumn"));
+        }
+
+        public String getFormId() {
+            return formId;
+        }
+
+        public String getCodeColumn() {
+            return codeColumn;
+        }
+
+        public String getLabelColumn() {
+            return labelColumn;
+        }
+    }
+
+    /**
+     * Immutable snapshot of one code table
+     */
+    public static class CodeTable {
+        private final Map<String, String> codeToLabel;
+        private final Map<String, String> lookupToCode;
+        private final long loadedAt;
+
+        public CodeTable(Map<String, String> codes) {
+            Map<String, String> labels = new HashMap<>(codes.size() * 2);
+            Map<String, String> lookup = new HashMap<>(codes.size() * 4);
+
+            for (Map.Entry<String, String> entry : codes.entrySet()) {
+                String code = entry.getKey();
+                if (code == null || code.isEmpty()) {
+                    continue;
+                }
+                labels.put(code, entry.getValue());
+                lookup.put(code, code);
+                lookup.putIfAbsent(lookupKey(code), code);
+            }
+            // Labels resolve to codes only when they do not clash with an existing code
+            for (Map.Entry<String, String> entry : labels.entrySet()) {
+                if (entry.getValue() != null && !entry.getValue().isEmpty()) {
+                    lookup.putIfAbsent(lookupKey(entry.getValue()), entry.getKey());
+                }
+            }
+
+            this.codeToLabel = Collections.unmodifiableMap(labels);
+            this.lookupToCode = Collections.unmodifiableMap(lookup);
+            this.loadedAt = System.currentTimeMillis();
+        }
+
+        /**
+         * Resolve a submitted value to its canonical code
+         * Accepts the exact code, the code in a different case, or the label
+         *
+         * @return The canonical code, or null if the value is not a known code
+         */
+        public String canonicalise(String value) {
+            String code = lookupToCode.get(value);
+            if (code == null) {
+                code = lookupToCode.get(lookupKey(value));
+            }
+            return code;
+        }
+
+        public String getLabel(String code) {
+            return codeToLabel.get(code);
+        }
+
+        public int size() {
+            return codeToLabel.size();
+        }
+
+        public long getLoadedAt() {
+            return loadedAt;
+        }
+
+        private static String lookupKey(String value) {
+            return value.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * A code table that could not be loaded, and when a request may try it again
+     */
+    private static final class Failure {
+        final long retryAt;
+        final long backoff;
+
+        Failure(long retryAt, long backoff) {
+            this.retryAt = retryAt;
+            this.backoff = backoff;
+        }
+    }
+
+    private final Map<String, Source> sources = new ConcurrentHashMap<>();
+    private final Map<String, Failure> failures = new ConcurrentHashMap<>();
+    private volatile Map<String, CodeTable> tables = Collections.emptyMap();
+    private volatile Loader loader;
+    private ScheduledExecutorService scheduler;
+    private volatile ScheduledFuture<?> refreshTask;
+    private long refreshSeconds;
+
+    /**
+     * Get the cache of requests outside a Joget app, e.g. tests and benchmarks
+     */
+    public static MasterDataCache getInstance() {
+        return getInstance("");
+    }
+
+    /**
+     * Get the cache of a Joget app version, whose forms hold the code tables
+     * @param appDef The app, or null outside a Joget app
+     */
+    public static MasterDataCache getInstance(AppDefinition appDef) {
+        return getInstance(appDef != null ? appDef.getId() + "#" + appDef.getVersion() : "");
+    }
+
+    private static MasterDataCache getInstance(String appKey) {
+        return INSTANCES.computeIfAbsent(appKey, key -> new MasterDataCache());
+    }
+
+    /**
+     * Stop and drop the caches of every app, used when the plugin is stopped
+     */
+    public static void shutdownAll() {
+        for (MasterDataCache cache : INSTANCES.values()) {
+            cache.shutdown();
+        }
+        INSTANCES.clear();
+    }
+
+    /**
+     * Register master data sources and load any code tables not loaded yet
+     * Only the first call for a form pays the load cost; later calls are map lookups
+     *
+     * @param fieldSources Map of field name to its source
+     * @param loader The loader to use when tables need loading
+     * @param refreshSeconds Background refresh interval (0 or less disables refresh)
+     */
+    public void register(Map<String, Source> fieldSources, Loader loader, long refreshSeconds) {
+        if (fieldSources == null || fieldSources.isEmpty()) {
+            return;
+        }
+        if (this.loader == null) {
+            this.loader = loader;
+        }
+
+        boolean missing = false;
+        for (Map.Entry<String, Source> entry : fieldSources.entrySet()) {
+            Source source = entry.getValue();
+            if (source.getFormId() == null) {
+                continue;
+            }
+            sources.putIfAbsent(source.getFormId(), source);
+            if (!tables.containsKey(source.getFormId()) && mayLoadNow(source.getFormId())) {
+                missing = true;
+            }
+        }
+
+        scheduleRefresh(refreshSeconds);
+        if (missing) {
+            synchronized (this) {
+                loadMissing();
+            }
+        }
+    }
+
+    /**
+     * A table that failed to load is tried again by the refresh task if there is one,
+     * otherwise by a request once its backoff has passed
+     */
+    private boolean mayLoadNow(String formId) {
+        Failure failure = failures.get(formId);
+        if (failure == null) {
+            return true;
+        }
+        return refreshTask == null && System.currentTimeMillis() >= failure.retryAt;
+    }
+
+    /**
+     * Check whether the last load of a code table failed
+     */
+    public boolean hasFailed(String formId) {
+        return formId != null && failures.containsKey(formId);
+    }
+
+    /**
+     * Check whether a code table has been loaded
+     */
+    public boolean isLoaded(String formId) {
+        return formId != null && tables.containsKey(formId);
+    }
+
+    /**
+     * Get a loaded code table
+     * @return The table, or null if not loaded
+     */
+    public CodeTable getTable(String formId) {
+        return formId != null ? tables.get(formId) : null;
+    }
+
+    /**
+     * Resolve a code to its label
+     * @return The label, or null if the table or code is unknown
+     */
+    public String getLabel(String formId, String code) {
+        CodeTable table = getTable(formId);
+        return table != null && code != null ? table.getLabel(code) : null;
+    }
+
+    /**
+     * Reload all registered code tables and swap them in atomically
+     */
+    public void refresh() {
+        Loader currentLoader = loader;
+        if (currentLoader == null) {
+            return;
+        }
+
+        Map<String, CodeTable> reloaded = new HashMap<>(tables);
+        for (Source source : sources.values()) {
+            CodeTable table = load(currentLoader, source, false);
+            if (table != null) {
+                reloaded.put(source.getFormId(), table);
+            }
+        }
+        tables = Collections.unmodifiableMap(reloaded);
+        LogUtil.debug(CLASS_NAME, "Refreshed " + reloaded.size() + " master data tables");
+    }
+
+    /**
+     * Stop the background refresh and drop all cached tables
+     */
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            refreshTask = null;
+            refreshSeconds = 0;
+        }
+        tables = Collections.emptyMap();
+        sources.clear();
+        failures.clear();
+        loader = null;
+    }
+
+    private void loadMissing() {
+        Map<String, CodeTable> updated = null;
+        for (Source source : sources.values()) {
+            if (tables.containsKey(source.getFormId()) || (updated != null && updated.containsKey(source.getFormId()))
+                    || !mayLoadNow(source.getFormId())) {
+                continue;
+            }
+            CodeTable table = load(loader, source, true);
+            if (table != null) {
+                if (updated == null) {
+                    updated = new HashMap<>(tables);
+                }
+                updated.put(source.getFormId(), table);
+            }
+        }
+        if (updated != null) {
+            tables = Collections.unmodifiableMap(updated);
+        }
+    }
+
+    /**
+     * @param reportKnownFailure false to log a table that keeps failing only once
+     */
+    private CodeTable load(Loader currentLoader, Source source, boolean reportKnownFailure) {
+        String formId = source.getFormId();
+        try {
+            Map<String, String> codes = currentLoader.loadCodes(source);
+            if (codes == null) {
+                return null;
+            }
+            CodeTable table = new CodeTable(codes);
+            if (failures.remove(formId) != null) {
+                LogUtil.info(CLASS_NAME, "Master data form " + formId + " loaded again after failing");
+            }
+            LogUtil.info(CLASS_NAME, "Loaded " + table.size() + " codes from master data form: " + formId);
+            return table;
+        } catch (Exception e) {
+            Failure previous = failures.get(formId);
+            long backoff = previous == null ? INITIAL_BACKOFF_MILLIS : Math.min(previous.backoff * 2, MAX_BACKOFF_MILLIS);
+            failures.put(formId, new Failure(System.currentTimeMillis() + backoff, backoff));
+            if (previous == null || reportKnownFailure) {
+                LogUtil.warn(CLASS_NAME, "Could not load master data form " + formId + ", retrying in "
+                        + backoff / 1000 + "s: " + e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    private synchronized void scheduleRefresh(long seconds) {
+        if (seconds <= 0 || (refreshTask != null && refreshSeconds <= seconds)) {
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "govstack-masterdata-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+        }
+        refreshSeconds = seconds;
+        refreshTask = scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                LogUtil.warn(CLASS_NAME, "Master data refresh failed: " + e.getMessage());
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+        LogUtil.info(CLASS_NAME, "Master data refresh scheduled every " + seconds + "s");
+    }
+}
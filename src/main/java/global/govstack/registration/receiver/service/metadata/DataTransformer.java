@@ -1,6 +1,6 @@
 package global.govstack.registration.receiver.service.metadata;
 
-import org.joget.commons.util.LogUtil;
+import global.govstack.registration.receiver.util.ProcessingLog;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -10,7 +10,7 @@ import java.util.*;
  * Service to transform data based on metadata rules
  */
 public class DataTransformer {
-    private static final String CLASS_NAME = DataTransformer.class.getName();
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(DataTransformer.class);
 
     // Date format patterns
     private static final String ISO_8601_PATTERN = "yyyy-MM-dd'T'HH:mm:ss'Z'";
@@ -47,11 +47,11 @@ public class DataTransformer {
                     return transformMultiCheckbox(value);
 
                 default:
-                    LogUtil.debug(CLASS_NAME, "Unknown transformation type: " + transformationType);
+                    LOG.debug("Unknown transformation type: {}", transformationType);
                     return value;
             }
         } catch (Exception e) {
-            LogUtil.warn(CLASS_NAME, "Error transforming value: " + value + " with transformation: " + transformationType + ". Error: " + e.getMessage());
+            LOG.warn("Error transforming value: {} with transformation: {}. Error: {}", value, transformationType, e.getMessage());
             return value;
         }
     }
@@ -70,7 +70,7 @@ public class DataTransformer {
         // Direct mapping
         if (valueMapping.containsKey(value)) {
             String mappedValue = valueMapping.get(value);
-            LogUtil.debug(CLASS_NAME, "Mapped value: " + value + " -> " + mappedValue);
+            LOG.debug("Mapped value: {} -> {}", value, mappedValue);
             return mappedValue;
         }
 
@@ -89,7 +89,7 @@ public class DataTransformer {
         }
 
         // Return original value if no mapping found
-        LogUtil.debug(CLASS_NAME, "No mapping found for value: " + value);
+        LOG.debug("No mapping found for value: {}", value);
         return value;
     }
 
@@ -121,7 +121,7 @@ public class DataTransformer {
             return jogetFormat.format(date);
 
         } catch (ParseException e) {
-            LogUtil.warn(CLASS_NAME, "Could not parse date: " + dateValue + ". Returning original value.");
+            LOG.warn("Could not parse date: {}. Returning original value.", dateValue);
             return dateValue;
         }
     }
@@ -167,7 +167,7 @@ public class DataTransformer {
             Double.parseDouble(cleaned);
             return cleaned;
         } catch (NumberFormatException e) {
-            LogUtil.warn(CLASS_NAME, "Could not parse numeric value: " + value);
+            LOG.warn("Could not parse numeric value: {}", value);
             return "0";
         }
     }
@@ -201,7 +201,7 @@ public class DataTransformer {
                 // Joget expects semicolon-separated values for multi-checkbox
                 return String.join(";", cleanedValues);
             } catch (Exception e) {
-                LogUtil.warn(CLASS_NAME, "Error parsing JSON array: " + value);
+                LOG.warn("Error parsing JSON array: {}", value);
                 return value;
             }
         }
@@ -0,0 +1,492 @@
+package global.govstack.registration.receiver.service.metadata;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import global.govstack.registration.receiver.util.ProcessingLog;
+import org.joget.apps.form.model.FormRow;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverse of {@link GovStackDataMapper}: assembles stored form rows back into a GovStack request
+ *
+ * The service's formMappings are compiled once into the forms and grids to load and, for
+ * each field, the parsed GovStack path and how to convert the stored value back (yes/no to
+ * boolean, numbers, multi-checkbox lists, 1/2 LOV codes to yes/no). Typed array elements
+ * such as identifiers and telecom are placed by their discriminator, not their position.
+ *
+ * Compiled assemblers are shared per service and replaced when the YAML content changes.
+ */
+public class GovStackDataAssembler {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(GovStackDataAssembler.class);
+
+    private static final Map<String, GovStackDataAssembler> COMPILED = new ConcurrentHashMap<>();
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    /**
+     * How a stored value is converted back to JSON
+     */
+    enum ValueType {
+        TEXT, BOOLEAN, NUMBER, LIST, ONE_TWO
+    }
+
+    /**
+     * One step of a path, a field name with an optional array index
+     */
+    private static class PathSegment {
+        private final String field;
+        private final int index;
+
+        private PathSegment(String field, int index) {
+            this.field = field;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Compiled inverse of one mapped field
+     */
+    private static class FieldPlan {
+        private final String jogetField;
+        private final PathSegment[] path;
+        private final PathSegment[] arrayPath;
+        private final String discriminator;
+        private final String typeValue;
+        private final ValueType valueType;
+
+        private FieldPlan(String jogetField, PathSegment[] path, PathSegment[] arrayPath, String discriminator,
+                          String typeValue, ValueType valueType) {
+            this.jogetField = jogetField;
+            this.path = path;
+            this.arrayPath = arrayPath;
+            this.discriminator = discriminator;
+            this.typeValue = typeValue;
+            this.valueType = valueType;
+        }
+    }
+
+    /**
+     * A grid whose rows are stored in their own form, linked to the application by a parent column
+     */
+    public static class GridPlan {
+        private final String gridName;
+        private final String formId;
+        private final String parentColumn;
+        private final PathSegment[] arrayPath;
+        private final List<FieldPlan> fields;
+
+        private GridPlan(String gridName, String formId, String parentColumn, PathSegment[] arrayPath,
+                         List<FieldPlan> fields) {
+            this.gridName = gridName;
+            this.formId = formId;
+            this.parentColumn = parentColumn;
+            this.arrayPath = arrayPath;
+            this.fields = fields;
+        }
+
+        public String getGridName() {
+            return gridName;
+        }
+
+        public String getFormId() {
+            return formId;
+        }
+
+        public String getParentColumn() {
+            return parentColumn;
+        }
+
+        /**
+         * @return The Joget fields of a grid row, in mapping order
+         */
+        public List<String> getFieldNames() {
+            return fieldNames(fields);
+        }
+    }
+
+    private final String contentHash;
+    private final String parentFormId;
+    private final Map<String, List<FieldPlan>> sections;
+    private final List<GridPlan> grids;
+
+    private GovStackDataAssembler(String contentHash, String parentFormId, Map<String, List<FieldPlan>> sections,
+                                  List<GridPlan> grids) {
+        this.contentHash = contentHash;
+        this.parentFormId = parentFormId;
+        this.sections = sections;
+        this.grids = grids;
+    }
+
+    /**
+     * Get the compiled assembler for a service, compiling it if the YAML changed
+     * @param metadataService The loaded service configuration
+     * @return The shared assembler for the configuration
+     */
+    public static GovStackDataAssembler forMetadata(YamlMetadataService metadataService)
+            throws global.govstack.registration.receiver.exception.ConfigurationException {
+        String serviceId = metadataService.getServiceId();
+        String hash = metadataService.getContentHash();
+        GovStackDataAssembler current = COMPILED.get(serviceId);
+        if (current != null && hash != null && hash.equals(current.contentHash)) {
+            return current;
+        }
+
+        GovStackDataAssembler compiled = compile(metadataService);
+        COMPILED.put(serviceId, compiled);
+        LOG.info("Compiled read mapping for {}: {} forms, {} grids", serviceId, compiled.sections.size(), compiled.grids.size());
+        return compiled;
+    }
+
+    /**
+     * Drop all compiled assemblers
+     */
+    public static void clearCompiled() {
+        COMPILED.clear();
+    }
+
+    /**
+     * Compile the inverse mapping of a service configuration
+     * @param metadataService The loaded service configuration
+     * @return The compiled assembler
+     */
+    @SuppressWarnings("unchecked")
+    public static GovStackDataAssembler compile(YamlMetadataService metadataService)
+            throws global.govstack.registration.receiver.exception.ConfigurationException {
+        Map<String, String> sectionToFormMap = metadataService.getSectionToFormMap();
+        List<String> oneTwo = metadataService.getFieldNormalizationConfig().get("oneTwo");
+        Set<String> oneTwoFields = oneTwo != null ? new HashSet<>(oneTwo) : Collections.<String>emptySet();
+
+        Map<String, List<FieldPlan>> sections = new LinkedHashMap<>();
+        List<GridPlan> grids = new ArrayList<>();
+
+        for (Map.Entry<String, Object> entry : metadataService.getAllFormMappings().entrySet()) {
+            if (!(entry.getValue() instanceof Map)) {
+                continue;
+            }
+            String sectionName = entry.getKey();
+            Map<String, Object> section = (Map<String, Object>) entry.getValue();
+            List<Map<String, Object>> fields = section.get("fields") instanceof List
+                    ? (List<Map<String, Object>>) section.get("fields")
+                    : Collections.<Map<String, Object>>emptyList();
+
+            if ("array".equals(section.get("type"))) {
+                String formId = metadataService.getGridFormId(sectionName);
+                String path = (String) section.get("govstack");
+                if (formId == null || path == null) {
+                    LOG.warn("Array section {} has no grid form or path, not read back", sectionName);
+                    continue;
+                }
+                String parentColumn = metadataService.getGridParentColumn(sectionName);
+                if (parentColumn == null) {
+                    parentColumn = metadataService.getDefaultGridParentColumn();
+                }
+                grids.add(new GridPlan(sectionName, formId, parentColumn, parsePath(path),
+                        compileFields(fields, metadataService, oneTwoFields)));
+            } else {
+                String formId = sectionToFormMap != null ? sectionToFormMap.get(sectionName) : null;
+                if (formId == null) {
+                    continue;
+                }
+                List<FieldPlan> plans = sections.computeIfAbsent(formId, k -> new ArrayList<>());
+                plans.addAll(compileFields(fields, metadataService, oneTwoFields));
+            }
+        }
+
+        return new GovStackDataAssembler(metadataService.getContentHash(), metadataService.getParentFormId(),
+                sections, grids);
+    }
+
+    private static List<FieldPlan> compileFields(List<Map<String, Object>> fields, YamlMetadataService metadataService,
+                                                 Set<String> oneTwoFields) {
+        List<FieldPlan> plans = new ArrayList<>();
+        for (Map<String, Object> field : fields) {
+            String jogetField = (String) field.get("joget");
+            String govstackPath = (String) field.get("govstack");
+            String transform = (String) field.get("transform");
+            if (transform == null) {
+                transform = (String) field.get("transformation");
+            }
+            // Grid containers hold no value, their rows are read from the grid forms
+            if (jogetField == null || govstackPath == null || "grid".equals(transform)) {
+                continue;
+            }
+
+            ValueType valueType = valueType(transform, metadataService);
+            if (valueType == ValueType.TEXT && oneTwoFields.contains(jogetField)) {
+                valueType = ValueType.ONE_TWO;
+            }
+
+            PathSegment[] arrayPath = null;
+            String discriminator = null;
+            String typeValue = (String) field.get("typeValue");
+            String typePath = (String) field.get("govstackType");
+            PathSegment[] path = parsePath(govstackPath);
+            if (typePath != null && typeValue != null) {
+                // e.g. "telecom[1].value" + "telecom[1].system": element of "telecom" whose "system" is typeValue
+                int typeBracket = typePath.lastIndexOf('[');
+                int typeClose = typePath.indexOf("].", typeBracket);
+                int valueBracket = govstackPath.lastIndexOf('[');
+                int valueClose = govstackPath.indexOf("].", valueBracket);
+                if (typeBracket > 0 && typeClose > 0 && valueBracket > 0 && valueClose > 0
+                        && typePath.substring(0, typeBracket).equals(govstackPath.substring(0, valueBracket))) {
+                    arrayPath = parsePath(typePath.substring(0, typeBracket));
+                    discriminator = typePath.substring(typeClose + 2);
+                    path = parsePath(govstackPath.substring(valueClose + 2));
+                }
+            }
+            plans.add(new FieldPlan(jogetField, path, arrayPath, discriminator, typeValue, valueType));
+        }
+        return plans;
+    }
+
+    private static ValueType valueType(String transform, YamlMetadataService metadataService) {
+        if (transform == null) {
+            return ValueType.TEXT;
+        }
+        Map<String, Object> definition = metadataService.getTransformations().get(transform);
+        String type = definition != null ? (String) definition.get("type") : transform.toLowerCase();
+        if (type == null) {
+            return ValueType.TEXT;
+        }
+        switch (type.toLowerCase()) {
+            case "boolean":
+            case "yesnoboolean":
+                return ValueType.BOOLEAN;
+            case "number":
+            case "numeric":
+                return ValueType.NUMBER;
+            case "array":
+            case "multicheckbox":
+                return ValueType.LIST;
+            default:
+                return ValueType.TEXT;
+        }
+    }
+
+    /**
+     * Parse a dot path such as "name.given[0]" into its segments
+     */
+    static PathSegment[] parsePath(String path) {
+        String[] parts = path.split("\\.");
+        PathSegment[] segments = new PathSegment[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            int bracket = part.indexOf('[');
+            if (bracket > 0 && part.endsWith("]")) {
+                segments[i] = new PathSegment(part.substring(0, bracket),
+                        Integer.parseInt(part.substring(bracket + 1, part.length() - 1)));
+            } else {
+                segments[i] = new PathSegment(part, -1);
+            }
+        }
+        return segments;
+    }
+
+    public String getParentFormId() {
+        return parentFormId;
+    }
+
+    /**
+     * Forms holding the application's sections, all keyed by the application ID
+     */
+    public Set<String> getSectionFormIds() {
+        return sections.keySet();
+    }
+
+    /**
+     * @return The Joget fields read from a section form, in mapping order
+     */
+    public List<String> getSectionFieldNames(String formId) {
+        List<FieldPlan> fields = sections.get(formId);
+        return fields != null ? fieldNames(fields) : Collections.<String>emptyList();
+    }
+
+    public List<GridPlan> getGrids() {
+        return grids;
+    }
+
+    private static List<String> fieldNames(List<FieldPlan> fields) {
+        List<String> names = new ArrayList<>(fields.size());
+        for (FieldPlan field : fields) {
+            if (!names.contains(field.jogetField)) {
+                names.add(field.jogetField);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Assemble an application from its stored rows
+     * @param applicationId The application's primary key
+     * @param sectionRows Row of each section form, by form ID; missing forms are skipped
+     * @param gridRows Rows of each grid, by grid name
+     * @return The application in the GovStack request shape
+     */
+    public ObjectNode assemble(String applicationId, Map<String, FormRow> sectionRows,
+                               Map<String, List<FormRow>> gridRows) {
+        ObjectNode root = NODES.objectNode();
+        root.put("id", applicationId);
+
+        for (Map.Entry<String, List<FieldPlan>> section : sections.entrySet()) {
+            FormRow row = sectionRows.get(section.getKey());
+            if (row != null) {
+                applyFields(root, row, section.getValue());
+            }
+        }
+
+        for (GridPlan grid : grids) {
+            List<FormRow> rows = gridRows.get(grid.gridName);
+            if (rows == null || rows.isEmpty()) {
+                continue;
+            }
+            ArrayNode array = NODES.arrayNode();
+            for (FormRow row : rows) {
+                ObjectNode item = NODES.objectNode();
+                applyFields(item, row, grid.fields);
+                if (item.size() > 0) {
+                    array.add(item);
+                }
+            }
+            if (array.size() > 0) {
+                setPath(root, grid.arrayPath, array);
+            }
+        }
+        return root;
+    }
+
+    private static void applyFields(ObjectNode target, FormRow row, List<FieldPlan> fields) {
+        for (FieldPlan field : fields) {
+            String stored = row.getProperty(field.jogetField);
+            if (stored == null || stored.isEmpty()) {
+                continue;
+            }
+            JsonNode value = toJson(stored, field.valueType);
+            if (field.arrayPath != null) {
+                ObjectNode element = typedElement(target, field.arrayPath, field.discriminator, field.typeValue);
+                setPath(element, field.path, value);
+            } else {
+                setPath(target, field.path, value);
+            }
+        }
+    }
+
+    /**
+     * Convert a stored value back to its GovStack JSON value
+     */
+    static JsonNode toJson(String stored, ValueType valueType) {
+        switch (valueType) {
+            case BOOLEAN:
+                if ("yes".equalsIgnoreCase(stored) || "true".equalsIgnoreCase(stored)) {
+                    return BooleanNode.TRUE;
+                }
+                if ("no".equalsIgnoreCase(stored) || "false".equalsIgnoreCase(stored)) {
+                    return BooleanNode.FALSE;
+                }
+                return TextNode.valueOf(stored);
+            case NUMBER:
+                try {
+                    return NODES.numberNode(new BigDecimal(stored.trim()));
+                } catch (NumberFormatException e) {
+                    return TextNode.valueOf(stored);
+                }
+            case LIST:
+                ArrayNode list = NODES.arrayNode();
+                for (String item : stored.split(";")) {
+                    if (!item.trim().isEmpty()) {
+                        list.add(item.trim());
+                    }
+                }
+                return list;
+            case ONE_TWO:
+                if ("1".equals(stored)) {
+                    return TextNode.valueOf("yes");
+                }
+                if ("2".equals(stored)) {
+                    return TextNode.valueOf("no");
+                }
+                return TextNode.valueOf(stored);
+            default:
+                return TextNode.valueOf(stored);
+        }
+    }
+
+    /**
+     * Find the element of a typed array with the given discriminator value, adding it if absent
+     */
+    private static ObjectNode typedElement(ObjectNode root, PathSegment[] arrayPath, String discriminator,
+                                           String typeValue) {
+        ObjectNode parent = root;
+        for (int i = 0; i < arrayPath.length - 1; i++) {
+            parent = child(parent, arrayPath[i]);
+        }
+        PathSegment last = arrayPath[arrayPath.length - 1];
+        JsonNode existing = parent.get(last.field);
+        ArrayNode array = existing instanceof ArrayNode ? (ArrayNode) existing : parent.putArray(last.field);
+
+        for (JsonNode element : array) {
+            if (element instanceof ObjectNode && typeValue.equals(element.path(discriminator).asText(null))) {
+                return (ObjectNode) element;
+            }
+        }
+        ObjectNode element = array.addObject();
+        element.put(discriminator, typeValue);
+        return element;
+    }
+
+    /**
+     * Set a value at a path, creating the objects and arrays on the way
+     */
+    private static void setPath(ObjectNode root, PathSegment[] path, JsonNode value) {
+        ObjectNode parent = root;
+        for (int i = 0; i < path.length - 1; i++) {
+            parent = child(parent, path[i]);
+        }
+        PathSegment last = path[path.length - 1];
+        if (last.index < 0) {
+            parent.set(last.field, value);
+        } else {
+            ArrayNode array = array(parent, last.field, last.index);
+            array.set(last.index, value);
+        }
+    }
+
+    private static ObjectNode child(ObjectNode parent, PathSegment segment) {
+        if (segment.index < 0) {
+            JsonNode existing = parent.get(segment.field);
+            return existing instanceof ObjectNode ? (ObjectNode) existing : parent.putObject(segment.field);
+        }
+        ArrayNode array = array(parent, segment.field, segment.index);
+        JsonNode element = array.get(segment.index);
+        if (element instanceof ObjectNode) {
+            return (ObjectNode) element;
+        }
+        ObjectNode created = NODES.objectNode();
+        array.set(segment.index, created);
+        return created;
+    }
+
+    /**
+     * Get the array of a field, padded with nulls so the index can be set
+     */
+    private static ArrayNode array(ObjectNode parent, String field, int index) {
+        JsonNode existing = parent.get(field);
+        ArrayNode array = existing instanceof ArrayNode ? (ArrayNode) existing : parent.putArray(field);
+        while (array.size() <= index) {
+            array.add(NullNode.getInstance());
+        }
+        return array;
+    }
+}
@@ -4,10 +4,20 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.joget.commons.util.LogUtil;
 import global.govstack.registration.receiver.exception.FormSubmissionException;
+import global.govstack.registration.receiver.exception.ValidationException;
+import global.govstack.registration.receiver.service.masterdata.JogetMasterDataLoader;
+import global.govstack.registration.receiver.service.masterdata.MasterDataCache;
+import global.govstack.registration.receiver.service.normalization.LovOptionIndex;
+import global.govstack.registration.receiver.util.DiscriminatorIndex;
+import global.govstack.registration.receiver.util.FormDefinitionReader;
+import org.joget.apps.app.model.AppDefinition;
+import org.joget.apps.app.service.AppUtil;
 import global.govstack.registration.receiver.util.JsonPathExtractor;
+import global.govstack.registration.receiver.util.ProcessingLog;
 import global.govstack.registration.receiver.service.normalization.ValueNormalizer;
 import com.fasterxml.jackson.databind.node.TextNode;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
@@ -17,10 +27,12 @@ import java.util.*;
  */
 public class GovStackDataMapper {
     private static final String CLASS_NAME = GovStackDataMapper.class.getName();
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(GovStackDataMapper.class);
     private final YamlMetadataService metadataService;
     private final DataTransformer dataTransformer;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final ValueNormalizer valueNormalizer;
+    private final String masterDataValidationMode;
 
     // Map YAML sections to actual form IDs - now loaded from configuration
     private Map<String, String> sectionToFormMap = null;
@@ -36,6 +48,11 @@ public class GovStackDataMapper {
         // Initialize ValueNormalizer with metadata service for configuration-driven master data fields
         this.valueNormalizer = new ValueNormalizer(metadataService);
 
+        // Enable master data code validation from the shared code table cache
+        this.masterDataValidationMode = metadataService.getMasterDataValidationMode();
+        initializeMasterDataValidation();
+        initializeLovOptionIndex();
+
         // Initialize section to form map from configuration
         initializeSectionToFormMap();
 
@@ -55,7 +72,7 @@ public class GovStackDataMapper {
         if (configMap != null && !configMap.isEmpty()) {
             // Use configuration
             this.sectionToFormMap = new HashMap<>(configMap);
-            LogUtil.info(CLASS_NAME, "Loaded section to form map from configuration: " + sectionToFormMap.size() + " mappings");
+            LOG.debug("Loaded section to form map from configuration: {} mappings", sectionToFormMap.size());
         } else {
             // No hardcoded fallbacks - configuration is mandatory for truly generic operation
             LogUtil.error(CLASS_NAME, null, "CRITICAL: No sectionToFormMap found in YAML configuration. " +
@@ -67,6 +84,44 @@ public class GovStackDataMapper {
         }
     }
 
+    /**
+     * Register the configured master data code tables with the shared cache
+     * Tables are loaded once and then served from memory for every request
+     */
+    private void initializeMasterDataValidation() {
+        if ("off".equals(masterDataValidationMode) || valueNormalizer.getMasterDataSources().isEmpty()) {
+            return;
+        }
+
+        try {
+            MasterDataCache cache = MasterDataCache.getInstance(AppUtil.getCurrentAppDefinition());
+            cache.register(valueNormalizer.getMasterDataSources(), new JogetMasterDataLoader(),
+                    metadataService.getMasterDataRefreshSeconds());
+            valueNormalizer.setMasterDataCache(cache);
+        } catch (Exception e) {
+            LogUtil.warn(CLASS_NAME, "Master data validation disabled, code tables unavailable: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Attach the LOV option index built from the app's form definitions
+     * The index is shared by the app's mappers and rebuilt when its forms change
+     */
+    private void initializeLovOptionIndex() {
+        if (!metadataService.isLovIndexEnabled()) {
+            return;
+        }
+
+        try {
+            AppDefinition appDef = AppUtil.getCurrentAppDefinition();
+            LovOptionIndex index = LovOptionIndex.getOrLoadShared(appDef,
+                    () -> FormDefinitionReader.readFromApp(appDef), new File(metadataService.getLovIndexCacheDir()));
+            valueNormalizer.setLovOptionIndex(index);
+        } catch (Exception e) {
+            LogUtil.warn(CLASS_NAME, "LOV option index unavailable, using configured normalization only: " + e.getMessage());
+        }
+    }
+
     /**
      * Initialize field to column mappings from services.yml
      */
@@ -100,7 +155,7 @@ public class GovStackDataMapper {
                 }
 
                 fieldToColumnMappings.put(sectionName, sectionColumnMap);
-                LogUtil.info(CLASS_NAME, "Loaded column mappings for " + sectionName + ": " + sectionColumnMap.size() + " fields");
+                LOG.debug("Loaded column mappings for {}: {} fields", sectionName, sectionColumnMap.size());
             }
         } catch (Exception e) {
             LogUtil.error(CLASS_NAME, e, "Error initializing field to column mappings: " + e.getMessage());
@@ -114,23 +169,29 @@ public class GovStackDataMapper {
      *   - "arrayData": List of array/grid data
      *   - "primaryKey": The shared primary key
      */
-    public Map<String, Object> mapToMultipleForms(String jsonData) throws FormSubmissionException {
+    public Map<String, Object> mapToMultipleForms(String jsonData) throws FormSubmissionException, ValidationException {
+        JsonNode rootNode;
         try {
-            JsonNode rootNode = objectMapper.readTree(jsonData);
-            JsonNode dataNode = rootNode;
-
-            // Handle testData wrapper if present
-            if (rootNode.has("testData") && rootNode.get("testData").isArray()) {
-                JsonNode testDataArray = rootNode.get("testData");
-                if (testDataArray.size() > 0) {
-                    dataNode = testDataArray.get(0);
-                    LogUtil.info(CLASS_NAME, "Detected testData wrapper format");
-                }
-            }
+            rootNode = objectMapper.readTree(jsonData);
+        } catch (Exception e) {
+            throw new FormSubmissionException("Error mapping GovStack data: " + e.getMessage(), e);
+        }
+        return mapJsonToMultipleForms(rootNode);
+    }
+
+    /**
+     * Map an already parsed GovStack request to multiple Joget forms
+     * @see #mapToMultipleForms(String)
+     */
+    public Map<String, Object> mapJsonToMultipleForms(JsonNode rootNode) throws FormSubmissionException, ValidationException {
+        try {
+            JsonNode dataNode = unwrapTestData(rootNode);
 
             Map<String, Object> result = new HashMap<>();
             Map<String, Map<String, String>> formData = new HashMap<>();
             List<Map<String, Object>> arrayData = new ArrayList<>();
+            List<String> invalidCodes = new ArrayList<>();
+            DiscriminatorIndex discriminators = new DiscriminatorIndex(dataNode);
 
             // Generate primary key from ID or create new one
             String primaryKey = null;
@@ -150,23 +211,19 @@ public class GovStackDataMapper {
                 Map<String, Object> section = (Map<String, Object>) entry.getValue();
                 String sectionType = (String) section.get("type");
 
-                LogUtil.debug(CLASS_NAME, "Checking section: " + sectionName + " (type: " + sectionType + ")");
+                LOG.debug("Checking section: {} (type: {})", sectionName, sectionType);
 
                 if ("array".equals(sectionType)) {
                     // Handle array data (household members, crops, livestock)
-                    LogUtil.info(CLASS_NAME, "Found array section: " + sectionName);
-                    Map<String, Object> arrayResult = processArraySection(dataNode, sectionName, section);
+                    Map<String, Object> arrayResult = processArraySection(dataNode, sectionName, section, invalidCodes);
                     if (arrayResult != null) {
                         arrayData.add(arrayResult);
-                        LogUtil.info(CLASS_NAME, "Added array result for: " + sectionName);
-                    } else {
-                        LogUtil.info(CLASS_NAME, "No array result for: " + sectionName);
                     }
                 } else {
                     // Handle regular form fields
                     String formId = sectionToFormMap.get(sectionName);
                     if (formId == null) {
-                        LogUtil.warn(CLASS_NAME, "No form mapping for section: " + sectionName);
+                        LOG.warn("No form mapping for section: {}", sectionName);
                         continue;
                     }
 
@@ -179,29 +236,69 @@ public class GovStackDataMapper {
                     // Process fields
                     List<Map<String, Object>> fields = (List<Map<String, Object>>) section.get("fields");
                     if (fields != null) {
-                        processFields(dataNode, sectionName, fields, currentFormData);
-                        LogUtil.info(CLASS_NAME, "Processed " + currentFormData.size() + " fields for form: " + formId);
+                        processFields(discriminators, sectionName, fields, currentFormData, invalidCodes);
+                        LOG.verbose("Processed {} fields for form: {}", currentFormData.size(), formId);
                     }
                 }
             }
 
+            checkMasterDataCodes(invalidCodes);
+
             result.put("formData", formData);
             result.put("arrayData", arrayData);
 
             // Log summary
-            LogUtil.info(CLASS_NAME, "Mapped data to " + formData.size() + " forms with " + arrayData.size() + " array sections");
-            for (Map.Entry<String, Map<String, String>> e : formData.entrySet()) {
-                LogUtil.info(CLASS_NAME, "  Form " + e.getKey() + ": " + e.getValue().size() + " fields");
+            LOG.debug("Mapped data to {} forms with {} array sections", formData.size(), arrayData.size());
+            if (LOG.isVerbose()) {
+                for (Map.Entry<String, Map<String, String>> e : formData.entrySet()) {
+                    LOG.verbose("  Form {}: {} fields", e.getKey(), e.getValue().size());
+                }
             }
 
             return result;
 
+        } catch (ValidationException e) {
+            throw e;
         } catch (Exception e) {
             throw new FormSubmissionException("Error mapping GovStack data: " + e.getMessage(), e);
         }
     }
 
-    private void processFields(JsonNode dataNode, String sectionName, List<Map<String, Object>> fields, Map<String, String> targetData) {
+    /**
+     * Validate and canonicalise a master data value
+     * Invalid codes are collected and the submitted value is kept unchanged
+     */
+    private String resolveMasterDataValue(String jogetField, String value, List<String> invalidCodes) {
+        if (value == null || !valueNormalizer.isMasterDataField(jogetField)) {
+            return value;
+        }
+
+        String canonical = valueNormalizer.resolveMasterData(jogetField, value);
+        if (canonical == null) {
+            invalidCodes.add(jogetField + "='" + value + "'");
+            return value;
+        }
+        return canonical;
+    }
+
+    /**
+     * Apply the configured master data validation mode to the collected invalid codes
+     * @throws ValidationException if invalid codes were found and the mode is "reject"
+     */
+    private void checkMasterDataCodes(List<String> invalidCodes) throws ValidationException {
+        if (invalidCodes.isEmpty()) {
+            return;
+        }
+
+        String message = "Invalid master data codes: " + String.join(", ", invalidCodes);
+        if ("reject".equals(masterDataValidationMode)) {
+            throw new ValidationException(message);
+        }
+        LOG.warn(message);
+    }
+
+    private void processFields(DiscriminatorIndex discriminators, String sectionName, List<Map<String, Object>> fields,
+                               Map<String, String> targetData, List<String> invalidCodes) {
         for (Map<String, Object> field : fields) {
             String jogetField = (String) field.get("joget");
             String govstackPath = (String) field.get("govstack");
@@ -212,22 +309,14 @@ public class GovStackDataMapper {
             }
 
             try {
-                // Use jsonPath if specified, otherwise fall back to govstackPath
-                String extractPath = jsonPath != null ? jsonPath : govstackPath;
-
-                // Enhanced logging for debugging
-                if ("agriculturalManagementSkills".equals(jogetField)) {
-                    LogUtil.info(CLASS_NAME, "Processing agriculturalManagementSkills:");
-                    LogUtil.info(CLASS_NAME, "  - jsonPath: " + jsonPath);
-                    LogUtil.info(CLASS_NAME, "  - govstackPath: " + govstackPath);
-                    LogUtil.info(CLASS_NAME, "  - extractPath: " + extractPath);
-                }
+                // Typed array elements (telecom, identifiers) are selected by their discriminator
+                String value = jsonPath != null
+                        ? JsonPathExtractor.extractValue(discriminators.getRoot(), jsonPath)
+                        : discriminators.extractValue(govstackPath, (String) field.get("govstackType"),
+                                (String) field.get("typeValue"));
 
-                String value = JsonPathExtractor.extractValue(dataNode, extractPath);
-
-                if ("agriculturalManagementSkills".equals(jogetField)) {
-                    LogUtil.info(CLASS_NAME, "  - Extracted value: " + value);
-                }
+                LOG.verbose("Field '{}' extracted from {}: {}", jogetField, jsonPath != null ? jsonPath : govstackPath,
+                        ProcessingLog.describe(value));
 
                 // Apply transformations (check both "transform" and "transformation" for compatibility)
                 String transformation = (String) field.get("transform");
@@ -238,22 +327,20 @@ public class GovStackDataMapper {
                     value = dataTransformer.transformValue(value, transformation);
                 }
 
+                value = resolveMasterDataValue(jogetField, value, invalidCodes);
+
                 // Value mappings are now handled by ValueNormalizer
 
                 if (value != null && !value.isEmpty()) {
                     // IMPORTANT: Use field name, not column name for targetData
                     // Joget will automatically add c_ prefix when saving to database
                     targetData.put(jogetField, value);
-
-                    if ("agriculturalManagementSkills".equals(jogetField)) {
-                        LogUtil.info(CLASS_NAME, "  - Added to targetData with field '" + jogetField + "' and value: " + value);
-                    }
-                } else if ("agriculturalManagementSkills".equals(jogetField)) {
-                    LogUtil.info(CLASS_NAME, "  - NOT added to targetData (value is null or empty)");
+                } else {
+                    LOG.verbose("Field '{}' not stored, value is empty", jogetField);
                 }
 
             } catch (Exception e) {
-                LogUtil.debug(CLASS_NAME, "Could not extract value for " + jogetField + ": " + e.getMessage());
+                LOG.debug("Could not extract value for {}: {}", jogetField, e.getMessage());
             }
         }
     }
@@ -271,12 +358,50 @@ public class GovStackDataMapper {
         return fieldName;
     }
 
-    private Map<String, Object> processArraySection(JsonNode dataNode, String sectionName, Map<String, Object> section) {
-        LogUtil.info(CLASS_NAME, "Processing array section: " + sectionName);
+    /**
+     * Get the request data, removing the testData wrapper if present
+     * @param rootNode The parsed request
+     * @return The first testData entry, or the request itself
+     */
+    public static JsonNode unwrapTestData(JsonNode rootNode) {
+        if (rootNode != null && rootNode.has("testData") && rootNode.get("testData").isArray()) {
+            JsonNode testDataArray = rootNode.get("testData");
+            if (testDataArray.size() > 0) {
+                LOG.debug("Detected testData wrapper format");
+                return testDataArray.get(0);
+            }
+        }
+        return rootNode;
+    }
+
+    /**
+     * Check an array section's control field value
+     * A "yes" control value also accepts true and 1
+     *
+     * @param controlValue The configured value that enables the section
+     * @param actualValue The value in the request (may be null)
+     * @return true if the array section should be processed
+     */
+    public static boolean matchesControlValue(String controlValue, String actualValue) {
+        if (actualValue == null) {
+            return false;
+        }
+        // Check for various "yes" representations
+        if ("yes".equalsIgnoreCase(controlValue)) {
+            return "yes".equalsIgnoreCase(actualValue) ||
+                   "true".equalsIgnoreCase(actualValue) ||
+                   "1".equals(actualValue);
+        }
+        return controlValue.equals(actualValue);
+    }
+
+    private Map<String, Object> processArraySection(JsonNode dataNode, String sectionName, Map<String, Object> section,
+                                                    List<String> invalidCodes) {
+        LOG.verbose("Processing array section: {}", sectionName);
 
         String govstackPath = (String) section.get("govstack");
         if (govstackPath == null) {
-            LogUtil.warn(CLASS_NAME, "No govstack path for array section: " + sectionName);
+            LOG.warn("No govstack path for array section: {}", sectionName);
             return null;
         }
 
@@ -285,61 +410,44 @@ public class GovStackDataMapper {
         String controlValue = (String) section.get("controlValue");
         if (controlField != null && controlValue != null) {
             String actualValue = JsonPathExtractor.extractValue(dataNode, controlField);
-            LogUtil.info(CLASS_NAME, "Checking control field '" + controlField + "': expected '" + controlValue + "', actual '" + actualValue + "'");
-
-            // More flexible control field checking
-            boolean shouldProcess = false;
-            if (actualValue != null) {
-                // Check for various "yes" representations
-                if ("yes".equalsIgnoreCase(controlValue)) {
-                    shouldProcess = "yes".equalsIgnoreCase(actualValue) ||
-                                   "true".equalsIgnoreCase(actualValue) ||
-                                   "1".equals(actualValue) ||
-                                   Boolean.TRUE.toString().equals(actualValue);
-                } else {
-                    shouldProcess = controlValue.equals(actualValue);
-                }
-            }
-
-            if (!shouldProcess) {
-                LogUtil.info(CLASS_NAME, "Control field check failed for " + sectionName + ", skipping array");
+            if (!matchesControlValue(controlValue, actualValue)) {
+                LOG.verbose("Control field '{}' is {}, expected '{}': skipping array section {}",
+                        controlField, ProcessingLog.describe(actualValue), controlValue, sectionName);
                 return null;
             }
-            LogUtil.info(CLASS_NAME, "Control field check passed for " + sectionName);
         }
 
-        LogUtil.info(CLASS_NAME, "Looking for array at path: " + govstackPath);
-
         try {
             JsonNode arrayNode = JsonPathExtractor.extractNode(dataNode, govstackPath);
 
             if (arrayNode == null) {
-                LogUtil.info(CLASS_NAME, "No node found at path: " + govstackPath);
+                LOG.verbose("No node found at path: {}", govstackPath);
                 // Try to debug what's at the parent path
-                if (govstackPath.contains(".")) {
+                if (LOG.isVerbose() && govstackPath.contains(".")) {
                     String parentPath = govstackPath.substring(0, govstackPath.lastIndexOf("."));
                     JsonNode parentNode = JsonPathExtractor.extractNode(dataNode, parentPath);
                     if (parentNode != null) {
-                        LogUtil.info(CLASS_NAME, "Parent node at '" + parentPath + "' exists, fields: " + parentNode.fieldNames());
+                        LOG.verbose("Parent node at '{}' exists, fields: {}", parentPath, parentNode.fieldNames());
                     }
                 }
                 return null;
             }
 
             if (!arrayNode.isArray()) {
-                LogUtil.info(CLASS_NAME, "Node at path " + govstackPath + " is not an array, type: " + arrayNode.getNodeType());
+                LOG.verbose("Node at path {} is not an array, type: {}", govstackPath, arrayNode.getNodeType());
                 return null;
             }
 
             if (arrayNode.size() == 0) {
-                LogUtil.info(CLASS_NAME, "Array at path " + govstackPath + " is empty");
+                LOG.verbose("Array at path {} is empty", govstackPath);
                 return null;
             }
 
-            LogUtil.info(CLASS_NAME, "Found array with " + arrayNode.size() + " items at path: " + govstackPath);
+            LOG.verbose("Found array with {} items at path: {}", arrayNode.size(), govstackPath);
 
             List<Map<String, String>> rows = new ArrayList<>();
             List<Map<String, Object>> fields = (List<Map<String, Object>>) section.get("fields");
+            String formId = (String) section.get("formId");
 
             for (JsonNode item : arrayNode) {
                 Map<String, String> row = new HashMap<>();
@@ -366,7 +474,8 @@ public class GovStackDataMapper {
 
                             if (valueNode != null && !valueNode.isNull()) {
                                 // Normalize the value based on field name
-                                String value = valueNormalizer.normalizeToLOV(valueNode, jogetField);
+                                String value = valueNormalizer.normalizeToLOV(valueNode, formId, jogetField);
+                                value = resolveMasterDataValue(jogetField, value, invalidCodes);
 
                                 if (value != null && !value.isEmpty()) {
                                     row.put(jogetField, value);
@@ -385,17 +494,14 @@ public class GovStackDataMapper {
                 Map<String, Object> result = new HashMap<>();
                 result.put("gridName", sectionName);
                 result.put("rows", rows);
-                LogUtil.info(CLASS_NAME, "Successfully processed " + rows.size() + " rows for array section: " + sectionName);
+                LOG.verbose("Processed {} rows for array section: {}", rows.size(), sectionName);
                 return result;
-            } else {
-                LogUtil.info(CLASS_NAME, "No rows extracted from array section: " + sectionName);
             }
+            LOG.verbose("No rows extracted from array section: {}", sectionName);
 
         } catch (Exception e) {
-            LogUtil.warn(CLASS_NAME, "Error processing array section " + sectionName + ": " + e.getMessage());
+            LOG.warn("Error processing array section {}: {}", sectionName, e.getMessage());
         }
-
-        LogUtil.info(CLASS_NAME, "Returning null for array section: " + sectionName);
         return null;
     }
 }
\ No newline at end of file
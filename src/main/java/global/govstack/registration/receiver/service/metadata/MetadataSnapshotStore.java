@@ -0,0 +1,405 @@
+package global.govstack.registration.receiver.service.metadata;
+
+import global.govstack.registration.receiver.exception.ConfigurationException;
+import global.govstack.registration.receiver.service.attachment.AttachmentPipeline;
+import global.govstack.registration.receiver.service.metrics.ProcessingEvents;
+import global.govstack.registration.receiver.service.validation.RequestShapeValidator;
+import global.govstack.registration.receiver.util.ContentHashUtil;
+import global.govstack.registration.receiver.util.ProcessingLog;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parsed service YAML, shared by all requests and swapped atomically when the file changes
+ *
+ * Each service is parsed once, on first use. When the govstack.metadata.dir system property
+ * names a directory, <serviceId>.yml files there take precedence over the bundled
+ * docs-metadata files and the directory is watched: a changed file is parsed, checked and
+ * compiled on a background thread once it has been quiet for the debounce interval, and only
+ * then replaces the current snapshot. A file that fails to load leaves the previous snapshot
+ * in place. Requests hold on to the snapshot they started with, so a reload never changes
+ * the configuration under a request in flight.
+ */
+public class MetadataSnapshotStore {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(MetadataSnapshotStore.class);
+
+    /**
+     * System property naming the external metadata directory
+     */
+    public static final String DIRECTORY_PROPERTY = "govstack.metadata.dir";
+
+    private static final String METADATA_DIR = "docs-metadata/";
+    private static final String EXTENSION = ".yml";
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+
+    private static final MetadataSnapshotStore INSTANCE = new MetadataSnapshotStore(
+            directoryFromProperty(), DEFAULT_DEBOUNCE_MILLIS);
+
+    /**
+     * One loaded version of a service configuration
+     * The parsed YAML is copied into unmodifiable maps and lists at every depth, so requests
+     * sharing a snapshot cannot change it under each other.
+     */
+    @SuppressWarnings("unchecked")
+    public static class Snapshot {
+        private static final AtomicLong GENERATIONS = new AtomicLong();
+
+        private final String serviceId;
+        private final String contentHash;
+        private final Map<String, Object> yamlData;
+        private final Map<String, Object> serviceMetadata;
+        private final Map<String, Object> formMappings;
+        private final String source;
+        private final long loadedAt;
+        private final long generation;
+
+        Snapshot(String serviceId, String contentHash, Map<String, Object> yamlData,
+                 Map<String, Object> serviceMetadata, Map<String, Object> formMappings, String source) {
+            this.serviceId = serviceId;
+            this.contentHash = contentHash;
+            // One frozen copy, the two sections are views into it
+            this.yamlData = (Map<String, Object>) freeze(yamlData);
+            this.serviceMetadata = (Map<String, Object>) this.yamlData.get("service");
+            this.formMappings = (Map<String, Object>) this.yamlData.get("formMappings");
+            this.source = source;
+            this.loadedAt = System.currentTimeMillis();
+            this.generation = GENERATIONS.incrementAndGet();
+        }
+
+        public String getServiceId() {
+            return serviceId;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        Map<String, Object> getYamlData() {
+            return yamlData;
+        }
+
+        Map<String, Object> getServiceMetadata() {
+            return serviceMetadata;
+        }
+
+        Map<String, Object> getFormMappings() {
+            return formMappings;
+        }
+
+        /**
+         * Where the YAML was read from, a file path or the classpath resource
+         */
+        public String getSource() {
+            return source;
+        }
+
+        public long getLoadedAt() {
+            return loadedAt;
+        }
+
+        /**
+         * Increases with every snapshot loaded, so a newer configuration can be told from an older one
+         */
+        public long getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Copy the maps and lists of parsed YAML, at every depth, into unmodifiable ones
+         */
+        private static Object freeze(Object value) {
+            if (value instanceof Map) {
+                Map<Object, Object> copy = new LinkedHashMap<>();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    copy.put(entry.getKey(), freeze(entry.getValue()));
+                }
+                return Collections.unmodifiableMap(copy);
+            }
+            if (value instanceof List) {
+                List<Object> copy = new ArrayList<>(((List<?>) value).size());
+                for (Object element : (List<?>) value) {
+                    copy.add(freeze(element));
+                }
+                return Collections.unmodifiableList(copy);
+            }
+            return value;
+        }
+    }
+
+    private final Path directory;
+    private final long debounceMillis;
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private Thread watcher;
+
+    /**
+     * @param directory External metadata directory, or null to use the bundled files only
+     * @param debounceMillis How long a changed file must be quiet before it is reloaded
+     */
+    public MetadataSnapshotStore(Path directory, long debounceMillis) {
+        this.directory = directory;
+        this.debounceMillis = debounceMillis;
+    }
+
+    public static MetadataSnapshotStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the current snapshot of a service, loading it on first use
+     * @throws ConfigurationException if the service has no valid metadata
+     */
+    public Snapshot getSnapshot(String serviceId) throws ConfigurationException {
+        Snapshot snapshot = snapshots.get(serviceId);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (this) {
+            snapshot = snapshots.get(serviceId);
+            if (snapshot == null) {
+                snapshot = load(serviceId);
+                snapshots.put(serviceId, snapshot);
+            }
+            startWatching();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reload a service now, keeping the current snapshot if the file is invalid
+     * @return true if a new snapshot was published
+     */
+    public boolean reload(String serviceId) {
+        try {
+            Snapshot next = load(serviceId);
+            Snapshot current = snapshots.get(serviceId);
+            if (current != null && current.getContentHash().equals(next.getContentHash())) {
+                LOG.debug("Metadata for {} unchanged", serviceId);
+                return false;
+            }
+            compile(next);
+            snapshots.put(serviceId, next);
+            LOG.info("Reloaded metadata for {} from {}", serviceId, next.getSource());
+            return true;
+        } catch (Exception e) {
+            LOG.error(e, "Keeping previous metadata for {}, reload failed: {}", serviceId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Stop watching the metadata directory and drop all snapshots
+     */
+    public synchronized void shutdown() {
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.debug("Error closing metadata watch service: {}", e.getMessage());
+            }
+            watchService = null;
+        }
+        snapshots.clear();
+    }
+
+    /**
+     * Read and check the YAML of a service, from the external directory if it has the file
+     * The snapshot is returned without being compiled or published.
+     */
+    public Snapshot load(String serviceId) throws ConfigurationException {
+        ProcessingEvents.Span event = ProcessingEvents.begin(ProcessingEvents.Type.STAGE, "metadata_load").serviceId(serviceId);
+        boolean loaded = false;
+        try {
+            String source;
+            byte[] content;
+            Path external = directory != null ? directory.resolve(serviceId + EXTENSION) : null;
+            String metadataFile = METADATA_DIR + serviceId + EXTENSION;
+            InputStream resource;
+
+            if (external != null && Files.isRegularFile(external)) {
+                source = external.toAbsolutePath().toString();
+                content = Files.readAllBytes(external);
+            } else if ((resource = MetadataSnapshotStore.class.getClassLoader().getResourceAsStream(metadataFile)) != null) {
+                // Bundled with the deployed plugin
+                source = "classpath:" + metadataFile;
+                try (InputStream in = resource) {
+                    content = readAll(in);
+                }
+            } else if (Files.exists(Paths.get(metadataFile))) {
+                // Working directory, for development
+                source = Paths.get(metadataFile).toAbsolutePath().toString();
+                content = Files.readAllBytes(Paths.get(metadataFile));
+            } else {
+                throw new ConfigurationException("Metadata file not found: " + metadataFile +
+                    ". Expected service-specific configuration file.");
+            }
+            LOG.debug("Loading metadata from {}", source);
+
+            Object parsed = new Yaml().load(new ByteArrayInputStream(content));
+            if (!(parsed instanceof Map)) {
+                throw new ConfigurationException("Metadata is not a YAML mapping: " + source);
+            }
+            Map<String, Object> yamlData = (Map<String, Object>) parsed;
+
+            Map<String, Object> serviceMetadata = (Map<String, Object>) yamlData.get("service");
+            if (serviceMetadata == null) {
+                throw new ConfigurationException("Service metadata not found in YAML");
+            }
+
+            String configuredServiceId = (String) serviceMetadata.get("id");
+            if (!serviceId.equals(configuredServiceId)) {
+                throw new ConfigurationException("Service ID mismatch. Expected: " + serviceId + ", Found: " + configuredServiceId);
+            }
+
+            Map<String, Object> formMappings = (Map<String, Object>) yamlData.get("formMappings");
+            if (formMappings == null) {
+                throw new ConfigurationException("Form mappings not found in YAML");
+            }
+
+            Snapshot snapshot = new Snapshot(serviceId, ContentHashUtil.sha256Hex(content), yamlData,
+                    serviceMetadata, formMappings, source);
+            LOG.debug("Successfully loaded metadata for service: {}", serviceId);
+            loaded = true;
+            return snapshot;
+
+        } catch (ConfigurationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ConfigurationException("Error loading metadata: " + e.getMessage(), e);
+        } finally {
+            event.end(loaded);
+        }
+    }
+
+    /**
+     * Compile the mappings of a snapshot before it is published, so a broken mapping is
+     * rejected and the first request after a reload does not pay for compiling
+     */
+    private static void compile(Snapshot snapshot) throws ConfigurationException {
+        YamlMetadataService metadataService = new YamlMetadataService();
+        metadataService.loadMetadata(snapshot);
+        GovStackDataAssembler.forMetadata(metadataService);
+        RequestShapeValidator.forMetadata(metadataService);
+        AttachmentPipeline.forMetadata(metadataService);
+    }
+
+    private void startWatching() {
+        if (directory == null || watcher != null) {
+            return;
+        }
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            LOG.error(e, "Cannot watch metadata directory {}, changes need a restart", directory);
+            watchService = null;
+            return;
+        }
+        WatchService service = watchService;
+        watcher = new Thread(() -> watch(service), "govstack-metadata-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+        LOG.info("Watching {} for metadata changes", directory.toAbsolutePath());
+    }
+
+    private void watch(WatchService service) {
+        // Service ID to the time its reload is due, pushed back by every further event
+        Map<String, Long> pending = new HashMap<>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = service.take();
+                } else {
+                    long wait = Collections.min(pending.values()) - System.currentTimeMillis();
+                    key = service.poll(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+                }
+
+                if (key != null) {
+                    long due = System.currentTimeMillis() + debounceMillis;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            for (String serviceId : snapshots.keySet()) {
+                                pending.put(serviceId, due);
+                            }
+                            continue;
+                        }
+                        String name = ((Path) event.context()).getFileName().toString();
+                        if (name.endsWith(EXTENSION)) {
+                            String serviceId = name.substring(0, name.length() - EXTENSION.length());
+                            // Services not loaded yet pick up the file on first use
+                            if (snapshots.containsKey(serviceId)) {
+                                pending.put(serviceId, due);
+                            }
+                        }
+                    }
+                    if (!key.reset()) {
+                        LOG.warn("Metadata directory {} is no longer accessible, stopped watching", directory);
+                        return;
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                for (Iterator<Map.Entry<String, Long>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<String, Long> entry = it.next();
+                    if (entry.getValue() <= now) {
+                        it.remove();
+                        reload(entry.getKey());
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shut down
+        }
+    }
+
+    private static Path directoryFromProperty() {
+        String value = System.getProperty(DIRECTORY_PROPERTY);
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        Path path = Paths.get(value.trim());
+        if (!Files.isDirectory(path)) {
+            LOG.warn("Metadata directory {} does not exist, using the bundled metadata", path.toAbsolutePath());
+            return null;
+        }
+        return path;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
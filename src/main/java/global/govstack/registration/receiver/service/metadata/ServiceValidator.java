@@ -2,12 +2,14 @@ package global.govstack.registration.receiver.service.metadata;
 
 import org.joget.commons.util.LogUtil;
 import global.govstack.registration.receiver.exception.InvalidRequestException;
+import global.govstack.registration.receiver.util.ProcessingLog;
 
 /**
  * Service to validate incoming service requests
  */
 public class ServiceValidator {
     private static final String CLASS_NAME = ServiceValidator.class.getName();
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(ServiceValidator.class);
     private final String configuredServiceId;
 
     /**
@@ -19,7 +21,7 @@ public class ServiceValidator {
             throw new IllegalArgumentException("Configured service ID cannot be null or empty");
         }
         this.configuredServiceId = configuredServiceId.trim();
-        LogUtil.info(CLASS_NAME, "ServiceValidator initialized for service: " + this.configuredServiceId);
+        LOG.debug("ServiceValidator initialized for service: {}", this.configuredServiceId);
     }
 
     /**
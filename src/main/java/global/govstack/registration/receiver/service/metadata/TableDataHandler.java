@@ -11,6 +11,8 @@ import org.joget.apps.form.model.FormRowSet;
 import org.joget.commons.util.LogUtil;
 import org.joget.commons.util.UuidGenerator;
 import global.govstack.registration.receiver.exception.FormSubmissionException;
+import global.govstack.registration.receiver.service.metrics.ProcessingEvents;
+import global.govstack.registration.receiver.util.ProcessingLog;
 
 import java.util.List;
 import java.util.Map;
@@ -20,6 +22,7 @@ import java.util.Map;
  */
 public class TableDataHandler {
     private static final String CLASS_NAME = TableDataHandler.class.getName();
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(TableDataHandler.class);
 
     private final AppService appService;
     private final FormDataDao formDataDao;
@@ -49,10 +52,8 @@ public class TableDataHandler {
             this.formDataDao = (FormDataDao) AppUtil.getApplicationContext().getBean("formDataDao");
             this.metadataService = metadataService;
 
-            if (metadataService != null) {
-                LogUtil.info(CLASS_NAME, "TableDataHandler initialized with configuration support");
-            } else {
-                LogUtil.info(CLASS_NAME, "TableDataHandler using hardcoded defaults");
+            if (metadataService == null) {
+                LOG.debug("TableDataHandler using hardcoded defaults");
             }
         } catch (Exception e) {
             throw new FormSubmissionException("Failed to initialize TableDataHandler: " + e.getMessage(), e);
@@ -67,7 +68,7 @@ public class TableDataHandler {
      */
     public void saveArrayData(List<Map<String, Object>> arrayDataList, String parentId) throws FormSubmissionException {
         if (arrayDataList == null || arrayDataList.isEmpty()) {
-            LogUtil.info(CLASS_NAME, "No array data to save");
+            LOG.debug("No array data to save");
             return;
         }
 
@@ -88,51 +89,45 @@ public class TableDataHandler {
      */
     private void deleteExistingGridRows(String gridName, String formId, String tableName, String parentFieldName, String parentId) {
         try {
-            LogUtil.info(CLASS_NAME, "========================================");
-            LogUtil.info(CLASS_NAME, "DELETING EXISTING GRID ROWS");
-            LogUtil.info(CLASS_NAME, "gridName: " + gridName + ", formId: " + formId + ", tableName: " + tableName);
-            LogUtil.info(CLASS_NAME, "parentFieldName: " + parentFieldName + ", parentId: " + parentId);
-
             // Get the database column name from configuration (no hardcoded defaults)
             String parentColumnName = getParentColumnName(gridName);
-            LogUtil.info(CLASS_NAME, "Using parent column: " + parentColumnName);
 
             // Use FormDataDao.find() to query rows matching the parent ID
             // Note: WHERE clause needs the database column name (e.g., "c_farmer_id")
             String condition = "WHERE " + parentColumnName + " = ?";
             Object[] params = {parentId};
 
-            LogUtil.info(CLASS_NAME, "Querying with condition: " + condition);
-            LogUtil.info(CLASS_NAME, "Parameter: " + parentId);
+            LOG.verbose("Finding existing rows of grid {} in {} {}", gridName, tableName, condition);
 
             FormRowSet rowsToDelete = formDataDao.find(formId, tableName, condition, params, null, null, null, null);
 
             if (rowsToDelete == null || rowsToDelete.isEmpty()) {
-                LogUtil.info(CLASS_NAME, "No existing rows found in table: " + tableName + " for " + parentColumnName + " = " + parentId);
+                LOG.verbose("No existing rows found in table: {}", tableName);
                 return;
             }
 
             int matchCount = rowsToDelete.size();
-            LogUtil.info(CLASS_NAME, "Found " + matchCount + " existing rows to delete");
-
-            // Log details of rows to be deleted
-            for (int i = 0; i < rowsToDelete.size(); i++) {
-                FormRow row = rowsToDelete.get(i);
-                LogUtil.info(CLASS_NAME, "  Row " + (i+1) + ": id=" + row.getId() +
-                    ", " + parentColumnName + "=" + row.getProperty(parentFieldName));
+            if (LOG.isVerbose()) {
+                for (int i = 0; i < matchCount; i++) {
+                    LOG.verbose("  Deleting row {}: id={}", i + 1, rowsToDelete.get(i).getId());
+                }
             }
 
             // Delete the rows using FormDataDao
-            LogUtil.info(CLASS_NAME, "Calling formDataDao.delete() to delete " + matchCount + " rows");
-            formDataDao.delete(formId, tableName, rowsToDelete);
-            LogUtil.info(CLASS_NAME, "✓ Successfully deleted " + matchCount + " existing rows");
-
-            LogUtil.info(CLASS_NAME, "========================================");
+            ProcessingEvents.Span event = ProcessingEvents.begin(ProcessingEvents.Type.FORM_STORE, "grid_delete")
+                    .serviceId(getServiceId()).formId(formId).rowCount(matchCount).primaryKey(parentId);
+            boolean deleted = false;
+            try {
+                formDataDao.delete(formId, tableName, rowsToDelete);
+                deleted = true;
+            } finally {
+                event.end(deleted);
+            }
+            LOG.debug("Deleted {} existing rows of grid {}", matchCount, gridName);
 
         } catch (Exception e) {
             // Log but don't fail - we still want to insert new rows even if delete fails
-            LogUtil.error(CLASS_NAME, e, "ERROR deleting existing grid rows: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error(e, "Error deleting existing rows of grid {}: {}", gridName, e.getMessage());
         }
     }
 
@@ -147,16 +142,14 @@ public class TableDataHandler {
         List<Map<String, String>> rows = (List<Map<String, String>>) gridData.get("rows");
 
         if (gridName == null || rows == null || rows.isEmpty()) {
-            LogUtil.debug(CLASS_NAME, "No data to save for grid: " + gridName);
+            LOG.debug("No data to save for grid: {}", gridName);
             return;
         }
 
         try {
-            LogUtil.info(CLASS_NAME, "Processing " + rows.size() + " rows for grid: " + gridName);
-
             // Determine the parent field name for this grid
             String parentFieldName = getParentFieldName(gridName);
-            LogUtil.info(CLASS_NAME, "Using parent field name: " + parentFieldName + " for grid: " + gridName);
+            LOG.verbose("Processing {} rows for grid {} with parent field {}", rows.size(), gridName, parentFieldName);
 
             // Determine the form/table name for the grid
             String formId = getGridFormId(gridName);
@@ -200,7 +193,6 @@ public class TableDataHandler {
                 // Add parent ID reference using the correct field name
                 if (parentFieldName != null && !parentFieldName.isEmpty()) {
                     row.setProperty(parentFieldName, parentId);
-                    LogUtil.debug(CLASS_NAME, "Set " + parentFieldName + " = " + parentId + " for row " + rowId);
                 }
 
                 // Add all field values
@@ -214,17 +206,14 @@ public class TableDataHandler {
             try {
                 // Save the FormRowSet - Joget will delete marked rows and insert new ones
                 saveGridData(formId, rowSet, null);
-                LogUtil.info(CLASS_NAME, "Successfully saved " + rows.size() + " rows to grid: " + gridName);
+                LOG.debug("Saved {} rows to grid {}", rows.size(), gridName);
             } catch (FormSubmissionException e) {
                 // If form not found, log the data instead of failing
                 if (e.getMessage().contains("Form not found")) {
-                    LogUtil.warn(CLASS_NAME, "Grid form not configured yet: " + formId + ". Grid data prepared but not saved.");
-                    LogUtil.info(CLASS_NAME, "Grid " + gridName + " data (parent: " + parentId + "):");
-                    for (int i = 0; i < rows.size() && i < 3; i++) { // Log first 3 rows as sample
-                        LogUtil.info(CLASS_NAME, "  Row " + (i+1) + ": " + rows.get(i).toString());
-                    }
-                    if (rows.size() > 3) {
-                        LogUtil.info(CLASS_NAME, "  ... and " + (rows.size() - 3) + " more rows");
+                    LOG.warn("Grid form not configured yet: {}. {} rows of grid {} prepared but not saved.",
+                            formId, rows.size(), gridName);
+                    for (int i = 0; i < rows.size() && i < 3; i++) { // Log the fields of the first 3 rows as sample
+                        LOG.verbose("  Row {}: fields {}", i + 1, rows.get(i).keySet());
                     }
                 } else {
                     // Re-throw other errors
@@ -251,7 +240,7 @@ public class TableDataHandler {
         if (metadataService != null) {
             String configFormId = metadataService.getGridFormId(gridName);
             if (configFormId != null && !configFormId.isEmpty()) {
-                LogUtil.info(CLASS_NAME, "Using configured form ID for grid " + gridName + ": " + configFormId);
+                LOG.debug("Using configured form ID for grid {}: {}", gridName, configFormId);
                 return configFormId;
             }
         }
@@ -275,7 +264,7 @@ public class TableDataHandler {
         if (metadataService != null) {
             String configParentField = metadataService.getGridParentField(gridName);
             if (configParentField != null && !configParentField.isEmpty()) {
-                LogUtil.info(CLASS_NAME, "Using configured parent field for grid " + gridName + ": " + configParentField);
+                LOG.debug("Using configured parent field for grid {}: {}", gridName, configParentField);
                 return configParentField;
             }
         }
@@ -284,7 +273,7 @@ public class TableDataHandler {
         if (metadataService != null) {
             String defaultParentField = metadataService.getDefaultGridParentField();
             if (defaultParentField != null && !defaultParentField.isEmpty()) {
-                LogUtil.info(CLASS_NAME, "Using default parent field from config for grid " + gridName + ": " + defaultParentField);
+                LOG.debug("Using default parent field from config for grid {}: {}", gridName, defaultParentField);
                 return defaultParentField;
             }
         }
@@ -310,7 +299,7 @@ public class TableDataHandler {
         if (metadataService != null) {
             String configParentColumn = metadataService.getGridParentColumn(gridName);
             if (configParentColumn != null && !configParentColumn.isEmpty()) {
-                LogUtil.info(CLASS_NAME, "Using configured parent column for grid " + gridName + ": " + configParentColumn);
+                LOG.debug("Using configured parent column for grid {}: {}", gridName, configParentColumn);
                 return configParentColumn;
             }
         }
@@ -319,7 +308,7 @@ public class TableDataHandler {
         if (metadataService != null) {
             String defaultParentColumn = metadataService.getDefaultGridParentColumn();
             if (defaultParentColumn != null && !defaultParentColumn.isEmpty()) {
-                LogUtil.info(CLASS_NAME, "Using default parent column from config for grid " + gridName + ": " + defaultParentColumn);
+                LOG.debug("Using default parent column from config for grid {}: {}", gridName, defaultParentColumn);
                 return defaultParentColumn;
             }
         }
@@ -365,12 +354,19 @@ public class TableDataHandler {
             }
 
             // Store the data - using primaryKeyValue (null for grids)
-            FormRowSet storedData = appService.storeFormData(form, rowSet, primaryKeyValue);
+            ProcessingEvents.Span event = ProcessingEvents.begin(ProcessingEvents.Type.FORM_STORE, "grid_insert")
+                    .serviceId(getServiceId()).formId(formId).rowCount(rowSet.size());
+            FormRowSet storedData = null;
+            try {
+                storedData = appService.storeFormData(form, rowSet, primaryKeyValue);
+            } finally {
+                event.end(storedData != null && !storedData.isEmpty());
+            }
 
             if (storedData == null || storedData.isEmpty()) {
-                LogUtil.warn(CLASS_NAME, "No data returned after storing to form: " + formId);
+                LOG.warn("No data returned after storing to form: {}", formId);
             } else {
-                LogUtil.debug(CLASS_NAME, "Stored " + storedData.size() + " rows to form: " + formId);
+                LOG.debug("Stored {} rows to form: {}", storedData.size(), formId);
             }
 
         } catch (Exception e) {
@@ -381,6 +377,10 @@ public class TableDataHandler {
         }
     }
 
+    private String getServiceId() {
+        return metadataService != null ? metadataService.getServiceId() : null;
+    }
+
     /**
      * Alternative method to save grid data directly to table
      * This can be used if the grid is stored as a separate table
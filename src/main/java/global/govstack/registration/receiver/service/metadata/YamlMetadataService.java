@@ -1,14 +1,10 @@
 package global.govstack.registration.receiver.service.metadata;
 
 import org.joget.commons.util.LogUtil;
+import global.govstack.registration.receiver.util.ProcessingLog;
 import global.govstack.registration.receiver.exception.ConfigurationException;
-import org.yaml.snakeyaml.Yaml;
 
-import java.io.FileInputStream;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.File;
 import java.util.*;
 
 /**
@@ -17,72 +13,56 @@ import java.util.*;
  */
 public class YamlMetadataService {
     private static final String CLASS_NAME = YamlMetadataService.class.getName();
-    private static final String METADATA_DIR = "docs-metadata/";
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(YamlMetadataService.class);
+
+    /** System property naming the change feed directory of services that do not set metadata.changeFeed.dir */
+    public static final String CHANGE_FEED_DIR_PROPERTY = "govstack.changes.dir";
 
     private Map<String, Object> serviceMetadata;
     private Map<String, Object> formMappings;
     private Map<String, Object> yamlData;
     private String serviceId;
+    private String contentHash;
+    private long snapshotGeneration;
 
     /**
      * Load the YAML metadata file for a specific service
+     * Uses the current shared snapshot, so the file is only parsed when it changes
      * @param serviceId The service ID to load metadata for (e.g., "farmers_registry", "subsidy_application")
      * @throws ConfigurationException if metadata cannot be loaded
      */
     public void loadMetadata(String serviceId) throws ConfigurationException {
-        this.serviceId = serviceId;
-
-        // Construct service-specific filename
-        String metadataFile = METADATA_DIR + serviceId + ".yml";
-
-        try {
-            InputStream inputStream = null;
-
-            // Try to load from classpath first (for deployed plugin)
-            inputStream = getClass().getClassLoader().getResourceAsStream(metadataFile);
-            if (inputStream != null) {
-                LogUtil.info(CLASS_NAME, "Loading metadata from classpath: " + metadataFile);
-            } else {
-                // Try to load from file system as fallback (for development)
-                Path metadataPath = Paths.get(metadataFile);
-                if (Files.exists(metadataPath)) {
-                    LogUtil.info(CLASS_NAME, "Loading metadata from file: " + metadataPath.toAbsolutePath());
-                    inputStream = new FileInputStream(metadataPath.toFile());
-                } else {
-                    throw new ConfigurationException("Metadata file not found: " + metadataFile +
-                        ". Expected service-specific configuration file.");
-                }
-            }
-
-            Yaml yaml = new Yaml();
-            this.yamlData = yaml.load(inputStream);
-
-            // Extract service metadata
-            serviceMetadata = (Map<String, Object>) yamlData.get("service");
-            if (serviceMetadata == null) {
-                throw new ConfigurationException("Service metadata not found in YAML");
-            }
-
-            // Validate service ID
-            String configuredServiceId = (String) serviceMetadata.get("id");
-            if (!serviceId.equals(configuredServiceId)) {
-                throw new ConfigurationException("Service ID mismatch. Expected: " + serviceId + ", Found: " + configuredServiceId);
-            }
+        loadMetadata(MetadataSnapshotStore.getInstance().getSnapshot(serviceId));
+    }
 
-            // Extract form mappings
-            formMappings = (Map<String, Object>) yamlData.get("formMappings");
-            if (formMappings == null) {
-                throw new ConfigurationException("Form mappings not found in YAML");
-            }
+    /**
+     * Use a loaded snapshot of the service metadata
+     * The instance keeps the snapshot even if a newer one is published later
+     */
+    public void loadMetadata(MetadataSnapshotStore.Snapshot snapshot) {
+        this.serviceId = snapshot.getServiceId();
+        this.contentHash = snapshot.getContentHash();
+        this.snapshotGeneration = snapshot.getGeneration();
+        this.yamlData = snapshot.getYamlData();
+        this.serviceMetadata = snapshot.getServiceMetadata();
+        this.formMappings = snapshot.getFormMappings();
+    }
 
-            LogUtil.info(CLASS_NAME, "Successfully loaded metadata for service: " + serviceId);
+    /**
+     * Get the SHA-256 of the loaded YAML file
+     * Identifies the configuration version for caches keyed on metadata content
+     * @return The hex encoded hash, or null if no metadata is loaded
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
 
-        } catch (Exception e) {
-            if (e instanceof ConfigurationException) {
-                throw (ConfigurationException) e;
-            }
-            throw new ConfigurationException("Error loading metadata: " + e.getMessage(), e);
-        }
+    /**
+     * Get the generation of the loaded snapshot, higher for a more recently loaded configuration
+     * @return The generation, or 0 if no metadata is loaded
+     */
+    public long getSnapshotGeneration() {
+        return snapshotGeneration;
     }
 
     /**
@@ -278,6 +258,18 @@ public class YamlMetadataService {
         return null;
     }
 
+    /**
+     * Get the logging settings of the service (verbose, verboseSampleRate, allowDebugHeader)
+     * @return The logging map or null if not present
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getLoggingConfig() {
+        if (yamlData != null && yamlData.get("logging") instanceof Map) {
+            return (Map<String, Object>) yamlData.get("logging");
+        }
+        return null;
+    }
+
     /**
      * Get the section to form mapping from service configuration
      * @return Map of section names to form IDs, or null if not configured
@@ -378,20 +370,381 @@ public class YamlMetadataService {
 
         Map<String, Object> metadata = (Map<String, Object>) yamlData.get("metadata");
         if (metadata == null) {
-            LogUtil.info(CLASS_NAME, "No metadata section in configuration, returning empty masterDataFields set");
+            LOG.debug("No metadata section in configuration, returning empty masterDataFields set");
             return Collections.emptySet();
         }
 
         List<String> fields = (List<String>) metadata.get("masterDataFields");
         if (fields == null || fields.isEmpty()) {
-            LogUtil.info(CLASS_NAME, "No masterDataFields configured, returning empty set");
+            LOG.debug("No masterDataFields configured, returning empty set");
             return Collections.emptySet();
         }
 
-        LogUtil.info(CLASS_NAME, "Loaded " + fields.size() + " master data fields from configuration");
+        LOG.debug("Loaded {} master data fields from configuration", fields.size());
         return new HashSet<>(fields);
     }
 
+    /**
+     * Get the master data sources from metadata configuration
+     * Maps each master data field to the Joget form (code table) that holds its valid codes
+     *
+     * @return Map of field name to source config (formId, codeColumn, labelColumn), or empty map if not configured
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Map<String, String>> getMasterDataSources() {
+        Map<String, Object> metadata = getMetadataSection();
+        if (metadata == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Object> sources = (Map<String, Object>) metadata.get("masterDataSources");
+        if (sources == null || sources.isEmpty()) {
+            LOG.debug("No masterDataSources configured");
+            return Collections.emptyMap();
+        }
+
+        Map<String, Map<String, String>> result = new HashMap<>();
+        for (Map.Entry<String, Object> entry : sources.entrySet()) {
+            if (entry.getValue() instanceof Map) {
+                Map<String, String> source = new HashMap<>();
+                for (Map.Entry<?, ?> prop : ((Map<?, ?>) entry.getValue()).entrySet()) {
+                    source.put(String.valueOf(prop.getKey()), String.valueOf(prop.getValue()));
+                }
+                result.put(entry.getKey(), source);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the master data validation mode from metadata configuration
+     * - reject: invalid codes fail the request with a validation error
+     * - warn: invalid codes are logged and stored unchanged
+     * - off: no validation
+     *
+     * @return The validation mode, defaults to "warn"
+     */
+    public String getMasterDataValidationMode() {
+        Map<String, Object> metadata = getMetadataSection();
+        if (metadata != null && metadata.get("masterDataValidation") != null) {
+            return String.valueOf(metadata.get("masterDataValidation")).toLowerCase();
+        }
+        return "warn";
+    }
+
+    /**
+     * Get the master data cache refresh interval from metadata configuration
+     * @return Refresh interval in seconds, defaults to 300
+     */
+    public long getMasterDataRefreshSeconds() {
+        Map<String, Object> metadata = getMetadataSection();
+        if (metadata != null && metadata.get("masterDataRefreshSeconds") instanceof Number) {
+            return ((Number) metadata.get("masterDataRefreshSeconds")).longValue();
+        }
+        return 300;
+    }
+
+    /**
+     * Get the LOV option index settings from metadata configuration
+     * @return true unless metadata.lovIndex.enabled is false
+     */
+    @SuppressWarnings("unchecked")
+    public boolean isLovIndexEnabled() {
+        Map<String, Object> metadata = getMetadataSection();
+        Object lovIndex = metadata != null ? metadata.get("lovIndex") : null;
+        if (lovIndex instanceof Map) {
+            return !Boolean.FALSE.equals(((Map<String, Object>) lovIndex).get("enabled"));
+        }
+        return true;
+    }
+
+    /**
+     * Get the directory used to cache the LOV option index between restarts
+     * @return metadata.lovIndex.cacheDir, defaults to govstack-lov-index in the temp directory
+     */
+    @SuppressWarnings("unchecked")
+    public String getLovIndexCacheDir() {
+        Map<String, Object> metadata = getMetadataSection();
+        Object lovIndex = metadata != null ? metadata.get("lovIndex") : null;
+        if (lovIndex instanceof Map && ((Map<String, Object>) lovIndex).get("cacheDir") != null) {
+            return String.valueOf(((Map<String, Object>) lovIndex).get("cacheDir"));
+        }
+        return System.getProperty("java.io.tmpdir") + File.separator + "govstack-lov-index";
+    }
+
+    /**
+     * Check whether incoming requests are validated against the compiled request shape
+     * @return true unless metadata.requestValidation.enabled is false
+     */
+    @SuppressWarnings("unchecked")
+    public boolean isRequestValidationEnabled() {
+        Map<String, Object> metadata = getMetadataSection();
+        Object requestValidation = metadata != null ? metadata.get("requestValidation") : null;
+        if (requestValidation instanceof Map) {
+            return !Boolean.FALSE.equals(((Map<String, Object>) requestValidation).get("enabled"));
+        }
+        return true;
+    }
+
+    /**
+     * Check whether identifiers are indexed for lookups and duplicate detection
+     * @return true unless metadata.identifierIndex.enabled is false
+     */
+    @SuppressWarnings("unchecked")
+    public boolean isIdentifierIndexEnabled() {
+        Map<String, Object> metadata = getMetadataSection();
+        Object identifierIndex = metadata != null ? metadata.get("identifierIndex") : null;
+        if (identifierIndex instanceof Map) {
+            return !Boolean.FALSE.equals(((Map<String, Object>) identifierIndex).get("enabled"));
+        }
+        return true;
+    }
+
+    /**
+     * Get what to do when a submission carries an identifier of another application
+     * - reject: the request fails with 409 Conflict
+     * - update: the submission updates the existing application
+     * - warn: the duplicate is logged and a new application is saved
+     *
+     * @return metadata.identifierIndex.onDuplicate, defaults to "warn"
+     */
+    @SuppressWarnings("unchecked")
+    public String getDuplicateIdentifierPolicy() {
+        Map<String, Object> metadata = getMetadataSection();
+        Object identifierIndex = metadata != null ? metadata.get("identifierIndex") : null;
+        if (identifierIndex instanceof Map && ((Map<String, Object>) identifierIndex).get("onDuplicate") != null) {
+            return String.valueOf(((Map<String, Object>) identifierIndex).get("onDuplicate")).toLowerCase();
+        }
+        return "warn";
+    }
+
+    /**
+     * Check whether successful submissions are recorded in the service's change feed
+     * The feed also needs a durable directory, see {@link #getChangeFeedDir()}
+     * @return true if metadata.changeFeed.enabled is true, the feed is off by default
+     */
+    @SuppressWarnings("unchecked")
+    public boolean isChangeFeedEnabled() {
+        Map<String, Object> metadata = getMetadataSection();
+        Object changeFeed = metadata != null ? metadata.get("changeFeed") : null;
+        return changeFeed instanceof Map && Boolean.TRUE.equals(((Map<String, Object>) changeFeed).get("enabled"));
+    }
+
+    /**
+     * Get the directory holding the change logs, one subdirectory per service
+     * There is no default: a log in a temporary directory would be lost, and every consumer made to resync
+     * @return metadata.changeFeed.dir, else the govstack.changes.dir system property, or null if neither is set
+     */
+    @SuppressWarnings("unchecked")
+    public String getChangeFeedDir() {
+        Map<String, Object> metadata = getMetadataSection();
+        Object changeFeed = metadata != null ? metadata.get("changeFeed") : null;
+        if (changeFeed instanceof Map && ((Map<String, Object>) changeFeed).get("dir") != null) {
+            return String.valueOf(((Map<String, Object>) changeFeed).get("dir"));
+        }
+        String configured = System.getProperty(CHANGE_FEED_DIR_PROPERTY);
+        if (configured != null && !configured.trim().isEmpty()) {
+            return configured.trim();
+        }
+        return null;
+    }
+
+    /**
+     * Get where decoded attachments are kept
+     * - joget: the form upload directory of the application, the field holds the file name
+     * - local: a content-addressed store in the attachment directory, the field holds sha256:&lt;hash&gt;
+     *
+     * @return metadata.attachments.storage, defaults to "joget"
+     */
+    public String getAttachmentStorage() {
+        Map<String, Object> attachments = getAttachmentsConfig();
+        if (attachments != null && attachments.get("storage") != null) {
+            return String.valueOf(attachments.get("storage")).toLowerCase();
+        }
+        return "joget";
+    }
+
+    /**
+     * Get the directory attachments are decoded into, and the store for local storage
+     * @return metadata.attachments.dir, defaults to govstack-attachments in the temp directory
+     */
+    public String getAttachmentDir() {
+        Map<String, Object> attachments = getAttachmentsConfig();
+        if (attachments != null && attachments.get("dir") != null) {
+            return String.valueOf(attachments.get("dir"));
+        }
+        return System.getProperty("java.io.tmpdir") + File.separator + "govstack-attachments";
+    }
+
+    /**
+     * Get the largest decoded attachment accepted
+     * @return metadata.attachments.maxBytes, defaults to 10 MB
+     */
+    public long getAttachmentMaxBytes() {
+        Map<String, Object> attachments = getAttachmentsConfig();
+        Object maxBytes = attachments != null ? attachments.get("maxBytes") : null;
+        if (maxBytes instanceof Number) {
+            return ((Number) maxBytes).longValue();
+        }
+        return 10L * 1024 * 1024;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getAttachmentsConfig() {
+        Map<String, Object> metadata = getMetadataSection();
+        Object attachments = metadata != null ? metadata.get("attachments") : null;
+        return attachments instanceof Map ? (Map<String, Object>) attachments : null;
+    }
+
+    /**
+     * Check whether accepted request bodies are archived for replay
+     * @return true if metadata.archive.enabled is true, the archive is off by default
+     */
+    public boolean isArchiveEnabled() {
+        Map<String, Object> archive = getArchiveConfig();
+        return archive != null && Boolean.TRUE.equals(archive.get("enabled"));
+    }
+
+    /**
+     * Get the directory holding the payload archives, one subdirectory per service
+     * @return metadata.archive.dir, defaults to govstack-archive in the temp directory
+     */
+    public String getArchiveDir() {
+        Map<String, Object> archive = getArchiveConfig();
+        if (archive != null && archive.get("dir") != null) {
+            return String.valueOf(archive.get("dir"));
+        }
+        return System.getProperty("java.io.tmpdir") + File.separator + "govstack-archive";
+    }
+
+    /**
+     * Get the size an archive segment file is rolled at
+     * @return metadata.archive.segmentMegabytes in bytes, defaults to 64 MB
+     */
+    public long getArchiveSegmentBytes() {
+        Map<String, Object> archive = getArchiveConfig();
+        Object megabytes = archive != null ? archive.get("segmentMegabytes") : null;
+        if (megabytes instanceof Number && ((Number) megabytes).longValue() > 0) {
+            return ((Number) megabytes).longValue() * 1024 * 1024;
+        }
+        return 64L * 1024 * 1024;
+    }
+
+    /**
+     * Get the number of applications replayed at the same time
+     * @return metadata.archive.replayThreads, defaults to 4
+     */
+    public int getReplayThreads() {
+        Map<String, Object> archive = getArchiveConfig();
+        Object threads = archive != null ? archive.get("replayThreads") : null;
+        if (threads instanceof Number && ((Number) threads).intValue() > 0) {
+            return ((Number) threads).intValue();
+        }
+        return 4;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getArchiveConfig() {
+        Map<String, Object> metadata = getMetadataSection();
+        Object archive = metadata != null ? metadata.get("archive") : null;
+        return archive instanceof Map ? (Map<String, Object>) archive : null;
+    }
+
+    /**
+     * Get the directory bulk import files are read from, their checkpoints and reports are written next to them
+     * @return metadata.bulkImport.dir, defaults to govstack-imports in the temp directory
+     */
+    public String getBulkImportDir() {
+        Map<String, Object> bulkImport = getBulkImportConfig();
+        if (bulkImport != null && bulkImport.get("dir") != null) {
+            return String.valueOf(bulkImport.get("dir"));
+        }
+        return System.getProperty("java.io.tmpdir") + File.separator + "govstack-imports";
+    }
+
+    /**
+     * Get the number of chunks a bulk import saves at the same time
+     * @return metadata.bulkImport.threads, defaults to 4
+     */
+    public int getBulkImportThreads() {
+        Map<String, Object> bulkImport = getBulkImportConfig();
+        Object threads = bulkImport != null ? bulkImport.get("threads") : null;
+        if (threads instanceof Number && ((Number) threads).intValue() > 0) {
+            return ((Number) threads).intValue();
+        }
+        return 4;
+    }
+
+    /**
+     * Get the time a bulk import chunk should take, its size is adapted to it
+     * @return metadata.bulkImport.targetChunkMillis, defaults to 2000
+     */
+    public long getBulkImportTargetChunkMillis() {
+        Map<String, Object> bulkImport = getBulkImportConfig();
+        Object millis = bulkImport != null ? bulkImport.get("targetChunkMillis") : null;
+        if (millis instanceof Number && ((Number) millis).longValue() > 0) {
+            return ((Number) millis).longValue();
+        }
+        return 2000;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getBulkImportConfig() {
+        Map<String, Object> metadata = getMetadataSection();
+        Object bulkImport = metadata != null ? metadata.get("bulkImport") : null;
+        return bulkImport instanceof Map ? (Map<String, Object>) bulkImport : null;
+    }
+
+    /**
+     * Get the identifier types of the primary entity (NationalId, BeneficiaryCode, ...)
+     * @return entities.primary.identifierTypes, empty if none are configured
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getIdentifierTypes() {
+        Object entities = yamlData != null ? yamlData.get("entities") : null;
+        Object primary = entities instanceof Map ? ((Map<String, Object>) entities).get("primary") : null;
+        Object types = primary instanceof Map ? ((Map<String, Object>) primary).get("identifierTypes") : null;
+        if (!(types instanceof List)) {
+            return Collections.emptyList();
+        }
+
+        List<String> result = new ArrayList<>();
+        for (Object type : (List<Object>) types) {
+            if (type != null) {
+                result.add(String.valueOf(type));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the named transformation definitions (date_ISO8601, numeric, ...)
+     * @return Map of transformation name to its definition, empty if none are configured
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Map<String, Object>> getTransformations() {
+        Object transformations = yamlData != null ? yamlData.get("transformations") : null;
+        if (!(transformations instanceof Map)) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) transformations).entrySet()) {
+            if (entry.getValue() instanceof Map) {
+                result.put(entry.getKey(), (Map<String, Object>) entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getMetadataSection() {
+        if (yamlData == null) {
+            return null;
+        }
+        return (Map<String, Object>) yamlData.get("metadata");
+    }
+
     /**
      * Get field normalization configuration from metadata
      * Defines which fields should be normalized to specific LOV formats (yes/no, 1/2, etc.)
@@ -405,13 +758,13 @@ public class YamlMetadataService {
 
         Map<String, Object> metadata = (Map<String, Object>) yamlData.get("metadata");
         if (metadata == null) {
-            LogUtil.info(CLASS_NAME, "No metadata section, returning empty normalization config");
+            LOG.debug("No metadata section, returning empty normalization config");
             return Collections.emptyMap();
         }
 
         Map<String, Object> normConfig = (Map<String, Object>) metadata.get("fieldNormalization");
         if (normConfig == null) {
-            LogUtil.info(CLASS_NAME, "No fieldNormalization configured, returning empty map");
+            LOG.debug("No fieldNormalization configured, returning empty map");
             return Collections.emptyMap();
         }
 
@@ -423,7 +776,7 @@ public class YamlMetadataService {
             }
         }
 
-        LogUtil.info(CLASS_NAME, "Loaded normalization config for " + result.size() + " normalization types");
+        LOG.debug("Loaded normalization config for {} normalization types", result.size());
         return result;
     }
 
@@ -443,13 +796,13 @@ public class YamlMetadataService {
 
         Map<String, Object> defaults = (Map<String, Object>) serviceConfig.get("defaults");
         if (defaults == null) {
-            LogUtil.info(CLASS_NAME, "No defaults section in serviceConfig");
+            LOG.debug("No defaults section in serviceConfig");
             return null;
         }
 
         String defaultField = (String) defaults.get("gridParentField");
         if (defaultField != null) {
-            LogUtil.debug(CLASS_NAME, "Found default gridParentField: " + defaultField);
+            LOG.debug("Found default gridParentField: {}", defaultField);
         }
         return defaultField;
     }
@@ -470,13 +823,13 @@ public class YamlMetadataService {
 
         Map<String, Object> defaults = (Map<String, Object>) serviceConfig.get("defaults");
         if (defaults == null) {
-            LogUtil.info(CLASS_NAME, "No defaults section in serviceConfig");
+            LOG.debug("No defaults section in serviceConfig");
             return null;
         }
 
         String defaultColumn = (String) defaults.get("gridParentColumn");
         if (defaultColumn != null) {
-            LogUtil.debug(CLASS_NAME, "Found default gridParentColumn: " + defaultColumn);
+            LOG.debug("Found default gridParentColumn: {}", defaultColumn);
         }
         return defaultColumn;
     }
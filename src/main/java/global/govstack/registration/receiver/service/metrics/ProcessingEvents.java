@@ -0,0 +1,144 @@
+package global.govstack.registration.receiver.service.metrics;
+
+import global.govstack.registration.receiver.util.ContentHashUtil;
+import org.joget.commons.util.LogUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Java Flight Recorder events for registration processing
+ *
+ * The plugin targets Java 8, so the jdk.jfr event classes are compiled separately for
+ * Java 11 (src/main/java11, built by the jfr profile) and loaded reflectively. When they
+ * are missing, cannot be linked (Java 8, or jdk.jfr not visible to the bundle) or the
+ * event type is not enabled in the running recording, {@link #begin} returns a shared
+ * no-op span, so instrumented code pays one static read and no allocation.
+ *
+ * Set -Dgovstack.jfr.enabled=false to turn the events off regardless of recordings.
+ */
+public final class ProcessingEvents {
+
+    private static final String CLASS_NAME = ProcessingEvents.class.getName();
+    private static final String SINK_CLASS = "global.govstack.registration.receiver.service.metrics.JfrEventSink";
+
+    /**
+     * Kinds of event, one JFR event type each
+     */
+    public enum Type {
+        /** A whole registration request */
+        REQUEST,
+        /** A processing stage: metadata load, parse, validation, mapping */
+        STAGE,
+        /** Normalisation of one field value */
+        NORMALIZATION,
+        /** A form store, grid delete or grid insert */
+        FORM_STORE,
+        /** A call into the workflow engine */
+        WORKFLOW
+    }
+
+    /**
+     * Creates spans for event types enabled in the running recording
+     */
+    interface Sink {
+        /**
+         * @return A started span, or null if the event type is not enabled
+         */
+        Span begin(Type type, String operation);
+    }
+
+    private static final Sink SINK = loadSink();
+
+    private ProcessingEvents() {
+    }
+
+    private static Sink loadSink() {
+        if ("false".equalsIgnoreCase(System.getProperty("govstack.jfr.enabled"))) {
+            return null;
+        }
+        try {
+            Class<?> sinkClass = Class.forName(SINK_CLASS, true, ProcessingEvents.class.getClassLoader());
+            return (Sink) sinkClass.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            LogUtil.debug(CLASS_NAME, "JFR events not built into this plugin");
+        } catch (Throwable e) {
+            // UnsupportedClassVersionError on Java 8, NoClassDefFoundError when jdk.jfr is not visible
+            LogUtil.info(CLASS_NAME, "JFR events unavailable: " + e);
+        }
+        return null;
+    }
+
+    /**
+     * Whether events can be recorded at all in this runtime
+     */
+    public static boolean isAvailable() {
+        return SINK != null;
+    }
+
+    /**
+     * Start timing an operation
+     * @param operation What is being done, e.g. "mapping" or "grid_delete"
+     * @return The span to describe and end, a no-op span if the event is not recorded
+     */
+    public static Span begin(Type type, String operation) {
+        Sink sink = SINK;
+        if (sink == null) {
+            return Span.NOOP;
+        }
+        Span span = sink.begin(type, operation);
+        return span != null ? span : Span.NOOP;
+    }
+
+    /**
+     * Short hash of a primary key, so events identify records without carrying them
+     */
+    public static String hashKey(String primaryKey) {
+        if (primaryKey == null) {
+            return null;
+        }
+        return ContentHashUtil.sha256Hex(primaryKey.getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+    }
+
+    /**
+     * A timed operation
+     *
+     * Attributes may be set at any time before {@link #end}. The no-op span ignores them,
+     * so callers should pass values they already have rather than compute new ones.
+     */
+    public static class Span {
+
+        static final Span NOOP = new Span();
+
+        Span() {
+        }
+
+        public Span serviceId(String serviceId) {
+            return this;
+        }
+
+        public Span formId(String formId) {
+            return this;
+        }
+
+        public Span field(String field) {
+            return this;
+        }
+
+        public Span rowCount(int rowCount) {
+            return this;
+        }
+
+        /**
+         * The record's primary key, recorded only as a hash
+         */
+        public Span primaryKey(String primaryKey) {
+            return this;
+        }
+
+        /**
+         * End the operation and commit the event if it passes the recording's threshold
+         */
+        public void end(boolean success) {
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package global.govstack.registration.receiver.service.metrics;
+
+import global.govstack.registration.receiver.util.ContentHashUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-stage latency metrics for registration requests
+ *
+ * Each series is identified by service, stage, form and outcome and holds a
+ * {@link LatencyHistogram}. Recording is lock-free; the number of series is capped
+ * so a misbehaving caller cannot grow memory without bound, and values for series
+ * beyond the cap are only counted as dropped.
+ *
+ * The metrics are exposed in the Prometheus text format by {@link #toPrometheusText()}.
+ */
+public class RequestMetrics {
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_FAILURE = "failure";
+    public static final String OUTCOME_CLIENT_ERROR = "client_error";
+    public static final String OUTCOME_SERVER_ERROR = "server_error";
+
+    /** Stage recorded for the whole request */
+    public static final String STAGE_TOTAL = "total";
+
+    static final int DEFAULT_MAX_SERIES = 512;
+
+    /** Stages of one request kept for the slow request recorder */
+    private static final int MAX_TRACKED_STAGES = 32;
+
+    private static final String DURATION_METRIC = "govstack_stage_duration_seconds";
+    private static final String QUANTILE_METRIC = "govstack_stage_duration_quantile_seconds";
+    private static final String MAX_METRIC = "govstack_stage_duration_max_seconds";
+    private static final String DROPPED_METRIC = "govstack_metrics_dropped_samples_total";
+
+    /** Prometheus bucket bounds in microseconds, 1 ms to 30 s */
+    private static final long[] BUCKET_BOUNDS_MICROS = {
+            1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000,
+            500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000, 30_000_000
+    };
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final RequestMetrics INSTANCE = new RequestMetrics(DEFAULT_MAX_SERIES);
+
+    private final int maxSeries;
+    private final ConcurrentMap<SeriesKey, LatencyHistogram> series = new ConcurrentHashMap<>();
+    private final AtomicLong droppedSamples = new AtomicLong();
+
+    RequestMetrics(int maxSeries) {
+        this.maxSeries = maxSeries;
+    }
+
+    public static RequestMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start timing a request
+     * @param serviceId Service the request belongs to
+     * @return Timer that records each stage of the request
+     */
+    public StageTimer startRequest(String serviceId) {
+        return new StageTimer(this, serviceId);
+    }
+
+    /**
+     * Record the time elapsed since a start time
+     * @param startNanos Value of System.nanoTime() when the stage started
+     */
+    public void recordSince(String serviceId, String stage, String form, String outcome, long startNanos) {
+        record(serviceId, stage, form, outcome, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Record one stage duration
+     * @param form Form the stage worked on, or null if the stage is not form-specific
+     */
+    public void record(String serviceId, String stage, String form, String outcome, long durationNanos) {
+        SeriesKey key = new SeriesKey(serviceId, stage, form, outcome);
+        LatencyHistogram histogram = series.get(key);
+        if (histogram == null) {
+            if (series.size() >= maxSeries) {
+                droppedSamples.incrementAndGet();
+                return;
+            }
+            histogram = series.computeIfAbsent(key, k -> new LatencyHistogram());
+        }
+        histogram.record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+    }
+
+    /**
+     * Histogram of a series, or null if nothing was recorded for it
+     */
+    public LatencyHistogram getHistogram(String serviceId, String stage, String form, String outcome) {
+        return series.get(new SeriesKey(serviceId, stage, form, outcome));
+    }
+
+    public int getSeriesCount() {
+        return series.size();
+    }
+
+    public long getDroppedSamples() {
+        return droppedSamples.get();
+    }
+
+    /**
+     * Remove all series, used when the plugin is stopped
+     */
+    public void reset() {
+        series.clear();
+        droppedSamples.set(0);
+    }
+
+    /**
+     * Render all series in the Prometheus text exposition format
+     */
+    public String toPrometheusText() {
+        List<SeriesKey> keys = new ArrayList<>(series.keySet());
+        Collections.sort(keys);
+
+        StringBuilder out = new StringBuilder(256 + keys.size() * 1024);
+
+        out.append("# HELP ").append(DURATION_METRIC).append(" Time spent in each registration processing stage\n");
+        out.append("# TYPE ").append(DURATION_METRIC).append(" histogram\n");
+        for (SeriesKey key : keys) {
+            LatencyHistogram histogram = series.get(key);
+            // Read the count first so no bucket exceeds it while requests are still being recorded
+            long count = histogram.getCount();
+            for (long bound : BUCKET_BOUNDS_MICROS) {
+                sample(out, DURATION_METRIC + "_bucket", key, "le", seconds(bound),
+                        Math.min(count, histogram.countAtOrBelow(bound)));
+            }
+            sample(out, DURATION_METRIC + "_bucket", key, "le", "+Inf", count);
+            sample(out, DURATION_METRIC + "_sum", key, null, null, seconds(histogram.getTotalMicros()));
+            sample(out, DURATION_METRIC + "_count", key, null, null, count);
+        }
+
+        out.append("# HELP ").append(QUANTILE_METRIC).append(" Stage duration quantiles since the plugin started\n");
+        out.append("# TYPE ").append(QUANTILE_METRIC).append(" gauge\n");
+        for (SeriesKey key : keys) {
+            LatencyHistogram histogram = series.get(key);
+            for (double quantile : QUANTILES) {
+                sample(out, QUANTILE_METRIC, key, "quantile", Double.toString(quantile),
+                        seconds(histogram.getValueAtQuantile(quantile)));
+            }
+        }
+
+        out.append("# HELP ").append(MAX_METRIC).append(" Longest stage duration since the plugin started\n");
+        out.append("# TYPE ").append(MAX_METRIC).append(" gauge\n");
+        for (SeriesKey key : keys) {
+            sample(out, MAX_METRIC, key, null, null, seconds(series.get(key).getMaxMicros()));
+        }
+
+        out.append("# HELP ").append(DROPPED_METRIC).append(" Samples not recorded because the series limit was reached\n");
+        out.append("# TYPE ").append(DROPPED_METRIC).append(" counter\n");
+        out.append(DROPPED_METRIC).append(' ').append(droppedSamples.get()).append('\n');
+
+        return out.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, SeriesKey key,
+                               String extraLabel, String extraValue, Object value) {
+        out.append(name)
+                .append("{service=\"").append(escape(key.serviceId))
+                .append("\",stage=\"").append(escape(key.stage))
+                .append("\",form=\"").append(escape(key.form))
+                .append("\",outcome=\"").append(escape(key.outcome)).append('"');
+        if (extraLabel != null) {
+            out.append(',').append(extraLabel).append("=\"").append(extraValue).append('"');
+        }
+        out.append("} ").append(value).append('\n');
+    }
+
+    private static String seconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1_000_000.0);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Times the consecutive stages of one request
+     *
+     * Starting a stage ends the previous one as successful. If the request fails, the
+     * stage in progress and the request total are recorded with the failure outcome.
+     * A timer is used by the thread handling the request and is not thread-safe.
+     */
+    public static class StageTimer {
+        private final RequestMetrics metrics;
+        private final String serviceId;
+        private final long requestStart;
+        private final long requestStartMillis;
+        private final ProcessingEvents.Span requestEvent;
+        private String stage;
+        private String form;
+        private long stageStart;
+        private ProcessingEvents.Span stageEvent = ProcessingEvents.Span.NOOP;
+
+        // Kept for the slow request recorder, only turned into an entry if the request is slow
+        private final String[] stageNames = new String[MAX_TRACKED_STAGES];
+        private final String[] stageForms = new String[MAX_TRACKED_STAGES];
+        private final long[] stageNanos = new long[MAX_TRACKED_STAGES];
+        private int stageCount;
+        private String payload;
+        private Map<String, Integer> gridRows;
+
+        StageTimer(RequestMetrics metrics, String serviceId) {
+            this.metrics = metrics;
+            this.serviceId = serviceId;
+            this.requestStart = System.nanoTime();
+            this.stageStart = requestStart;
+            this.requestStartMillis = System.currentTimeMillis();
+            this.requestEvent = ProcessingEvents.begin(ProcessingEvents.Type.REQUEST, STAGE_TOTAL).serviceId(serviceId);
+        }
+
+        /**
+         * Identify the record the request created, for the request's JFR event
+         */
+        public void primaryKey(String primaryKey) {
+            requestEvent.primaryKey(primaryKey);
+        }
+
+        /**
+         * Keep the request body for the slow request recorder
+         * It is only fingerprinted if the request turns out to be slow.
+         */
+        public void payload(String body) {
+            this.payload = body;
+        }
+
+        /**
+         * Record the number of rows submitted to a grid, for the slow request recorder
+         */
+        public void gridRows(String grid, int rows) {
+            if (gridRows == null) {
+                gridRows = new LinkedHashMap<>();
+            }
+            gridRows.put(grid, rows);
+        }
+
+        public void stage(String name) {
+            stage(name, null);
+        }
+
+        /**
+         * End the current stage and start the next one
+         * @param form Form the stage works on, or null
+         */
+        public void stage(String name, String form) {
+            long now = System.nanoTime();
+            endStage(OUTCOME_SUCCESS, now);
+            this.stage = name;
+            this.form = form;
+            this.stageStart = now;
+            this.stageEvent = ProcessingEvents.begin(ProcessingEvents.Type.STAGE, name).serviceId(serviceId).formId(form);
+        }
+
+        /**
+         * Record a form-level duration inside the current stage
+         */
+        public void recordForm(String stageName, String formId, boolean success, long startNanos) {
+            long durationNanos = System.nanoTime() - startNanos;
+            metrics.record(serviceId, stageName, formId, success ? OUTCOME_SUCCESS : OUTCOME_FAILURE, durationNanos);
+            track(stageName, formId, durationNanos);
+        }
+
+        /**
+         * End the current stage and record the request as successful
+         */
+        public void complete() {
+            finish(OUTCOME_SUCCESS);
+        }
+
+        /**
+         * End the current stage and record the request with a failure outcome
+         */
+        public void fail(String outcome) {
+            finish(outcome);
+        }
+
+        private void finish(String outcome) {
+            long now = System.nanoTime();
+            endStage(outcome, now);
+            long durationNanos = now - requestStart;
+            metrics.record(serviceId, STAGE_TOTAL, null, outcome, durationNanos);
+            requestEvent.end(OUTCOME_SUCCESS.equals(outcome));
+
+            SlowRequestRecorder recorder = SlowRequestRecorder.getInstance();
+            long nowMillis = requestStartMillis + TimeUnit.NANOSECONDS.toMillis(durationNanos);
+            if (recorder.admits(serviceId, durationNanos, nowMillis)) {
+                recorder.record(toSlowRequest(outcome, durationNanos, nowMillis));
+            }
+        }
+
+        private void track(String name, String formId, long durationNanos) {
+            if (stageCount < MAX_TRACKED_STAGES) {
+                stageNames[stageCount] = name;
+                stageForms[stageCount] = formId;
+                stageNanos[stageCount] = durationNanos;
+                stageCount++;
+            }
+        }
+
+        SlowRequestRecorder.SlowRequest toSlowRequest(String outcome, long durationNanos, long nowMillis) {
+            List<SlowRequestRecorder.StageTiming> stages = new ArrayList<>(stageCount);
+            for (int i = 0; i < stageCount; i++) {
+                stages.add(new SlowRequestRecorder.StageTiming(stageNames[i], stageForms[i], stageNanos[i]));
+            }
+            int payloadBytes = 0;
+            String fingerprint = null;
+            if (payload != null) {
+                byte[] content = payload.getBytes(StandardCharsets.UTF_8);
+                payloadBytes = content.length;
+                fingerprint = ContentHashUtil.sha256Hex(content).substring(0, 16);
+            }
+            Map<String, Integer> grids = gridRows != null ? gridRows : Collections.<String, Integer>emptyMap();
+            return new SlowRequestRecorder.SlowRequest(serviceId, nowMillis, durationNanos, outcome,
+                    payloadBytes, fingerprint, stages, grids);
+        }
+
+        private void endStage(String outcome, long now) {
+            if (stage != null) {
+                metrics.record(serviceId, stage, form, outcome, now - stageStart);
+                track(stage, form, now - stageStart);
+                stageEvent.end(OUTCOME_SUCCESS.equals(outcome));
+                stageEvent = ProcessingEvents.Span.NOOP;
+                stage = null;
+            }
+        }
+    }
+
+    private static final class SeriesKey implements Comparable<SeriesKey> {
+        final String serviceId;
+        final String stage;
+        final String form;
+        final String outcome;
+
+        SeriesKey(String serviceId, String stage, String form, String outcome) {
+            this.serviceId = serviceId != null ? serviceId : "";
+            this.stage = stage != null ? stage : "";
+            this.form = form != null ? form : "";
+            this.outcome = outcome != null ? outcome : "";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SeriesKey)) {
+                return false;
+            }
+            SeriesKey other = (SeriesKey) o;
+            return serviceId.equals(other.serviceId) && stage.equals(other.stage)
+                    && form.equals(other.form) && outcome.equals(other.outcome);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = serviceId.hashCode();
+            result = 31 * result + stage.hashCode();
+            result = 31 * result + form.hashCode();
+            return 31 * result + outcome.hashCode();
+        }
+
+        @Override
+        public int compareTo(SeriesKey other) {
+            int cmp = serviceId.compareTo(other.serviceId);
+            if (cmp == 0) {
+                cmp = stage.compareTo(other.stage);
+            }
+            if (cmp == 0) {
+                cmp = form.compareTo(other.form);
+            }
+            return cmp != 0 ? cmp : outcome.compareTo(other.outcome);
+        }
+    }
+}
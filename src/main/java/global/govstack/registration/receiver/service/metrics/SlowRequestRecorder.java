@@ -0,0 +1,313 @@
+package global.govstack.registration.receiver.service.metrics;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the slowest recent requests of each service for diagnosis
+ *
+ * Each service has a fixed number of slots. A request is kept if it is slower than
+ * the fastest request held, or if a slot is free or holds a request older than the
+ * window. Slots are replaced with compare-and-set, so recording never blocks.
+ *
+ * Most requests are not slow enough to be kept, and {@link #admits} rejects them with
+ * two volatile reads; the entry, including the payload fingerprint, is only built for
+ * requests that pass it.
+ */
+public class SlowRequestRecorder {
+
+    static final int DEFAULT_CAPACITY = 20;
+    static final long DEFAULT_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    /** Services tracked at most, so unknown service IDs cannot grow memory */
+    private static final int MAX_SERVICES = 64;
+    private static final int MAX_REPLACE_ATTEMPTS = 4;
+
+    private static final SlowRequestRecorder INSTANCE = new SlowRequestRecorder(DEFAULT_CAPACITY, DEFAULT_WINDOW_MILLIS);
+
+    private final int capacity;
+    private final long windowMillis;
+    private final ConcurrentMap<String, ServiceBuffer> buffers = new ConcurrentHashMap<>();
+
+    public SlowRequestRecorder(int capacity, long windowMillis) {
+        if (capacity <= 0 || windowMillis <= 0) {
+            throw new IllegalArgumentException("Capacity and window must be positive");
+        }
+        this.capacity = capacity;
+        this.windowMillis = windowMillis;
+    }
+
+    public static SlowRequestRecorder getInstance() {
+        return INSTANCE;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Check whether a request of this duration would be kept
+     * @param nowMillis Current time from System.currentTimeMillis()
+     */
+    public boolean admits(String serviceId, long durationNanos, long nowMillis) {
+        ServiceBuffer buffer = buffers.get(serviceId);
+        if (buffer == null) {
+            return buffers.size() < MAX_SERVICES;
+        }
+        return durationNanos > buffer.thresholdNanos || nowMillis >= buffer.thresholdValidUntil;
+    }
+
+    /**
+     * Keep a request if it is among the slowest in the window
+     * @return true if the request was kept
+     */
+    public boolean record(SlowRequest request) {
+        ServiceBuffer buffer = buffers.get(request.serviceId);
+        if (buffer == null) {
+            if (buffers.size() >= MAX_SERVICES) {
+                return false;
+            }
+            buffer = buffers.computeIfAbsent(request.serviceId, k -> new ServiceBuffer(capacity));
+        }
+
+        for (int attempt = 0; attempt < MAX_REPLACE_ATTEMPTS; attempt++) {
+            int victim = -1;
+            SlowRequest victimEntry = null;
+            for (int i = 0; i < capacity; i++) {
+                SlowRequest entry = buffer.slots.get(i);
+                if (entry == null || isExpired(entry, request.recordedAt)) {
+                    victim = i;
+                    victimEntry = entry;
+                    break;
+                }
+                if (victimEntry == null || entry.durationNanos < victimEntry.durationNanos) {
+                    victim = i;
+                    victimEntry = entry;
+                }
+            }
+
+            if (victimEntry != null && !isExpired(victimEntry, request.recordedAt)
+                    && victimEntry.durationNanos >= request.durationNanos) {
+                buffer.updateThreshold(request.recordedAt);
+                return false;
+            }
+            if (buffer.slots.compareAndSet(victim, victimEntry, request)) {
+                buffer.updateThreshold(request.recordedAt);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExpired(SlowRequest entry, long nowMillis) {
+        return entry.recordedAt + windowMillis <= nowMillis;
+    }
+
+    /**
+     * Requests of a service held within the window, slowest first
+     */
+    public List<SlowRequest> getSlowest(String serviceId, long nowMillis) {
+        ServiceBuffer buffer = buffers.get(serviceId);
+        if (buffer == null) {
+            return Collections.emptyList();
+        }
+        List<SlowRequest> result = new ArrayList<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            SlowRequest entry = buffer.slots.get(i);
+            if (entry != null && !isExpired(entry, nowMillis)) {
+                result.add(entry);
+            }
+        }
+        result.sort((a, b) -> Long.compare(b.durationNanos, a.durationNanos));
+        return result;
+    }
+
+    /**
+     * Remove all entries, used when the plugin is stopped
+     */
+    public void reset() {
+        buffers.clear();
+    }
+
+    /**
+     * Dump the held requests of every service, slowest first
+     */
+    public JSONObject toJson(long nowMillis) {
+        JSONObject services = new JSONObject();
+        for (String serviceId : new TreeSet<>(buffers.keySet())) {
+            JSONArray requests = new JSONArray();
+            for (SlowRequest request : getSlowest(serviceId, nowMillis)) {
+                requests.put(request.toJson());
+            }
+            services.put(serviceId, requests);
+        }
+
+        JSONObject dump = new JSONObject();
+        dump.put("capacity", capacity);
+        dump.put("windowSeconds", TimeUnit.MILLISECONDS.toSeconds(windowMillis));
+        dump.put("services", services);
+        return dump;
+    }
+
+    private final class ServiceBuffer {
+        final AtomicReferenceArray<SlowRequest> slots;
+        /** Requests no slower than this are not kept, until thresholdValidUntil */
+        volatile long thresholdNanos;
+        volatile long thresholdValidUntil;
+
+        ServiceBuffer(int capacity) {
+            this.slots = new AtomicReferenceArray<>(capacity);
+        }
+
+        /**
+         * Recompute the admission threshold from the slots
+         * Racing updates may leave it lower than necessary, which only admits more requests to the slow path
+         */
+        void updateThreshold(long nowMillis) {
+            long fastest = Long.MAX_VALUE;
+            long oldest = Long.MAX_VALUE;
+            for (int i = 0; i < capacity; i++) {
+                SlowRequest entry = slots.get(i);
+                if (entry == null || isExpired(entry, nowMillis)) {
+                    thresholdNanos = 0;
+                    return;
+                }
+                fastest = Math.min(fastest, entry.durationNanos);
+                oldest = Math.min(oldest, entry.recordedAt);
+            }
+            thresholdValidUntil = oldest + windowMillis;
+            thresholdNanos = fastest;
+        }
+    }
+
+    /**
+     * One kept request
+     *
+     * The payload is only described by its size and a fingerprint, never its content.
+     */
+    public static final class SlowRequest {
+        final String serviceId;
+        final long recordedAt;
+        final long durationNanos;
+        final String outcome;
+        final int payloadBytes;
+        final String payloadFingerprint;
+        final List<StageTiming> stages;
+        final Map<String, Integer> gridRows;
+        final Set<String> forms;
+
+        public SlowRequest(String serviceId, long recordedAt, long durationNanos, String outcome,
+                           int payloadBytes, String payloadFingerprint, List<StageTiming> stages,
+                           Map<String, Integer> gridRows) {
+            this.serviceId = serviceId;
+            this.recordedAt = recordedAt;
+            this.durationNanos = durationNanos;
+            this.outcome = outcome;
+            this.payloadBytes = payloadBytes;
+            this.payloadFingerprint = payloadFingerprint;
+            this.stages = stages;
+            this.gridRows = gridRows;
+            this.forms = new LinkedHashSet<>();
+            for (StageTiming stage : stages) {
+                if (stage.form != null) {
+                    forms.add(stage.form);
+                }
+            }
+        }
+
+        public String getServiceId() {
+            return serviceId;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public String getPayloadFingerprint() {
+            return payloadFingerprint;
+        }
+
+        public List<StageTiming> getStages() {
+            return stages;
+        }
+
+        public Map<String, Integer> getGridRows() {
+            return gridRows;
+        }
+
+        public Set<String> getForms() {
+            return forms;
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("recordedAt", recordedAt);
+            json.put("durationMillis", TimeUnit.NANOSECONDS.toMicros(durationNanos) / 1000.0);
+            json.put("outcome", outcome);
+            json.put("payloadBytes", payloadBytes);
+            json.put("payloadFingerprint", payloadFingerprint);
+
+            JSONArray stageArray = new JSONArray();
+            for (StageTiming stage : stages) {
+                JSONObject stageJson = new JSONObject();
+                stageJson.put("stage", stage.stage);
+                if (stage.form != null) {
+                    stageJson.put("form", stage.form);
+                }
+                stageJson.put("durationMillis", TimeUnit.NANOSECONDS.toMicros(stage.durationNanos) / 1000.0);
+                stageArray.put(stageJson);
+            }
+            json.put("stages", stageArray);
+            JSONObject gridJson = new JSONObject();
+            for (Map.Entry<String, Integer> grid : gridRows.entrySet()) {
+                gridJson.put(grid.getKey(), grid.getValue().intValue());
+            }
+            json.put("gridRows", gridJson);
+            json.put("forms", new JSONArray(new ArrayList<>(forms)));
+            return json;
+        }
+    }
+
+    /**
+     * Duration of one stage of a kept request
+     */
+    public static final class StageTiming {
+        final String stage;
+        final String form;
+        final long durationNanos;
+
+        public StageTiming(String stage, String form, long durationNanos) {
+            this.stage = stage;
+            this.form = form;
+            this.durationNanos = durationNanos;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        public String getForm() {
+            return form;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+    }
+}
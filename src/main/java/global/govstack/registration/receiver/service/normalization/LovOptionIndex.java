@@ -0,0 +1,360 @@
+package global.govstack.registration.receiver.service.normalization;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import global.govstack.registration.receiver.service.validation.FieldTypeClassifier;
+import global.govstack.registration.receiver.util.ContentHashUtil;
+import org.joget.apps.app.model.AppDefinition;
+import org.joget.commons.util.LogUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Index of the allowed select/radio options of every form field
+ *
+ * Built from the form definitions with FieldTypeClassifier, so the processing server
+ * knows each field's LOV (yes/no, 1/2 or custom options) without hand-maintained lists.
+ * Lookups are O(1) hash lookups keyed by form and field.
+ *
+ * The index is cached on disk by the content hash of the form definitions, so a restart
+ * with unchanged forms reads the cache instead of reparsing every form. In memory there is
+ * one index per Joget app version; its forms are hashed again at most every
+ * FORMS_CHECK_MILLIS, and the index is rebuilt when they changed.
+ */
+public class LovOptionIndex {
+    private static final String CLASS_NAME = LovOptionIndex.class.getName();
+    private static final String CACHE_FILE_PREFIX = "lov-index-";
+
+    /**
+     * How long a shared index is used before its app's forms are checked for changes
+     */
+    static final long FORMS_CHECK_MILLIS = 60_000;
+
+    private static final ConcurrentMap<String, Shared> SHARED = new ConcurrentHashMap<>();
+
+    /**
+     * The index of one app, and when its forms were last hashed
+     */
+    private static final class Shared {
+        final LovOptionIndex index;
+        final long checkedAt;
+        final boolean pinned;
+
+        Shared(LovOptionIndex index, long checkedAt, boolean pinned) {
+            this.index = index;
+            this.checkedAt = checkedAt;
+            this.pinned = pinned;
+        }
+
+        boolean isCurrent(long now) {
+            return pinned || now - checkedAt < FORMS_CHECK_MILLIS;
+        }
+    }
+
+    /**
+     * Kind of LOV a field uses
+     */
+    public enum LovType {
+        YES_NO,
+        ONE_TWO,
+        CUSTOM
+    }
+
+    /**
+     * Allowed options of one field
+     */
+    public static class FieldOptions {
+        private final LovType type;
+        private final List<String> options;
+        private final Map<String, String> lookup;
+
+        public FieldOptions(LovType type, List<String> options) {
+            this.type = type;
+            this.options = Collections.unmodifiableList(new ArrayList<>(options));
+
+            Map<String, String> index = new HashMap<>(options.size() * 4);
+            for (String option : options) {
+                index.put(option, option);
+                index.putIfAbsent(option.trim().toLowerCase(Locale.ROOT), option);
+            }
+            this.lookup = index;
+        }
+
+        boolean sameAs(FieldOptions other) {
+            return type == other.type && options.equals(other.options);
+        }
+
+        public LovType getType() {
+            return type;
+        }
+
+        public List<String> getOptions() {
+            return options;
+        }
+
+        /**
+         * Resolve a submitted value to the option as declared in the form
+         * @return The declared option, or null if the value is not an allowed option
+         */
+        public String resolve(String value) {
+            if (value == null) {
+                return null;
+            }
+            String option = lookup.get(value);
+            return option != null ? option : lookup.get(value.trim().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private final String contentHash;
+    private final Map<String, FieldOptions> byFormField;
+    private final Map<String, FieldOptions> byField;
+
+    private LovOptionIndex(String contentHash, Map<String, FieldOptions> byFormField) {
+        this.contentHash = contentHash;
+        this.byFormField = Collections.unmodifiableMap(byFormField);
+
+        // A field ID declared with different options in several forms is only found by form
+        Map<String, FieldOptions> fields = new HashMap<>();
+        Set<String> ambiguous = new HashSet<>();
+        for (Map.Entry<String, FieldOptions> entry : byFormField.entrySet()) {
+            String fieldId = entry.getKey().substring(entry.getKey().indexOf('/') + 1);
+            FieldOptions existing = fields.putIfAbsent(fieldId, entry.getValue());
+            if (existing != null && !existing.sameAs(entry.getValue())) {
+                ambiguous.add(fieldId);
+            }
+        }
+        fields.keySet().removeAll(ambiguous);
+        this.byField = Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * Get the index shared by the mappers of an app, or null if none was loaded
+     * @param appDef The app, or null outside a Joget app
+     */
+    public static LovOptionIndex getShared(AppDefinition appDef) {
+        Shared entry = SHARED.get(appKey(appDef));
+        return entry != null ? entry.index : null;
+    }
+
+    /**
+     * Use an index for requests outside a Joget app, e.g. benchmarks, without ever checking forms
+     */
+    public static void setShared(LovOptionIndex index) {
+        if (index == null) {
+            SHARED.remove(appKey(null));
+        } else {
+            SHARED.put(appKey(null), new Shared(index, System.currentTimeMillis(), true));
+        }
+    }
+
+    /**
+     * Drop the indexes of every app, used when the plugin is stopped
+     */
+    public static void clearShared() {
+        SHARED.clear();
+    }
+
+    /**
+     * Get the shared index of an app, loading it from its form definitions on first use and
+     * rebuilding it when the forms changed
+     *
+     * @param appDef The app, or null outside a Joget app
+     * @param formDefinitions Reads the app's map of form ID to form definition JSON
+     * @param cacheDir Directory for the cached index, or null to disable disk caching
+     * @return The shared index, or null if there are no form definitions to index
+     */
+    public static LovOptionIndex getOrLoadShared(AppDefinition appDef, Supplier<Map<String, String>> formDefinitions,
+                                                 File cacheDir) throws IOException {
+        String key = appKey(appDef);
+        Shared entry = SHARED.get(key);
+        if (entry != null && entry.isCurrent(System.currentTimeMillis())) {
+            return entry.index;
+        }
+        synchronized (LovOptionIndex.class) {
+            long now = System.currentTimeMillis();
+            entry = SHARED.get(key);
+            if (entry != null && entry.isCurrent(now)) {
+                return entry.index;
+            }
+
+            Map<String, String> definitions = formDefinitions.get();
+            LovOptionIndex index = null;
+            if (definitions != null && !definitions.isEmpty()) {
+                String hash = contentHash(definitions);
+                index = entry != null && entry.index != null && hash.equals(entry.index.getContentHash())
+                        ? entry.index : load(hash, definitions, cacheDir);
+            }
+            SHARED.put(key, new Shared(index, now, false));
+            return index;
+        }
+    }
+
+    private static String appKey(AppDefinition appDef) {
+        return appDef != null ? appDef.getId() + "#" + appDef.getVersion() : "";
+    }
+
+    /**
+     * Build the index from form definitions, reusing the disk cache when the forms are unchanged
+     *
+     * @param formDefinitions Map of form ID to form definition JSON
+     * @param cacheDir Directory for the cached index, or null to disable disk caching
+     * @return The index
+     */
+    public static LovOptionIndex load(Map<String, String> formDefinitions, File cacheDir) throws IOException {
+        return load(contentHash(formDefinitions), formDefinitions, cacheDir);
+    }
+
+    private static LovOptionIndex load(String hash, Map<String, String> formDefinitions, File cacheDir) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        File cacheFile = cacheDir != null ? new File(cacheDir, CACHE_FILE_PREFIX + hash + ".json") : null;
+
+        if (cacheFile != null && cacheFile.isFile()) {
+            try {
+                Map<String, Map<String, Object>> cached = mapper.readValue(cacheFile,
+                        new TypeReference<Map<String, Map<String, Object>>>() {});
+                LovOptionIndex index = fromSerialized(hash, cached);
+                LogUtil.info(CLASS_NAME, "Loaded LOV option index for " + index.size() + " fields from cache: " + cacheFile);
+                return index;
+            } catch (Exception e) {
+                LogUtil.warn(CLASS_NAME, "Ignoring unreadable LOV index cache " + cacheFile + ": " + e.getMessage());
+            }
+        }
+
+        LovOptionIndex index = build(hash, formDefinitions);
+        LogUtil.info(CLASS_NAME, "Built LOV option index for " + index.size() + " fields from "
+                + formDefinitions.size() + " form definitions");
+
+        if (cacheFile != null) {
+            try {
+                if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+                    throw new IOException("Cannot create directory " + cacheDir);
+                }
+                File tmp = new File(cacheDir, cacheFile.getName() + ".tmp");
+                mapper.writeValue(tmp, index.toSerialized());
+                if (!tmp.renameTo(cacheFile)) {
+                    tmp.delete();
+                }
+            } catch (IOException e) {
+                LogUtil.warn(CLASS_NAME, "Could not write LOV index cache: " + e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Build the index from form definitions without any caching
+     */
+    public static LovOptionIndex build(Map<String, String> formDefinitions) throws IOException {
+        return build(contentHash(formDefinitions), formDefinitions);
+    }
+
+    private static LovOptionIndex build(String hash, Map<String, String> formDefinitions) throws IOException {
+        Map<String, FieldOptions> entries = new HashMap<>();
+
+        for (Map.Entry<String, String> form : new TreeMap<>(formDefinitions).entrySet()) {
+            FieldTypeClassifier classifier = new FieldTypeClassifier();
+            classifier.analyzeFormJson(form.getKey(), form.getValue());
+
+            for (FieldTypeClassifier.FieldInfo field : classifier.getFieldRegistry().values()) {
+                LovType type = toLovType(field.type);
+                if (type != null && !field.options.isEmpty()) {
+                    entries.put(key(form.getKey(), field.fieldId), new FieldOptions(type, field.options));
+                }
+            }
+        }
+        return new LovOptionIndex(hash, entries);
+    }
+
+    private static LovType toLovType(FieldTypeClassifier.FieldType type) {
+        switch (type) {
+            case LOV_YES_NO:
+                return LovType.YES_NO;
+            case LOV_ONE_TWO:
+                return LovType.ONE_TWO;
+            case LOV_CUSTOM:
+                return LovType.CUSTOM;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * SHA-256 over the form IDs and definitions in form ID order
+     */
+    static String contentHash(Map<String, String> formDefinitions) {
+        MessageDigest digest = ContentHashUtil.newDigest();
+        for (Map.Entry<String, String> form : new TreeMap<>(formDefinitions).entrySet()) {
+            digest.update(form.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(form.getValue()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return ContentHashUtil.toHex(digest);
+    }
+
+    private Map<String, Map<String, Object>> toSerialized() {
+        Map<String, Map<String, Object>> data = new TreeMap<>();
+        for (Map.Entry<String, FieldOptions> entry : byFormField.entrySet()) {
+            Map<String, Object> field = new LinkedHashMap<>();
+            field.put("type", entry.getValue().getType().name());
+            field.put("options", entry.getValue().getOptions());
+            data.put(entry.getKey(), field);
+        }
+        return data;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LovOptionIndex fromSerialized(String hash, Map<String, Map<String, Object>> data) {
+        Map<String, FieldOptions> entries = new HashMap<>();
+        for (Map.Entry<String, Map<String, Object>> entry : data.entrySet()) {
+            LovType type = LovType.valueOf((String) entry.getValue().get("type"));
+            List<String> options = (List<String>) entry.getValue().get("options");
+            entries.put(entry.getKey(), new FieldOptions(type, options));
+        }
+        return new LovOptionIndex(hash, entries);
+    }
+
+    private static String key(String formId, String fieldId) {
+        return formId + "/" + fieldId;
+    }
+
+    /**
+     * Get the options of a field in a specific form
+     * @return The options, or null if the field has no fixed options
+     */
+    public FieldOptions getOptions(String formId, String fieldId) {
+        return byFormField.get(key(formId, fieldId));
+    }
+
+    /**
+     * Get the options of a field in any form
+     * @return The options, or null if the field has no fixed options or its forms declare different ones
+     */
+    public FieldOptions getOptions(String fieldId) {
+        return byField.get(fieldId);
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public int size() {
+        return byFormField.size();
+    }
+}
@@ -1,7 +1,7 @@
 package global.govstack.registration.receiver.service.normalization;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import org.joget.commons.util.LogUtil;
+import global.govstack.registration.receiver.util.ProcessingLog;
 
 /**
  * Detects the format of incoming values to enable proper normalization.
@@ -10,7 +10,7 @@ import org.joget.commons.util.LogUtil;
  */
 public class ValueFormatDetector {
 
-    private static final String CLASS_NAME = ValueFormatDetector.class.getName();
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(ValueFormatDetector.class);
 
     /**
      * Supported value formats
@@ -36,7 +36,7 @@ public class ValueFormatDetector {
         }
 
         if (value.isBoolean()) {
-            LogUtil.debug(CLASS_NAME, "Detected BOOLEAN format: " + value);
+            LOG.debug("Detected BOOLEAN format: {}", value);
             return Format.BOOLEAN;
         }
 
@@ -45,24 +45,24 @@ public class ValueFormatDetector {
 
             // Check for boolean strings
             if ("true".equals(text) || "false".equals(text)) {
-                LogUtil.debug(CLASS_NAME, "Detected BOOLEAN_STRING format: " + text);
+                LOG.debug("Detected BOOLEAN_STRING format: {}", text);
                 return Format.BOOLEAN_STRING;
             }
 
             // Check for numeric LOV values
             if ("1".equals(text) || "2".equals(text)) {
-                LogUtil.debug(CLASS_NAME, "Detected LOV_NUMERIC format: " + text);
+                LOG.debug("Detected LOV_NUMERIC format: {}", text);
                 return Format.LOV_NUMERIC;
             }
 
             // Check for text LOV values
             if ("yes".equals(text) || "no".equals(text)) {
-                LogUtil.debug(CLASS_NAME, "Detected LOV_TEXT format: " + text);
+                LOG.debug("Detected LOV_TEXT format: {}", text);
                 return Format.LOV_TEXT;
             }
 
             // Other string values
-            LogUtil.debug(CLASS_NAME, "Detected CUSTOM format: " + text);
+            LOG.debug("Detected CUSTOM format: {}", text);
             return Format.CUSTOM;
         }
 
@@ -70,12 +70,12 @@ public class ValueFormatDetector {
         if (value.isNumber()) {
             int numValue = value.asInt();
             if (numValue == 1 || numValue == 2) {
-                LogUtil.debug(CLASS_NAME, "Detected LOV_NUMERIC format (from number): " + numValue);
+                LOG.debug("Detected LOV_NUMERIC format (from number): {}", numValue);
                 return Format.LOV_NUMERIC;
             }
         }
 
-        LogUtil.debug(CLASS_NAME, "Unknown format for value: " + value);
+        LOG.debug("Unknown format for value: {}", value);
         return Format.CUSTOM;
     }
 
@@ -3,7 +3,10 @@ package global.govstack.registration.receiver.service.normalization;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.IntNode;
 import com.fasterxml.jackson.databind.node.TextNode;
+import global.govstack.registration.receiver.service.masterdata.MasterDataCache;
 import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.service.metrics.ProcessingEvents;
+import global.govstack.registration.receiver.util.ProcessingLog;
 import org.joget.commons.util.LogUtil;
 
 import java.util.HashMap;
@@ -20,10 +23,16 @@ import java.util.Set;
 public class ValueNormalizer {
 
     private static final String CLASS_NAME = ValueNormalizer.class.getName();
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(ValueNormalizer.class);
+    private static final NormalizationConfig YES_NO_CONFIG = new NormalizationConfig("yes", "no");
+    private static final NormalizationConfig ONE_TWO_CONFIG = new NormalizationConfig("1", "2");
 
     private final ValueFormatDetector detector;
     private final Map<String, NormalizationConfig> fieldConfigs;
     private final Set<String> masterdataFields;
+    private final Map<String, MasterDataCache.Source> masterDataSources = new HashMap<>();
+    private MasterDataCache masterDataCache;
+    private LovOptionIndex lovOptionIndex;
 
     /**
      * Configuration for field-specific normalization
@@ -112,7 +121,7 @@ public class ValueNormalizer {
             for (String field : yesNoFields) {
                 fieldConfigs.put(field, yesNoConfig);
             }
-            LogUtil.info(CLASS_NAME, "Loaded " + yesNoFields.size() + " yesNo normalization fields");
+            LOG.debug("Loaded {} yesNo normalization fields", yesNoFields.size());
         }
 
         // Load oneTwo fields (yes/no → 1/2)
@@ -122,10 +131,10 @@ public class ValueNormalizer {
             for (String field : oneTwoFields) {
                 fieldConfigs.put(field, oneTwoConfig);
             }
-            LogUtil.info(CLASS_NAME, "Loaded " + oneTwoFields.size() + " oneTwo normalization fields");
+            LOG.debug("Loaded {} oneTwo normalization fields", oneTwoFields.size());
         }
 
-        LogUtil.info(CLASS_NAME, "Initialized normalization for " + fieldConfigs.size() + " fields from configuration");
+        LOG.debug("Initialized normalization for {} fields from configuration", fieldConfigs.size());
     }
 
     /**
@@ -142,10 +151,143 @@ public class ValueNormalizer {
         Set<String> configuredFields = metadataService.getMasterDataFields();
         if (configuredFields != null && !configuredFields.isEmpty()) {
             masterdataFields.addAll(configuredFields);
-            LogUtil.info(CLASS_NAME, "Loaded " + masterdataFields.size() + " masterdata fields from configuration");
+            LOG.debug("Loaded {} masterdata fields from configuration", masterdataFields.size());
         } else {
             LogUtil.warn(CLASS_NAME, "No masterdata fields configured in services.yml - all fields may be normalized");
         }
+
+        for (Map.Entry<String, Map<String, String>> entry : metadataService.getMasterDataSources().entrySet()) {
+            if (masterdataFields.contains(entry.getKey())) {
+                masterDataSources.put(entry.getKey(), MasterDataCache.Source.fromConfig(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Get the configured code table source for each master data field
+     * @return Map of field name to master data source
+     */
+    public Map<String, MasterDataCache.Source> getMasterDataSources() {
+        return masterDataSources;
+    }
+
+    /**
+     * Enable master data code validation against the given cache
+     * @param masterDataCache The cache holding the code tables
+     */
+    public void setMasterDataCache(MasterDataCache masterDataCache) {
+        this.masterDataCache = masterDataCache;
+    }
+
+    /**
+     * Check if a field is a master data field
+     */
+    public boolean isMasterDataField(String fieldName) {
+        return masterdataFields.contains(fieldName);
+    }
+
+    /**
+     * Validate and canonicalise a master data value against its cached code table
+     * Multi-value fields (semicolon separated) are resolved code by code.
+     *
+     * @param fieldName The master data field name
+     * @param value The submitted value
+     * @return The canonical code(s), the value unchanged if the field has no loaded code table,
+     *         or null if the value is not a valid code
+     */
+    public String resolveMasterData(String fieldName, String value) {
+        if (value == null || value.isEmpty() || masterDataCache == null) {
+            return value;
+        }
+
+        MasterDataCache.Source source = masterDataSources.get(fieldName);
+        MasterDataCache.CodeTable table = source != null ? masterDataCache.getTable(source.getFormId()) : null;
+        if (table == null) {
+            return value;
+        }
+
+        if (value.indexOf(';') < 0) {
+            return table.canonicalise(value);
+        }
+
+        StringBuilder resolved = new StringBuilder(value.length());
+        for (String token : value.split(";")) {
+            if (token.trim().isEmpty()) {
+                continue;
+            }
+            String code = table.canonicalise(token);
+            if (code == null) {
+                return null;
+            }
+            if (resolved.length() > 0) {
+                resolved.append(';');
+            }
+            resolved.append(code);
+        }
+        return resolved.toString();
+    }
+
+    /**
+     * Use an LOV option index for fields without explicit normalization config
+     * Yes/no and 1/2 fields are then recognised from the form definitions, and custom
+     * values are matched against the field's declared options
+     */
+    public void setLovOptionIndex(LovOptionIndex lovOptionIndex) {
+        this.lovOptionIndex = lovOptionIndex;
+    }
+
+    /**
+     * Derive the normalization config of a field from the LOV option index
+     * @return The config, or null if the field is not a yes/no or 1/2 field in the index
+     */
+    private NormalizationConfig getIndexedConfig(String formId, String fieldName) {
+        LovOptionIndex.FieldOptions options = getIndexedOptions(formId, fieldName);
+        if (options == null) {
+            return null;
+        }
+        switch (options.getType()) {
+            case YES_NO:
+                return YES_NO_CONFIG;
+            case ONE_TWO:
+                return ONE_TWO_CONFIG;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Match a value against the declared options of a field
+     * @return The option as declared in the form, or the value unchanged if there is no match
+     */
+    private String resolveLovOption(String formId, String fieldName, String value) {
+        LovOptionIndex.FieldOptions options = getIndexedOptions(formId, fieldName);
+        if (options == null) {
+            return value;
+        }
+        String option = options.resolve(value);
+        return option != null ? option : value;
+    }
+
+    /**
+     * Look up a field in the LOV option index, in its own form when the form is known
+     */
+    private LovOptionIndex.FieldOptions getIndexedOptions(String formId, String fieldName) {
+        if (lovOptionIndex == null) {
+            return null;
+        }
+        return formId != null ? lovOptionIndex.getOptions(formId, fieldName) : lovOptionIndex.getOptions(fieldName);
+    }
+
+    /**
+     * Resolve a master data code to its label from the cached code table
+     * @return The label, or null if unknown
+     */
+    public String getMasterDataLabel(String fieldName, String code) {
+        MasterDataCache.Source source = masterDataSources.get(fieldName);
+        if (source == null || masterDataCache == null) {
+            return null;
+        }
+        return masterDataCache.getLabel(source.getFormId(), code);
     }
 
     /**
@@ -153,7 +295,7 @@ public class ValueNormalizer {
      */
     public void addFieldConfig(String fieldName, NormalizationConfig config) {
         fieldConfigs.put(fieldName, config);
-        LogUtil.debug(CLASS_NAME, "Added normalization config for field: " + fieldName);
+        LOG.debug("Added normalization config for field: {}", fieldName);
     }
 
     /**
@@ -164,25 +306,56 @@ public class ValueNormalizer {
      * @return The normalized LOV value as string
      */
     public String normalizeToLOV(JsonNode value, String fieldName) {
+        return normalizeToLOV(value, null, fieldName);
+    }
+
+    /**
+     * Normalize any input format to LOV value for storage
+     * The field's options are looked up in the given form, so a field ID used by
+     * several forms resolves against the right one
+     *
+     * @param value     The JSON value to normalize
+     * @param formId    The form the field belongs to, or null if unknown
+     * @param fieldName The field name (for field-specific rules)
+     * @return The normalized LOV value as string
+     */
+    public String normalizeToLOV(JsonNode value, String formId, String fieldName) {
+        ProcessingEvents.Span event = ProcessingEvents.begin(ProcessingEvents.Type.NORMALIZATION, "normalization").field(fieldName);
+        boolean normalized = false;
+        try {
+            String result = normalize(value, formId, fieldName);
+            normalized = true;
+            return result;
+        } finally {
+            event.end(normalized);
+        }
+    }
+
+    private String normalize(JsonNode value, String formId, String fieldName) {
         if (value == null || value.isNull()) {
-            LogUtil.debug(CLASS_NAME, "Null value for field " + fieldName + ", returning null");
+            LOG.verbose("Null value for field {}, returning null", fieldName);
             return null;
         }
 
         // Check if field is masterdata and should not be normalized
         if (masterdataFields.contains(fieldName)) {
             String result = value.asText();
-            LogUtil.info(CLASS_NAME, "Field '" + fieldName + "' is masterdata, passing through unchanged: " + result);
+            LOG.verbose("Field '{}' is masterdata, passing through unchanged: {}", fieldName, ProcessingLog.describe(result));
             return result;
         }
 
         ValueFormatDetector.Format format = detector.detectFormat(value);
         NormalizationConfig config = fieldConfigs.get(fieldName);
 
+        // Fall back to the LOV declared in the form definitions
+        if (config == null) {
+            config = getIndexedConfig(formId, fieldName);
+        }
+
         // If no specific config, use default 1/2 mapping
         if (config == null) {
             config = new NormalizationConfig("1", "2");
-            LogUtil.debug(CLASS_NAME, "No specific config for field " + fieldName + ", using default 1/2 mapping");
+            LOG.debug("No specific config for field {}, using default 1/2 mapping", fieldName);
         }
 
         String result = null;
@@ -191,7 +364,7 @@ public class ValueNormalizer {
             case LOV_NUMERIC:
                 // Already in LOV numeric format (1 or 2)
                 result = value.isNumber() ? String.valueOf(value.asInt()) : value.asText();
-                LogUtil.debug(CLASS_NAME, "Field " + fieldName + " already in LOV_NUMERIC format: " + result);
+                LOG.debug("Field {} already in LOV_NUMERIC format: {}", fieldName, result);
                 break;
 
             case LOV_TEXT:
@@ -202,22 +375,22 @@ public class ValueNormalizer {
                 } else if ("no".equals(textValue)) {
                     result = config.getNegativeValue();
                 } else {
-                    result = textValue; // Keep as-is if not yes/no
+                    result = resolveLovOption(formId, fieldName, textValue); // Keep as-is if not yes/no
                 }
-                LogUtil.debug(CLASS_NAME, "Field " + fieldName + " converted from LOV_TEXT '" + textValue + "' to '" + result + "'");
+                LOG.debug("Field {} converted from LOV_TEXT '{}' to '{}'", fieldName, textValue, result);
                 break;
 
             case BOOLEAN:
                 // Convert boolean to configured values
                 result = value.asBoolean() ? config.getPositiveValue() : config.getNegativeValue();
-                LogUtil.debug(CLASS_NAME, "Field " + fieldName + " converted from BOOLEAN " + value.asBoolean() + " to '" + result + "'");
+                LOG.debug("Field {} converted from BOOLEAN to '{}'", fieldName, result);
                 break;
 
             case BOOLEAN_STRING:
                 // Convert "true"/"false" strings to configured values
                 boolean boolValue = "true".equalsIgnoreCase(value.asText());
                 result = boolValue ? config.getPositiveValue() : config.getNegativeValue();
-                LogUtil.debug(CLASS_NAME, "Field " + fieldName + " converted from BOOLEAN_STRING '" + value.asText() + "' to '" + result + "'");
+                LOG.debug("Field {} converted from BOOLEAN_STRING to '{}'", fieldName, result);
                 break;
 
             case CUSTOM:
@@ -226,11 +399,11 @@ public class ValueNormalizer {
                 String mapped = config.getCustomMapping(customValue);
                 if (mapped != null) {
                     result = mapped;
-                    LogUtil.debug(CLASS_NAME, "Field " + fieldName + " custom mapping: '" + customValue + "' to '" + result + "'");
+                    LOG.debug("Field {} custom mapping: '{}' to '{}'", fieldName, customValue, result);
                 } else {
-                    // Keep custom value as-is if no mapping found
-                    result = customValue;
-                    LogUtil.debug(CLASS_NAME, "Field " + fieldName + " keeping custom value as-is: " + result);
+                    // Match against the declared options, keep custom value as-is if none match
+                    result = resolveLovOption(formId, fieldName, customValue);
+                    LOG.debug("Field {} keeping custom value as-is: {}", fieldName, result);
                 }
                 break;
 
@@ -240,10 +413,10 @@ public class ValueNormalizer {
 
             default:
                 result = value.asText();
-                LogUtil.warn(CLASS_NAME, "Unknown format for field " + fieldName + ", using as-is: " + result);
+                LOG.warn("Unknown format for field {}, using as-is: {}", fieldName, ProcessingLog.describe(result));
         }
 
-        LogUtil.info(CLASS_NAME, "Normalized field '" + fieldName + "' from " + format + " to LOV value: " + result);
+        LOG.verbose("Normalized field '{}' from {} to LOV value: {}", fieldName, format, ProcessingLog.describe(result));
         return result;
     }
 
@@ -304,7 +477,7 @@ public class ValueNormalizer {
             }
         }
 
-        LogUtil.info(CLASS_NAME, "Created normalizer from service config with " + normalizer.fieldConfigs.size() + " field configurations");
+        LOG.debug("Created normalizer from service config with {} field configurations", normalizer.fieldConfigs.size());
         return normalizer;
     }
 }
\ No newline at end of file
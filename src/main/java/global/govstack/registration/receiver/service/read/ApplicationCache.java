@@ -0,0 +1,161 @@
+package global.govstack.registration.receiver.service.read;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded read-through cache of assembled applications
+ *
+ * Entries are kept least recently used first up to a fixed number and expire after a
+ * time to live, which bounds how stale a record changed outside this plugin can be.
+ * Submissions invalidate the application they wrote. A load that overlaps an
+ * invalidation of the same application is returned to its caller but not cached, so a
+ * read racing a write cannot put the old record back after the write has invalidated it.
+ * Writes to other applications do not keep a load from being cached.
+ */
+public class ApplicationCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 1000;
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final ApplicationCache INSTANCE = new ApplicationCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+
+    /**
+     * Loads an application on a cache miss
+     */
+    public interface Loader {
+        /**
+         * @return The application as JSON text
+         */
+        String load() throws Exception;
+    }
+
+    private static final class Entry {
+        final String json;
+        final long expiresAt;
+
+        Entry(String json, long expiresAt) {
+            this.json = json;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Loads in flight for one application and the invalidations seen while they ran
+     */
+    private static final class Pending {
+        int loads;
+        long invalidations;
+    }
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+    // Only applications with a load in flight, guarded by entries
+    private final Map<String, Pending> pending = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ApplicationCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ApplicationCache.this.maxEntries;
+            }
+        };
+    }
+
+    public static ApplicationCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get an application, loading it on a miss
+     * @param loader Called without holding the cache lock
+     * @return The application as JSON text
+     */
+    public String get(String serviceId, String applicationId, Loader loader) throws Exception {
+        String key = key(serviceId, applicationId);
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                hits.incrementAndGet();
+                return entry.json;
+            }
+        }
+
+        misses.incrementAndGet();
+        Pending loading;
+        long generation;
+        synchronized (entries) {
+            loading = pending.computeIfAbsent(key, k -> new Pending());
+            loading.loads++;
+            generation = loading.invalidations;
+        }
+
+        String json = null;
+        try {
+            json = loader.load();
+            return json;
+        } finally {
+            synchronized (entries) {
+                if (json != null && loading.invalidations == generation) {
+                    entries.put(key, new Entry(json, System.currentTimeMillis() + ttlMillis));
+                }
+                if (--loading.loads == 0) {
+                    pending.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop an application after it was written
+     */
+    public void invalidate(String serviceId, String applicationId) {
+        String key = key(serviceId, applicationId);
+        synchronized (entries) {
+            entries.remove(key);
+            Pending loading = pending.get(key);
+            if (loading != null) {
+                loading.invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Remove all entries, used when the plugin is stopped
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            for (Pending loading : pending.values()) {
+                loading.invalidations++;
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static String key(String serviceId, String applicationId) {
+        return serviceId + '\n' + applicationId;
+    }
+}
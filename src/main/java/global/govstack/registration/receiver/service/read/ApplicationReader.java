@@ -0,0 +1,175 @@
+package global.govstack.registration.receiver.service.read;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import global.govstack.registration.receiver.exception.ApiProcessingException;
+import global.govstack.registration.receiver.exception.ConfigurationException;
+import global.govstack.registration.receiver.service.metadata.GovStackDataAssembler;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.service.metrics.ProcessingEvents;
+import global.govstack.registration.receiver.util.ProcessingLog;
+import org.joget.apps.app.model.AppDefinition;
+import org.joget.apps.app.service.AppService;
+import org.joget.apps.app.service.AppUtil;
+import org.joget.apps.form.dao.FormDataDao;
+import org.joget.apps.form.model.FormRow;
+import org.joget.apps.form.model.FormRowSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Reads a registration back from the parent form, its section forms and its grids
+ *
+ * Every form of the application is loaded concurrently on a shared pool, so a read costs
+ * about one query round trip rather than one per form, and the rows are assembled into
+ * the GovStack request shape by the compiled {@link GovStackDataAssembler}.
+ */
+public class ApplicationReader {
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(ApplicationReader.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final int POOL_SIZE = 8;
+    private static final long READ_TIMEOUT_SECONDS = 30;
+
+    private static ExecutorService executor;
+
+    private final String serviceId;
+    private final GovStackDataAssembler assembler;
+    private final AppDefinition appDefinition;
+    private final AppService appService;
+    private final FormDataDao formDataDao;
+
+    public ApplicationReader(YamlMetadataService metadataService) throws ConfigurationException {
+        this.serviceId = metadataService.getServiceId();
+        this.assembler = GovStackDataAssembler.forMetadata(metadataService);
+        this.appDefinition = AppUtil.getCurrentAppDefinition();
+        this.appService = (AppService) AppUtil.getApplicationContext().getBean("appService");
+        this.formDataDao = (FormDataDao) AppUtil.getApplicationContext().getBean("formDataDao");
+    }
+
+    /**
+     * Read an application
+     * @param applicationId The application's primary key
+     * @return The application in the GovStack request shape, as JSON text
+     * @throws ApiProcessingException 404 if the application does not exist
+     */
+    public String read(String applicationId) throws ApiProcessingException {
+        ProcessingEvents.Span event = ProcessingEvents.begin(ProcessingEvents.Type.STAGE, "application_read")
+                .serviceId(serviceId).primaryKey(applicationId);
+        boolean success = false;
+        try {
+            String parentFormId = assembler.getParentFormId();
+            Future<FormRow> parent = submit(() -> loadRow(parentFormId, applicationId));
+
+            Map<String, Future<FormRow>> sections = new LinkedHashMap<>();
+            for (String formId : assembler.getSectionFormIds()) {
+                sections.put(formId, submit(() -> loadRow(formId, applicationId)));
+            }
+            Map<String, Future<List<FormRow>>> grids = new LinkedHashMap<>();
+            for (GovStackDataAssembler.GridPlan grid : assembler.getGrids()) {
+                grids.put(grid.getGridName(), submit(() -> loadGridRows(grid, applicationId)));
+            }
+
+            if (await(parent) == null) {
+                throw ApiProcessingException.notFound("Application not found: " + applicationId);
+            }
+            Map<String, FormRow> sectionRows = new HashMap<>();
+            for (Map.Entry<String, Future<FormRow>> section : sections.entrySet()) {
+                FormRow row = await(section.getValue());
+                if (row != null) {
+                    sectionRows.put(section.getKey(), row);
+                }
+            }
+            Map<String, List<FormRow>> gridRows = new HashMap<>();
+            for (Map.Entry<String, Future<List<FormRow>>> grid : grids.entrySet()) {
+                gridRows.put(grid.getKey(), await(grid.getValue()));
+            }
+
+            String json = OBJECT_MAPPER.writeValueAsString(assembler.assemble(applicationId, sectionRows, gridRows));
+            LOG.debug("Read application {} from {} forms and {} grids", applicationId, sectionRows.size(), gridRows.size());
+            success = true;
+            return json;
+        } catch (ApiProcessingException e) {
+            throw e;
+        } catch (Exception e) {
+            LOG.error(e, "Error reading application {}: {}", applicationId, e.getMessage());
+            throw ApiProcessingException.serverError("Error reading application: " + e.getMessage());
+        } finally {
+            event.end(success);
+        }
+    }
+
+    private FormRow loadRow(String formId, String applicationId) {
+        FormRowSet rows = appService.loadFormData(appDefinition.getId(), appDefinition.getVersion().toString(),
+                formId, applicationId);
+        return rows != null && !rows.isEmpty() ? rows.get(0) : null;
+    }
+
+    private List<FormRow> loadGridRows(GovStackDataAssembler.GridPlan grid, String applicationId) {
+        if (grid.getParentColumn() == null) {
+            LOG.warn("No parent column configured for grid {}, rows not read", grid.getGridName());
+            return Collections.emptyList();
+        }
+        String tableName = appService.getFormTableName(appDefinition, grid.getFormId());
+        FormRowSet rows = formDataDao.find(grid.getFormId(), tableName, "WHERE " + grid.getParentColumn() + " = ?",
+                new Object[]{applicationId}, "dateCreated", false, null, null);
+        return rows != null ? new ArrayList<FormRow>(rows) : Collections.<FormRow>emptyList();
+    }
+
+    /**
+     * Run a load on the pool with the caller's app definition bound
+     */
+    private <T> Future<T> submit(Callable<T> load) {
+        return getExecutor().submit(() -> {
+            AppUtil.setCurrentAppDefinition(appDefinition);
+            try {
+                return load.call();
+            } finally {
+                AppUtil.setCurrentAppDefinition(null);
+            }
+        });
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(POOL_SIZE, r -> {
+                Thread thread = new Thread(r, "govstack-application-read");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Stop the read pool, used when the plugin is stopped
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -1,28 +1,82 @@
 package global.govstack.registration.receiver.service.validation;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
 /**
  * Main class to run field analysis
+ *
+ * Usage: FieldAnalysisRunner <formDirectory> [--report <file>] [--cache <file>] [--threads <n>]
+ *
+ * With --cache, per-form results are kept between runs and only changed forms are parsed again.
  */
 public class FieldAnalysisRunner {
 
+    private static final String USAGE =
+            "Usage: FieldAnalysisRunner <formDirectory> [--report <file>] [--cache <file>] [--threads <n>]";
+
     public static void main(String[] args) throws IOException {
-        // Path to doc-forms directory
-        String formDirectory = "/Users/aarelaponin/IdeaProjects/gs-plugins/doc-submitter/doc-forms";
+        String formDirectory = null;
+        String reportPath = null;
+        String cachePath = null;
+        Integer threads = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (("--report".equals(arg) || "--cache".equals(arg) || "--threads".equals(arg)) && i + 1 >= args.length) {
+                exitWithUsage("Missing value for " + arg);
+            }
+            switch (arg) {
+                case "--report":
+                    reportPath = args[++i];
+                    break;
+                case "--cache":
+                    cachePath = args[++i];
+                    break;
+                case "--threads":
+                    try {
+                        threads = Integer.parseInt(args[++i]);
+                    } catch (NumberFormatException e) {
+                        exitWithUsage("Invalid thread count: " + args[i]);
+                    }
+                    break;
+                default:
+                    if (arg.startsWith("--") || formDirectory != null) {
+                        exitWithUsage("Unexpected argument: " + arg);
+                    }
+                    formDirectory = arg;
+            }
+        }
+        if (formDirectory == null) {
+            exitWithUsage("Missing form directory");
+        }
+
+        FormDefinitionAnalyzer analyzer = new FormDefinitionAnalyzer();
+        if (cachePath != null) {
+            analyzer.setCacheFile(new File(cachePath));
+        }
+        if (threads != null) {
+            analyzer.setParallelism(threads);
+        }
 
         FieldTypeClassifier classifier = new FieldTypeClassifier();
-        classifier.analyzeFormFiles(formDirectory);
+        for (FormDefinitionAnalyzer.FormAnalysis form : analyzer.analyzeDirectory(new File(formDirectory))) {
+            classifier.registerFields(form.getFields());
+        }
+        System.out.println("Analysed forms: " + analyzer.getParsedCount() + " parsed, "
+                + analyzer.getReusedCount() + " unchanged\n");
 
         String report = classifier.generateReport();
         System.out.println(report);
 
         // Save report to file
-        String reportPath = "/Users/aarelaponin/IdeaProjects/gs-plugins/processing-server/field-analysis-report.txt";
-        Files.write(Paths.get(reportPath), report.getBytes());
-        System.out.println("\nReport saved to: " + reportPath);
+        if (reportPath != null) {
+            Files.write(Paths.get(reportPath), report.getBytes(StandardCharsets.UTF_8));
+            System.out.println("\nReport saved to: " + reportPath);
+        }
 
         // Generate lists for ValueNormalizer configuration
         System.out.println("\n=== Configuration for ValueNormalizer ===\n");
@@ -42,4 +96,10 @@ public class FieldAnalysisRunner {
             System.out.println("  masterdataFields.add(\"" + field + "\");");
         }
     }
-}
\ No newline at end of file
+
+    private static void exitWithUsage(String message) {
+        System.err.println(message);
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+}
@@ -6,6 +6,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -68,29 +69,21 @@ public class FieldTypeClassifier {
         }
     }
 
-    private final Map<String, FieldInfo> fieldRegistry = new HashMap<>();
-    private final Set<String> lovYesNoFields = new HashSet<>();
-    private final Set<String> lovOneTwoFields = new HashSet<>();
-    private final Set<String> masterdataFields = new HashSet<>();
+    // Concurrent so results of forms analysed in parallel can be merged safely
+    private final Map<String, FieldInfo> fieldRegistry = new ConcurrentHashMap<>();
+    private final Set<String> lovYesNoFields = ConcurrentHashMap.newKeySet();
+    private final Set<String> lovOneTwoFields = ConcurrentHashMap.newKeySet();
+    private final Set<String> masterdataFields = ConcurrentHashMap.newKeySet();
     private final ObjectMapper mapper = new ObjectMapper();
 
     /**
      * Analyze form JSON files and classify all fields
+     * Forms are parsed in parallel, see FormDefinitionAnalyzer
      */
     public void analyzeFormFiles(String formDirectory) throws IOException {
-        File dir = new File(formDirectory);
-        if (!dir.exists() || !dir.isDirectory()) {
-            throw new IOException("Form directory not found: " + formDirectory);
-        }
-
-        File[] jsonFiles = dir.listFiles((d, name) -> name.endsWith(".json"));
-        if (jsonFiles == null || jsonFiles.length == 0) {
-            LOGGER.warning("No JSON files found in: " + formDirectory);
-            return;
-        }
-
-        for (File jsonFile : jsonFiles) {
-            analyzeFormFile(jsonFile);
+        FormDefinitionAnalyzer analyzer = new FormDefinitionAnalyzer();
+        for (FormDefinitionAnalyzer.FormAnalysis form : analyzer.analyzeDirectory(new File(formDirectory))) {
+            registerFields(form.getFields());
         }
 
         LOGGER.info("Field analysis complete:");
@@ -101,26 +94,32 @@ public class FieldTypeClassifier {
     }
 
     /**
-     * Analyze a single form JSON file
+     * Analyze a single form definition given as JSON text
+     * Used when form definitions come from the running app rather than from files
      */
-    private void analyzeFormFile(File jsonFile) throws IOException {
-        LOGGER.info("Analyzing form file: " + jsonFile.getName());
-
-        JsonNode rootNode = mapper.readTree(jsonFile);
-        String formId = extractFormId(jsonFile.getName());
-
-        // Recursively process all elements
+    public void analyzeFormJson(String formId, String formJson) throws IOException {
+        JsonNode rootNode = mapper.readTree(formJson);
         processElements(rootNode, formId);
     }
 
     /**
      * Extract form ID from filename
      */
-    private String extractFormId(String filename) {
+    static String extractFormId(String filename) {
         // Remove .json extension and use filename as form ID
         return filename.replace(".json", "");
     }
 
+    /**
+     * Merge already classified fields into the registry
+     * Later fields replace earlier ones with the same ID, as when analysing forms one by one
+     */
+    public void registerFields(Collection<FieldInfo> fields) {
+        for (FieldInfo fieldInfo : fields) {
+            register(fieldInfo);
+        }
+    }
+
     /**
      * Recursively process form elements
      */
@@ -177,11 +176,47 @@ public class FieldTypeClassifier {
             }
         }
 
+        // Collect the options binder and hardcoded options
+        String binderClass = null;
+        String binderFormDefId = null;
+        if (properties.has("optionsBinder")) {
+            JsonNode binder = properties.get("optionsBinder");
+            if (binder.has("className")) {
+                binderClass = binder.get("className").asText();
+            }
+            if (binder.has("properties") && binder.get("properties").has("formDefId")) {
+                binderFormDefId = binder.get("properties").get("formDefId").asText();
+            }
+        }
+
+        List<String> optionValues = null;
+        if (properties.has("options") && properties.get("options").isArray()) {
+            optionValues = new ArrayList<>();
+            for (JsonNode option : properties.get("options")) {
+                if (option.has("value")) {
+                    optionValues.add(option.get("value").asText());
+                }
+            }
+        }
+
+        classify(fieldInfo, binderClass, binderFormDefId, optionValues);
+        register(fieldInfo);
+    }
+
+    /**
+     * Classify a field from its className, options binder and hardcoded options
+     *
+     * @param fieldInfo The field, with className set
+     * @param binderClass The options binder class, or null
+     * @param binderFormDefId The form the options binder loads from, or null
+     * @param optionValues The hardcoded option values, or null if the field has no options array
+     */
+    static void classify(FieldInfo fieldInfo, String binderClass, String binderFormDefId, List<String> optionValues) {
         // Classify based on className and properties
-        switch (className) {
+        switch (fieldInfo.className) {
             case "org.joget.apps.form.lib.Radio":
             case "org.joget.apps.form.lib.SelectBox":
-                classifySelectField(fieldInfo, properties);
+                classifySelectField(fieldInfo, binderClass, binderFormDefId, optionValues);
                 break;
 
             case "org.joget.apps.form.lib.TextField":
@@ -204,8 +239,13 @@ public class FieldTypeClassifier {
             default:
                 fieldInfo.type = FieldType.UNKNOWN;
         }
+    }
 
-        // Register the field
+    /**
+     * Register a classified field
+     */
+    private void register(FieldInfo fieldInfo) {
+        String fieldId = fieldInfo.fieldId;
         fieldRegistry.put(fieldId, fieldInfo);
 
         // Add to specialized sets
@@ -223,35 +263,18 @@ public class FieldTypeClassifier {
     /**
      * Classify a select/radio field based on its options
      */
-    private void classifySelectField(FieldInfo fieldInfo, JsonNode properties) {
+    private static void classifySelectField(FieldInfo fieldInfo, String binderClass, String binderFormDefId,
+                                            List<String> optionValues) {
         // Check for FormOptionsBinder (masterdata)
-        if (properties.has("optionsBinder")) {
-            JsonNode binder = properties.get("optionsBinder");
-            if (binder.has("className")) {
-                String binderClass = binder.get("className").asText();
-                if ("org.joget.apps.form.lib.FormOptionsBinder".equals(binderClass)) {
-                    fieldInfo.type = FieldType.MASTERDATA;
-                    if (binder.has("properties")) {
-                        JsonNode binderProps = binder.get("properties");
-                        if (binderProps.has("formDefId")) {
-                            fieldInfo.masterdataSource = binderProps.get("formDefId").asText();
-                        }
-                    }
-                    return;
-                }
-            }
+        if ("org.joget.apps.form.lib.FormOptionsBinder".equals(binderClass)) {
+            fieldInfo.type = FieldType.MASTERDATA;
+            fieldInfo.masterdataSource = binderFormDefId;
+            return;
         }
 
         // Check hardcoded options
-        if (properties.has("options") && properties.get("options").isArray()) {
-            JsonNode options = properties.get("options");
-            List<String> values = new ArrayList<>();
-
-            for (JsonNode option : options) {
-                if (option.has("value")) {
-                    values.add(option.get("value").asText());
-                }
-            }
+        if (optionValues != null) {
+            List<String> values = new ArrayList<>(optionValues);
 
             fieldInfo.options = values;
 
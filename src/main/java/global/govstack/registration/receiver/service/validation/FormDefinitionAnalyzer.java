@@ -0,0 +1,414 @@
+package global.govstack.registration.receiver.service.validation;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import global.govstack.registration.receiver.util.ContentHashUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Incremental, parallel analyser for form definition files
+ *
+ * Form files are parsed concurrently with the Jackson streaming API, without building a
+ * tree per form. Each form's classified fields are cached by the SHA-256 of the file, so
+ * a rerun only parses forms whose content changed. The cache can be kept on disk between
+ * runs with setCacheFile.
+ *
+ * Classification rules are those of FieldTypeClassifier; analyse results can be merged
+ * into a FieldTypeClassifier with registerFields.
+ */
+public class FormDefinitionAnalyzer {
+
+    private static final Logger LOGGER = Logger.getLogger(FormDefinitionAnalyzer.class.getName());
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Classified fields of one form and the file content they were computed from
+     */
+    public static class FormAnalysis {
+        private final String formId;
+        private final String contentHash;
+        private final List<FieldTypeClassifier.FieldInfo> fields;
+
+        FormAnalysis(String formId, String contentHash, List<FieldTypeClassifier.FieldInfo> fields) {
+            this.formId = formId;
+            this.contentHash = contentHash;
+            this.fields = Collections.unmodifiableList(fields);
+        }
+
+        public String getFormId() {
+            return formId;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public List<FieldTypeClassifier.FieldInfo> getFields() {
+            return fields;
+        }
+    }
+
+    /**
+     * Properties of a form element needed for classification
+     */
+    private static class ElementProperties {
+        private String id;
+        private boolean mandatory;
+        private String binderClass;
+        private String binderFormDefId;
+        private List<String> options;
+    }
+
+    private final Map<String, FormAnalysis> cache = new ConcurrentHashMap<>();
+    private final AtomicInteger parsedCount = new AtomicInteger();
+    private final AtomicInteger reusedCount = new AtomicInteger();
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private File cacheFile;
+    private boolean cacheFileLoaded;
+
+    /**
+     * Set the number of forms parsed concurrently
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Keep the per-form results in a file between runs
+     * @param cacheFile The cache file, or null to cache in memory only
+     */
+    public void setCacheFile(File cacheFile) {
+        this.cacheFile = cacheFile;
+        this.cacheFileLoaded = false;
+    }
+
+    /**
+     * @return Number of forms parsed by the last analysis
+     */
+    public int getParsedCount() {
+        return parsedCount.get();
+    }
+
+    /**
+     * @return Number of forms served from the cache by the last analysis
+     */
+    public int getReusedCount() {
+        return reusedCount.get();
+    }
+
+    /**
+     * Analyse all JSON form definitions in a directory
+     * @param formDirectory Directory containing one JSON file per form
+     * @return The analysis of each form, ordered by file name
+     */
+    public List<FormAnalysis> analyzeDirectory(File formDirectory) throws IOException {
+        if (!formDirectory.exists() || !formDirectory.isDirectory()) {
+            throw new IOException("Form directory not found: " + formDirectory);
+        }
+
+        File[] jsonFiles = formDirectory.listFiles((d, name) -> name.endsWith(".json"));
+        if (jsonFiles == null || jsonFiles.length == 0) {
+            LOGGER.warning("No JSON files found in: " + formDirectory);
+            return Collections.emptyList();
+        }
+
+        // Sorted so the merge order - and which duplicate field ID wins - is stable
+        Arrays.sort(jsonFiles, Comparator.comparing(File::getName));
+        return analyzeFiles(Arrays.asList(jsonFiles));
+    }
+
+    /**
+     * Analyse form definition files, reusing cached results for unchanged files
+     * @param files Form files; the form ID is the file name without .json
+     * @return The analysis of each form, in the order of the files
+     */
+    public List<FormAnalysis> analyzeFiles(List<File> files) throws IOException {
+        loadCacheFile();
+        parsedCount.set(0);
+        reusedCount.set(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, files.size())));
+        try {
+            List<Future<FormAnalysis>> futures = new ArrayList<>(files.size());
+            for (File file : files) {
+                futures.add(executor.submit(() -> analyzeFile(file)));
+            }
+
+            List<FormAnalysis> results = new ArrayList<>(files.size());
+            for (Future<FormAnalysis> future : futures) {
+                results.add(future.get());
+            }
+
+            LOGGER.info("Analysed " + results.size() + " forms: " + parsedCount.get() + " parsed, "
+                    + reusedCount.get() + " unchanged");
+            saveCacheFile(results);
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Form analysis interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Form analysis failed: " + cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private FormAnalysis analyzeFile(File file) throws IOException {
+        String formId = FieldTypeClassifier.extractFormId(file.getName());
+        byte[] content = Files.readAllBytes(file.toPath());
+        String hash = ContentHashUtil.sha256Hex(content);
+
+        FormAnalysis cached = cache.get(formId);
+        if (cached != null && hash.equals(cached.getContentHash())) {
+            reusedCount.incrementAndGet();
+            return cached;
+        }
+
+        LOGGER.fine("Analyzing form file: " + file.getName());
+        FormAnalysis analysis;
+        try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+            analysis = new FormAnalysis(formId, hash, parseFields(formId, parser));
+        } catch (IOException e) {
+            throw new IOException("Error parsing form file " + file.getName() + ": " + e.getMessage(), e);
+        }
+        cache.put(formId, analysis);
+        parsedCount.incrementAndGet();
+        return analysis;
+    }
+
+    /**
+     * Parse and classify the fields of one form definition
+     *
+     * Fields are emitted after their nested elements, matching the registration order of
+     * FieldTypeClassifier so that duplicate field IDs resolve the same way.
+     *
+     * @param formId The form ID
+     * @param parser Parser positioned before the form's root object
+     * @return The classified fields
+     */
+    static List<FieldTypeClassifier.FieldInfo> parseFields(String formId, JsonParser parser) throws IOException {
+        List<FieldTypeClassifier.FieldInfo> fields = new ArrayList<>();
+        if (parser.nextToken() == JsonToken.START_OBJECT) {
+            readElement(parser, formId, fields);
+        }
+        return fields;
+    }
+
+    private static void readElement(JsonParser parser, String formId, List<FieldTypeClassifier.FieldInfo> fields)
+            throws IOException {
+        String className = null;
+        ElementProperties properties = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if ("className".equals(name) && value.isScalarValue()) {
+                className = parser.getText();
+            } else if ("properties".equals(name) && value == JsonToken.START_OBJECT) {
+                properties = readProperties(parser);
+            } else if ("elements".equals(name) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.currentToken() == JsonToken.START_OBJECT) {
+                        readElement(parser, formId, fields);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (className == null || properties == null || properties.id == null || properties.id.isEmpty()) {
+            return;
+        }
+
+        FieldTypeClassifier.FieldInfo fieldInfo =
+                new FieldTypeClassifier.FieldInfo(formId, properties.id, FieldTypeClassifier.FieldType.UNKNOWN);
+        fieldInfo.className = className;
+        fieldInfo.mandatory = properties.mandatory;
+        FieldTypeClassifier.classify(fieldInfo, properties.binderClass, properties.binderFormDefId, properties.options);
+        fields.add(fieldInfo);
+    }
+
+    private static ElementProperties readProperties(JsonParser parser) throws IOException {
+        ElementProperties properties = new ElementProperties();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if ("id".equals(name) && value.isScalarValue()) {
+                properties.id = parser.getText();
+            } else if ("validator".equals(name) && value == JsonToken.START_OBJECT) {
+                Map<String, String> validatorProps = readNestedProperties(parser, null);
+                properties.mandatory = "true".equals(validatorProps.get("mandatory"));
+            } else if ("optionsBinder".equals(name) && value == JsonToken.START_OBJECT) {
+                String[] binderClass = new String[1];
+                Map<String, String> binderProps = readNestedProperties(parser, binderClass);
+                properties.binderClass = binderClass[0];
+                properties.binderFormDefId = binderProps.get("formDefId");
+            } else if ("options".equals(name) && value == JsonToken.START_ARRAY) {
+                properties.options = readOptionValues(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Read a plugin object ({className, properties}) and return its scalar properties
+     * @param className Receives the plugin class name when not null
+     */
+    private static Map<String, String> readNestedProperties(JsonParser parser, String[] className) throws IOException {
+        Map<String, String> result = new LinkedHashMap<>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if ("className".equals(name) && value.isScalarValue() && className != null) {
+                className[0] = parser.getText();
+            } else if ("properties".equals(name) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String property = parser.getCurrentName();
+                    if (parser.nextToken().isScalarValue()) {
+                        result.put(property, parser.getText());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return result;
+    }
+
+    private static List<String> readOptionValues(JsonParser parser) throws IOException {
+        List<String> values = new ArrayList<>();
+
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("value".equals(name) && value.isScalarValue()) {
+                    values.add(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return values;
+    }
+
+    private synchronized void loadCacheFile() {
+        if (cacheFile == null || cacheFileLoaded) {
+            return;
+        }
+        cacheFileLoaded = true;
+        if (!cacheFile.isFile()) {
+            return;
+        }
+
+        try {
+            Map<String, Map<String, Object>> stored = new ObjectMapper().readValue(cacheFile,
+                    new TypeReference<Map<String, Map<String, Object>>>() {});
+            for (Map.Entry<String, Map<String, Object>> entry : stored.entrySet()) {
+                cache.put(entry.getKey(), fromSerialized(entry.getKey(), entry.getValue()));
+            }
+            LOGGER.info("Loaded cached analysis of " + stored.size() + " forms from " + cacheFile);
+        } catch (Exception e) {
+            LOGGER.warning("Ignoring unreadable form analysis cache " + cacheFile + ": " + e.getMessage());
+        }
+    }
+
+    private void saveCacheFile(List<FormAnalysis> results) {
+        if (cacheFile == null || parsedCount.get() == 0) {
+            return;
+        }
+
+        Map<String, Object> stored = new LinkedHashMap<>();
+        for (FormAnalysis analysis : results) {
+            stored.put(analysis.getFormId(), toSerialized(analysis));
+        }
+
+        try {
+            File dir = cacheFile.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create directory " + dir);
+            }
+            File tmp = new File(dir, cacheFile.getName() + ".tmp");
+            new ObjectMapper().writeValue(tmp, stored);
+            if (!tmp.renameTo(cacheFile) && !(cacheFile.delete() && tmp.renameTo(cacheFile))) {
+                throw new IOException("Cannot replace " + cacheFile);
+            }
+        } catch (IOException e) {
+            LOGGER.warning("Could not write form analysis cache: " + e.getMessage());
+        }
+    }
+
+    private static Map<String, Object> toSerialized(FormAnalysis analysis) {
+        List<Map<String, Object>> fields = new ArrayList<>();
+        for (FieldTypeClassifier.FieldInfo field : analysis.getFields()) {
+            Map<String, Object> value = new LinkedHashMap<>();
+            value.put("fieldId", field.fieldId);
+            value.put("type", field.type.name());
+            value.put("className", field.className);
+            value.put("options", field.options);
+            value.put("masterdataSource", field.masterdataSource);
+            value.put("mandatory", field.mandatory);
+            fields.add(value);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("contentHash", analysis.getContentHash());
+        result.put("fields", fields);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FormAnalysis fromSerialized(String formId, Map<String, Object> stored) {
+        List<FieldTypeClassifier.FieldInfo> fields = new ArrayList<>();
+        for (Map<String, Object> value : (List<Map<String, Object>>) stored.get("fields")) {
+            FieldTypeClassifier.FieldInfo field = new FieldTypeClassifier.FieldInfo(formId,
+                    (String) value.get("fieldId"), FieldTypeClassifier.FieldType.valueOf((String) value.get("type")));
+            field.className = (String) value.get("className");
+            field.options = new ArrayList<>((List<String>) value.get("options"));
+            field.masterdataSource = (String) value.get("masterdataSource");
+            field.mandatory = Boolean.TRUE.equals(value.get("mandatory"));
+            fields.add(field);
+        }
+        return new FormAnalysis(formId, (String) stored.get("contentHash"), fields);
+    }
+}
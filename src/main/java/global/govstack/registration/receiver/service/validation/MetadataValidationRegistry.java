@@ -0,0 +1,202 @@
+package global.govstack.registration.receiver.service.validation;
+
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.util.SchemaCache;
+import org.joget.commons.util.LogUtil;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs service metadata validation once per configuration, off the request path
+ *
+ * Results are memoised per service against the YAML content hash and the schema cache
+ * version. When either changes, the service is revalidated on a background thread;
+ * requests only read the cached result and never wait for validation.
+ */
+public class MetadataValidationRegistry {
+    private static final String CLASS_NAME = MetadataValidationRegistry.class.getName();
+
+    private static final MetadataValidationRegistry INSTANCE = new MetadataValidationRegistry();
+
+    /**
+     * Validation result for one service and the configuration it was computed for
+     */
+    public static class Entry {
+        private final String serviceId;
+        private final String contentHash;
+        private final long schemaVersion;
+        private final ServiceMetadataValidator.ValidationResult result;
+        private final long validatedAt;
+
+        Entry(String serviceId, String contentHash, long schemaVersion,
+              ServiceMetadataValidator.ValidationResult result) {
+            this.serviceId = serviceId;
+            this.contentHash = contentHash;
+            this.schemaVersion = schemaVersion;
+            this.result = result;
+            this.validatedAt = System.currentTimeMillis();
+        }
+
+        public String getServiceId() {
+            return serviceId;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public long getSchemaVersion() {
+            return schemaVersion;
+        }
+
+        public ServiceMetadataValidator.ValidationResult getResult() {
+            return result;
+        }
+
+        public long getValidatedAt() {
+            return validatedAt;
+        }
+
+        boolean matches(String hash, long version) {
+            return hash != null && hash.equals(contentHash) && version == schemaVersion;
+        }
+    }
+
+    private final Map<String, Entry> results = new ConcurrentHashMap<>();
+    private final Map<String, String> pending = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    public static MetadataValidationRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Schedule validation of a service if its configuration or the schema changed since
+     * the last validation. Returns immediately.
+     *
+     * Once the schema cache's TTL has passed, the background thread first checks the schema
+     * for changes and only validates again if it changed.
+     *
+     * @param metadataService The loaded service configuration
+     * @param dataSource The Joget data source
+     */
+    public void validateIfChanged(YamlMetadataService metadataService, DataSource dataSource) {
+        String serviceId = metadataService.getServiceId();
+        String hash = metadataService.getContentHash();
+        Entry current = results.get(serviceId);
+        SchemaCache schemaCache = SchemaCache.forDataSource(dataSource);
+
+        if (current != null && current.matches(hash, schemaCache.getVersion()) && !schemaCache.isStale()) {
+            return;
+        }
+        schedule(metadataService, dataSource, false);
+    }
+
+    /**
+     * Schedule validation of a service regardless of cached results
+     */
+    public void revalidate(YamlMetadataService metadataService, DataSource dataSource) {
+        SchemaCache.forDataSource(dataSource).invalidate();
+        schedule(metadataService, dataSource, true);
+    }
+
+    /**
+     * Get the cached validation of a service
+     * @return The entry, or null if the service has not been validated yet
+     */
+    public Entry getEntry(String serviceId) {
+        return results.get(serviceId);
+    }
+
+    /**
+     * Check whether a validation of the service is queued or running
+     */
+    public boolean isPending(String serviceId) {
+        return pending.containsKey(serviceId);
+    }
+
+    /**
+     * Stop the background validation thread and drop cached results
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        results.clear();
+        pending.clear();
+    }
+
+    /**
+     * @param force false to skip the validation when the configuration and schema version still
+     *              match the cached result after the schema was checked for changes
+     */
+    private void schedule(YamlMetadataService metadataService, DataSource dataSource, boolean force) {
+        String serviceId = metadataService.getServiceId();
+        String hash = metadataService.getContentHash();
+
+        // One validation per service and configuration at a time
+        if (hash == null || hash.equals(pending.putIfAbsent(serviceId, hash))) {
+            return;
+        }
+
+        getExecutor().execute(() -> {
+            try {
+                Entry previous = results.get(serviceId);
+                if (!force && previous != null
+                        && previous.matches(hash, SchemaCache.forDataSource(dataSource).checkVersion())) {
+                    return;
+                }
+                Entry entry = validate(metadataService, dataSource);
+                results.put(serviceId, entry);
+                logResult(entry);
+            } catch (Exception e) {
+                LogUtil.error(CLASS_NAME, e, "Error validating metadata configuration for " + serviceId);
+            } finally {
+                pending.remove(serviceId, hash);
+            }
+        });
+    }
+
+    /**
+     * Validate a service synchronously
+     */
+    Entry validate(YamlMetadataService metadataService, DataSource dataSource) {
+        ServiceMetadataValidator validator = new ServiceMetadataValidator(metadataService, dataSource);
+        ServiceMetadataValidator.ValidationResult result = validator.validate();
+        long schemaVersion = SchemaCache.forDataSource(dataSource).getVersion();
+        return new Entry(metadataService.getServiceId(), metadataService.getContentHash(), schemaVersion, result);
+    }
+
+    private void logResult(Entry entry) {
+        ServiceMetadataValidator.ValidationResult result = entry.getResult();
+        if (!result.valid) {
+            LogUtil.error(CLASS_NAME, null, "Metadata validation failed for " + entry.getServiceId() + ":\n" + result.getReport());
+            // Log errors but don't fail requests to allow fixing configuration
+            for (ServiceMetadataValidator.ValidationError error : result.errors) {
+                LogUtil.error(CLASS_NAME, null, "Configuration Error: " + error);
+            }
+        } else {
+            LogUtil.info(CLASS_NAME, "Metadata validation passed for " + entry.getServiceId());
+        }
+
+        for (ServiceMetadataValidator.ValidationWarning warning : result.warnings) {
+            LogUtil.warn(CLASS_NAME, "Configuration Warning: " + warning);
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "govstack-metadata-validation");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,476 @@
+package global.govstack.registration.receiver.service.validation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import global.govstack.registration.receiver.service.metadata.GovStackDataMapper;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.util.DiscriminatorIndex;
+import global.govstack.registration.receiver.util.JsonPathExtractor;
+import org.joget.commons.util.LogUtil;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Validates the shape of incoming requests before any data is mapped or saved
+ *
+ * The rules are compiled once from the service metadata: required fields, the JSON type
+ * each transformation expects (dates, numbers, yes/no values, lists) and the shape of
+ * array sections. A request is checked in a single pass and every problem is reported,
+ * so clients get the complete list in one 400 response instead of fixing one field at a time.
+ *
+ * Compiled validators are shared per service and replaced when the YAML content changes.
+ */
+public class RequestShapeValidator {
+    private static final String CLASS_NAME = RequestShapeValidator.class.getName();
+
+    private static final Map<String, RequestShapeValidator> COMPILED = new ConcurrentHashMap<>();
+
+    private static final Set<String> BOOLEAN_VALUES = new HashSet<>(
+            Arrays.asList("yes", "no", "true", "false", "1", "0", "2"));
+
+    /**
+     * JSON value expected by a field, derived from its transformation
+     */
+    enum ExpectedType {
+        ANY, NUMBER, DATE, BOOLEAN, LIST, TEXT
+    }
+
+    /**
+     * One problem found in a request
+     */
+    public static class Violation {
+        public final String path;
+        public final String field;
+        public final String code;
+        public final String message;
+
+        Violation(String path, String field, String code, String message) {
+            this.path = path;
+            this.field = field;
+            this.code = code;
+            this.message = message;
+        }
+
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("path", path);
+            json.put("field", field);
+            json.put("code", code);
+            json.put("message", message);
+            return json;
+        }
+
+        /**
+         * Path, field and code only - the message quotes the submitted value
+         */
+        @Override
+        public String toString() {
+            return path + " (" + field + "): " + code;
+        }
+    }
+
+    /**
+     * Compiled rule for one mapped field
+     */
+    private static class FieldRule {
+        private final String field;
+        private final String path;
+        private final String fallbackPath;
+        private final String typePath;
+        private final String typeValue;
+        private final boolean required;
+        private final ExpectedType expectedType;
+        private final String dateFormat;
+
+        private FieldRule(String field, String path, String fallbackPath, String typePath, String typeValue,
+                          boolean required, ExpectedType expectedType, String dateFormat) {
+            this.field = field;
+            this.path = path;
+            this.fallbackPath = fallbackPath;
+            this.typePath = typePath;
+            this.typeValue = typeValue;
+            this.required = required;
+            this.expectedType = expectedType;
+            this.dateFormat = dateFormat;
+        }
+    }
+
+    /**
+     * Compiled rule for an array section and the fields of its elements
+     */
+    private static class ArrayRule {
+        private final String section;
+        private final String path;
+        private final String controlField;
+        private final String controlValue;
+        private final List<FieldRule> itemRules;
+
+        private ArrayRule(String section, String path, String controlField, String controlValue,
+                          List<FieldRule> itemRules) {
+            this.section = section;
+            this.path = path;
+            this.controlField = controlField;
+            this.controlValue = controlValue;
+            this.itemRules = itemRules;
+        }
+    }
+
+    private final String contentHash;
+    private final List<FieldRule> fieldRules;
+    private final List<ArrayRule> arrayRules;
+
+    private RequestShapeValidator(String contentHash, List<FieldRule> fieldRules, List<ArrayRule> arrayRules) {
+        this.contentHash = contentHash;
+        this.fieldRules = fieldRules;
+        this.arrayRules = arrayRules;
+    }
+
+    /**
+     * Get the compiled validator for a service, compiling it if the YAML changed
+     * @param metadataService The loaded service configuration
+     * @return The shared validator for the configuration
+     */
+    public static RequestShapeValidator forMetadata(YamlMetadataService metadataService) {
+        String serviceId = metadataService.getServiceId();
+        String hash = metadataService.getContentHash();
+        RequestShapeValidator current = COMPILED.get(serviceId);
+        if (current != null && hash != null && hash.equals(current.contentHash)) {
+            return current;
+        }
+
+        RequestShapeValidator compiled = compile(metadataService);
+        COMPILED.put(serviceId, compiled);
+        LogUtil.info(CLASS_NAME, "Compiled request validator for " + serviceId + ": "
+                + compiled.fieldRules.size() + " field rules, " + compiled.arrayRules.size() + " array sections");
+        return compiled;
+    }
+
+    /**
+     * Drop all compiled validators
+     */
+    public static void clearCompiled() {
+        COMPILED.clear();
+    }
+
+    /**
+     * Compile the validation rules for a service configuration
+     * @param metadataService The loaded service configuration
+     * @return The compiled validator
+     */
+    @SuppressWarnings("unchecked")
+    public static RequestShapeValidator compile(YamlMetadataService metadataService) {
+        Map<String, Map<String, Object>> transformations = metadataService.getTransformations();
+        List<FieldRule> fieldRules = new ArrayList<>();
+        List<ArrayRule> arrayRules = new ArrayList<>();
+
+        for (Map.Entry<String, Object> entry : metadataService.getAllFormMappings().entrySet()) {
+            if (!(entry.getValue() instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> section = (Map<String, Object>) entry.getValue();
+            List<Map<String, Object>> fields = section.get("fields") instanceof List
+                    ? (List<Map<String, Object>>) section.get("fields")
+                    : Collections.<Map<String, Object>>emptyList();
+
+            if ("array".equals(section.get("type"))) {
+                String path = (String) section.get("govstack");
+                if (path == null) {
+                    continue;
+                }
+                List<FieldRule> itemRules = new ArrayList<>();
+                for (Map<String, Object> field : fields) {
+                    // Array elements fall back to the govstack path when jsonPath is absent in the item
+                    FieldRule rule = compileField(field, transformations, true);
+                    if (rule != null) {
+                        itemRules.add(rule);
+                    }
+                }
+                arrayRules.add(new ArrayRule(entry.getKey(), path, (String) section.get("controlField"),
+                        (String) section.get("controlValue"), itemRules));
+            } else {
+                for (Map<String, Object> field : fields) {
+                    FieldRule rule = compileField(field, transformations, false);
+                    if (rule != null) {
+                        fieldRules.add(rule);
+                    }
+                }
+            }
+        }
+
+        return new RequestShapeValidator(metadataService.getContentHash(), fieldRules, arrayRules);
+    }
+
+    private static FieldRule compileField(Map<String, Object> field, Map<String, Map<String, Object>> transformations,
+                                          boolean arrayItem) {
+        String jogetField = (String) field.get("joget");
+        String govstackPath = (String) field.get("govstack");
+        String jsonPath = (String) field.get("jsonPath");
+        if (jogetField == null || govstackPath == null) {
+            return null;
+        }
+
+        String transformation = (String) field.get("transform");
+        if (transformation == null) {
+            transformation = (String) field.get("transformation");
+        }
+        Map<String, Object> definition = transformation != null ? transformations.get(transformation) : null;
+        ExpectedType expectedType = expectedType(transformation, definition);
+        String dateFormat = definition != null && definition.get("inputFormat") != null
+                ? String.valueOf(definition.get("inputFormat")) : "yyyy-MM-dd";
+
+        boolean required = Boolean.TRUE.equals(field.get("required"));
+        if (!required && expectedType == ExpectedType.ANY) {
+            return null;
+        }
+
+        // Read the same path the mapper reads: jsonPath overrides the govstack path
+        String path = jsonPath != null ? jsonPath : govstackPath;
+        String fallbackPath = arrayItem && jsonPath != null ? govstackPath : null;
+        return new FieldRule(jogetField, path, fallbackPath, (String) field.get("govstackType"),
+                (String) field.get("typeValue"), required, expectedType, dateFormat);
+    }
+
+    private static ExpectedType expectedType(String transformation, Map<String, Object> definition) {
+        Object declared = definition != null ? definition.get("type") : null;
+        String type = declared != null ? declared.toString() : null;
+        if (type == null && transformation != null) {
+            switch (transformation.toLowerCase()) {
+                case "date_iso8601":
+                    type = "date";
+                    break;
+                case "numeric":
+                    type = "number";
+                    break;
+                case "yesnoboolean":
+                    type = "boolean";
+                    break;
+                case "multicheckbox":
+                    type = "array";
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (type == null) {
+            return ExpectedType.ANY;
+        }
+
+        switch (type) {
+            case "date":
+                return ExpectedType.DATE;
+            case "number":
+                return ExpectedType.NUMBER;
+            case "boolean":
+                return ExpectedType.BOOLEAN;
+            case "array":
+                return ExpectedType.LIST;
+            case "base64":
+            case "attachment":
+                return ExpectedType.TEXT;
+            default:
+                return ExpectedType.ANY;
+        }
+    }
+
+    /**
+     * Validate a request against the compiled rules
+     * @param dataNode The request data (testData wrapper already removed)
+     * @return Every violation found, empty if the request is valid
+     */
+    public List<Violation> validate(JsonNode dataNode) {
+        List<Violation> violations = new ArrayList<>();
+        if (dataNode == null || !dataNode.isObject()) {
+            violations.add(new Violation("$", null, "type", "Request data must be a JSON object"));
+            return violations;
+        }
+
+        DiscriminatorIndex discriminators = new DiscriminatorIndex(dataNode);
+        for (FieldRule rule : fieldRules) {
+            JsonNode value;
+            if (rule.typePath != null && rule.typeValue != null) {
+                String selected = discriminators.extractValue(rule.path, rule.typePath, rule.typeValue);
+                value = selected != null ? TextNode.valueOf(selected) : null;
+            } else {
+                value = JsonPathExtractor.extractNode(dataNode, rule.path);
+            }
+            checkField(rule, rule.path, value, violations);
+        }
+
+        for (ArrayRule rule : arrayRules) {
+            checkArray(dataNode, rule, violations);
+        }
+        return violations;
+    }
+
+    private void checkArray(JsonNode dataNode, ArrayRule rule, List<Violation> violations) {
+        if (rule.controlField != null && rule.controlValue != null) {
+            String actual = JsonPathExtractor.extractValue(dataNode, rule.controlField);
+            if (!GovStackDataMapper.matchesControlValue(rule.controlValue, actual)) {
+                return;
+            }
+        }
+
+        JsonNode arrayNode = JsonPathExtractor.extractNode(dataNode, rule.path);
+        if (arrayNode == null || arrayNode.isNull()) {
+            return;
+        }
+        if (!arrayNode.isArray()) {
+            violations.add(new Violation(rule.path, rule.section, "type",
+                    "Expected an array but found " + describe(arrayNode)));
+            return;
+        }
+
+        for (int i = 0; i < arrayNode.size(); i++) {
+            JsonNode item = arrayNode.get(i);
+            String itemPath = rule.path + "[" + i + "]";
+            if (!item.isObject()) {
+                violations.add(new Violation(itemPath, rule.section, "type",
+                        "Expected an object but found " + describe(item)));
+                continue;
+            }
+            for (FieldRule field : rule.itemRules) {
+                JsonNode value = JsonPathExtractor.extractNode(item, field.path);
+                String path = field.path;
+                if (isMissing(value) && field.fallbackPath != null) {
+                    value = JsonPathExtractor.extractNode(item, field.fallbackPath);
+                    path = field.fallbackPath;
+                }
+                checkField(field, itemPath + "." + path, value, violations);
+            }
+        }
+    }
+
+    private void checkField(FieldRule rule, String path, JsonNode value, List<Violation> violations) {
+        if (isMissing(value)) {
+            if (rule.required) {
+                violations.add(new Violation(path, rule.field, "required", "Required field is missing"));
+            }
+            return;
+        }
+
+        String problem = checkType(rule, value);
+        if (problem != null) {
+            violations.add(new Violation(path, rule.field, "type", problem));
+        }
+    }
+
+    private static boolean isMissing(JsonNode value) {
+        return value == null || value.isNull()
+                || (value.isTextual() && value.asText().trim().isEmpty())
+                || (value.isArray() && value.size() == 0);
+    }
+
+    /**
+     * @return A description of the type mismatch, or null if the value fits
+     */
+    private String checkType(FieldRule rule, JsonNode value) {
+        switch (rule.expectedType) {
+            case NUMBER:
+                if (value.isNumber() || (value.isTextual() && isNumeric(value.asText()))) {
+                    return null;
+                }
+                return "Expected a number but found " + describe(value);
+
+            case DATE:
+                if (value.isTextual() && isDate(value.asText(), rule.dateFormat)) {
+                    return null;
+                }
+                return "Expected a date (" + rule.dateFormat + " or ISO 8601) but found " + describe(value);
+
+            case BOOLEAN:
+                if (value.isBoolean() || value.isNumber()
+                        || (value.isTextual() && BOOLEAN_VALUES.contains(value.asText().trim().toLowerCase()))) {
+                    return null;
+                }
+                return "Expected yes/no or true/false but found " + describe(value);
+
+            case LIST:
+                if (value.isTextual()) {
+                    return null;
+                }
+                if (value.isArray()) {
+                    for (JsonNode element : value) {
+                        if (element.isContainerNode()) {
+                            return "Expected a list of values but found a nested " + describe(element);
+                        }
+                    }
+                    return null;
+                }
+                return "Expected a list or comma separated text but found " + describe(value);
+
+            case TEXT:
+                return value.isTextual() ? null : "Expected text but found " + describe(value);
+
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isNumeric(String text) {
+        // Same cleanup as the numeric transformation: units and separators are stripped
+        String cleaned = text.replaceAll("[^0-9.-]", "");
+        if (cleaned.isEmpty()) {
+            return false;
+        }
+        try {
+            Double.parseDouble(cleaned);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isDate(String text, String dateFormat) {
+        String value = text.trim();
+        int timeSeparator = value.indexOf('T');
+        String datePart = timeSeparator > 0 ? value.substring(0, timeSeparator) : value;
+        try {
+            SimpleDateFormat format = new SimpleDateFormat(dateFormat);
+            format.setLenient(false);
+            format.parse(datePart);
+            return datePart.length() == dateFormat.length();
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    private static String describe(JsonNode node) {
+        if (node.isObject()) {
+            return "an object";
+        }
+        if (node.isArray()) {
+            return "an array";
+        }
+        if (node.isTextual()) {
+            return "'" + node.asText() + "'";
+        }
+        return node.getNodeType().toString().toLowerCase() + " " + node.toString();
+    }
+
+    /**
+     * Build the error details for a rejected request
+     * @param violations The violations found by validate
+     * @return JSON object with the violation count and list
+     */
+    public static JSONObject toDetails(List<Violation> violations) {
+        JSONArray errors = new JSONArray();
+        for (Violation violation : violations) {
+            errors.put(violation.toJson());
+        }
+        JSONObject details = new JSONObject();
+        details.put("errorCount", violations.size());
+        details.put("errors", errors);
+        return details;
+    }
+}
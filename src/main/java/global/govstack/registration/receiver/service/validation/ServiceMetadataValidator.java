@@ -1,14 +1,10 @@
 package global.govstack.registration.receiver.service.validation;
 
 import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
-import global.govstack.registration.receiver.util.DatabaseSchemaExtractor;
+import global.govstack.registration.receiver.util.SchemaCache;
 import org.joget.commons.util.LogUtil;
 
 import javax.sql.DataSource;
-import java.io.InputStream;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
 import java.util.*;
 
 /**
@@ -125,6 +121,18 @@ public class ServiceMetadataValidator {
         this.metadata = metadata;
     }
 
+    /**
+     * Constructor with an already loaded service configuration
+     */
+    public ServiceMetadataValidator(YamlMetadataService metadataService, DataSource dataSource) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("formMappings", metadataService.getAllFormMappings());
+        metadata.put("service", metadataService.getServiceId());
+
+        this.metadata = metadata;
+        this.dataSource = dataSource;
+    }
+
     /**
      * Constructor with metadata for testing
      */
@@ -270,47 +278,15 @@ public class ServiceMetadataValidator {
 
     /**
      * Get all column names from a database table
+     * Served from the shared SchemaCache, which loads all form tables in one query
      */
     private Set<String> getTableColumns(String tableName) {
-        Set<String> columns = new HashSet<>();
-
         if (dataSource == null) {
             LogUtil.warn(CLASS_NAME, "No DataSource available for validation");
-            return columns;
-        }
-
-        try (Connection conn = dataSource.getConnection()) {
-            DatabaseMetaData metadata = conn.getMetaData();
-
-            // Try with exact table name first
-            try (ResultSet rs = metadata.getColumns(conn.getCatalog(), null, tableName, null)) {
-                while (rs.next()) {
-                    columns.add(rs.getString("COLUMN_NAME").toLowerCase());
-                }
-            }
-
-            // If no columns found, try with different case
-            if (columns.isEmpty()) {
-                try (ResultSet rs = metadata.getColumns(conn.getCatalog(), null, tableName.toUpperCase(), null)) {
-                    while (rs.next()) {
-                        columns.add(rs.getString("COLUMN_NAME").toLowerCase());
-                    }
-                }
-            }
-
-            if (columns.isEmpty()) {
-                try (ResultSet rs = metadata.getColumns(conn.getCatalog(), null, tableName.toLowerCase(), null)) {
-                    while (rs.next()) {
-                        columns.add(rs.getString("COLUMN_NAME").toLowerCase());
-                    }
-                }
-            }
-
-        } catch (Exception e) {
-            LogUtil.error(CLASS_NAME, e, "Error getting columns for table " + tableName);
+            return new HashSet<>();
         }
 
-        return columns;
+        return SchemaCache.forDataSource(dataSource).getColumnNames(tableName);
     }
 
     /**
@@ -0,0 +1,44 @@
+package global.govstack.registration.receiver.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 content hashes used to key caches on configuration and form definitions
+ */
+public class ContentHashUtil {
+
+    private ContentHashUtil() {
+    }
+
+    /**
+     * Create a new SHA-256 digest
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Hash content and return the hex encoded SHA-256
+     */
+    public static String sha256Hex(byte[] content) {
+        MessageDigest digest = newDigest();
+        digest.update(content);
+        return toHex(digest);
+    }
+
+    /**
+     * Complete a digest and return it hex encoded
+     */
+    public static String toHex(MessageDigest digest) {
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -7,14 +7,30 @@ import org.joget.apps.form.dao.FormDataDao;
 import org.joget.commons.util.LogUtil;
 import org.springframework.context.ApplicationContext;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Utility to extract actual database schema information for forms
@@ -22,11 +38,31 @@ import java.util.UUID;
  */
 public class DatabaseSchemaExtractor {
     private static final String CLASS_NAME = DatabaseSchemaExtractor.class.getName();
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final int DEFAULT_BATCH_SIZE = 50;
+
+    private static final String BULK_TABLES_QUERY =
+            "SELECT TABLE_NAME, TABLE_ROWS FROM INFORMATION_SCHEMA.TABLES " +
+            "WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE'";
+    private static final String BULK_COLUMNS_QUERY =
+            "SELECT TABLE_NAME, COLUMN_NAME, DATA_TYPE, CHARACTER_MAXIMUM_LENGTH, IS_NULLABLE, COLUMN_DEFAULT " +
+            "FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME IN ({tables}) " +
+            "ORDER BY TABLE_NAME, ORDINAL_POSITION";
+    private static final String BULK_KEYS_QUERY =
+            "SELECT TABLE_NAME, COLUMN_NAME, CONSTRAINT_NAME, REFERENCED_TABLE_NAME, REFERENCED_COLUMN_NAME " +
+            "FROM INFORMATION_SCHEMA.KEY_COLUMN_USAGE WHERE TABLE_SCHEMA = ? AND TABLE_NAME IN ({tables}) " +
+            "ORDER BY TABLE_NAME, CONSTRAINT_NAME, ORDINAL_POSITION";
+    private static final String BULK_INDEXES_QUERY =
+            "SELECT TABLE_NAME, INDEX_NAME, COLUMN_NAME FROM INFORMATION_SCHEMA.STATISTICS " +
+            "WHERE TABLE_SCHEMA = ? AND TABLE_NAME IN ({tables}) " +
+            "ORDER BY TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX";
 
     private DataSource dataSource;
     private FormDataDao formDataDao;
     private AppService appService;
     private String appId;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int batchSize = DEFAULT_BATCH_SIZE;
 
     public DatabaseSchemaExtractor() {
         try {
@@ -53,11 +89,38 @@ public class DatabaseSchemaExtractor {
         }
     }
 
+    /**
+     * Constructor with an explicit DataSource (no Joget context needed)
+     */
+    public DatabaseSchemaExtractor(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Set the maximum number of connections used in parallel by bulk extraction
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Set the number of tables read per INFORMATION_SCHEMA query in bulk extraction
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
     /**
      * Extract complete schema information
+     * Uses per-table metadata calls and leaves row counts unknown - slow on large databases,
+     * prefer extractSchemaBulk()
      * @return Map with table names as keys and table info as values
      */
     public Map<String, TableInfo> extractSchema() {
+        return extractSchema(null);
+    }
+
+    private Map<String, TableInfo> extractSchema(String tablePrefix) {
         Map<String, TableInfo> schema = new HashMap<>();
 
         try (Connection conn = dataSource.getConnection()) {
@@ -73,6 +136,9 @@ public class DatabaseSchemaExtractor {
 
             // Extract schema for each table
             for (String tableName : formTables) {
+                if (!matchesPrefix(tableName, tablePrefix)) {
+                    continue;
+                }
                 TableInfo tableInfo = extractTableInfo(conn, metadata, tableName);
                 if (tableInfo != null) {
                     schema.put(tableName, tableInfo);
@@ -88,6 +154,180 @@ public class DatabaseSchemaExtractor {
         return schema;
     }
 
+    /**
+     * Extract schema information with set-based INFORMATION_SCHEMA queries
+     *
+     * Tables are read in batches, each batch on its own connection, with at most
+     * {@code parallelism} connections in use. Row counts are the approximate counts
+     * from table statistics (TABLES.TABLE_ROWS) rather than COUNT(*).
+     * The queries use MySQL/MariaDB INFORMATION_SCHEMA columns, so other databases and a missing
+     * INFORMATION_SCHEMA fall back to per-table extraction, as does a batch whose queries fail.
+     *
+     * @param tablePrefix Only include tables starting with this prefix (case-insensitive), or null for all
+     * @return Map with table names as keys and table info as values
+     * @throws IllegalStateException if a table cannot be read either way, rather than returning a partial schema
+     */
+    public Map<String, TableInfo> extractSchemaBulk(String tablePrefix) {
+        Map<String, TableInfo> schema = new ConcurrentHashMap<>();
+        String catalog;
+
+        try (Connection conn = dataSource.getConnection()) {
+            String product = conn.getMetaData().getDatabaseProductName();
+            if (!supportsBulkQueries(product)) {
+                LogUtil.info(CLASS_NAME, "Bulk schema queries need MySQL, using per-table extraction for: " + product);
+                return extractSchema(tablePrefix);
+            }
+            catalog = conn.getCatalog();
+            try (PreparedStatement stmt = conn.prepareStatement(BULK_TABLES_QUERY)) {
+                stmt.setString(1, catalog);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String tableName = rs.getString("TABLE_NAME");
+                        if (matchesPrefix(tableName, tablePrefix)) {
+                            TableInfo tableInfo = new TableInfo(tableName);
+                            tableInfo.rowCount = rs.getLong("TABLE_ROWS");
+                            tableInfo.rowCountEstimated = true;
+                            schema.put(tableName, tableInfo);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            LogUtil.warn(CLASS_NAME, "INFORMATION_SCHEMA not available, using per-table extraction: " + e.getMessage());
+            return extractSchema(tablePrefix);
+        }
+
+        List<List<String>> batches = new ArrayList<>();
+        List<String> tableNames = new ArrayList<>(schema.keySet());
+        for (int i = 0; i < tableNames.size(); i += batchSize) {
+            batches.add(tableNames.subList(i, Math.min(i + batchSize, tableNames.size())));
+        }
+
+        if (!batches.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, batches.size()));
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (List<String> batch : batches) {
+                    futures.add(executor.submit(() -> {
+                        try {
+                            extractBatch(catalog, batch, schema);
+                        } catch (SQLException e) {
+                            LogUtil.warn(CLASS_NAME, "Bulk schema query failed for a table batch, reading its tables one by one: "
+                                    + e.getMessage());
+                            extractBatchPerTable(batch, schema);
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Bulk schema extraction interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Bulk schema extraction failed: " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        LogUtil.info(CLASS_NAME, "Extracted schema for " + schema.size() + " tables in " + batches.size() + " batches");
+        return new TreeMap<>(schema);
+    }
+
+    /**
+     * Whether the bulk INFORMATION_SCHEMA queries (TABLE_ROWS, REFERENCED_TABLE_NAME) work on this database
+     */
+    private static boolean supportsBulkQueries(String productName) {
+        String product = productName != null ? productName.toLowerCase() : "";
+        return product.contains("mysql") || product.contains("mariadb");
+    }
+
+    private static boolean matchesPrefix(String tableName, String tablePrefix) {
+        return tablePrefix == null || tableName.toLowerCase().startsWith(tablePrefix.toLowerCase());
+    }
+
+    /**
+     * Read a batch of tables with per-table metadata calls, replacing anything the failed
+     * bulk queries had already added
+     */
+    private void extractBatchPerTable(List<String> tableNames, Map<String, TableInfo> schema) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            DatabaseMetaData metadata = conn.getMetaData();
+            for (String tableName : tableNames) {
+                TableInfo tableInfo = extractTableInfo(conn, metadata, tableName);
+                if (tableInfo == null) {
+                    throw new SQLException("Failed to extract info for table: " + tableName);
+                }
+                schema.put(tableName, tableInfo);
+            }
+        }
+    }
+
+    /**
+     * Read columns, keys and indexes of a batch of tables on one connection
+     */
+    private void extractBatch(String catalog, List<String> tableNames, Map<String, TableInfo> schema) throws SQLException {
+        String inClause = String.join(",", Collections.nCopies(tableNames.size(), "?"));
+
+        try (Connection conn = dataSource.getConnection()) {
+            try (ResultSet rs = queryBatch(conn, BULK_COLUMNS_QUERY, inClause, catalog, tableNames)) {
+                while (rs.next()) {
+                    ColumnInfo column = new ColumnInfo();
+                    column.name = rs.getString("COLUMN_NAME");
+                    column.dataType = rs.getString("DATA_TYPE");
+                    column.size = rs.getInt("CHARACTER_MAXIMUM_LENGTH");
+                    column.nullable = "YES".equalsIgnoreCase(rs.getString("IS_NULLABLE"));
+                    column.defaultValue = rs.getString("COLUMN_DEFAULT");
+                    TableInfo tableInfo = schema.get(rs.getString("TABLE_NAME"));
+                    if (tableInfo != null) {
+                        tableInfo.columns.add(column);
+                    }
+                }
+            }
+
+            try (ResultSet rs = queryBatch(conn, BULK_KEYS_QUERY, inClause, catalog, tableNames)) {
+                while (rs.next()) {
+                    TableInfo tableInfo = schema.get(rs.getString("TABLE_NAME"));
+                    if (tableInfo == null) {
+                        continue;
+                    }
+                    if ("PRIMARY".equalsIgnoreCase(rs.getString("CONSTRAINT_NAME"))) {
+                        tableInfo.primaryKeys.add(rs.getString("COLUMN_NAME"));
+                    } else if (rs.getString("REFERENCED_TABLE_NAME") != null) {
+                        ForeignKeyInfo fk = new ForeignKeyInfo();
+                        fk.columnName = rs.getString("COLUMN_NAME");
+                        fk.referencedTable = rs.getString("REFERENCED_TABLE_NAME");
+                        fk.referencedColumn = rs.getString("REFERENCED_COLUMN_NAME");
+                        tableInfo.foreignKeys.add(fk);
+                    }
+                }
+            }
+
+            try (ResultSet rs = queryBatch(conn, BULK_INDEXES_QUERY, inClause, catalog, tableNames)) {
+                while (rs.next()) {
+                    TableInfo tableInfo = schema.get(rs.getString("TABLE_NAME"));
+                    if (tableInfo != null) {
+                        tableInfo.indexes.computeIfAbsent(rs.getString("INDEX_NAME"), k -> new ArrayList<>())
+                                .add(rs.getString("COLUMN_NAME"));
+                    }
+                }
+            }
+        }
+    }
+
+    private ResultSet queryBatch(Connection conn, String query, String inClause, String catalog,
+                                 List<String> tableNames) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(query.replace("{tables}", inClause));
+        stmt.closeOnCompletion();
+        stmt.setString(1, catalog);
+        for (int i = 0; i < tableNames.size(); i++) {
+            stmt.setString(i + 2, tableNames.get(i));
+        }
+        return stmt.executeQuery();
+    }
+
     /**
      * Find all tables that appear to be form tables
      */
@@ -132,18 +372,24 @@ public class DatabaseSchemaExtractor {
         TableInfo tableInfo = new TableInfo(tableName);
 
         try {
-            // Get columns
-            try (ResultSet rs = metadata.getColumns(conn.getCatalog(), null, tableName, null)) {
-                while (rs.next()) {
-                    ColumnInfo column = new ColumnInfo();
-                    column.name = rs.getString("COLUMN_NAME");
-                    column.dataType = rs.getString("TYPE_NAME");
-                    column.size = rs.getInt("COLUMN_SIZE");
-                    column.nullable = rs.getInt("NULLABLE") == DatabaseMetaData.columnNullable;
-                    column.defaultValue = rs.getString("COLUMN_DEF");
-
-                    tableInfo.columns.add(column);
-                    LogUtil.debug(CLASS_NAME, "  Column: " + column.name + " (" + column.dataType + ")");
+            // Get columns - form tables come from the shared schema cache
+            SchemaCache.TableColumns cached = tableName.toLowerCase().startsWith(SchemaCache.FORM_TABLE_PREFIX)
+                    ? SchemaCache.forDataSource(dataSource).getTable(tableName) : null;
+            if (cached != null) {
+                tableInfo.columns.addAll(cached.getColumns());
+            } else {
+                try (ResultSet rs = metadata.getColumns(conn.getCatalog(), null, tableName, null)) {
+                    while (rs.next()) {
+                        ColumnInfo column = new ColumnInfo();
+                        column.name = rs.getString("COLUMN_NAME");
+                        column.dataType = rs.getString("TYPE_NAME");
+                        column.size = rs.getInt("COLUMN_SIZE");
+                        column.nullable = rs.getInt("NULLABLE") == DatabaseMetaData.columnNullable;
+                        column.defaultValue = rs.getString("COLUMN_DEF");
+
+                        tableInfo.columns.add(column);
+                        LogUtil.debug(CLASS_NAME, "  Column: " + column.name + " (" + column.dataType + ")");
+                    }
                 }
             }
 
@@ -181,16 +427,6 @@ public class DatabaseSchemaExtractor {
                 }
             }
 
-            // Try to get row count for context
-            try (Statement stmt = conn.createStatement()) {
-                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + tableName);
-                if (rs.next()) {
-                    tableInfo.rowCount = rs.getLong(1);
-                }
-            } catch (SQLException e) {
-                // Ignore count errors
-            }
-
         } catch (SQLException e) {
             LogUtil.error(CLASS_NAME, e, "Failed to extract info for table: " + tableName);
             return null;
@@ -203,55 +439,68 @@ public class DatabaseSchemaExtractor {
      * Generate a detailed schema report
      */
     public String generateSchemaReport(Map<String, TableInfo> schema) {
-        StringBuilder report = new StringBuilder();
-        report.append("# Database Schema Report\n");
-        report.append("Generated: ").append(new Date()).append("\n\n");
+        StringWriter writer = new StringWriter();
+        try {
+            writeSchemaReport(schema, writer);
+        } catch (IOException e) {
+            // StringWriter does not throw
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Write a detailed schema report table by table
+     * The report is streamed, so large schemas are never held as one String
+     */
+    public void writeSchemaReport(Map<String, TableInfo> schema, Writer writer) throws IOException {
+        writer.write("# Database Schema Report\n");
+        writer.write("Generated: " + new Date() + "\n\n");
 
-        report.append("## Summary\n");
-        report.append("Total Tables: ").append(schema.size()).append("\n\n");
+        writer.write("## Summary\n");
+        writer.write("Total Tables: " + schema.size() + "\n\n");
 
-        report.append("## Table Details\n\n");
+        writer.write("## Table Details\n\n");
 
         for (Map.Entry<String, TableInfo> entry : schema.entrySet()) {
             TableInfo table = entry.getValue();
 
-            report.append("### Table: `").append(table.tableName).append("`\n");
-            report.append("- Columns: ").append(table.columns.size()).append("\n");
-            report.append("- Primary Keys: ").append(String.join(", ", table.primaryKeys)).append("\n");
-            report.append("- Row Count: ").append(table.rowCount).append("\n\n");
+            writer.write("### Table: `" + table.tableName + "`\n");
+            writer.write("- Columns: " + table.columns.size() + "\n");
+            writer.write("- Primary Keys: " + String.join(", ", table.primaryKeys) + "\n");
+            writer.write("- Row Count: " + (table.rowCount < 0 ? "-"
+                    : (table.rowCountEstimated ? "~" : "") + table.rowCount) + "\n\n");
 
-            report.append("#### Columns:\n");
-            report.append("| Column Name | Data Type | Size | Nullable | Default |\n");
-            report.append("|-------------|-----------|------|----------|---------|\\n");
+            writer.write("#### Columns:\n");
+            writer.write("| Column Name | Data Type | Size | Nullable | Default |\n");
+            writer.write("|-------------|-----------|------|----------|---------|\n");
 
             for (ColumnInfo col : table.columns) {
-                report.append("| `").append(col.name).append("` ");
-                report.append("| ").append(col.dataType).append(" ");
-                report.append("| ").append(col.size > 0 ? col.size : "-").append(" ");
-                report.append("| ").append(col.nullable ? "YES" : "NO").append(" ");
-                report.append("| ").append(col.defaultValue != null ? col.defaultValue : "-").append(" |\n");
+                writer.write("| `" + col.name + "` ");
+                writer.write("| " + col.dataType + " ");
+                writer.write("| " + (col.size > 0 ? String.valueOf(col.size) : "-") + " ");
+                writer.write("| " + (col.nullable ? "YES" : "NO") + " ");
+                writer.write("| " + (col.defaultValue != null ? col.defaultValue : "-") + " |\n");
             }
 
             if (!table.foreignKeys.isEmpty()) {
-                report.append("\n#### Foreign Keys:\n");
+                writer.write("\n#### Foreign Keys:\n");
                 for (ForeignKeyInfo fk : table.foreignKeys) {
-                    report.append("- `").append(fk.columnName).append("` -> `");
-                    report.append(fk.referencedTable).append("(").append(fk.referencedColumn).append(")`\n");
+                    writer.write("- `" + fk.columnName + "` -> `");
+                    writer.write(fk.referencedTable + "(" + fk.referencedColumn + ")`\n");
                 }
             }
 
             if (!table.indexes.isEmpty()) {
-                report.append("\n#### Indexes:\n");
+                writer.write("\n#### Indexes:\n");
                 for (Map.Entry<String, List<String>> index : table.indexes.entrySet()) {
-                    report.append("- ").append(index.getKey()).append(": ");
-                    report.append(String.join(", ", index.getValue())).append("\n");
+                    writer.write("- " + index.getKey() + ": ");
+                    writer.write(String.join(", ", index.getValue()) + "\n");
                 }
             }
 
-            report.append("\n---\n\n");
+            writer.write("\n---\n\n");
         }
-
-        return report.toString();
+        writer.flush();
     }
 
     /**
@@ -259,12 +508,18 @@ public class DatabaseSchemaExtractor {
      */
     public void saveSchemaReport(String filename) {
         try {
-            Map<String, TableInfo> schema = extractSchema();
-            String report = generateSchemaReport(schema);
+            saveSchemaReport(extractSchemaBulk(null), filename);
+        } catch (Exception e) {
+            LogUtil.error(CLASS_NAME, e, "Failed to save schema report");
+        }
+    }
 
-            // Write to file
-            java.nio.file.Path path = java.nio.file.Paths.get(filename);
-            java.nio.file.Files.write(path, report.getBytes());
+    /**
+     * Save the report of an already extracted schema to file
+     */
+    public void saveSchemaReport(Map<String, TableInfo> schema, String filename) {
+        try (Writer writer = Files.newBufferedWriter(Paths.get(filename), StandardCharsets.UTF_8)) {
+            writeSchemaReport(schema, writer);
 
             LogUtil.info(CLASS_NAME, "Schema report saved to: " + filename);
         } catch (Exception e) {
@@ -276,16 +531,35 @@ public class DatabaseSchemaExtractor {
      * Get schema as JSON for programmatic use
      */
     public String getSchemaAsJson() {
+        StringWriter writer = new StringWriter();
         try {
-            Map<String, TableInfo> schema = extractSchema();
-            com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-            return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(schema);
+            writeSchemaJson(extractSchemaBulk(null), writer);
+            return writer.toString();
         } catch (Exception e) {
             LogUtil.error(CLASS_NAME, e, "Failed to convert schema to JSON");
             return "{}";
         }
     }
 
+    /**
+     * Stream the schema as JSON to a writer, one table at a time
+     * The writer is flushed but not closed
+     */
+    public void writeSchemaJson(Map<String, TableInfo> schema, Writer writer) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(writer)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            for (Map.Entry<String, TableInfo> entry : schema.entrySet()) {
+                generator.writeFieldName(entry.getKey());
+                mapper.writeValue(generator, entry.getValue());
+            }
+            generator.writeEndObject();
+        }
+        writer.flush();
+    }
+
     // Inner classes for schema information
     public static class TableInfo {
         public String tableName;
@@ -293,7 +567,9 @@ public class DatabaseSchemaExtractor {
         public List<String> primaryKeys = new ArrayList<>();
         public List<ForeignKeyInfo> foreignKeys = new ArrayList<>();
         public Map<String, List<String>> indexes = new HashMap<>();
-        public long rowCount;
+        /** Row count, or -1 when not counted */
+        public long rowCount = -1;
+        public boolean rowCountEstimated;
 
         public TableInfo(String tableName) {
             this.tableName = tableName;
@@ -317,21 +593,21 @@ public class DatabaseSchemaExtractor {
     /**
      * Main method for testing
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         DatabaseSchemaExtractor extractor = new DatabaseSchemaExtractor();
 
-        // Extract and print schema
-        Map<String, TableInfo> schema = extractor.extractSchema();
+        // Extract schema with bulk INFORMATION_SCHEMA queries
+        Map<String, TableInfo> schema = extractor.extractSchemaBulk(null);
 
-        // Generate report
-        String report = extractor.generateSchemaReport(schema);
-        System.out.println(report);
+        // Stream report to stdout
+        Writer out = new java.io.OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        extractor.writeSchemaReport(schema, out);
 
         // Save to file
-        extractor.saveSchemaReport("database-schema-report.md");
+        extractor.saveSchemaReport(schema, "database-schema-report.md");
 
-        // Get as JSON
-        String json = extractor.getSchemaAsJson();
-        System.out.println("\nSchema as JSON:\n" + json);
+        // Stream as JSON
+        out.write("\nSchema as JSON:\n");
+        extractor.writeSchemaJson(schema, out);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,138 @@
+package global.govstack.registration.receiver.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.joget.commons.util.LogUtil;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-request index for selecting typed elements of discriminated arrays
+ *
+ * Mappings such as
+ *   govstack: "telecom[1].value", govstackType: "telecom[1].system", typeValue: "email"
+ * select the telecom entry whose system is "email", wherever it appears in the array.
+ * Each discriminated array is scanned once per request to build a typeValue → element map
+ * that is shared by every field selecting from that array.
+ *
+ * If no element of the array carries the discriminator at all, the positional path is used,
+ * so payloads without type information keep working as before.
+ */
+public class DiscriminatorIndex {
+    private static final String CLASS_NAME = DiscriminatorIndex.class.getName();
+
+    // Parsed selectors are immutable and shared across requests
+    private static final Map<String, Selector> SELECTORS = new ConcurrentHashMap<>();
+    private static final Selector NOT_DISCRIMINATED = new Selector(null, null, null);
+
+    private final JsonNode root;
+    private final Map<String, Map<String, JsonNode>> indexes = new HashMap<>();
+
+    /**
+     * Where a typed value lives: array path, discriminator field and the path inside the element
+     */
+    private static class Selector {
+        private final String arrayPath;
+        private final String discriminator;
+        private final String elementPath;
+
+        private Selector(String arrayPath, String discriminator, String elementPath) {
+            this.arrayPath = arrayPath;
+            this.discriminator = discriminator;
+            this.elementPath = elementPath;
+        }
+    }
+
+    public DiscriminatorIndex(JsonNode root) {
+        this.root = root;
+    }
+
+    public JsonNode getRoot() {
+        return root;
+    }
+
+    /**
+     * Extract a value, selecting the array element by its discriminator when one is configured
+     *
+     * @param valuePath The configured value path, e.g. "telecom[1].value"
+     * @param typePath The configured discriminator path, e.g. "telecom[1].system" (may be null)
+     * @param typeValue The discriminator value to select, e.g. "email" (may be null)
+     * @return The extracted value as string, or null if not found
+     */
+    public String extractValue(String valuePath, String typePath, String typeValue) {
+        if (typePath == null || typeValue == null) {
+            return JsonPathExtractor.extractValue(root, valuePath);
+        }
+
+        Selector selector = SELECTORS.computeIfAbsent(valuePath + "|" + typePath, k -> parse(valuePath, typePath));
+        if (selector == NOT_DISCRIMINATED) {
+            return JsonPathExtractor.extractValue(root, valuePath);
+        }
+
+        Map<String, JsonNode> index = getIndex(selector);
+        if (index == null) {
+            // Array has no typed elements - fall back to the position
+            return JsonPathExtractor.extractValue(root, valuePath);
+        }
+
+        JsonNode element = index.get(typeValue);
+        return element != null ? JsonPathExtractor.extractValue(element, selector.elementPath) : null;
+    }
+
+    /**
+     * Get or build the index of an array by discriminator value
+     * @return The index, or null if the array is missing or none of its elements has the discriminator
+     */
+    private Map<String, JsonNode> getIndex(Selector selector) {
+        String key = selector.arrayPath + "|" + selector.discriminator;
+        if (indexes.containsKey(key)) {
+            return indexes.get(key);
+        }
+
+        Map<String, JsonNode> index = null;
+        JsonNode array = JsonPathExtractor.extractNode(root, selector.arrayPath);
+        if (array != null && array.isArray()) {
+            for (JsonNode element : array) {
+                JsonNode type = element.get(selector.discriminator);
+                if (type != null && !type.isNull()) {
+                    if (index == null) {
+                        index = new HashMap<>();
+                    }
+                    // First element of a type wins, as with positional lookups
+                    index.putIfAbsent(type.asText(), element);
+                }
+            }
+        }
+
+        indexes.put(key, index);
+        return index;
+    }
+
+    /**
+     * Parse a value/type path pair that select from the same array element
+     * e.g. "telecom[1].value" + "telecom[1].system" → array "telecom", discriminator "system", element path "value"
+     */
+    private static Selector parse(String valuePath, String typePath) {
+        int typeBracket = typePath.lastIndexOf('[');
+        int typeClose = typePath.indexOf("].", typeBracket);
+        if (typeBracket <= 0 || typeClose < 0) {
+            LogUtil.warn(CLASS_NAME, "Unsupported discriminator path, using position: " + typePath);
+            return NOT_DISCRIMINATED;
+        }
+
+        String arrayPath = typePath.substring(0, typeBracket);
+        String discriminator = typePath.substring(typeClose + 2);
+
+        // The value path must point into an element of the same array
+        int valueBracket = valuePath.lastIndexOf('[');
+        int valueClose = valuePath.indexOf("].", valueBracket);
+        if (valueBracket <= 0 || valueClose < 0 || !valuePath.substring(0, valueBracket).equals(arrayPath)
+                || discriminator.contains(".")) {
+            LogUtil.warn(CLASS_NAME, "Value path " + valuePath + " does not match discriminator " + typePath + ", using position");
+            return NOT_DISCRIMINATED;
+        }
+
+        return new Selector(arrayPath, discriminator, valuePath.substring(valueClose + 2));
+    }
+}
@@ -0,0 +1,62 @@
+package global.govstack.registration.receiver.util;
+
+import org.joget.apps.app.model.AppDefinition;
+import org.joget.apps.app.model.FormDefinition;
+import org.joget.commons.util.LogUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads form definition JSON, either from the running Joget app or from exported form files
+ */
+public class FormDefinitionReader {
+    private static final String CLASS_NAME = FormDefinitionReader.class.getName();
+
+    private FormDefinitionReader() {
+    }
+
+    /**
+     * Read all form definitions of an app
+     * @return Map of form ID to form definition JSON
+     */
+    public static Map<String, String> readFromApp(AppDefinition appDef) {
+        Map<String, String> forms = new HashMap<>();
+        if (appDef == null || appDef.getFormDefinitionList() == null) {
+            return forms;
+        }
+
+        for (FormDefinition formDef : appDef.getFormDefinitionList()) {
+            if (formDef.getId() != null && formDef.getJson() != null) {
+                forms.put(formDef.getId(), formDef.getJson());
+            }
+        }
+        LogUtil.debug(CLASS_NAME, "Read " + forms.size() + " form definitions from app " + appDef.getId());
+        return forms;
+    }
+
+    /**
+     * Read exported form definitions (*.json) from a directory
+     * The form ID is the file name without extension, as in FieldTypeClassifier
+     * @return Map of form ID to form definition JSON
+     */
+    public static Map<String, String> readFromDirectory(File directory) throws IOException {
+        if (!directory.isDirectory()) {
+            throw new IOException("Form directory not found: " + directory);
+        }
+
+        Map<String, String> forms = new HashMap<>();
+        File[] jsonFiles = directory.listFiles((d, name) -> name.endsWith(".json"));
+        if (jsonFiles != null) {
+            for (File jsonFile : jsonFiles) {
+                String formId = jsonFile.getName().replace(".json", "");
+                forms.put(formId, new String(Files.readAllBytes(jsonFile.toPath()), StandardCharsets.UTF_8));
+            }
+        }
+        return forms;
+    }
+}
@@ -0,0 +1,176 @@
+package global.govstack.registration.receiver.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * gzip for response bodies, using pooled Deflater instances
+ *
+ * Each Deflater holds a native zlib stream with tens of kilobytes of buffers; GZIPOutputStream
+ * creates and frees one per call. Here they are taken from a small pool, reset and returned
+ * after use, and the gzip header and trailer (RFC 1952) are written around the raw deflate data.
+ */
+public final class HttpCompression {
+
+    public static final String GZIP = "gzip";
+
+    private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int BUFFER_SIZE = 8192;
+    private static final int COMPRESSION_LEVEL = 6;
+
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private HttpCompression() {
+    }
+
+    /**
+     * Check whether an Accept-Encoding header allows a gzip response
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (!GZIP.equals(name) && !"x-gzip".equals(name) && !"*".equals(name)) {
+                continue;
+            }
+            // gzip;q=0 means the client refuses it
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compress text as UTF-8 gzip
+     */
+    public static byte[] gzip(String text) throws IOException {
+        byte[] content = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, content.length / 4));
+        try (OutputStream out = gzip(bytes)) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Wrap a stream so everything written to it is gzip compressed
+     * Closing the returned stream writes the trailer, returns the Deflater to the pool and closes out.
+     */
+    public static OutputStream gzip(OutputStream out) throws IOException {
+        return new GzipOutputStream(out);
+    }
+
+    private static Deflater borrowDeflater() {
+        Deflater deflater = DEFLATERS.poll();
+        return deflater != null ? deflater : new Deflater(COMPRESSION_LEVEL, true);
+    }
+
+    private static void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        if (!DEFLATERS.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * gzip output over a pooled Deflater
+     */
+    private static class GzipOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private Deflater deflater;
+
+        GzipOutputStream(OutputStream out) throws IOException {
+            this.out = out;
+            this.deflater = borrowDeflater();
+            out.write(HEADER);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (deflater == null) {
+                throw new IOException("Stream closed");
+            }
+            crc.update(b, off, len);
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+        }
+
+        /**
+         * Send what has been compressed so far, so a streamed body reaches the client page by page
+         */
+        @Override
+        public void flush() throws IOException {
+            if (deflater != null) {
+                int written;
+                do {
+                    written = deflate(Deflater.SYNC_FLUSH);
+                } while (written == buffer.length);
+            }
+            out.flush();
+        }
+
+        private int deflate(int mode) throws IOException {
+            int written = deflater.deflate(buffer, 0, buffer.length, mode);
+            if (written > 0) {
+                out.write(buffer, 0, written);
+            }
+            return written;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (deflater == null) {
+                return;
+            }
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(Deflater.NO_FLUSH);
+                }
+                writeIntLE((int) crc.getValue());
+                writeIntLE((int) deflater.getBytesRead());
+            } finally {
+                releaseDeflater(deflater);
+                deflater = null;
+                out.close();
+            }
+        }
+
+        private void writeIntLE(int value) throws IOException {
+            out.write(value & 0xFF);
+            out.write((value >>> 8) & 0xFF);
+            out.write((value >>> 16) & 0xFF);
+            out.write((value >>> 24) & 0xFF);
+        }
+    }
+}
@@ -1,13 +1,12 @@
 package global.govstack.registration.receiver.util;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import org.joget.commons.util.LogUtil;
 
 /**
  * Utility class for extracting values from JSON using simple path notation
  */
 public class JsonPathExtractor {
-    private static final String CLASS_NAME = JsonPathExtractor.class.getName();
+    private static final ProcessingLog LOG = ProcessingLog.getLogger(JsonPathExtractor.class);
 
     /**
      * Extract a string value from JSON using dot notation path
@@ -34,7 +33,7 @@ public class JsonPathExtractor {
                 }
             }
         } catch (Exception e) {
-            LogUtil.debug(CLASS_NAME, "Error extracting value at path " + path + ": " + e.getMessage());
+            LOG.debug("Error extracting value at path {}: {}", path, e.getMessage());
         }
 
         return null;
@@ -54,16 +53,9 @@ public class JsonPathExtractor {
         String[] parts = path.split("\\.");
         JsonNode current = node;
 
-        // Debug logging for agriculturalManagementSkills
-        if (path != null && path.contains("agriculturalManagementSkills")) {
-            LogUtil.info(CLASS_NAME, "Extracting agriculturalManagementSkills from path: " + path);
-        }
-
         for (String part : parts) {
             if (current == null) {
-                if (path != null && path.contains("agriculturalManagementSkills")) {
-                    LogUtil.info(CLASS_NAME, "  Current node became null at part: " + part);
-                }
+                LOG.verbose("Path {} not found, stopped before '{}'", path, part);
                 return null;
             }
 
@@ -85,21 +77,10 @@ public class JsonPathExtractor {
                     return null;
                 }
             } else {
-                JsonNode previous = current;
                 current = current.get(part);
-
-                // Debug logging for agriculturalManagementSkills
-                if (path != null && path.contains("agriculturalManagementSkills")) {
-                    LogUtil.info(CLASS_NAME, "  Part '" + part + "': " +
-                        (previous.has(part) ? "found -> " + (current != null ? current.getNodeType() + ": " + current : "null") : "NOT FOUND"));
-                }
             }
         }
 
-        if (path != null && path.contains("agriculturalManagementSkills")) {
-            LogUtil.info(CLASS_NAME, "  Final result: " + (current != null ? current.getNodeType() + ": " + current : "null"));
-        }
-
         return current;
     }
 }
\ No newline at end of file
@@ -0,0 +1,336 @@
+package global.govstack.registration.receiver.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.joget.commons.util.LogUtil;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Logging facade over LogUtil for the request processing path
+ *
+ * Messages use {} placeholders and are only formatted when the level is enabled, so a
+ * disabled debug line costs a level check and no string building. Lines logged while a
+ * request is being processed are prefixed with the request's serviceId and applicationId.
+ *
+ * Per-field diagnostics go through {@link #verbose}, which logs only for requests marked
+ * verbose: every request of a service with logging.verbose set, a sampled fraction of
+ * requests (logging.verboseSampleRate), or requests carrying the debug header when the
+ * service explicitly allows it (logging.allowDebugHeader: true). Verbose lines name fields
+ * and describe values with {@link #describe} rather than logging submitted values.
+ *
+ * Levels are resolved once per logger from the commons-logging logger LogUtil writes to;
+ * where it is not visible, -Dgovstack.log.level (DEBUG, INFO or WARN, default INFO) decides.
+ */
+public final class ProcessingLog {
+
+    private static final String CLASS_NAME = ProcessingLog.class.getName();
+
+    /** Request header that asks for verbose diagnostics of one request */
+    public static final String DEBUG_HEADER = "X-GovStack-Debug";
+
+    private static final int LEVEL_DEBUG = 0;
+    private static final int LEVEL_INFO = 1;
+    private static final int LEVEL_WARN = 2;
+
+    private static final int FALLBACK_LEVEL = parseLevel(System.getProperty("govstack.log.level"));
+    private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+
+    private static Method getLog;
+    private static Method isDebugEnabled;
+    private static Method isInfoEnabled;
+
+    static {
+        try {
+            Class<?> factory = Class.forName("org.apache.commons.logging.LogFactory");
+            Class<?> log = Class.forName("org.apache.commons.logging.Log");
+            getLog = factory.getMethod("getLog", String.class);
+            isDebugEnabled = log.getMethod("isDebugEnabled");
+            isInfoEnabled = log.getMethod("isInfoEnabled");
+        } catch (Throwable e) {
+            getLog = null;
+        }
+    }
+
+    private final String className;
+    private final boolean debugEnabled;
+    private final boolean infoEnabled;
+
+    private ProcessingLog(String className) {
+        this.className = className;
+        Object log = lookupLog(className);
+        this.debugEnabled = isEnabled(log, isDebugEnabled, LEVEL_DEBUG);
+        this.infoEnabled = isEnabled(log, isInfoEnabled, LEVEL_INFO);
+    }
+
+    public static ProcessingLog getLogger(Class<?> type) {
+        return new ProcessingLog(type.getName());
+    }
+
+    private static Object lookupLog(String className) {
+        if (getLog == null) {
+            return null;
+        }
+        try {
+            return getLog.invoke(null, className);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static int parseLevel(String level) {
+        if ("DEBUG".equalsIgnoreCase(level)) {
+            return LEVEL_DEBUG;
+        }
+        if ("WARN".equalsIgnoreCase(level)) {
+            return LEVEL_WARN;
+        }
+        return LEVEL_INFO;
+    }
+
+    private static boolean isEnabled(Object log, Method check, int level) {
+        if (log != null) {
+            try {
+                return (Boolean) check.invoke(log);
+            } catch (Exception e) {
+                // Fall through to the configured level
+            }
+        }
+        return level >= FALLBACK_LEVEL;
+    }
+
+    public boolean isDebugEnabled() {
+        return debugEnabled;
+    }
+
+    public boolean isInfoEnabled() {
+        return infoEnabled;
+    }
+
+    /**
+     * Whether per-field diagnostics are logged for the current request
+     */
+    public boolean isVerbose() {
+        RequestContext context = CURRENT.get();
+        return context != null && context.verbose && isInfoEnabled();
+    }
+
+    public void debug(String format, Object arg) {
+        if (isDebugEnabled()) {
+            LogUtil.debug(className, format(format, arg));
+        }
+    }
+
+    public void debug(String format, Object arg1, Object arg2) {
+        if (isDebugEnabled()) {
+            LogUtil.debug(className, format(format, arg1, arg2));
+        }
+    }
+
+    public void debug(String format, Object... args) {
+        if (isDebugEnabled()) {
+            LogUtil.debug(className, format(format, args));
+        }
+    }
+
+    public void info(String format, Object arg) {
+        if (isInfoEnabled()) {
+            LogUtil.info(className, format(format, arg));
+        }
+    }
+
+    public void info(String format, Object arg1, Object arg2) {
+        if (isInfoEnabled()) {
+            LogUtil.info(className, format(format, arg1, arg2));
+        }
+    }
+
+    public void info(String format, Object... args) {
+        if (isInfoEnabled()) {
+            LogUtil.info(className, format(format, args));
+        }
+    }
+
+    /**
+     * Log a per-field diagnostic, only for requests marked verbose
+     */
+    public void verbose(String format, Object arg) {
+        if (isVerbose()) {
+            LogUtil.info(className, format(format, arg));
+        }
+    }
+
+    public void verbose(String format, Object arg1, Object arg2) {
+        if (isVerbose()) {
+            LogUtil.info(className, format(format, arg1, arg2));
+        }
+    }
+
+    public void verbose(String format, Object... args) {
+        if (isVerbose()) {
+            LogUtil.info(className, format(format, args));
+        }
+    }
+
+    public void warn(String format, Object... args) {
+        LogUtil.warn(className, format(format, args));
+    }
+
+    public void error(Throwable e, String format, Object... args) {
+        LogUtil.error(className, e, format(format, args));
+    }
+
+    /**
+     * Describe a submitted value by its type and size, for diagnostics that must not log
+     * the value itself
+     * @return e.g. "null", "text(12)", "number", "boolean", "array(3)" or "object(5)"
+     */
+    public static String describe(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof CharSequence) {
+            return "text(" + ((CharSequence) value).length() + ")";
+        }
+        if (value instanceof JsonNode) {
+            JsonNode node = (JsonNode) value;
+            if (node.isTextual()) {
+                return "text(" + node.textValue().length() + ")";
+            }
+            if (node.isContainerNode()) {
+                return (node.isArray() ? "array(" : "object(") + node.size() + ")";
+            }
+            return node.getNodeType().name().toLowerCase(Locale.ROOT);
+        }
+        if (value instanceof Number) {
+            return "number";
+        }
+        if (value instanceof Boolean) {
+            return "boolean";
+        }
+        if (value instanceof Map) {
+            return "object(" + ((Map<?, ?>) value).size() + ")";
+        }
+        if (value instanceof Collection) {
+            return "array(" + ((Collection<?>) value).size() + ")";
+        }
+        return value.getClass().getSimpleName();
+    }
+
+    /**
+     * Format a message as it is logged: each {} is replaced by the next argument and
+     * the current request's context is prefixed
+     */
+    public static String format(String format, Object... args) {
+        RequestContext context = CURRENT.get();
+        StringBuilder message = new StringBuilder(format.length() + 32 * (args.length + 1));
+        if (context != null) {
+            context.appendTo(message);
+        }
+        int argIndex = 0;
+        int start = 0;
+        int placeholder;
+        while (argIndex < args.length && (placeholder = format.indexOf("{}", start)) >= 0) {
+            message.append(format, start, placeholder).append(args[argIndex++]);
+            start = placeholder + 2;
+        }
+        message.append(format, start, format.length());
+        return message.toString();
+    }
+
+    /**
+     * Start logging context for a request on this thread
+     * Must be paired with {@link #endRequest()} in a finally block.
+     */
+    public static RequestContext beginRequest(String serviceId) {
+        RequestContext context = new RequestContext(serviceId);
+        CURRENT.set(context);
+        return context;
+    }
+
+    /**
+     * The logging context of the request on this thread, or null outside a request
+     */
+    public static RequestContext currentRequest() {
+        return CURRENT.get();
+    }
+
+    public static void endRequest() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Structured context of one request
+     */
+    public static final class RequestContext {
+        private final String serviceId;
+        private String applicationId;
+        private boolean debugRequested;
+        private boolean verbose;
+
+        RequestContext(String serviceId) {
+            this.serviceId = serviceId;
+        }
+
+        public String getServiceId() {
+            return serviceId;
+        }
+
+        public String getApplicationId() {
+            return applicationId;
+        }
+
+        public void setApplicationId(String applicationId) {
+            this.applicationId = applicationId;
+        }
+
+        /**
+         * Record that the client sent the debug header
+         */
+        public void setDebugRequested(boolean debugRequested) {
+            this.debugRequested = debugRequested;
+        }
+
+        public boolean isVerbose() {
+            return verbose;
+        }
+
+        public void setVerbose(boolean verbose) {
+            this.verbose = verbose;
+        }
+
+        /**
+         * Decide whether this request logs verbose diagnostics
+         * @param settings The service's logging settings (verbose, verboseSampleRate, allowDebugHeader), may be null
+         */
+        public void applySettings(Map<String, Object> settings) {
+            if (settings == null) {
+                settings = Collections.emptyMap();
+            }
+            if (Boolean.TRUE.equals(settings.get("verbose"))) {
+                verbose = true;
+            } else if (debugRequested && Boolean.TRUE.equals(settings.get("allowDebugHeader"))) {
+                verbose = true;
+                LogUtil.info(CLASS_NAME, "Verbose logging requested by " + DEBUG_HEADER + " for service " + serviceId);
+            } else if (settings.get("verboseSampleRate") instanceof Number) {
+                double rate = ((Number) settings.get("verboseSampleRate")).doubleValue();
+                verbose = rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+            }
+        }
+
+        void appendTo(StringBuilder message) {
+            message.append("[serviceId=").append(serviceId);
+            if (applicationId != null) {
+                message.append(" applicationId=").append(applicationId);
+            }
+            if (verbose) {
+                message.append(" verbose");
+            }
+            message.append("] ");
+        }
+    }
+}
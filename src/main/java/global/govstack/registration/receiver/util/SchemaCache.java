@@ -0,0 +1,433 @@
+package global.govstack.registration.receiver.util;
+
+import org.joget.commons.util.LogUtil;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of the column metadata of all Joget form tables (app_fd_*)
+ *
+ * All columns are loaded with a single INFORMATION_SCHEMA.COLUMNS query and indexed by
+ * lower-case table and column name, replacing per-table DatabaseMetaData round trips.
+ * The cache is shared per DataSource by ServiceMetadataValidator, DatabaseSchemaExtractor
+ * and anything else that needs to know the physical columns of a form table.
+ *
+ * Freshness:
+ * - after the TTL, a signature of the app_fd_* table and column names and types is compared
+ *   with the cached one and the cache is only reloaded if it changed
+ * - a lookup for an unknown table checks the signature again, at most once per MISS_RELOAD_MILLIS
+ * - invalidate() forces a reload on next access, used when metadata is revalidated on request
+ *
+ * The version only changes when a reload finds different tables or columns, so callers
+ * that memoise work per version are not invalidated by reloads that changed nothing.
+ * Such callers use isStale() to find out when checkVersion() is due, as getVersion() alone
+ * never looks at the database; MetadataValidationRegistry does this on the request path.
+ */
+public class SchemaCache {
+    private static final String CLASS_NAME = SchemaCache.class.getName();
+
+    public static final String FORM_TABLE_PREFIX = "app_fd_";
+    public static final long DEFAULT_TTL_SECONDS = 300;
+    private static final long MISS_RELOAD_MILLIS = 10000;
+
+    private static final Map<DataSource, SchemaCache> SHARED = new ConcurrentHashMap<>();
+
+    /**
+     * Loads column metadata for all form tables
+     */
+    public interface Loader {
+        /**
+         * @return Map of table name to its columns in ordinal order
+         */
+        Map<String, List<DatabaseSchemaExtractor.ColumnInfo>> loadColumns() throws Exception;
+
+        /**
+         * Cheap fingerprint of the schema (e.g. a hash of table and column names and types)
+         * used to skip reloads when nothing changed
+         * @return The signature, or -1 if not supported
+         */
+        long signature() throws Exception;
+    }
+
+    /**
+     * Columns of one table
+     */
+    public static class TableColumns {
+        private final String tableName;
+        private final List<DatabaseSchemaExtractor.ColumnInfo> columns;
+        private final Map<String, String> lowerToActual;
+
+        TableColumns(String tableName, List<DatabaseSchemaExtractor.ColumnInfo> columns) {
+            this.tableName = tableName;
+            this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+
+            Map<String, String> names = new HashMap<>(columns.size() * 2);
+            for (DatabaseSchemaExtractor.ColumnInfo column : columns) {
+                names.putIfAbsent(column.name.toLowerCase(Locale.ROOT), column.name);
+            }
+            this.lowerToActual = Collections.unmodifiableMap(names);
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public List<DatabaseSchemaExtractor.ColumnInfo> getColumns() {
+            return columns;
+        }
+
+        /**
+         * @return Lower-case column names
+         */
+        public Set<String> getColumnNames() {
+            return lowerToActual.keySet();
+        }
+
+        /**
+         * Find a column by name ignoring case
+         * @return The actual column name, or null if the table has no such column
+         */
+        public String findColumn(String columnName) {
+            return columnName != null ? lowerToActual.get(columnName.toLowerCase(Locale.ROOT)) : null;
+        }
+    }
+
+    /**
+     * Immutable view of all cached tables
+     */
+    private static class Snapshot {
+        final Map<String, TableColumns> tables;
+        final long version;
+        final long signature;
+        final long fingerprint;
+        final long loadedAt;
+        final long expiresAt;
+
+        Snapshot(Map<String, TableColumns> tables, long version, long signature, long fingerprint,
+                 long loadedAt, long expiresAt) {
+            this.tables = tables;
+            this.version = version;
+            this.signature = signature;
+            this.fingerprint = fingerprint;
+            this.loadedAt = loadedAt;
+            this.expiresAt = expiresAt;
+        }
+
+        Snapshot extend(long expiresAt) {
+            return new Snapshot(tables, version, signature, fingerprint, loadedAt, expiresAt);
+        }
+
+        Snapshot checkedAt(long now) {
+            return new Snapshot(tables, version, signature, fingerprint, now, expiresAt);
+        }
+    }
+
+    private final Loader loader;
+    private final long ttlMillis;
+    private volatile Snapshot snapshot;
+
+    public SchemaCache(Loader loader, long ttlSeconds) {
+        this.loader = loader;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * Get the shared cache for a DataSource
+     */
+    public static SchemaCache forDataSource(DataSource dataSource) {
+        return SHARED.computeIfAbsent(dataSource,
+                ds -> new SchemaCache(new InformationSchemaLoader(ds), DEFAULT_TTL_SECONDS));
+    }
+
+    /**
+     * Drop all shared caches
+     */
+    public static void clearShared() {
+        SHARED.clear();
+    }
+
+    /**
+     * Get the columns of a table
+     * @return The columns, or null if the table is not a known form table
+     */
+    public TableColumns getTable(String tableName) {
+        if (tableName == null) {
+            return null;
+        }
+        String key = tableName.toLowerCase(Locale.ROOT);
+        Snapshot current = current();
+        TableColumns table = current.tables.get(key);
+
+        if (table == null && System.currentTimeMillis() - current.loadedAt > MISS_RELOAD_MILLIS) {
+            // The table may belong to a form created since the last load
+            table = refresh().tables.get(key);
+        }
+        return table;
+    }
+
+    /**
+     * Get the lower-case column names of a table
+     * @return The column names, empty if the table is unknown
+     */
+    public Set<String> getColumnNames(String tableName) {
+        TableColumns table = getTable(tableName);
+        return table != null ? table.getColumnNames() : Collections.<String>emptySet();
+    }
+
+    /**
+     * Get the names of all cached form tables (lower-case)
+     */
+    public Set<String> getTableNames() {
+        return current().tables.keySet();
+    }
+
+    /**
+     * Get the version of the cached schema, incremented when a reload finds a changed schema
+     * Does not load or refresh the cache
+     * @return The version, or 0 if the schema was never loaded
+     */
+    public long getVersion() {
+        Snapshot current = snapshot;
+        return current != null ? current.version : 0;
+    }
+
+    /**
+     * Get the version of the cached schema, first checking the database for changes if the TTL has passed
+     * @return The version, or 0 if the schema could not be loaded
+     */
+    public long checkVersion() {
+        return current().version;
+    }
+
+    /**
+     * Check whether the TTL has passed, so the next access compares the schema signature
+     * Does not load or refresh the cache
+     */
+    public boolean isStale() {
+        Snapshot current = snapshot;
+        return current == null || System.currentTimeMillis() >= current.expiresAt;
+    }
+
+    /**
+     * Force a reload on next access
+     */
+    public void invalidate() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            snapshot = current.extend(0);
+        }
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null && System.currentTimeMillis() < current.expiresAt) {
+            return current;
+        }
+
+        synchronized (this) {
+            current = snapshot;
+            long now = System.currentTimeMillis();
+            if (current != null && now < current.expiresAt) {
+                return current;
+            }
+
+            if (current != null && current.signature >= 0 && current.expiresAt > 0) {
+                try {
+                    if (loader.signature() == current.signature) {
+                        snapshot = current.extend(now + ttlMillis);
+                        return snapshot;
+                    }
+                } catch (Exception e) {
+                    LogUtil.warn(CLASS_NAME, "Schema signature check failed, reloading: " + e.getMessage());
+                }
+            }
+            return load(current, now);
+        }
+    }
+
+    /**
+     * Reload if the signature changed, otherwise only record the check
+     */
+    private synchronized Snapshot refresh() {
+        Snapshot current = snapshot;
+        long now = System.currentTimeMillis();
+        if (current != null && now - current.loadedAt <= MISS_RELOAD_MILLIS) {
+            // Checked by another thread meanwhile
+            return current;
+        }
+        if (current != null && current.signature >= 0) {
+            try {
+                if (loader.signature() == current.signature) {
+                    snapshot = current.checkedAt(now);
+                    return snapshot;
+                }
+            } catch (Exception e) {
+                LogUtil.warn(CLASS_NAME, "Schema signature check failed, reloading: " + e.getMessage());
+            }
+        }
+        return load(current, now);
+    }
+
+    private Snapshot load(Snapshot previous, long now) {
+        try {
+            long signature = loader.signature();
+            Map<String, List<DatabaseSchemaExtractor.ColumnInfo>> columns = loader.loadColumns();
+
+            Map<String, TableColumns> tables = new HashMap<>(columns.size() * 2);
+            int columnCount = 0;
+            long fingerprint = 0;
+            for (Map.Entry<String, List<DatabaseSchemaExtractor.ColumnInfo>> entry : columns.entrySet()) {
+                tables.put(entry.getKey().toLowerCase(Locale.ROOT), new TableColumns(entry.getKey(), entry.getValue()));
+                columnCount += entry.getValue().size();
+                for (DatabaseSchemaExtractor.ColumnInfo column : entry.getValue()) {
+                    fingerprint += columnHash(entry.getKey(), column.name, column.dataType);
+                }
+            }
+
+            boolean changed = previous == null || previous.version == 0 || previous.fingerprint != fingerprint;
+            long version = previous == null ? 1 : changed ? previous.version + 1 : previous.version;
+            snapshot = new Snapshot(Collections.unmodifiableMap(tables), version, signature, fingerprint, now, now + ttlMillis);
+            if (changed) {
+                LogUtil.info(CLASS_NAME, "Loaded schema for " + tables.size() + " form tables (" + columnCount + " columns)");
+            } else {
+                LogUtil.debug(CLASS_NAME, "Reloaded schema for " + tables.size() + " form tables, unchanged");
+            }
+        } catch (Exception e) {
+            LogUtil.error(CLASS_NAME, e, "Failed to load form table schema");
+            // Keep serving the previous schema, retry after the miss interval
+            snapshot = previous != null
+                    ? previous.extend(now + MISS_RELOAD_MILLIS)
+                    : new Snapshot(Collections.<String, TableColumns>emptyMap(), 0, -1, 0, now, now + MISS_RELOAD_MILLIS);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Hash of one column, summed over all columns to an order independent fingerprint
+     */
+    static long columnHash(String tableName, String columnName, String dataType) {
+        String key = (tableName + "." + columnName + ":" + dataType).toLowerCase(Locale.ROOT);
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Loads form table columns from INFORMATION_SCHEMA.COLUMNS in one query,
+     * falling back to a single DatabaseMetaData.getColumns call when unavailable
+     */
+    public static class InformationSchemaLoader implements Loader {
+        private static final String COLUMNS_QUERY =
+                "SELECT TABLE_NAME, COLUMN_NAME, DATA_TYPE, CHARACTER_MAXIMUM_LENGTH, IS_NULLABLE, COLUMN_DEFAULT " +
+                "FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE TABLE_SCHEMA = ? AND LOWER(TABLE_NAME) LIKE 'app_fd%' " +
+                "ORDER BY TABLE_NAME, ORDINAL_POSITION";
+        private static final String SIGNATURE_QUERY =
+                "SELECT TABLE_NAME, COLUMN_NAME, DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE TABLE_SCHEMA = ? AND LOWER(TABLE_NAME) LIKE 'app_fd%'";
+
+        private final DataSource dataSource;
+
+        public InformationSchemaLoader(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        public Map<String, List<DatabaseSchemaExtractor.ColumnInfo>> loadColumns() throws SQLException {
+            Map<String, List<DatabaseSchemaExtractor.ColumnInfo>> tables = new HashMap<>();
+
+            try (Connection conn = dataSource.getConnection()) {
+                try (PreparedStatement stmt = conn.prepareStatement(COLUMNS_QUERY)) {
+                    stmt.setString(1, conn.getCatalog());
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            String tableName = rs.getString("TABLE_NAME");
+                            if (!isFormTable(tableName)) {
+                                continue;
+                            }
+                            DatabaseSchemaExtractor.ColumnInfo column = new DatabaseSchemaExtractor.ColumnInfo();
+                            column.name = rs.getString("COLUMN_NAME");
+                            column.dataType = rs.getString("DATA_TYPE");
+                            column.size = rs.getInt("CHARACTER_MAXIMUM_LENGTH");
+                            column.nullable = "YES".equalsIgnoreCase(rs.getString("IS_NULLABLE"));
+                            column.defaultValue = rs.getString("COLUMN_DEFAULT");
+                            tables.computeIfAbsent(tableName, k -> new ArrayList<>()).add(column);
+                        }
+                    }
+                } catch (SQLException e) {
+                    LogUtil.warn(CLASS_NAME, "INFORMATION_SCHEMA query failed, using metadata: " + e.getMessage());
+                }
+
+                if (tables.isEmpty()) {
+                    loadFromMetaData(conn, tables);
+                }
+            }
+            return tables;
+        }
+
+        private void loadFromMetaData(Connection conn, Map<String, List<DatabaseSchemaExtractor.ColumnInfo>> tables)
+                throws SQLException {
+            DatabaseMetaData metadata = conn.getMetaData();
+            try (ResultSet rs = metadata.getColumns(conn.getCatalog(), null, FORM_TABLE_PREFIX + "%", null)) {
+                while (rs.next()) {
+                    String tableName = rs.getString("TABLE_NAME");
+                    if (!isFormTable(tableName)) {
+                        continue;
+                    }
+                    DatabaseSchemaExtractor.ColumnInfo column = new DatabaseSchemaExtractor.ColumnInfo();
+                    column.name = rs.getString("COLUMN_NAME");
+                    column.dataType = rs.getString("TYPE_NAME");
+                    column.size = rs.getInt("COLUMN_SIZE");
+                    column.nullable = rs.getInt("NULLABLE") == DatabaseMetaData.columnNullable;
+                    column.defaultValue = rs.getString("COLUMN_DEF");
+                    tables.computeIfAbsent(tableName, k -> new ArrayList<>()).add(column);
+                }
+            }
+        }
+
+        /**
+         * Hash of the table and column names and data types, without building the column metadata
+         */
+        @Override
+        public long signature() {
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(SIGNATURE_QUERY)) {
+                stmt.setString(1, conn.getCatalog());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    long hash = 0;
+                    int count = 0;
+                    while (rs.next()) {
+                        hash += columnHash(rs.getString(1), rs.getString(2), rs.getString(3));
+                        count++;
+                    }
+                    // -1 is reserved for an unavailable signature
+                    return count > 0 ? hash & Long.MAX_VALUE : -1;
+                }
+            } catch (SQLException e) {
+                LogUtil.debug(CLASS_NAME, "Schema signature unavailable: " + e.getMessage());
+                return -1;
+            }
+        }
+
+        private static boolean isFormTable(String tableName) {
+            return tableName != null && tableName.toLowerCase(Locale.ROOT).startsWith(FORM_TABLE_PREFIX);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package global.govstack.registration.receiver.service.metrics;
+
+import jdk.jfr.EventType;
+
+/**
+ * JFR implementation of the processing events, loaded reflectively by ProcessingEvents
+ *
+ * Event objects are only allocated when their type is enabled in a running recording.
+ */
+final class JfrEventSink implements ProcessingEvents.Sink {
+
+    private final EventType requestType = EventType.getEventType(RegistrationRequestEvent.class);
+    private final EventType stageType = EventType.getEventType(ProcessingStageEvent.class);
+    private final EventType normalizationType = EventType.getEventType(NormalizationEvent.class);
+    private final EventType formStoreType = EventType.getEventType(FormStoreEvent.class);
+    private final EventType workflowType = EventType.getEventType(WorkflowCallEvent.class);
+
+    @Override
+    public ProcessingEvents.Span begin(ProcessingEvents.Type type, String operation) {
+        ProcessingEvent event;
+        switch (type) {
+            case REQUEST:
+                event = requestType.isEnabled() ? new RegistrationRequestEvent() : null;
+                break;
+            case STAGE:
+                event = stageType.isEnabled() ? new ProcessingStageEvent() : null;
+                break;
+            case NORMALIZATION:
+                event = normalizationType.isEnabled() ? new NormalizationEvent() : null;
+                break;
+            case FORM_STORE:
+                event = formStoreType.isEnabled() ? new FormStoreEvent() : null;
+                break;
+            case WORKFLOW:
+                event = workflowType.isEnabled() ? new WorkflowCallEvent() : null;
+                break;
+            default:
+                event = null;
+        }
+        if (event == null) {
+            return null;
+        }
+        event.operation = operation;
+        event.begin();
+        return new JfrSpan(event);
+    }
+
+    private static final class JfrSpan extends ProcessingEvents.Span {
+
+        private final ProcessingEvent event;
+
+        JfrSpan(ProcessingEvent event) {
+            this.event = event;
+        }
+
+        @Override
+        public ProcessingEvents.Span serviceId(String serviceId) {
+            event.serviceId = serviceId;
+            return this;
+        }
+
+        @Override
+        public ProcessingEvents.Span formId(String formId) {
+            event.formId = formId;
+            return this;
+        }
+
+        @Override
+        public ProcessingEvents.Span field(String field) {
+            event.field = field;
+            return this;
+        }
+
+        @Override
+        public ProcessingEvents.Span rowCount(int rowCount) {
+            event.rowCount = rowCount;
+            return this;
+        }
+
+        @Override
+        public ProcessingEvents.Span primaryKey(String primaryKey) {
+            event.primaryKeyHash = primaryKey;
+            return this;
+        }
+
+        @Override
+        public void end(boolean success) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.success = success;
+                event.primaryKeyHash = ProcessingEvents.hashKey(event.primaryKeyHash);
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package global.govstack.registration.receiver.service.metrics;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * One event per normalised value, so only slow ones are recorded by default
+ */
+@Name("govstack.Normalization")
+@Label("Value Normalization")
+@Threshold("1 ms")
+class NormalizationEvent extends ProcessingEvent {
+}
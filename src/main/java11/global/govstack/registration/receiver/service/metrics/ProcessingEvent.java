@@ -0,0 +1,37 @@
+package global.govstack.registration.receiver.service.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Fields shared by every registration processing event
+ */
+@Category({"GovStack", "Registration"})
+@StackTrace(false)
+abstract class ProcessingEvent extends Event {
+
+    @Label("Service ID")
+    String serviceId;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Form ID")
+    String formId;
+
+    @Label("Field")
+    String field;
+
+    @Label("Row Count")
+    int rowCount;
+
+    @Label("Primary Key Hash")
+    @Description("First 16 hex characters of the SHA-256 of the record's primary key")
+    String primaryKeyHash;
+
+    @Label("Success")
+    boolean success;
+}
@@ -0,0 +1,9 @@
+package global.govstack.registration.receiver.service.metrics;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("govstack.ProcessingStage")
+@Label("Processing Stage")
+class ProcessingStageEvent extends ProcessingEvent {
+}
@@ -0,0 +1,9 @@
+package global.govstack.registration.receiver.service.metrics;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("govstack.RegistrationRequest")
+@Label("Registration Request")
+class RegistrationRequestEvent extends ProcessingEvent {
+}
@@ -0,0 +1,58 @@
+package global.govstack.processing.api;
+
+import global.govstack.registration.receiver.exception.ApiProcessingException;
+import global.govstack.registration.receiver.lib.RegistrationServiceProvider;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the request body decoding of BaseServiceProvider
+ */
+public class RequestBodyDecodingTest {
+
+    private static final String BODY = "{\"id\":\"farmer-1\",\"name\":{\"family\":\"Lešoto ✓\"}}";
+
+    /**
+     * Provider with the HTTP request replaced by a Content-Encoding header
+     */
+    private static class TestProvider extends RegistrationServiceProvider {
+        private final String contentEncoding;
+
+        TestProvider(String contentEncoding) {
+            this.contentEncoding = contentEncoding;
+        }
+
+        @Override
+        protected String getRequestHeader(String name) {
+            return "Content-Encoding".equals(name) ? contentEncoding : null;
+        }
+
+        String decode(String requestBody) throws ApiProcessingException {
+            return decodeRequestBody(requestBody);
+        }
+    }
+
+    private static int statusOf(TestProvider provider, String requestBody) {
+        try {
+            provider.decode(requestBody);
+            fail("Expected the body to be rejected");
+            return 0;
+        } catch (ApiProcessingException e) {
+            return e.getStatusCode();
+        }
+    }
+
+    @Test
+    public void testUncompressedBodyIsPassedThrough() throws Exception {
+        assertEquals(BODY, new TestProvider(null).decode(BODY));
+        assertEquals(BODY, new TestProvider("identity").decode(BODY));
+    }
+
+    @Test
+    public void testCompressedBodyIsRejected() throws Exception {
+        // The API builder has already read the body as text, so gzip cannot be undone
+        assertEquals(415, statusOf(new TestProvider("gzip"), BODY));
+        assertEquals(415, statusOf(new TestProvider("zstd"), BODY));
+    }
+}
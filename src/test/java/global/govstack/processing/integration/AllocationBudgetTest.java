@@ -0,0 +1,236 @@
+package global.govstack.processing.integration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import global.govstack.processing.support.AllocationBudget;
+import global.govstack.processing.support.AllocationMeter;
+import global.govstack.processing.support.InMemoryJoget;
+import global.govstack.registration.receiver.service.GovStackRegistrationService;
+import global.govstack.registration.receiver.service.changes.ChangeFeed;
+import global.govstack.registration.receiver.service.identity.IdentifierIndexRegistry;
+import global.govstack.registration.receiver.service.masterdata.MasterDataCache;
+import global.govstack.registration.receiver.service.metadata.DataTransformer;
+import global.govstack.registration.receiver.service.metadata.GovStackDataMapper;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.service.metrics.RequestMetrics;
+import global.govstack.registration.receiver.service.metrics.SlowRequestRecorder;
+import global.govstack.registration.receiver.service.normalization.LovOptionIndex;
+import global.govstack.registration.receiver.service.normalization.ValueNormalizer;
+import global.govstack.registration.receiver.service.validation.MetadataValidationRegistry;
+import global.govstack.registration.receiver.service.validation.RequestShapeValidator;
+import org.joget.apps.app.service.AppUtil;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Allocation budgets per processed submission
+ *
+ * Measures the bytes allocated per operation by the mapper, the normaliser, the
+ * transformer and the whole registration pipeline against the in-memory Joget, and
+ * fails when a budget in allocation-budgets.properties is exceeded. Each check prints
+ * its measurement with the biggest contributors, so a failure shows where to look.
+ */
+public class AllocationBudgetTest {
+
+    private static final String SERVICE_ID = "farmers_registry";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Sample input per transformation type of the service configuration */
+    private static final Map<String, String> TRANSFORM_SAMPLES = new HashMap<>();
+
+    static {
+        TRANSFORM_SAMPLES.put("date", "1985-03-15");
+        TRANSFORM_SAMPLES.put("number", "2.5");
+        TRANSFORM_SAMPLES.put("boolean", "true");
+        TRANSFORM_SAMPLES.put("array", "[\"maize\",\"beans\",\"sorghum\"]");
+        TRANSFORM_SAMPLES.put("base64", "aGVsbG8gd29ybGQ=");
+    }
+
+    @ClassRule
+    public static final TemporaryFolder CHANGES = new TemporaryFolder();
+
+    private static InMemoryJoget joget;
+    private static YamlMetadataService metadataService;
+    private static AllocationBudget budget;
+    private static JsonNode testData;
+    private static String requestBody;
+    private static GovStackDataMapper mapper;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        MasterDataCache.shutdownAll();
+        System.setProperty(YamlMetadataService.CHANGE_FEED_DIR_PROPERTY, CHANGES.getRoot().getPath());
+        LovOptionIndex.clearShared();
+
+        joget = new InMemoryJoget(new File("doc-forms")).install();
+        metadataService = new YamlMetadataService();
+        metadataService.loadMetadata(SERVICE_ID);
+        budget = new AllocationBudget();
+
+        try (InputStream in = AllocationBudgetTest.class.getClassLoader().getResourceAsStream("docs-metadata/test-data.json")) {
+            testData = MAPPER.readTree(in);
+        }
+        requestBody = MAPPER.writeValueAsString(testData);
+
+        Set<String> values = new LinkedHashSet<>();
+        collectValues(testData, values);
+        joget.seedMasterData(metadataService, values);
+
+        mapper = new GovStackDataMapper(metadataService, new DataTransformer());
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        IdentifierIndexRegistry.getInstance().shutdown();
+        ChangeFeed.getInstance().shutdown();
+        System.clearProperty(YamlMetadataService.CHANGE_FEED_DIR_PROPERTY);
+        MasterDataCache.shutdownAll();
+        MetadataValidationRegistry.getInstance().shutdown();
+        LovOptionIndex.clearShared();
+        joget.close();
+        // Leave no samples behind for the metrics tests
+        RequestMetrics.getInstance().reset();
+        SlowRequestRecorder.getInstance().reset();
+    }
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("Thread allocation counting not supported by this JVM", AllocationMeter.isSupported());
+    }
+
+    private static void collectValues(JsonNode node, Set<String> values) {
+        if (node.isValueNode()) {
+            values.add(node.asText());
+        } else {
+            Iterator<JsonNode> elements = node.elements();
+            while (elements.hasNext()) {
+                collectValues(elements.next(), values);
+            }
+        }
+    }
+
+    @Test
+    public void testDataMapperBudget() throws Exception {
+        long measured = AllocationMeter.bytesPerOperation(200, 200, () -> mapper.mapJsonToMultipleForms(testData));
+
+        Map<String, Long> breakdown = new LinkedHashMap<>();
+        breakdown.putAll(normalizerCosts());
+        breakdown.putAll(transformerCosts());
+        check("mapper", measured, breakdown);
+    }
+
+    @Test
+    public void testValueNormalizerBudget() throws Exception {
+        Map<String, Long> costs = normalizerCosts();
+        assertFalse("Mapped request should have fields to normalize", costs.isEmpty());
+        check("normalizer", average(costs), costs);
+    }
+
+    @Test
+    public void testDataTransformerBudget() throws Exception {
+        Map<String, Long> costs = transformerCosts();
+        assertFalse("Service should define transformations with sample inputs", costs.isEmpty());
+        check("transformer", average(costs), costs);
+    }
+
+    @Test
+    public void testRegistrationPipelineBudget() throws Exception {
+        long measured = AllocationMeter.bytesPerOperation(5, 20,
+                () -> new GovStackRegistrationService(SERVICE_ID).processRequest(requestBody));
+
+        GovStackRegistrationService service = new GovStackRegistrationService(SERVICE_ID);
+        JsonNode data = GovStackDataMapper.unwrapTestData(testData);
+        RequestShapeValidator validator = RequestShapeValidator.forMetadata(metadataService);
+
+        Map<String, Long> breakdown = new LinkedHashMap<>();
+        breakdown.put("create GovStackRegistrationService", AllocationMeter.bytesPerOperation(5, 20,
+                () -> new GovStackRegistrationService(SERVICE_ID)));
+        breakdown.put("processRequest", AllocationMeter.bytesPerOperation(5, 20,
+                () -> service.processRequest(requestBody)));
+        breakdown.put("parse request", AllocationMeter.bytesPerOperation(50, 50,
+                () -> MAPPER.readTree(requestBody)));
+        breakdown.put("validate request shape", AllocationMeter.bytesPerOperation(50, 50,
+                () -> validator.validate(data)));
+        breakdown.put("map request", AllocationMeter.bytesPerOperation(50, 50,
+                () -> mapper.mapJsonToMultipleForms(testData)));
+        check("pipeline", measured, breakdown);
+    }
+
+    /**
+     * Bytes per call of normalizing each field value of the mapped sample request
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> normalizerCosts() throws Exception {
+        ValueNormalizer normalizer = new ValueNormalizer(metadataService);
+        normalizer.setMasterDataCache(MasterDataCache.getInstance(AppUtil.getCurrentAppDefinition()));
+        normalizer.setLovOptionIndex(LovOptionIndex.getShared(AppUtil.getCurrentAppDefinition()));
+
+        Map<String, String> fieldValues = new LinkedHashMap<>();
+        Map<String, Map<String, String>> formData =
+                (Map<String, Map<String, String>>) mapper.mapJsonToMultipleForms(testData).get("formData");
+        for (Map<String, String> fields : formData.values()) {
+            for (Map.Entry<String, String> field : fields.entrySet()) {
+                if (field.getValue() != null) {
+                    fieldValues.putIfAbsent(field.getKey(), field.getValue());
+                }
+            }
+        }
+
+        Map<String, Long> costs = new LinkedHashMap<>();
+        for (Map.Entry<String, String> field : fieldValues.entrySet()) {
+            JsonNode value = TextNode.valueOf(field.getValue());
+            costs.put("normalize " + field.getKey(), AllocationMeter.bytesPerOperation(200, 200,
+                    () -> normalizer.normalizeToLOV(value, field.getKey())));
+        }
+        return costs;
+    }
+
+    /**
+     * Bytes per call of each transformation of the service configuration on a sample input
+     */
+    private static Map<String, Long> transformerCosts() throws Exception {
+        DataTransformer transformer = new DataTransformer();
+        Map<String, Long> costs = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Object>> transformation : metadataService.getTransformations().entrySet()) {
+            String sample = TRANSFORM_SAMPLES.get(String.valueOf(transformation.getValue().get("type")));
+            if (sample == null) {
+                continue;
+            }
+            costs.put("transform " + transformation.getKey(), AllocationMeter.bytesPerOperation(200, 200,
+                    () -> transformer.transformValue(sample, transformation.getKey())));
+        }
+        return costs;
+    }
+
+    private static long average(Map<String, Long> costs) {
+        long total = 0;
+        for (long cost : costs.values()) {
+            total += cost;
+        }
+        return total / costs.size();
+    }
+
+    private void check(String component, long measured, Map<String, Long> breakdown) {
+        long limit = budget.get(SERVICE_ID, component);
+        String report = AllocationBudget.report(SERVICE_ID + "." + component, measured, limit, breakdown);
+        System.out.println(report);
+        assertTrue(report, measured <= limit);
+    }
+}
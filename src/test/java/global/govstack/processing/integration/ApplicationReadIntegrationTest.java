@@ -0,0 +1,200 @@
+package global.govstack.processing.integration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import global.govstack.processing.support.InMemoryJoget;
+import global.govstack.registration.receiver.exception.ApiProcessingException;
+import global.govstack.registration.receiver.service.GovStackRegistrationService;
+import global.govstack.registration.receiver.service.changes.ChangeFeed;
+import global.govstack.registration.receiver.service.identity.IdentifierIndexRegistry;
+import global.govstack.registration.receiver.service.masterdata.MasterDataCache;
+import global.govstack.registration.receiver.service.metadata.GovStackDataMapper;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.service.metrics.RequestMetrics;
+import global.govstack.registration.receiver.service.metrics.SlowRequestRecorder;
+import global.govstack.registration.receiver.service.normalization.LovOptionIndex;
+import global.govstack.registration.receiver.service.read.ApplicationReader;
+import global.govstack.registration.receiver.service.validation.MetadataValidationRegistry;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trip of a GovStack registration through the in-memory Joget and the read and lookup APIs
+ */
+public class ApplicationReadIntegrationTest {
+
+    private static final String SERVICE_ID = "farmers_registry";
+    private static final String APPLICATION_ID = "farmer-read-1";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @ClassRule
+    public static final TemporaryFolder CHANGES = new TemporaryFolder();
+
+    private static InMemoryJoget joget;
+    private static JsonNode request;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        MasterDataCache.shutdownAll();
+        IdentifierIndexRegistry.getInstance().shutdown();
+        LovOptionIndex.clearShared();
+        System.setProperty(YamlMetadataService.CHANGE_FEED_DIR_PROPERTY, CHANGES.getRoot().getPath());
+
+        joget = new InMemoryJoget(new File("doc-forms")).install();
+
+        YamlMetadataService metadataService = new YamlMetadataService();
+        metadataService.loadMetadata(SERVICE_ID);
+        JsonNode testData;
+        try (InputStream in = ApplicationReadIntegrationTest.class.getClassLoader()
+                .getResourceAsStream("docs-metadata/test-data.json")) {
+            testData = MAPPER.readTree(in);
+        }
+        Set<String> values = new LinkedHashSet<>();
+        collectValues(testData, values);
+        joget.seedMasterData(metadataService, values);
+
+        request = GovStackDataMapper.unwrapTestData(testData).deepCopy();
+        ((ObjectNode) request).put("id", APPLICATION_ID);
+        JSONObject response = new GovStackRegistrationService(SERVICE_ID).processRequest(MAPPER.writeValueAsString(request));
+        assertTrue(response.toString(), response.getBoolean("success"));
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        ApplicationReader.shutdown();
+        IdentifierIndexRegistry.getInstance().shutdown();
+        ChangeFeed.getInstance().shutdown();
+        System.clearProperty(YamlMetadataService.CHANGE_FEED_DIR_PROPERTY);
+        MasterDataCache.shutdownAll();
+        MetadataValidationRegistry.getInstance().shutdown();
+        LovOptionIndex.clearShared();
+        joget.close();
+        // Leave no samples behind for the metrics tests
+        RequestMetrics.getInstance().reset();
+        SlowRequestRecorder.getInstance().reset();
+    }
+
+    private static void collectValues(JsonNode node, Set<String> values) {
+        if (node.isValueNode()) {
+            values.add(node.asText());
+        } else {
+            Iterator<JsonNode> elements = node.elements();
+            while (elements.hasNext()) {
+                collectValues(elements.next(), values);
+            }
+        }
+    }
+
+    @Test
+    public void testReadsBackParentAndSectionFields() throws Exception {
+        JsonNode application = MAPPER.readTree(new GovStackRegistrationService(SERVICE_ID).readApplication(APPLICATION_ID));
+
+        assertEquals(APPLICATION_ID, application.path("id").asText());
+        assertEquals(request.path("name").path("given").get(0).asText(),
+                application.path("name").path("given").get(0).asText());
+        assertEquals(request.path("gender").asText(), application.path("gender").asText());
+        assertEquals("8712248901234", findTyped(application.path("identifiers"), "type", "NationalId"));
+        assertEquals("mamosa.motlomelo@gmail.com", findTyped(application.path("telecom"), "system", "email"));
+    }
+
+    @Test
+    public void testReadsBackGridRows() throws Exception {
+        JsonNode application = MAPPER.readTree(new GovStackRegistrationService(SERVICE_ID).readApplication(APPLICATION_ID));
+
+        JsonNode expected = request.path("relatedPerson");
+        JsonNode household = application.path("relatedPerson");
+        assertTrue("Household members read back: " + application, household.isArray());
+        assertEquals(expected.size(), household.size());
+    }
+
+    @Test
+    public void testFindsApplicationByIdentifier() throws Exception {
+        GovStackRegistrationService service = new GovStackRegistrationService(SERVICE_ID);
+        JSONObject found = service.findApplications("8712248901234", "NationalId");
+        assertEquals(1, found.getJSONArray("applications").length());
+        assertEquals(APPLICATION_ID, found.getJSONArray("applications").getJSONObject(0).getString("applicationId"));
+
+        assertTrue(IdentifierIndexRegistry.getInstance().awaitReady(SERVICE_ID, 5000));
+        found = service.findApplications("ben-2025-000002", null);
+        assertEquals("BeneficiaryCode", found.getJSONArray("applications").getJSONObject(0).getString("identifierType"));
+        assertEquals(0, service.findApplications("0000000000000", null).getJSONArray("applications").length());
+    }
+
+    @Test
+    public void testChangeFeedRecordsSubmission() throws Exception {
+        GovStackRegistrationService service = new GovStackRegistrationService(SERVICE_ID);
+        long lastSequence = service.getChanges(null, "1", null).getLong("lastSequence");
+        assertTrue(lastSequence > 0);
+
+        JSONObject page = service.getChanges(String.valueOf(lastSequence - 1), null, null);
+        assertEquals(1, page.getJSONArray("changes").length());
+        JSONObject change = page.getJSONArray("changes").getJSONObject(0);
+        assertEquals(lastSequence, change.getLong("sequence"));
+        assertEquals(APPLICATION_ID, change.getString("applicationId"));
+        assertEquals("create", change.getString("operation"));
+        assertEquals(lastSequence, page.getLong("next"));
+        assertFalse(page.getBoolean("hasMore"));
+
+        try {
+            service.getChanges("-1", null, null);
+            fail("Expected an invalid cursor");
+        } catch (ApiProcessingException e) {
+            assertEquals(400, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testCursorOfResetChangeFeedIsGone() throws Exception {
+        GovStackRegistrationService service = new GovStackRegistrationService(SERVICE_ID);
+        JSONObject page = service.getChanges(null, null, null);
+        String epoch = page.getString("epoch");
+        long lastSequence = page.getLong("lastSequence");
+        assertEquals(lastSequence, service.getChanges(String.valueOf(lastSequence), null, epoch).getLong("next"));
+
+        try {
+            service.getChanges(String.valueOf(lastSequence + 1), null, null);
+            fail("Expected a cursor past the end of the feed to be gone");
+        } catch (ApiProcessingException e) {
+            assertEquals(410, e.getStatusCode());
+        }
+        try {
+            service.getChanges("0", null, "lost-" + epoch);
+            fail("Expected a cursor of another epoch to be gone");
+        } catch (ApiProcessingException e) {
+            assertEquals(410, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testUnknownApplicationIsNotFound() throws Exception {
+        try {
+            new GovStackRegistrationService(SERVICE_ID).readApplication("no-such-farmer");
+            fail("Expected a not found error");
+        } catch (ApiProcessingException e) {
+            assertEquals(404, e.getStatusCode());
+        }
+    }
+
+    private static String findTyped(JsonNode array, String discriminator, String value) {
+        for (JsonNode element : array) {
+            if (value.equals(element.path(discriminator).asText())) {
+                return element.path("value").asText();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,157 @@
+package global.govstack.processing.integration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import global.govstack.processing.support.InMemoryJoget;
+import global.govstack.processing.support.LoadGenerator;
+import global.govstack.processing.support.SimulatedLatency;
+import global.govstack.registration.receiver.service.GovStackRegistrationService;
+import global.govstack.registration.receiver.service.RegistrationServiceFactory;
+import global.govstack.registration.receiver.service.changes.ChangeFeed;
+import global.govstack.registration.receiver.service.identity.IdentifierIndexRegistry;
+import global.govstack.registration.receiver.service.masterdata.MasterDataCache;
+import global.govstack.registration.receiver.service.metadata.GovStackDataMapper;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.service.metrics.RequestMetrics;
+import global.govstack.registration.receiver.service.metrics.SlowRequestRecorder;
+import global.govstack.registration.receiver.service.normalization.LovOptionIndex;
+import global.govstack.registration.receiver.service.validation.MetadataValidationRegistry;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * End-to-end load test of both registration flows against the in-memory Joget
+ *
+ * Runs a small load by default so it stays fast in CI. Larger runs are configured with
+ * system properties, e.g.
+ * -Dload.requests=10000 -Dload.concurrency=16 -Dload.latencyMicros=2000
+ * where the latency is added to every simulated database and workflow call.
+ */
+public class InMemoryLoadTest {
+
+    private static final String SERVICE_ID = "farmers_registry";
+    private static final int REQUESTS = Integer.getInteger("load.requests", 200);
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 4);
+    private static final int WARMUP = Integer.getInteger("load.warmup", 50);
+    private static final long LATENCY_MICROS = Long.getLong("load.latencyMicros", 0);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @ClassRule
+    public static final TemporaryFolder CHANGES = new TemporaryFolder();
+
+    private static InMemoryJoget joget;
+    private static YamlMetadataService metadataService;
+    private static JsonNode testData;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        MasterDataCache.shutdownAll();
+        System.setProperty(YamlMetadataService.CHANGE_FEED_DIR_PROPERTY, CHANGES.getRoot().getPath());
+        LovOptionIndex.clearShared();
+
+        joget = new InMemoryJoget(new File("doc-forms")).install();
+        joget.getLatency().setAll(LATENCY_MICROS, LATENCY_MICROS / 2);
+
+        metadataService = new YamlMetadataService();
+        metadataService.loadMetadata(SERVICE_ID);
+        try (InputStream in = InMemoryLoadTest.class.getClassLoader().getResourceAsStream("docs-metadata/test-data.json")) {
+            testData = MAPPER.readTree(in);
+        }
+        // Every value of the sample request is a known code, as on a configured server
+        Set<String> values = new LinkedHashSet<>();
+        collectValues(testData, values);
+        joget.seedMasterData(metadataService, values);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        IdentifierIndexRegistry.getInstance().shutdown();
+        ChangeFeed.getInstance().shutdown();
+        System.clearProperty(YamlMetadataService.CHANGE_FEED_DIR_PROPERTY);
+        MasterDataCache.shutdownAll();
+        MetadataValidationRegistry.getInstance().shutdown();
+        LovOptionIndex.clearShared();
+        joget.close();
+        // Leave no samples behind for the metrics tests
+        RequestMetrics.getInstance().reset();
+        SlowRequestRecorder.getInstance().reset();
+    }
+
+    private static void collectValues(JsonNode node, Set<String> values) {
+        if (node.isValueNode()) {
+            values.add(node.asText());
+        } else {
+            Iterator<JsonNode> elements = node.elements();
+            while (elements.hasNext()) {
+                collectValues(elements.next(), values);
+            }
+        }
+    }
+
+    @Test
+    public void testGovStackRegistrationUnderLoad() throws Exception {
+        String[] bodies = new String[REQUESTS + WARMUP];
+        for (int i = 0; i < bodies.length; i++) {
+            JsonNode request = testData.deepCopy();
+            ((ObjectNode) GovStackDataMapper.unwrapTestData(request)).put("id", "farmer-load-" + i);
+            bodies[i] = MAPPER.writeValueAsString(request);
+        }
+        // The other test saves to the same parent form, so only count the rows added here
+        int rowsBefore = joget.getFormStore().count(metadataService.getParentFormId());
+
+        LoadGenerator.Report report = new LoadGenerator(CONCURRENCY, REQUESTS)
+                .withWarmup(WARMUP)
+                .withThreadSetup(joget::bindCurrentThread)
+                .run(sequence -> {
+                    JSONObject response = new GovStackRegistrationService(SERVICE_ID).processRequest(bodies[sequence]);
+                    if (!response.getBoolean("success")) {
+                        throw new IllegalStateException("Registration not accepted: " + response);
+                    }
+                });
+        System.out.println("GovStack registration: " + report);
+
+        assertEquals(report.getErrors().toString(), 0, report.getFailures());
+        assertEquals(bodies.length, joget.getFormStore().count(metadataService.getParentFormId()) - rowsBefore);
+        assertNotNull(joget.getFormStore().getRow(metadataService.getParentFormId(), "farmer-load-0"));
+    }
+
+    @Test
+    public void testRegistrationServiceUnderLoad() throws Exception {
+        String body = "{\"applicationData\":{\"formId\":\"farmerRegistrationForm\",\"fields\":["
+                + "{\"name\":\"application_number\",\"value\":\"APP-1\"},"
+                + "{\"name\":\"national_id\",\"value\":\"8712248901234\"},"
+                + "{\"name\":\"gender\",\"value\":\"female\"},"
+                + "{\"name\":\"district\",\"value\":\"berea\"}]}}";
+        int processesBefore = joget.getWorkflowEngine().getProcessCount();
+        int rowsBefore = joget.getFormStore().count("farmerRegistrationForm");
+
+        LoadGenerator.Report report = new LoadGenerator(CONCURRENCY, REQUESTS)
+                .withWarmup(WARMUP)
+                .withThreadSetup(joget::bindCurrentThread)
+                .run(sequence -> {
+                    JSONObject response = RegistrationServiceFactory.createService().processApplication(body);
+                    if (response.getJSONArray("activities").length() != 1) {
+                        throw new IllegalStateException("Review activity not open: " + response);
+                    }
+                });
+        System.out.println("Configuration-driven registration: " + report);
+
+        assertEquals(report.getErrors().toString(), 0, report.getFailures());
+        assertEquals(REQUESTS + WARMUP, joget.getWorkflowEngine().getProcessCount() - processesBefore);
+        assertEquals(REQUESTS + WARMUP, joget.getFormStore().count("farmerRegistrationForm") - rowsBefore);
+    }
+}
@@ -0,0 +1,181 @@
+package global.govstack.processing.service.archive;
+
+import global.govstack.registration.receiver.service.archive.ArchivedPayload;
+import global.govstack.registration.receiver.service.archive.PayloadArchive;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for PayloadArchive
+ */
+public class PayloadArchiveTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("payload-archive-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static String payload(int i) {
+        return "{\"id\":\"farmer-" + i + "\",\"name\":{\"given\":[\"Palesa\"],\"family\":\"Nthako\"},"
+                + "\"extension\":{\"agriculturalData\":{\"cropTypes\":[\"maize\",\"sorghum\"],\"farmSize\":" + (i % 9) + "}}}";
+    }
+
+    private static List<ArchivedPayload> readAll(PayloadArchive archive, long from, long to) throws Exception {
+        List<ArchivedPayload> payloads = new ArrayList<>();
+        archive.read(from, to, payloads::add);
+        return payloads;
+    }
+
+    private static File[] files(File directory, String suffix) {
+        return directory.listFiles((dir, name) -> name.endsWith(suffix));
+    }
+
+    @Test
+    public void testPayloadsAreReadBackInOrder() throws Exception {
+        PayloadArchive archive = new PayloadArchive(directory, 64 * 1024, 4096);
+        for (int i = 1; i <= 500; i++) {
+            archive.append("farmers_registry", "1.2.0", "app-" + i, payload(i));
+        }
+        archive.seal();
+
+        List<ArchivedPayload> payloads = readAll(archive, 1, Long.MAX_VALUE);
+        assertEquals(500, payloads.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            ArchivedPayload payload = payloads.get(i);
+            assertEquals(i + 1, payload.getSequence());
+            assertEquals("app-" + (i + 1), payload.getApplicationId());
+            assertEquals(payload(i + 1), payload.getPayload());
+            assertEquals("farmers_registry", payload.getServiceId());
+            assertEquals("1.2.0", payload.getMetadataVersion());
+        }
+        archive.close();
+    }
+
+    @Test
+    public void testBlocksAreCompressedAndSegmentsRolled() throws Exception {
+        PayloadArchive archive = new PayloadArchive(directory, 8 * 1024, 16 * 1024);
+        long rawBytes = 0;
+        for (int i = 1; i <= 2000; i++) {
+            rawBytes += payload(i).length();
+            archive.append("farmers_registry", "1.2.0", "app-" + i, payload(i));
+        }
+        archive.close();
+
+        List<PayloadArchive.Segment> segments = archive.getSegments();
+        assertTrue("Segments are rolled at their size", segments.size() > 1);
+        assertEquals(1, segments.get(0).getFirstSequence());
+        long archivedBytes = 0;
+        for (PayloadArchive.Segment segment : segments) {
+            archivedBytes += segment.getBytes();
+            assertTrue(segment.getBlocks() > 0);
+        }
+        assertTrue("Blocks of similar payloads compress well: " + archivedBytes + " of " + rawBytes,
+                archivedBytes < rawBytes / 5);
+        assertEquals(segments.size(), files(directory, ".idx").length);
+    }
+
+    @Test
+    public void testRangeReadStartsAtTheIndexedBlock() throws Exception {
+        PayloadArchive archive = new PayloadArchive(directory, 8 * 1024, 2048);
+        for (int i = 1; i <= 1000; i++) {
+            archive.append("farmers_registry", "1.2.0", "app-" + i, payload(i));
+        }
+        archive.seal();
+
+        List<ArchivedPayload> payloads = readAll(archive, 731, 745);
+        assertEquals(15, payloads.size());
+        assertEquals(731, payloads.get(0).getSequence());
+        assertEquals("app-745", payloads.get(14).getApplicationId());
+
+        assertTrue(readAll(archive, 1001, 2000).isEmpty());
+        archive.close();
+    }
+
+    @Test
+    public void testOpenBlockIsReadOnlyOnceSealed() throws Exception {
+        PayloadArchive archive = new PayloadArchive(directory, 64 * 1024, 64 * 1024);
+        archive.append("farmers_registry", "1.2.0", "app-1", payload(1));
+        assertEquals(1, archive.getLastSequence());
+        assertEquals(0, archive.getSealedSequence());
+        assertTrue(readAll(archive, 1, 10).isEmpty());
+
+        archive.seal();
+        assertEquals(1, readAll(archive, 1, 10).size());
+        archive.close();
+    }
+
+    @Test
+    public void testPendingPayloadsSurviveACrash() throws Exception {
+        PayloadArchive archive = new PayloadArchive(directory, 64 * 1024, 4096);
+        for (int i = 1; i <= 60; i++) {
+            archive.append("farmers_registry", "1.2.0", "app-" + i, payload(i));
+        }
+        long sealed = archive.getSealedSequence();
+        assertTrue(sealed > 0 && sealed < 60);
+
+        // Not closed: the open block is only in pending.log, and the last payload was cut short
+        File pending = new File(directory, "pending.log");
+        try (RandomAccessFile file = new RandomAccessFile(pending, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        PayloadArchive reopened = new PayloadArchive(directory, 64 * 1024, 4096);
+        assertEquals(59, reopened.getLastSequence());
+        reopened.append("farmers_registry", "1.3.0", "app-60", payload(60));
+        reopened.close();
+
+        List<ArchivedPayload> payloads = readAll(reopened, 1, Long.MAX_VALUE);
+        assertEquals(60, payloads.size());
+        assertEquals(60, payloads.get(59).getSequence());
+        assertEquals("1.3.0", payloads.get(59).getMetadataVersion());
+    }
+
+    @Test
+    public void testIncompleteBlockIsDroppedAndPendingPayloadsKept() throws Exception {
+        PayloadArchive archive = new PayloadArchive(directory, 64 * 1024, 64 * 1024);
+        for (int i = 1; i <= 10; i++) {
+            archive.append("farmers_registry", "1.2.0", "app-" + i, payload(i));
+        }
+        archive.seal();
+        for (int i = 11; i <= 20; i++) {
+            archive.append("farmers_registry", "1.2.0", "app-" + i, payload(i));
+        }
+
+        // A block write cut short by a crash, its payloads are still pending
+        File segment = files(directory, ".seg")[0];
+        long complete = segment.length();
+        try (FileOutputStream out = new FileOutputStream(segment, true)) {
+            out.write(new byte[]{0, 0, 1, 0, 0, 0, 0, 90, 0});
+        }
+
+        PayloadArchive reopened = new PayloadArchive(directory, 64 * 1024, 64 * 1024);
+        assertEquals(complete, segment.length());
+        assertEquals(10, reopened.getSealedSequence());
+        assertEquals(20, reopened.getLastSequence());
+        reopened.close();
+        assertEquals(20, readAll(reopened, 1, Long.MAX_VALUE).size());
+    }
+}
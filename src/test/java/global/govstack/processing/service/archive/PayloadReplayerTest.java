@@ -0,0 +1,95 @@
+package global.govstack.processing.service.archive;
+
+import global.govstack.registration.receiver.service.archive.ArchivedPayload;
+import global.govstack.registration.receiver.service.archive.PayloadArchive;
+import global.govstack.registration.receiver.service.archive.PayloadReplayer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for PayloadReplayer
+ */
+public class PayloadReplayerTest {
+
+    private File directory;
+    private PayloadArchive archive;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("payload-replay-test").toFile();
+        archive = new PayloadArchive(directory, 16 * 1024, 4096);
+        // 50 applications, each submitted 20 times with an increasing revision
+        for (int revision = 1; revision <= 20; revision++) {
+            for (int app = 1; app <= 50; app++) {
+                archive.append("farmers_registry", revision <= 10 ? "1.0.0" : "1.1.0", "app-" + app,
+                        "{\"id\":\"app-" + app + "\",\"revision\":" + revision + "}");
+            }
+        }
+        archive.seal();
+    }
+
+    @After
+    public void tearDown() {
+        archive.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static int revision(ArchivedPayload payload) {
+        String body = payload.getPayload();
+        return Integer.parseInt(body.substring(body.indexOf("\"revision\":") + 11, body.length() - 1));
+    }
+
+    @Test
+    public void testApplicationsAreReplayedInOrderOnSeveralThreads() throws Exception {
+        Map<String, Integer> latest = new ConcurrentHashMap<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        PayloadReplayer.Result result = new PayloadReplayer(4).replay(archive, 1, Long.MAX_VALUE, payload -> {
+            threads.add(Thread.currentThread().getName());
+            Integer previous = latest.put(payload.getApplicationId(), revision(payload));
+            if (previous != null && previous >= revision(payload)) {
+                throw new IllegalStateException("Revision " + revision(payload) + " replayed after " + previous);
+            }
+        });
+
+        assertEquals(1000, result.getReplayed());
+        assertEquals(0, result.getFailed());
+        assertTrue(threads.size() > 1);
+        for (int app = 1; app <= 50; app++) {
+            assertEquals(Integer.valueOf(20), latest.get("app-" + app));
+        }
+        assertEquals(Long.valueOf(500), result.getMetadataVersions().get("1.0.0"));
+        assertEquals(Long.valueOf(500), result.getMetadataVersions().get("1.1.0"));
+    }
+
+    @Test
+    public void testFailuresAreCountedAndTheReplayCarriesOn() throws Exception {
+        PayloadReplayer.Result result = new PayloadReplayer(3).replay(archive, 951, 1000, payload -> {
+            if ("app-7".equals(payload.getApplicationId())) {
+                throw new IllegalArgumentException("Unknown crop code");
+            }
+        });
+
+        assertEquals(49, result.getReplayed());
+        assertEquals(1, result.getFailed());
+        PayloadReplayer.Failure failure = result.getFailures().get(0);
+        assertEquals(957, failure.getSequence());
+        assertEquals("app-7", failure.getApplicationId());
+        assertEquals("Unknown crop code", failure.getMessage());
+    }
+}
@@ -0,0 +1,157 @@
+package global.govstack.processing.service.attachment;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import global.govstack.registration.receiver.service.attachment.Attachment;
+import global.govstack.registration.receiver.service.attachment.AttachmentPipeline;
+import global.govstack.registration.receiver.service.attachment.ContentAddressedTarget;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.util.ContentHashUtil;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for AttachmentPipeline
+ */
+public class AttachmentPipelineTest {
+
+    private static final byte[] PHOTO = photo(1500);
+    private static final byte[] SCAN = {'%', 'P', 'D', 'F', '-', '1', '.', '4', '\n'};
+
+    private static AttachmentPipeline pipeline;
+
+    private File storeDir;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        YamlMetadataService metadataService = new YamlMetadataService();
+        metadataService.loadMetadata("document_registry");
+        pipeline = AttachmentPipeline.forMetadata(metadataService);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        AttachmentPipeline.clearCompiled();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        storeDir = Files.createTempDirectory("attachment-store-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        delete(storeDir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static byte[] photo(int size) {
+        byte[] photo = new byte[size];
+        photo[0] = (byte) 0xFF;
+        photo[1] = (byte) 0xD8;
+        photo[2] = (byte) 0xFF;
+        for (int i = 3; i < size; i++) {
+            photo[i] = (byte) (i * 31);
+        }
+        return photo;
+    }
+
+    private static String request(byte[] photo, byte[] scan) {
+        return "{\"id\":\"doc-1\",\"name\":{\"given\":[\"Lerato\"]},"
+                + "\"identifiers\":[{\"type\":\"NationalId\",\"value\":\"8712248901234\"}],"
+                + "\"extension\":{\"documents\":{\"passportPhoto\":\"" + Base64.getMimeEncoder().encodeToString(photo)
+                .replace("\r\n", "\\r\\n") + "\",\"idScan\":\"" + Base64.getEncoder().encodeToString(scan) + "\"}}}";
+    }
+
+    @Test
+    public void testOnlyConfiguredServicesHaveAttachments() throws Exception {
+        assertTrue(pipeline.hasFields());
+
+        YamlMetadataService farmers = new YamlMetadataService();
+        farmers.loadMetadata("farmers_registry");
+        assertFalse(AttachmentPipeline.forMetadata(farmers).hasFields());
+    }
+
+    @Test
+    public void testDocumentsAreDecodedToFilesAndReplacedByTheirHash() throws Exception {
+        AttachmentPipeline.ParsedRequest parsed = pipeline.parse(request(PHOTO, SCAN));
+        try {
+            assertEquals(2, parsed.getAttachments().size());
+            Attachment photo = parsed.getAttachments().get(0);
+            assertEquals("passport_photo", photo.getField().getJogetField());
+            assertEquals(PHOTO.length, photo.getSize());
+            assertEquals(ContentHashUtil.sha256Hex(PHOTO), photo.getSha256());
+            assertArrayEquals(PHOTO, Files.readAllBytes(photo.getFile().toPath()));
+            assertEquals("jpg", photo.getExtension());
+            assertEquals("pdf", parsed.getAttachments().get(1).getExtension());
+
+            JsonNode documents = parsed.getRoot().path("extension").path("documents");
+            assertEquals(photo.getSha256(), documents.path("passportPhoto").asText());
+            assertEquals("Lerato", parsed.getRoot().path("name").path("given").get(0).asText());
+            assertEquals("8712248901234", parsed.getRoot().path("identifiers").get(0).path("value").asText());
+        } finally {
+            parsed.discard();
+        }
+        assertFalse(parsed.getAttachments().get(0).getFile().exists());
+    }
+
+    @Test
+    public void testTestDataWrapperIsUnwrapped() throws Exception {
+        AttachmentPipeline.ParsedRequest parsed = pipeline.parse("{\"testData\":[" + request(PHOTO, SCAN) + "]}");
+        parsed.discard();
+        assertEquals(2, parsed.getAttachments().size());
+    }
+
+    @Test
+    public void testStoredAttachmentsAreReferencedAndDeduplicated() throws Exception {
+        ContentAddressedTarget target = new ContentAddressedTarget(storeDir);
+        Map<String, Map<String, String>> formData = new HashMap<>();
+
+        AttachmentPipeline.ParsedRequest first = pipeline.parse(request(PHOTO, SCAN));
+        pipeline.store(first, formData, "doc-1", target);
+        first.discard();
+        String hash = ContentHashUtil.sha256Hex(PHOTO);
+        assertEquals("sha256:" + hash, formData.get("documentInfo").get("passport_photo"));
+        assertArrayEquals(PHOTO, Files.readAllBytes(target.resolve(hash).toPath()));
+
+        AttachmentPipeline.ParsedRequest second = pipeline.parse(request(PHOTO, SCAN));
+        pipeline.store(second, new HashMap<>(), "doc-2", target);
+        assertFalse("Staged copy of a stored document is dropped", second.getAttachments().get(0).getFile().exists());
+        assertEquals(1, target.resolve(hash).getParentFile().listFiles().length);
+    }
+
+    @Test
+    public void testOversizedAttachmentIsRejected() throws Exception {
+        try {
+            pipeline.parse(request(photo(5000), SCAN));
+            fail("Expected the attachment to exceed the limit");
+        } catch (AttachmentPipeline.AttachmentTooLargeException e) {
+            assertTrue(e.getMessage().contains("extension.documents.passportPhoto"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidBase64IsRejected() throws Exception {
+        pipeline.parse("{\"extension\":{\"documents\":{\"passportPhoto\":\"not*base64\"}}}");
+    }
+}
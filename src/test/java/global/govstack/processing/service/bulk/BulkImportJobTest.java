@@ -0,0 +1,194 @@
+package global.govstack.processing.service.bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import global.govstack.registration.receiver.service.bulk.BulkImportJob;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for BulkImportJob
+ */
+public class BulkImportJobTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("bulk-import-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String record(int i) {
+        return "{\"id\":\"farmer-" + i + "\",\"name\":{\"given\":[\"Tumelo\"]},\"extension\":{\"farmSize\":" + i + "}}";
+    }
+
+    private File write(String name, String content) throws Exception {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private File testDataFile(int records) throws Exception {
+        StringBuilder content = new StringBuilder("{\"description\":\"migration\",\"testData\": [\n");
+        for (int i = 1; i <= records; i++) {
+            content.append("  ").append(record(i)).append(i < records ? ",\n" : "\n");
+        }
+        return write("farmers.json", content.append("]}\n").toString());
+    }
+
+    private static BulkImportJob.Sink collect(Set<String> ids) {
+        return record -> {
+            String id = record.path("id").asText();
+            assertTrue("Imported twice: " + id, ids.add(id));
+            return id;
+        };
+    }
+
+    @Test
+    public void testEveryRecordOfTheTestDataArrayIsImported() throws Exception {
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        BulkImportJob job = new BulkImportJob(testDataFile(1200), BulkImportJob.Format.JSON, collect(ids));
+        job.setThreads(4);
+
+        BulkImportJob.Progress progress = job.run();
+        assertEquals(BulkImportJob.STATUS_COMPLETED, progress.getStatus());
+        assertEquals(1200, progress.getImported());
+        assertEquals(1200, progress.getRecords());
+        assertEquals(1200, ids.size());
+        assertEquals("farmer-1200", progress.getLastCommittedId());
+
+        JsonNode report = MAPPER.readTree(job.getProgressFile());
+        assertEquals("completed", report.path("status").asText());
+        assertEquals(1200, report.path("imported").asLong());
+    }
+
+    @Test
+    public void testNdjsonIsImportedAndFailuresReported() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 1; i <= 300; i++) {
+            content.append(record(i)).append('\n');
+        }
+        File file = write("farmers.ndjson", content.toString());
+        assertEquals(BulkImportJob.Format.NDJSON, BulkImportJob.Format.detect(file));
+
+        BulkImportJob job = new BulkImportJob(file, BulkImportJob.Format.NDJSON, record -> {
+            if (record.path("extension").path("farmSize").asInt() % 100 == 0) {
+                throw new IllegalArgumentException("Unknown district");
+            }
+            return record.path("id").asText();
+        });
+        BulkImportJob.Progress progress = job.run();
+
+        assertEquals(297, progress.getImported());
+        assertEquals(3, progress.getFailed());
+        List<String> errors = Files.readAllLines(job.getErrorFile().toPath(), StandardCharsets.UTF_8);
+        assertEquals(3, errors.size());
+        List<String> failedIds = new ArrayList<>();
+        for (String line : errors) {
+            JsonNode error = MAPPER.readTree(line);
+            assertEquals("Unknown district", error.path("error").asText());
+            failedIds.add(error.path("id").asText());
+        }
+        Collections.sort(failedIds);
+        assertEquals(java.util.Arrays.asList("farmer-100", "farmer-200", "farmer-300"), failedIds);
+    }
+
+    @Test
+    public void testInterruptedImportResumesFromTheCheckpoint() throws Exception {
+        File file = testDataFile(500);
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+
+        // The sink fails hard at record 230, as if the server went down
+        BulkImportJob first = new BulkImportJob(file, BulkImportJob.Format.JSON, record -> {
+            if ("farmer-230".equals(record.path("id").asText())) {
+                throw new Error("Server went down");
+            }
+            ids.add(record.path("id").asText());
+            return record.path("id").asText();
+        });
+        first.setThreads(1);
+        try {
+            first.run();
+            fail("Expected the import to stop");
+        } catch (java.io.IOException expected) {
+            // The chunk failed
+        }
+        BulkImportJob.Progress stopped = first.getProgress();
+        assertEquals(BulkImportJob.STATUS_FAILED, stopped.getStatus());
+        assertTrue(stopped.getRecords() > 0 && stopped.getRecords() < 230);
+        assertEquals("farmer-" + stopped.getRecords(), stopped.getLastCommittedId());
+        JsonNode checkpoint = MAPPER.readTree(first.getCheckpointFile());
+        assertEquals(stopped.getOffset(), checkpoint.path("offset").asLong());
+
+        Set<String> resumed = ConcurrentHashMap.newKeySet();
+        BulkImportJob second = new BulkImportJob(file, BulkImportJob.Format.JSON, collect(resumed));
+        BulkImportJob.Progress progress = second.run();
+
+        assertEquals(BulkImportJob.STATUS_COMPLETED, progress.getStatus());
+        assertEquals(500, progress.getRecords());
+        assertEquals(500 - stopped.getRecords(), progress.getImported());
+        assertFalse(resumed.contains("farmer-" + stopped.getRecords()));
+        assertTrue(resumed.contains("farmer-" + (stopped.getRecords() + 1)));
+        assertTrue(resumed.contains("farmer-500"));
+
+        // Run again after completion: nothing left to import
+        assertEquals(0, new BulkImportJob(file, BulkImportJob.Format.JSON, collect(resumed)).run().getImported());
+    }
+
+    @Test
+    public void testChunkSizeFollowsCommitLatency() throws Exception {
+        File file = testDataFile(400);
+        BulkImportJob fast = new BulkImportJob(file, BulkImportJob.Format.JSON, record -> null);
+        fast.setReportDirectory(new File(directory, "fast"));
+        assertTrue(fast.run().getChunkSize() > 50);
+
+        BulkImportJob slow = new BulkImportJob(file, BulkImportJob.Format.JSON, record -> {
+            Thread.sleep(2);
+            return null;
+        });
+        slow.setReportDirectory(new File(directory, "slow"));
+        slow.setThreads(2);
+        slow.setTargetChunkMillis(20);
+        assertTrue(slow.run().getChunkSize() < 50);
+    }
+
+    @Test
+    public void testFileWithoutRecordsArrayIsRejected() throws Exception {
+        File file = write("settings.json", "{\"metadataVersion\":\"1.0.0\"}");
+        try {
+            new BulkImportJob(file, BulkImportJob.Format.JSON, record -> null).run();
+            fail("Expected the file to be rejected");
+        } catch (java.io.IOException e) {
+            assertTrue(e.getMessage().contains("testData"));
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package global.govstack.processing.service.bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import global.govstack.processing.support.InMemoryJoget;
+import global.govstack.registration.receiver.service.GovStackRegistrationService;
+import global.govstack.registration.receiver.service.bulk.BulkImportJob;
+import global.govstack.registration.receiver.service.bulk.LoadFileGenerator;
+import global.govstack.registration.receiver.service.changes.ChangeFeed;
+import global.govstack.registration.receiver.service.identity.IdentifierIndexRegistry;
+import global.govstack.registration.receiver.service.masterdata.MasterDataCache;
+import global.govstack.registration.receiver.service.metadata.GovStackDataMapper;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.service.metrics.RequestMetrics;
+import global.govstack.registration.receiver.service.metrics.SlowRequestRecorder;
+import global.govstack.registration.receiver.service.normalization.LovOptionIndex;
+import global.govstack.registration.receiver.service.read.ApplicationReader;
+import global.govstack.registration.receiver.service.validation.MetadataValidationRegistry;
+import org.joget.apps.form.model.FormRow;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Load files of test-data.json compared with the rows the in-memory Joget stores for the same requests
+ */
+public class LoadFileGeneratorTest {
+
+    private static final String SERVICE_ID = "farmers_registry";
+    private static final int APPLICATIONS = 12;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static InMemoryJoget joget;
+    private static YamlMetadataService metadataService;
+    private static JsonNode request;
+
+    private File directory;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        MasterDataCache.shutdownAll();
+        IdentifierIndexRegistry.getInstance().shutdown();
+        LovOptionIndex.clearShared();
+
+        joget = new InMemoryJoget(new File("doc-forms")).install();
+        metadataService = new YamlMetadataService();
+        metadataService.loadMetadata(SERVICE_ID);
+        JsonNode testData;
+        try (InputStream in = LoadFileGeneratorTest.class.getClassLoader()
+                .getResourceAsStream("docs-metadata/test-data.json")) {
+            testData = MAPPER.readTree(in);
+        }
+        Set<String> values = new LinkedHashSet<>();
+        collectValues(testData, values);
+        joget.seedMasterData(metadataService, values);
+        request = GovStackDataMapper.unwrapTestData(testData);
+
+        // The normal path, which also builds the shared LOV index the generator's mappers use
+        GovStackRegistrationService service = new GovStackRegistrationService(SERVICE_ID);
+        for (int i = 1; i <= APPLICATIONS; i++) {
+            JSONObject response = service.processRequest(MAPPER.writeValueAsString(application("farmer-load-" + i)));
+            assertTrue(response.toString(), response.getBoolean("success"));
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        ApplicationReader.shutdown();
+        IdentifierIndexRegistry.getInstance().shutdown();
+        ChangeFeed.getInstance().shutdown();
+        MasterDataCache.shutdownAll();
+        MetadataValidationRegistry.getInstance().shutdown();
+        LovOptionIndex.clearShared();
+        joget.close();
+        RequestMetrics.getInstance().reset();
+        SlowRequestRecorder.getInstance().reset();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("load-files-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static void collectValues(JsonNode node, Set<String> values) {
+        if (node.isValueNode()) {
+            values.add(node.asText());
+        } else {
+            Iterator<JsonNode> elements = node.elements();
+            while (elements.hasNext()) {
+                collectValues(elements.next(), values);
+            }
+        }
+    }
+
+    private static ObjectNode application(String id) {
+        ObjectNode application = request.deepCopy();
+        if (id != null) {
+            application.put("id", id);
+        } else {
+            application.remove("id");
+        }
+        return application;
+    }
+
+    private File ndjson(String name, List<ObjectNode> applications) throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (ObjectNode application : applications) {
+            content.append(MAPPER.writeValueAsString(application)).append('\n');
+        }
+        File file = new File(directory, name);
+        Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private LoadFileGenerator generator(File output) throws Exception {
+        LoadFileGenerator generator = new LoadFileGenerator(metadataService, new HashMap<>(), output);
+        generator.setThreads(4);
+        generator.setUser("migration");
+        return generator;
+    }
+
+    /**
+     * Read a load file back into rows of field values, without the c_ prefix and the audit columns
+     */
+    private static List<Map<String, String>> readRows(File output, LoadFileGenerator.Table table) throws Exception {
+        List<String> columns = table.getColumns();
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (String line : Files.readAllLines(table.getFile(output).toPath(), StandardCharsets.UTF_8)) {
+            String[] values = line.split("\t", -1);
+            assertEquals(line, columns.size(), values.length);
+            Map<String, String> row = new HashMap<>();
+            for (int i = 0; i < values.length; i++) {
+                String column = columns.get(i);
+                if (!"\\N".equals(values[i]) && ("id".equals(column) || column.startsWith("c_"))) {
+                    row.put(column.startsWith("c_") ? column.substring(2) : column, unescape(values[i]));
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static String unescape(String value) {
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                out.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static Map<String, String> properties(FormRow row) {
+        Map<String, String> properties = new HashMap<>();
+        for (String name : row.stringPropertyNames()) {
+            String value = row.getProperty(name);
+            if (value != null && !value.isEmpty()) {
+                properties.put(name, value);
+            }
+        }
+        return properties;
+    }
+
+    @Test
+    public void testLoadFilesHoldTheRowsOfTheNormalPath() throws Exception {
+        List<ObjectNode> applications = new ArrayList<>();
+        for (int i = 1; i <= APPLICATIONS; i++) {
+            applications.add(application("farmer-load-" + i));
+        }
+        File output = new File(directory, "out");
+        LoadFileGenerator generator = generator(output);
+        LoadFileGenerator.Result result = generator.generate(ndjson("farmers.ndjson", applications),
+                BulkImportJob.Format.NDJSON);
+        assertEquals(APPLICATIONS, result.getRecords());
+        assertEquals(0, result.getFailed());
+
+        boolean gridRowsCompared = false;
+        for (LoadFileGenerator.Table table : generator.getTables()) {
+            List<Map<String, String>> rows = readRows(output, table);
+            String formId = table.getFormId();
+            if (metadataService.getSectionToFormMap().containsValue(formId)
+                    || formId.equals(metadataService.getParentFormId())) {
+                assertEquals(formId, APPLICATIONS, rows.size());
+                for (Map<String, String> row : rows) {
+                    FormRow stored = joget.getFormStore().getRow(formId, row.get("id"));
+                    assertNotNull(formId + " row " + row.get("id") + " stored", stored);
+                    assertEquals(formId, properties(stored), row);
+                }
+            } else {
+                // Grid row ids are random on the normal path, the rows of each application are compared without them
+                String parentField = metadataService.getDefaultGridParentField();
+                Map<String, List<Map<String, String>>> expected = new HashMap<>();
+                for (FormRow stored : joget.getFormStore().getRows(formId)) {
+                    Map<String, String> row = properties(stored);
+                    row.remove("id");
+                    expected.computeIfAbsent(row.get(parentField), k -> new ArrayList<>()).add(row);
+                }
+                Map<String, List<Map<String, String>>> actual = new HashMap<>();
+                Set<String> ids = new LinkedHashSet<>();
+                for (Map<String, String> row : rows) {
+                    assertTrue("Unique grid row id", ids.add(row.remove("id")));
+                    actual.computeIfAbsent(row.get(parentField), k -> new ArrayList<>()).add(row);
+                }
+                assertEquals(formId, expected.keySet(), actual.keySet());
+                for (String applicationId : expected.keySet()) {
+                    List<String> expectedRows = new ArrayList<>();
+                    expected.get(applicationId).forEach(row -> expectedRows.add(new java.util.TreeMap<>(row).toString()));
+                    List<String> actualRows = new ArrayList<>();
+                    actual.get(applicationId).forEach(row -> actualRows.add(new java.util.TreeMap<>(row).toString()));
+                    Collections.sort(expectedRows);
+                    Collections.sort(actualRows);
+                    assertEquals(formId + " rows of " + applicationId, expectedRows, actualRows);
+                    gridRowsCompared |= !actualRows.isEmpty();
+                }
+            }
+        }
+        assertTrue("test-data.json has grid rows", gridRowsCompared);
+
+        String mysql = new String(Files.readAllBytes(new File(output, LoadFileGenerator.MYSQL_SCRIPT).toPath()),
+                StandardCharsets.UTF_8);
+        String postgres = new String(Files.readAllBytes(new File(output, LoadFileGenerator.POSTGRES_SCRIPT).toPath()),
+                StandardCharsets.UTF_8);
+        for (LoadFileGenerator.Table table : generator.getTables()) {
+            String columns = "(" + String.join(", ", table.getColumns()) + ")";
+            assertTrue(mysql.contains("LOAD DATA LOCAL INFILE '" + table.getName() + ".tsv' INTO TABLE " + table.getName()));
+            assertTrue(mysql.contains(columns));
+            assertTrue(postgres.contains("\\copy " + table.getName() + " " + columns + " FROM '" + table.getName() + ".tsv'"));
+        }
+    }
+
+    @Test
+    public void testRecordsAreWrittenInOrderWithTheSameIdsOnEveryRun() throws Exception {
+        List<ObjectNode> applications = new ArrayList<>();
+        for (int i = 1; i <= 700; i++) {
+            applications.add(application(i % 100 == 0 ? null : "farmer-order-" + i));
+        }
+        File file = ndjson("order.ndjson", applications);
+
+        List<List<Map<String, String>>> runs = new ArrayList<>();
+        for (String run : new String[]{"first", "second"}) {
+            File output = new File(directory, run);
+            LoadFileGenerator generator = generator(output);
+            assertEquals(700, generator.generate(file, BulkImportJob.Format.NDJSON).getRecords());
+
+            LoadFileGenerator.Table parent = generator.getTables().get(0);
+            assertEquals(metadataService.getParentFormId(), parent.getFormId());
+            List<Map<String, String>> parents = readRows(output, parent);
+            for (int i = 1; i <= 700; i++) {
+                String id = parents.get(i - 1).get("id");
+                if (i % 100 != 0) {
+                    assertEquals("farmer-order-" + i, id);
+                }
+                // Every reference field points at the row's own id
+                for (String field : metadataService.getParentReferenceFields()) {
+                    assertEquals(id, parents.get(i - 1).get(field));
+                }
+            }
+            List<Map<String, String>> all = new ArrayList<>(parents);
+            for (LoadFileGenerator.Table table : generator.getTables()) {
+                all.addAll(readRows(output, table));
+            }
+            runs.add(all);
+        }
+        assertEquals(runs.get(0), runs.get(1));
+    }
+
+    @Test
+    public void testInvalidRecordsAreReportedAndSkipped() throws Exception {
+        ObjectNode invalid = application("farmer-invalid");
+        invalid.put("birthDate", "the day before yesterday");
+        invalid.remove("name");
+        File output = new File(directory, "out");
+
+        LoadFileGenerator.Result result = generator(output).generate(
+                ndjson("invalid.ndjson", java.util.Arrays.asList(application("farmer-valid"), invalid)),
+                BulkImportJob.Format.NDJSON);
+
+        assertEquals(1, result.getRecords());
+        assertEquals(1, result.getFailed());
+        List<String> errors = Files.readAllLines(new File(output, LoadFileGenerator.ERROR_FILE).toPath(),
+                StandardCharsets.UTF_8);
+        assertEquals(1, errors.size());
+        JsonNode error = MAPPER.readTree(errors.get(0));
+        assertEquals(2, error.path("record").asInt());
+        assertEquals("farmer-invalid", error.path("id").asText());
+        for (Long rows : result.getRows().values()) {
+            assertTrue(rows <= 1 || rows == request.path("relatedPerson").size());
+        }
+    }
+
+    @Test
+    public void testValuesAreEscapedForTheTextFormat() throws Exception {
+        ObjectNode application = application("farmer-escape");
+        ((ObjectNode) application.path("name")).putArray("given").add("Line\tone\\two\nthree");
+        File output = new File(directory, "out");
+        LoadFileGenerator generator = generator(output);
+        generator.generate(ndjson("escape.ndjson", Collections.singletonList(application)), BulkImportJob.Format.NDJSON);
+
+        boolean escaped = false;
+        boolean readBack = false;
+        for (LoadFileGenerator.Table table : generator.getTables()) {
+            for (String line : Files.readAllLines(table.getFile(output).toPath(), StandardCharsets.UTF_8)) {
+                assertEquals(line, table.getColumns().size(), line.split("\t", -1).length);
+                escaped |= line.contains("Line\\tone\\\\two\\nthree");
+            }
+            for (Map<String, String> row : readRows(output, table)) {
+                readBack |= row.containsValue("Line\tone\\two\nthree");
+            }
+        }
+        assertTrue("Escaped value written", escaped);
+        assertTrue("Escaped value read back", readBack);
+    }
+}
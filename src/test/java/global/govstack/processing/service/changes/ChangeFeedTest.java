@@ -0,0 +1,55 @@
+package global.govstack.processing.service.changes;
+
+import global.govstack.registration.receiver.service.changes.ChangeFeed;
+import global.govstack.registration.receiver.service.changes.ChangeLog;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for when ChangeFeed records changes
+ */
+public class ChangeFeedTest {
+
+    @ClassRule
+    public static final TemporaryFolder CHANGES = new TemporaryFolder();
+
+    private YamlMetadataService metadataService;
+
+    @Before
+    public void setUp() throws Exception {
+        System.clearProperty(YamlMetadataService.CHANGE_FEED_DIR_PROPERTY);
+        ChangeFeed.getInstance().shutdown();
+        metadataService = new YamlMetadataService();
+        metadataService.loadMetadata("farmers_registry");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(YamlMetadataService.CHANGE_FEED_DIR_PROPERTY);
+        ChangeFeed.getInstance().shutdown();
+    }
+
+    @Test
+    public void testEnabledFeedWithoutDirectoryIsNotStarted() {
+        assertTrue(metadataService.isChangeFeedEnabled());
+        assertNull(metadataService.getChangeFeedDir());
+
+        assertFalse(ChangeFeed.getInstance().isAvailable(metadataService));
+        assertNull(ChangeFeed.getInstance().record(metadataService, "farmer-1", ChangeLog.OPERATION_CREATE));
+    }
+
+    @Test
+    public void testFeedRecordsIntoConfiguredDirectory() throws Exception {
+        System.setProperty(YamlMetadataService.CHANGE_FEED_DIR_PROPERTY, CHANGES.getRoot().getPath());
+
+        assertTrue(ChangeFeed.getInstance().isAvailable(metadataService));
+        assertNotNull(ChangeFeed.getInstance().record(metadataService, "farmer-1", ChangeLog.OPERATION_CREATE));
+        assertEquals(1, ChangeFeed.getInstance().getLastSequence(metadataService));
+    }
+}
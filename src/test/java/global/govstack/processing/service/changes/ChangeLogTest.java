@@ -0,0 +1,136 @@
+package global.govstack.processing.service.changes;
+
+import global.govstack.registration.receiver.service.changes.ChangeLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ChangeLog
+ */
+public class ChangeLogTest {
+
+    private File logDir;
+
+    @Before
+    public void setUp() throws Exception {
+        logDir = Files.createTempDirectory("change-log-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = logDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        logDir.delete();
+    }
+
+    private File[] segments() {
+        return logDir.listFiles((dir, name) -> name.endsWith(".log"));
+    }
+
+    @Test
+    public void testSequencesAreAssignedInOrder() throws Exception {
+        ChangeLog log = new ChangeLog(logDir);
+        assertEquals(0, log.getLastSequence());
+
+        ChangeLog.Change first = log.append("farmer-1", ChangeLog.OPERATION_CREATE);
+        ChangeLog.Change second = log.append("farmer-1", ChangeLog.OPERATION_UPDATE);
+        log.close();
+
+        assertEquals(1, first.getSequence());
+        assertEquals(2, second.getSequence());
+        assertTrue(second.getTimestamp() >= first.getTimestamp());
+
+        List<ChangeLog.Change> changes = log.read(0, 10);
+        assertEquals(2, changes.size());
+        assertEquals("farmer-1", changes.get(1).getApplicationId());
+        assertEquals(ChangeLog.OPERATION_UPDATE, changes.get(1).getOperation());
+        assertTrue(log.read(2, 10).isEmpty());
+    }
+
+    @Test
+    public void testPagesFollowTheCursorAcrossSegments() throws Exception {
+        ChangeLog log = new ChangeLog(logDir, 4);
+        for (int i = 1; i <= 10; i++) {
+            log.append("farmer-" + i, ChangeLog.OPERATION_CREATE);
+        }
+        log.close();
+        assertEquals(3, segments().length);
+
+        List<ChangeLog.Change> page = log.read(3, 3);
+        assertEquals(3, page.size());
+        assertEquals(4, page.get(0).getSequence());
+        assertEquals("farmer-6", page.get(2).getApplicationId());
+
+        page = log.read(page.get(2).getSequence(), 100);
+        assertEquals(4, page.size());
+        assertEquals(10, page.get(3).getSequence());
+    }
+
+    @Test
+    public void testReopenedLogContinuesTheSequence() throws Exception {
+        ChangeLog log = new ChangeLog(logDir, 4);
+        for (int i = 1; i <= 5; i++) {
+            log.append("farmer-" + i, ChangeLog.OPERATION_CREATE);
+        }
+        log.close();
+
+        ChangeLog reopened = new ChangeLog(logDir, 4);
+        assertEquals(5, reopened.getLastSequence());
+        assertEquals(6, reopened.append("farmer-6", ChangeLog.OPERATION_CREATE).getSequence());
+        reopened.close();
+        assertEquals(2, segments().length);
+        assertEquals(6, reopened.read(0, 100).size());
+    }
+
+    @Test
+    public void testIncompleteLastChangeIsDropped() throws Exception {
+        ChangeLog log = new ChangeLog(logDir);
+        log.append("farmer-1", ChangeLog.OPERATION_CREATE);
+        log.append("farmer-2", ChangeLog.OPERATION_CREATE);
+        log.close();
+
+        File segment = segments()[0];
+        try (FileOutputStream out = new FileOutputStream(segment, true)) {
+            out.write("3\t17375".getBytes(StandardCharsets.UTF_8));
+        }
+
+        ChangeLog reopened = new ChangeLog(logDir);
+        assertEquals(2, reopened.getLastSequence());
+        ChangeLog.Change change = reopened.append("farmer-3", ChangeLog.OPERATION_CREATE);
+        reopened.close();
+
+        assertEquals(3, change.getSequence());
+        List<ChangeLog.Change> changes = reopened.read(0, 100);
+        assertEquals(3, changes.size());
+        assertEquals("farmer-3", changes.get(2).getApplicationId());
+    }
+
+    @Test
+    public void testEpochSurvivesReopenButNotLoss() throws Exception {
+        ChangeLog log = new ChangeLog(logDir);
+        log.append("farmer-1", ChangeLog.OPERATION_CREATE);
+        log.close();
+        String epoch = log.getEpoch();
+        assertNotNull(epoch);
+        assertEquals(epoch, new ChangeLog(logDir).getEpoch());
+
+        // The directory is cleaned, e.g. a temp directory on reboot
+        tearDown();
+        ChangeLog recreated = new ChangeLog(logDir);
+        assertEquals(0, recreated.getLastSequence());
+        assertNotEquals(epoch, recreated.getEpoch());
+    }
+}
@@ -0,0 +1,170 @@
+package global.govstack.processing.service.export;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import global.govstack.registration.receiver.service.export.ExportJob;
+import global.govstack.registration.receiver.service.export.RegistrationExporter;
+import global.govstack.registration.receiver.service.metadata.GovStackDataAssembler;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import org.joget.apps.form.model.FormRow;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RegistrationExporter
+ */
+public class RegistrationExporterTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static GovStackDataAssembler assembler;
+
+    private FakeSource source;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        YamlMetadataService metadataService = new YamlMetadataService();
+        metadataService.loadMetadata("farmers_registry");
+        assembler = GovStackDataAssembler.forMetadata(metadataService);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        GovStackDataAssembler.clearCompiled();
+    }
+
+    @Before
+    public void setUp() {
+        source = new FakeSource();
+        for (int i = 1; i <= 5; i++) {
+            FormRow basic = new FormRow();
+            basic.setId("farmer-" + i);
+            basic.setProperty("national_id", "87122489012" + i);
+            basic.setProperty("first_name", i == 3 ? "Mamosa, \"Lisa\"" : "Farmer" + i);
+            source.sections.computeIfAbsent("farmerBasicInfo", k -> new HashMap<>()).put(basic.getId(), basic);
+        }
+        for (String name : new String[]{"Thabo", "Lerato"}) {
+            FormRow member = new FormRow();
+            member.setId("member-" + name);
+            member.setProperty("farmer_id", "farmer-2");
+            member.setProperty("memberName", name);
+            source.grids.computeIfAbsent("householdMembers", k -> new HashMap<>())
+                    .computeIfAbsent("farmer-2", k -> new ArrayList<>()).add(member);
+        }
+    }
+
+    @Test
+    public void testNdjsonReadsInKeysetPages() throws Exception {
+        StringWriter out = new StringWriter();
+        long count = new RegistrationExporter(assembler, source, 2).export(RegistrationExporter.Format.NDJSON, null, out);
+
+        assertEquals(5, count);
+        assertEquals(Arrays.asList(null, "farmer-2", "farmer-4"), source.afterIds);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(5, lines.length);
+        JsonNode second = MAPPER.readTree(lines[1]);
+        assertEquals("farmer-2", second.path("id").asText());
+        assertEquals("Farmer2", second.path("name").path("given").get(0).asText());
+        assertEquals("Lerato", second.path("relatedPerson").get(1).path("name").path("text").asText());
+    }
+
+    @Test
+    public void testCsvHasOneColumnPerJogetField() throws Exception {
+        StringWriter out = new StringWriter();
+        new RegistrationExporter(assembler, source, 2).export(RegistrationExporter.Format.CSV, null, out);
+
+        String[] lines = out.toString().split("\r\n");
+        assertEquals(6, lines.length);
+        List<String> header = Arrays.asList(lines[0].split(","));
+        assertEquals("id", header.get(0));
+        assertTrue(header.contains("national_id"));
+        assertTrue(header.contains("householdMembers.memberName"));
+
+        assertTrue(lines[2].startsWith("farmer-2,"));
+        assertTrue(lines[2].contains("Thabo | Lerato"));
+        assertTrue("Values with separators are quoted", lines[3].contains("\"Mamosa, \"\"Lisa\"\"\""));
+    }
+
+    @Test
+    public void testSinceIsPassedToSource() throws Exception {
+        Timestamp since = ExportJob.parseSince("2025-01-22");
+        new RegistrationExporter(assembler, source).export(RegistrationExporter.Format.NDJSON, since, new StringWriter());
+        assertEquals(since, source.since);
+    }
+
+    @Test
+    public void testParseSince() {
+        assertNull(ExportJob.parseSince(" "));
+        assertEquals(1737504000000L, ExportJob.parseSince("2025-01-22").getTime());
+        assertEquals(1737556200000L, ExportJob.parseSince("2025-01-22T14:30:00Z").getTime());
+        assertEquals(1737556200000L, ExportJob.parseSince("2025-01-22T16:30:00+02:00").getTime());
+        assertEquals(1737556200000L, ExportJob.parseSince("1737556200000").getTime());
+        try {
+            ExportJob.parseSince("yesterday");
+            fail("Expected an invalid since");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("yesterday"));
+        }
+    }
+
+    /**
+     * Rows by form and application, paged like the keyset query
+     */
+    private static class FakeSource implements RegistrationExporter.Source {
+        final Map<String, Map<String, FormRow>> sections = new HashMap<>();
+        final Map<String, Map<String, List<FormRow>>> grids = new HashMap<>();
+        final List<String> afterIds = new ArrayList<>();
+        Timestamp since;
+
+        @Override
+        public List<String> nextApplicationIds(String afterId, Timestamp since, int limit) {
+            afterIds.add(afterId);
+            this.since = since;
+            List<String> ids = new ArrayList<>();
+            for (String id : new TreeMap<>(sections.get("farmerBasicInfo")).keySet()) {
+                if ((afterId == null || id.compareTo(afterId) > 0) && ids.size() < limit) {
+                    ids.add(id);
+                }
+            }
+            return ids;
+        }
+
+        @Override
+        public Map<String, FormRow> loadRows(String formId, List<String> applicationIds) {
+            Map<String, FormRow> rows = new HashMap<>();
+            Map<String, FormRow> form = sections.getOrDefault(formId, new HashMap<>());
+            for (String id : applicationIds) {
+                if (form.containsKey(id)) {
+                    rows.put(id, form.get(id));
+                }
+            }
+            return rows;
+        }
+
+        @Override
+        public Map<String, List<FormRow>> loadGridRows(GovStackDataAssembler.GridPlan grid, List<String> applicationIds) {
+            Map<String, List<FormRow>> rows = new HashMap<>();
+            Map<String, List<FormRow>> gridRows = grids.getOrDefault(grid.getGridName(), new HashMap<>());
+            for (String id : applicationIds) {
+                if (gridRows.containsKey(id)) {
+                    rows.put(id, gridRows.get(id));
+                }
+            }
+            return rows;
+        }
+    }
+}
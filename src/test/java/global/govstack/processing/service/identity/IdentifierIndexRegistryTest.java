@@ -0,0 +1,227 @@
+package global.govstack.processing.service.identity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import global.govstack.registration.receiver.service.identity.IdentifierIndexRegistry;
+import global.govstack.registration.receiver.service.metadata.MetadataSnapshotStore;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for IdentifierIndexRegistry
+ */
+public class IdentifierIndexRegistryTest {
+
+    private static final String SERVICE_ID = "farmers_registry";
+
+    private YamlMetadataService metadataService;
+    private FakeStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        IdentifierIndexRegistry.getInstance().shutdown();
+        metadataService = new YamlMetadataService();
+        metadataService.loadMetadata(SERVICE_ID);
+        store = new FakeStore();
+    }
+
+    @After
+    public void tearDown() {
+        IdentifierIndexRegistry.getInstance().shutdown();
+    }
+
+    @Test
+    public void testResolvesMappedIdentifierTypes() {
+        Map<String, IdentifierIndexRegistry.Source> sources = IdentifierIndexRegistry.resolveSources(metadataService);
+
+        assertEquals("farmerBasicInfo", sources.get("NationalId").getFormId());
+        assertEquals("national_id", sources.get("NationalId").getField());
+        assertTrue(sources.containsKey("BeneficiaryCode"));
+        assertFalse("Declared but not mapped to a field", sources.containsKey("FarmerRegistrationNumber"));
+    }
+
+    @Test
+    public void testExtractsIdentifiersFromRequest() throws Exception {
+        Map<String, String> identifiers = IdentifierIndexRegistry.getInstance().extractIdentifiers(metadataService,
+                new ObjectMapper().readTree("{\"identifiers\":[{\"type\":\"BeneficiaryCode\",\"value\":\"BEN-1\"},"
+                        + "{\"type\":\"Passport\",\"value\":\"P1\"},{\"type\":\"NationalId\",\"value\":\" 871 \"}]}"));
+
+        assertEquals(2, identifiers.size());
+        assertEquals("871", identifiers.get("NationalId"));
+        assertEquals("BEN-1", identifiers.get("BeneficiaryCode"));
+    }
+
+    @Test
+    public void testLooksUpFromIndexOnceBuilt() throws Exception {
+        store.put("farmer-1", "871");
+        store.put("farmer-2", "872");
+        IdentifierIndexRegistry registry = IdentifierIndexRegistry.getInstance();
+
+        // Answered from the forms while the scan runs
+        store.blockScan();
+        assertEquals("farmer-1", only(registry.find(metadataService, store, "NationalId", "871")).getApplicationId());
+        assertEquals(1, store.queries.get());
+        store.releaseScan();
+
+        assertTrue(registry.awaitReady(SERVICE_ID, 5000));
+        assertEquals(2, registry.size(SERVICE_ID));
+        assertEquals("farmer-2", only(registry.find(metadataService, store, null, "872")).getApplicationId());
+        assertTrue(registry.find(metadataService, store, "NationalId", "999").isEmpty());
+        assertEquals("Hits are confirmed by loading one record, not by querying", 1, store.queries.get());
+    }
+
+    @Test
+    public void testStaleEntryIsCorrected() throws Exception {
+        store.put("farmer-1", "871");
+        IdentifierIndexRegistry registry = IdentifierIndexRegistry.getInstance();
+        registry.find(metadataService, store, "NationalId", "871");
+        assertTrue(registry.awaitReady(SERVICE_ID, 5000));
+
+        // Changed in Joget directly, without going through the API
+        store.put("farmer-1", "999");
+        store.put("farmer-3", "871");
+
+        assertEquals("farmer-3", only(registry.find(metadataService, store, "NationalId", "871")).getApplicationId());
+        assertEquals("farmer-3", only(registry.find(metadataService, store, "NationalId", "871")).getApplicationId());
+    }
+
+    @Test
+    public void testDuplicatesExcludeTheSubmittedApplication() throws Exception {
+        IdentifierIndexRegistry registry = IdentifierIndexRegistry.getInstance();
+        registry.find(metadataService, store, "NationalId", "000");
+        assertTrue(registry.awaitReady(SERVICE_ID, 5000));
+
+        Map<String, String> identifiers = Collections.singletonMap("NationalId", "871");
+        store.put("farmer-1", "871");
+        registry.record(metadataService, "farmer-1", identifiers);
+
+        assertTrue(registry.findDuplicates(metadataService, store, identifiers, "farmer-1").isEmpty());
+        List<IdentifierIndexRegistry.Match> duplicates = registry.findDuplicates(metadataService, store, identifiers, "farmer-2");
+        assertEquals("farmer-1", only(duplicates).getApplicationId());
+        assertEquals("NationalId", only(duplicates).getType());
+    }
+
+    @Test
+    public void testReservationBlocksConcurrentSubmission() throws Exception {
+        IdentifierIndexRegistry registry = IdentifierIndexRegistry.getInstance();
+        Map<String, String> identifiers = new TreeMap<>();
+        identifiers.put("NationalId", "871");
+        identifiers.put("BeneficiaryCode", "BEN-1");
+
+        assertTrue(registry.reserve(metadataService, identifiers, "farmer-1").isEmpty());
+        // Neither is saved yet, so the duplicate check alone would let both through
+        assertTrue(registry.findDuplicates(metadataService, store, identifiers, "farmer-2").isEmpty());
+        List<IdentifierIndexRegistry.Match> holders = registry.reserve(metadataService,
+                Collections.singletonMap("NationalId", " 871 "), "farmer-2");
+        assertEquals("farmer-1", only(holders).getApplicationId());
+        assertTrue("Same application", registry.reserve(metadataService, identifiers, "farmer-1").isEmpty());
+
+        // A save that failed gives its identifiers up
+        registry.release(metadataService, identifiers, "farmer-1");
+        assertTrue(registry.reserve(metadataService, identifiers, "farmer-2").isEmpty());
+    }
+
+    @Test
+    public void testConflictingReservationHoldsNothing() throws Exception {
+        IdentifierIndexRegistry registry = IdentifierIndexRegistry.getInstance();
+        assertTrue(registry.reserve(metadataService, Collections.singletonMap("NationalId", "871"), "farmer-1").isEmpty());
+
+        Map<String, String> identifiers = new TreeMap<>();
+        identifiers.put("BeneficiaryCode", "BEN-1");
+        identifiers.put("NationalId", "871");
+        assertEquals(1, registry.reserve(metadataService, identifiers, "farmer-2").size());
+
+        assertTrue("BEN-1 was not kept by the rejected submission", registry.reserve(metadataService,
+                Collections.singletonMap("BeneficiaryCode", "BEN-1"), "farmer-3").isEmpty());
+    }
+
+    @Test
+    public void testReloadWithSameSourcesKeepsIndexAndReservations() throws Exception {
+        store.put("farmer-1", "871");
+        IdentifierIndexRegistry registry = IdentifierIndexRegistry.getInstance();
+        assertTrue(registry.reserve(metadataService, Collections.singletonMap("NationalId", "872"), "farmer-2").isEmpty());
+        registry.find(metadataService, store, "NationalId", "871");
+        assertTrue(registry.awaitReady(SERVICE_ID, 5000));
+
+        YamlMetadataService reloaded = new YamlMetadataService();
+        reloaded.loadMetadata(MetadataSnapshotStore.getInstance().load(SERVICE_ID));
+        assertTrue(reloaded.getSnapshotGeneration() > metadataService.getSnapshotGeneration());
+
+        // Requests on the new and the old snapshot interleave while the reload is rolled out
+        for (YamlMetadataService service : new YamlMetadataService[]{reloaded, metadataService, reloaded}) {
+            assertEquals("farmer-1", only(registry.find(service, store, "NationalId", "871")).getApplicationId());
+            assertEquals("farmer-2", only(registry.reserve(service,
+                    Collections.singletonMap("NationalId", "872"), "farmer-3")).getApplicationId());
+        }
+        assertEquals("The index is built once", 1, store.scans.get());
+    }
+
+    private static IdentifierIndexRegistry.Match only(List<IdentifierIndexRegistry.Match> matches) {
+        assertEquals(matches.toString(), 1, matches.size());
+        return matches.get(0);
+    }
+
+    /**
+     * National IDs by application, the other identifier types are empty
+     */
+    private static class FakeStore implements IdentifierIndexRegistry.Store {
+        final Map<String, String> nationalIds = Collections.synchronizedMap(new TreeMap<String, String>());
+        final AtomicInteger queries = new AtomicInteger();
+        final AtomicInteger scans = new AtomicInteger();
+        volatile CountDownLatch scanGate = new CountDownLatch(0);
+
+        void put(String applicationId, String nationalId) {
+            nationalIds.put(applicationId, nationalId);
+        }
+
+        void blockScan() {
+            scanGate = new CountDownLatch(1);
+        }
+
+        void releaseScan() {
+            scanGate.countDown();
+        }
+
+        @Override
+        public void scan(IdentifierIndexRegistry.Source source, IdentifierIndexRegistry.RowHandler handler)
+                throws Exception {
+            scanGate.await();
+            if ("NationalId".equals(source.getType())) {
+                scans.incrementAndGet();
+                for (Map.Entry<String, String> entry : new TreeMap<>(nationalIds).entrySet()) {
+                    handler.row(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        @Override
+        public String loadValue(IdentifierIndexRegistry.Source source, String applicationId) {
+            return "NationalId".equals(source.getType()) ? nationalIds.get(applicationId) : null;
+        }
+
+        @Override
+        public List<String> findApplicationIds(IdentifierIndexRegistry.Source source, String value) {
+            queries.incrementAndGet();
+            List<String> applicationIds = new ArrayList<>();
+            if ("NationalId".equals(source.getType())) {
+                for (Map.Entry<String, String> entry : new TreeMap<>(nationalIds).entrySet()) {
+                    if (value.equals(entry.getValue())) {
+                        applicationIds.add(entry.getKey());
+                    }
+                }
+            }
+            return applicationIds;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package global.govstack.processing.service.identity;
+
+import global.govstack.registration.receiver.service.identity.IdentifierIndex;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for IdentifierIndex
+ */
+public class IdentifierIndexTest {
+
+    @Test
+    public void testPutAndGet() {
+        IdentifierIndex index = new IdentifierIndex();
+        assertNull(index.put("NationalId", "8712248901234", "farmer-1"));
+        index.put("BeneficiaryCode", "BEN-2025-000002", "farmer-1");
+
+        assertEquals("farmer-1", index.get("NationalId", "8712248901234"));
+        assertEquals("Value case and whitespace are ignored", "farmer-1", index.get("BeneficiaryCode", " ben-2025-000002 "));
+        assertNull("Types are kept apart", index.get("BeneficiaryCode", "8712248901234"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testReplaceAndPutIfAbsent() {
+        IdentifierIndex index = new IdentifierIndex();
+        index.put("NationalId", "123", "farmer-1");
+
+        assertFalse(index.putIfAbsent("NationalId", "123", "farmer-2"));
+        assertEquals("farmer-1", index.get("NationalId", "123"));
+
+        assertEquals("farmer-1", index.put("NationalId", "123", "farmer-2"));
+        assertEquals("farmer-2", index.get("NationalId", "123"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testRemoveOnlyTheGivenApplication() {
+        IdentifierIndex index = new IdentifierIndex();
+        index.put("NationalId", "123", "farmer-1");
+
+        assertFalse(index.remove("NationalId", "123", "farmer-2"));
+        assertTrue(index.remove("NationalId", "123", "farmer-1"));
+        assertNull(index.get("NationalId", "123"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testGrowsAndKeepsEntriesAfterRemovals() {
+        IdentifierIndex index = new IdentifierIndex();
+        int count = 100_000;
+        for (int i = 0; i < count; i++) {
+            index.put("NationalId", "ID" + i, "farmer-" + i);
+        }
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(index.remove("NationalId", "ID" + i, "farmer-" + i));
+        }
+        for (int i = 1; i < count; i += 2) {
+            index.put("NationalId", "ID" + i, "moved-" + i);
+        }
+
+        assertEquals(count / 2, index.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i % 2 == 0 ? null : "moved-" + i, index.get("NationalId", "ID" + i));
+        }
+    }
+
+    @Test
+    public void testEntriesAreCompact() {
+        IdentifierIndex index = new IdentifierIndex();
+        int count = 200_000;
+        for (int i = 0; i < count; i++) {
+            index.put("NationalId", String.valueOf(8_700_000_000_000L + i), "c0a8-0104-" + i + "-farmer-registration");
+        }
+
+        long bytesPerEntry = index.getMemoryBytes() / count;
+        assertTrue("Bytes per entry: " + bytesPerEntry, bytesPerEntry < 100);
+    }
+}
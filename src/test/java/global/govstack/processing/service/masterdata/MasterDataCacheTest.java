@@ -0,0 +1,190 @@
+package global.govstack.processing.service.masterdata;
+
+import global.govstack.registration.receiver.service.masterdata.MasterDataCache;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.service.normalization.ValueNormalizer;
+import org.joget.apps.app.model.AppDefinition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MasterDataCache and master data validation in ValueNormalizer
+ */
+public class MasterDataCacheTest {
+
+    private MasterDataCache cache;
+    private Map<String, Map<String, String>> codeTables;
+    private AtomicInteger loadCount;
+
+    @Before
+    public void setUp() {
+        cache = MasterDataCache.getInstance();
+        cache.shutdown();
+
+        codeTables = new HashMap<>();
+        Map<String, String> districts = new HashMap<>();
+        districts.put("MSU", "Maseru");
+        districts.put("LRB", "Leribe");
+        codeTables.put("district", districts);
+
+        Map<String, String> crops = new HashMap<>();
+        crops.put("maize", "Maize");
+        crops.put("sorghum", "Sorghum");
+        crops.put("beans", "Beans");
+        codeTables.put("crops", crops);
+
+        loadCount = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        cache.shutdown();
+    }
+
+    private void registerTables() {
+        Map<String, MasterDataCache.Source> sources = new HashMap<>();
+        sources.put("district", new MasterDataCache.Source("district", null, null));
+        sources.put("cropType", new MasterDataCache.Source("crops", null, null));
+        cache.register(sources, source -> {
+            loadCount.incrementAndGet();
+            return new HashMap<>(codeTables.get(source.getFormId()));
+        }, 0);
+    }
+
+    @Test
+    public void testRegisterLoadsTablesOnce() {
+        registerTables();
+        registerTables();
+
+        assertTrue(cache.isLoaded("district"));
+        assertTrue(cache.isLoaded("crops"));
+        assertEquals("Tables should only be loaded on first registration", 2, loadCount.get());
+    }
+
+    @Test
+    public void testCanonicaliseCodeCaseAndLabel() {
+        registerTables();
+        MasterDataCache.CodeTable table = cache.getTable("district");
+
+        assertEquals("MSU", table.canonicalise("MSU"));
+        assertEquals("MSU", table.canonicalise("msu"));
+        assertEquals("MSU", table.canonicalise("Maseru"));
+        assertEquals("LRB", table.canonicalise(" leribe "));
+        assertNull(table.canonicalise("XYZ"));
+        assertEquals("Leribe", cache.getLabel("district", "LRB"));
+    }
+
+    @Test
+    public void testRefreshSwapsInNewCodes() {
+        registerTables();
+        assertNull(cache.getTable("district").canonicalise("QTN"));
+
+        codeTables.get("district").put("QTN", "Quthing");
+        cache.refresh();
+
+        assertEquals("QTN", cache.getTable("district").canonicalise("quthing"));
+    }
+
+    @Test
+    public void testLoaderFailureLeavesTableUnloaded() {
+        Map<String, MasterDataCache.Source> sources = new HashMap<>();
+        sources.put("district", new MasterDataCache.Source("district", null, null));
+        cache.register(sources, source -> {
+            throw new IllegalStateException("database unavailable");
+        }, 0);
+
+        assertFalse(cache.isLoaded("district"));
+        assertTrue(cache.hasFailed("district"));
+    }
+
+    @Test
+    public void testFailedTableIsNotReloadedByRequests() {
+        Map<String, MasterDataCache.Source> sources = new HashMap<>();
+        sources.put("district", new MasterDataCache.Source("district", null, null));
+        MasterDataCache.Loader failing = source -> {
+            loadCount.incrementAndGet();
+            throw new IllegalStateException("database unavailable");
+        };
+
+        cache.register(sources, failing, 0);
+        cache.register(sources, failing, 0);
+        cache.register(sources, failing, 0);
+
+        assertEquals("A failed table should not be queried again within its backoff", 1, loadCount.get());
+    }
+
+    @Test
+    public void testRefreshRetriesFailedTable() {
+        Map<String, MasterDataCache.Source> sources = new HashMap<>();
+        sources.put("district", new MasterDataCache.Source("district", null, null));
+        AtomicInteger attempts = new AtomicInteger();
+        cache.register(sources, source -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("database unavailable");
+            }
+            return new HashMap<>(codeTables.get(source.getFormId()));
+        }, 0);
+        assertFalse(cache.isLoaded("district"));
+
+        cache.refresh();
+
+        assertTrue(cache.isLoaded("district"));
+        assertFalse(cache.hasFailed("district"));
+    }
+
+    @Test
+    public void testAppsHaveSeparateCaches() {
+        AppDefinition first = new AppDefinition();
+        first.setId("firstApp");
+        first.setVersion(1L);
+        AppDefinition second = new AppDefinition();
+        second.setId("secondApp");
+        second.setVersion(1L);
+        try {
+            MasterDataCache firstCache = MasterDataCache.getInstance(first);
+            assertSame(firstCache, MasterDataCache.getInstance(first));
+            assertNotSame(firstCache, MasterDataCache.getInstance(second));
+
+            Map<String, MasterDataCache.Source> sources = new HashMap<>();
+            sources.put("district", new MasterDataCache.Source("district", null, null));
+            firstCache.register(sources, source -> new HashMap<>(codeTables.get(source.getFormId())), 0);
+
+            assertTrue(firstCache.isLoaded("district"));
+            assertFalse(MasterDataCache.getInstance(second).isLoaded("district"));
+        } finally {
+            MasterDataCache.shutdownAll();
+        }
+    }
+
+    @Test
+    public void testValueNormalizerResolvesMasterData() throws Exception {
+        YamlMetadataService metadataService = new YamlMetadataService();
+        metadataService.loadMetadata("farmers_registry");
+        ValueNormalizer normalizer = new ValueNormalizer(metadataService);
+
+        assertEquals("crops", normalizer.getMasterDataSources().get("cropType").getFormId());
+
+        // Without a cache values pass through unchanged
+        assertEquals("anything", normalizer.resolveMasterData("district", "anything"));
+
+        registerTables();
+        normalizer.setMasterDataCache(cache);
+
+        assertTrue(normalizer.isMasterDataField("district"));
+        assertEquals("MSU", normalizer.resolveMasterData("district", "maseru"));
+        assertNull(normalizer.resolveMasterData("district", "Atlantis"));
+        assertEquals("maize;beans", normalizer.resolveMasterData("cropType", "Maize;BEANS"));
+        assertNull(normalizer.resolveMasterData("cropType", "maize;rice"));
+        assertEquals("Maseru", normalizer.getMasterDataLabel("district", "MSU"));
+
+        // Fields that are not master data are never validated
+        assertEquals("yes", normalizer.resolveMasterData("cropProduction", "yes"));
+    }
+}
@@ -0,0 +1,117 @@
+package global.govstack.processing.service.metadata;
+
+import global.govstack.registration.receiver.exception.ConfigurationException;
+import global.govstack.registration.receiver.service.metadata.MetadataSnapshotStore;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MetadataSnapshotStore
+ */
+public class MetadataSnapshotStoreTest {
+
+    private static final String SERVICE_ID = "farmers_registry";
+
+    private Path directory;
+    private Path file;
+    private MetadataSnapshotStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("metadata-store-test");
+        file = directory.resolve(SERVICE_ID + ".yml");
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("docs-metadata/" + SERVICE_ID + ".yml")) {
+            Files.copy(in, file);
+        }
+        append("# external copy\n");
+        store = new MetadataSnapshotStore(directory, 100);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.shutdown();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    private void append(String text) throws Exception {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private MetadataSnapshotStore.Snapshot awaitNewSnapshot(MetadataSnapshotStore.Snapshot previous) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            MetadataSnapshotStore.Snapshot current = store.getSnapshot(SERVICE_ID);
+            if (current != previous) {
+                return current;
+            }
+            Thread.sleep(50);
+        }
+        fail("Changed metadata file was not reloaded");
+        return null;
+    }
+
+    @Test
+    public void testExternalFileTakesPrecedence() throws Exception {
+        MetadataSnapshotStore.Snapshot external = store.getSnapshot(SERVICE_ID);
+        MetadataSnapshotStore.Snapshot bundled = new MetadataSnapshotStore(null, 100).getSnapshot(SERVICE_ID);
+
+        assertEquals(file.toAbsolutePath().toString(), external.getSource());
+        assertTrue(bundled.getSource().startsWith("classpath:"));
+        assertNotEquals(bundled.getContentHash(), external.getContentHash());
+    }
+
+    @Test
+    public void testSnapshotIsShared() throws Exception {
+        assertSame(store.getSnapshot(SERVICE_ID), store.getSnapshot(SERVICE_ID));
+    }
+
+    @Test
+    public void testChangedFileIsSwappedIn() throws Exception {
+        MetadataSnapshotStore.Snapshot before = store.getSnapshot(SERVICE_ID);
+        YamlMetadataService inFlight = new YamlMetadataService();
+        inFlight.loadMetadata(before);
+
+        append("# changed\n");
+        MetadataSnapshotStore.Snapshot after = awaitNewSnapshot(before);
+
+        assertNotEquals(before.getContentHash(), after.getContentHash());
+        // A request that started with the old snapshot keeps it
+        assertEquals(before.getContentHash(), inFlight.getContentHash());
+        assertNotNull(inFlight.getFormMappings());
+    }
+
+    @Test
+    public void testInvalidFileKeepsPreviousSnapshot() throws Exception {
+        MetadataSnapshotStore.Snapshot before = store.getSnapshot(SERVICE_ID);
+
+        Files.write(file, "service:\n  id: other_service\nformMappings: {}\n".getBytes(StandardCharsets.UTF_8));
+        assertFalse(store.reload(SERVICE_ID));
+        Files.write(file, "service: [unclosed\n".getBytes(StandardCharsets.UTF_8));
+        assertFalse(store.reload(SERVICE_ID));
+
+        assertSame(before, store.getSnapshot(SERVICE_ID));
+    }
+
+    @Test
+    public void testUnchangedFileIsNotReloaded() throws Exception {
+        MetadataSnapshotStore.Snapshot before = store.getSnapshot(SERVICE_ID);
+
+        assertFalse(store.reload(SERVICE_ID));
+        assertSame(before, store.getSnapshot(SERVICE_ID));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testUnknownServiceFails() throws Exception {
+        store.getSnapshot("no_such_service");
+    }
+}
@@ -0,0 +1,77 @@
+package global.govstack.processing.service.metrics;
+
+import global.govstack.registration.receiver.service.metrics.ProcessingEvents;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ProcessingEvents
+ *
+ * The recording test drives jdk.jfr through reflection so the test sources still
+ * compile for Java 8; it is skipped when the JFR event classes are not available.
+ */
+public class ProcessingEventsTest {
+
+    @Test
+    public void testSpansAreSharedWhenNothingIsRecording() {
+        ProcessingEvents.Span stage = ProcessingEvents.begin(ProcessingEvents.Type.STAGE, "mapping");
+        ProcessingEvents.Span store = ProcessingEvents.begin(ProcessingEvents.Type.FORM_STORE, "form_store");
+
+        assertSame(stage, store);
+        assertSame(stage, stage.serviceId("farmers_registry").formId("farmerBasicInfo").rowCount(1).primaryKey("pk"));
+        stage.end(true);
+    }
+
+    @Test
+    public void testPrimaryKeyHashIsShortAndStable() {
+        String hash = ProcessingEvents.hashKey("8f14e45f-ceea-467a-9a36-dedd4bea2543");
+
+        assertEquals(16, hash.length());
+        assertTrue(hash.matches("[0-9a-f]+"));
+        assertEquals(hash, ProcessingEvents.hashKey("8f14e45f-ceea-467a-9a36-dedd4bea2543"));
+        assertNotEquals(hash, ProcessingEvents.hashKey("other"));
+        assertNull(ProcessingEvents.hashKey(null));
+    }
+
+    @Test
+    public void testEnabledEventIsRecorded() throws Exception {
+        Assume.assumeTrue("JFR events not available in this runtime", ProcessingEvents.isAvailable());
+
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        File dump = File.createTempFile("processing-events", ".jfr");
+        try {
+            recordingClass.getMethod("enable", String.class).invoke(recording, "govstack.FormStore");
+            recordingClass.getMethod("start").invoke(recording);
+
+            ProcessingEvents.begin(ProcessingEvents.Type.FORM_STORE, "grid_insert")
+                    .serviceId("farmers_registry").formId("householdMemberForm").rowCount(3).primaryKey("pk-1")
+                    .end(true);
+
+            recordingClass.getMethod("stop").invoke(recording);
+            recordingClass.getMethod("dump", Path.class).invoke(recording, dump.toPath());
+
+            Method readAll = Class.forName("jdk.jfr.consumer.RecordingFile").getMethod("readAllEvents", Path.class);
+            List<?> events = (List<?>) readAll.invoke(null, dump.toPath());
+            assertEquals(1, events.size());
+
+            Object event = events.get(0);
+            Method getValue = event.getClass().getMethod("getValue", String.class);
+            assertEquals("grid_insert", getValue.invoke(event, "operation"));
+            assertEquals("householdMemberForm", getValue.invoke(event, "formId"));
+            assertEquals(3, getValue.invoke(event, "rowCount"));
+            assertEquals(ProcessingEvents.hashKey("pk-1"), getValue.invoke(event, "primaryKeyHash"));
+            assertEquals(Boolean.TRUE, getValue.invoke(event, "success"));
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            dump.delete();
+        }
+    }
+}
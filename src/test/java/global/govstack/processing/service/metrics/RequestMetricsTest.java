@@ -0,0 +1,106 @@
+package global.govstack.processing.service.metrics;
+
+import global.govstack.registration.receiver.service.metrics.LatencyHistogram;
+import global.govstack.registration.receiver.service.metrics.RequestMetrics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RequestMetrics and LatencyHistogram
+ */
+public class RequestMetricsTest {
+
+    private final RequestMetrics metrics = RequestMetrics.getInstance();
+
+    @After
+    public void tearDown() {
+        metrics.reset();
+    }
+
+    @Test
+    public void testHistogramQuantilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000, histogram.getMaxMicros());
+        assertEquals(50_005_000L, histogram.getTotalMicros());
+        assertWithin(5_000, histogram.getValueAtQuantile(0.5));
+        assertWithin(9_900, histogram.getValueAtQuantile(0.99));
+        assertEquals(10_000, histogram.getValueAtQuantile(1.0));
+        assertEquals(10_000, histogram.countAtOrBelow(20_000));
+        assertEquals(0, new LatencyHistogram().getValueAtQuantile(0.5));
+    }
+
+    @Test
+    public void testExtremeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getValueAtQuantile(0.5));
+        assertTrue(histogram.getMaxMicros() > TimeUnit.DAYS.toMicros(1));
+    }
+
+    @Test
+    public void testStageTimerRecordsStagesAndTotal() {
+        RequestMetrics.StageTimer timer = metrics.startRequest("farmers_registry");
+        timer.stage("parse");
+        timer.stage("subforms");
+        timer.recordForm("subform", "farmerBasicInfo", true, System.nanoTime());
+        timer.fail(RequestMetrics.OUTCOME_CLIENT_ERROR);
+
+        assertEquals(1, metrics.getHistogram("farmers_registry", "parse", null, RequestMetrics.OUTCOME_SUCCESS).getCount());
+        assertEquals(1, metrics.getHistogram("farmers_registry", "subforms", null, RequestMetrics.OUTCOME_CLIENT_ERROR).getCount());
+        assertEquals(1, metrics.getHistogram("farmers_registry", "subform", "farmerBasicInfo", RequestMetrics.OUTCOME_SUCCESS).getCount());
+        assertEquals(1, metrics.getHistogram("farmers_registry", RequestMetrics.STAGE_TOTAL, null, RequestMetrics.OUTCOME_CLIENT_ERROR).getCount());
+        assertNull(metrics.getHistogram("farmers_registry", RequestMetrics.STAGE_TOTAL, null, RequestMetrics.OUTCOME_SUCCESS));
+    }
+
+    @Test
+    public void testPrometheusText() {
+        metrics.record("farmers_registry", "mapping", null, RequestMetrics.OUTCOME_SUCCESS, TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.record("farmers_registry", "mapping", null, RequestMetrics.OUTCOME_SUCCESS, TimeUnit.MILLISECONDS.toNanos(40));
+        metrics.record("farmers_registry", "subform", "form\"x", RequestMetrics.OUTCOME_FAILURE, TimeUnit.MILLISECONDS.toNanos(1));
+
+        String text = metrics.toPrometheusText();
+        String labels = "service=\"farmers_registry\",stage=\"mapping\",form=\"\",outcome=\"success\"";
+
+        assertTrue(text.contains("# TYPE govstack_stage_duration_seconds histogram\n"));
+        assertTrue(text.contains("govstack_stage_duration_seconds_bucket{" + labels + ",le=\"0.002500\"} 0\n"));
+        assertTrue(text.contains("govstack_stage_duration_seconds_bucket{" + labels + ",le=\"0.005000\"} 1\n"));
+        assertTrue(text.contains("govstack_stage_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains("govstack_stage_duration_seconds_sum{" + labels + "} 0.043000\n"));
+        assertTrue(text.contains("govstack_stage_duration_seconds_count{" + labels + "} 2\n"));
+        assertTrue(text.contains("govstack_stage_duration_max_seconds{" + labels + "} 0.040000\n"));
+        assertTrue(text.contains("form=\"form\\\"x\""));
+        assertTrue(text.contains("govstack_metrics_dropped_samples_total 0\n"));
+    }
+
+    @Test
+    public void testSeriesCountIsBounded() {
+        for (int i = 0; i < 600; i++) {
+            metrics.record("service_" + i, "total", null, RequestMetrics.OUTCOME_SUCCESS, 1000);
+        }
+
+        assertEquals(512, metrics.getSeriesCount());
+        assertEquals(88, metrics.getDroppedSamples());
+
+        // Existing series keep recording after the limit is reached
+        metrics.record("service_0", "total", null, RequestMetrics.OUTCOME_SUCCESS, 1000);
+        assertEquals(2, metrics.getHistogram("service_0", "total", null, RequestMetrics.OUTCOME_SUCCESS).getCount());
+        assertEquals(88, metrics.getDroppedSamples());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected * 0.07);
+    }
+}
@@ -0,0 +1,130 @@
+package global.govstack.processing.service.metrics;
+
+import global.govstack.registration.receiver.service.metrics.RequestMetrics;
+import global.govstack.registration.receiver.service.metrics.SlowRequestRecorder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for SlowRequestRecorder
+ */
+public class SlowRequestRecorderTest {
+
+    private static final String SERVICE_ID = "farmers_registry";
+    private static final long WINDOW = TimeUnit.MINUTES.toMillis(15);
+    private static final long NOW = 1_000_000L;
+
+    @After
+    public void tearDown() {
+        RequestMetrics.getInstance().reset();
+        SlowRequestRecorder.getInstance().reset();
+    }
+
+    @Test
+    public void testKeepsSlowestRequests() {
+        SlowRequestRecorder recorder = new SlowRequestRecorder(3, WINDOW);
+        for (long millis : new long[]{5, 50, 1, 30, 40, 2}) {
+            recorder.record(request(NOW, millis));
+        }
+
+        List<SlowRequestRecorder.SlowRequest> slowest = recorder.getSlowest(SERVICE_ID, NOW);
+        assertEquals(3, slowest.size());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), slowest.get(0).getDurationNanos());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(40), slowest.get(1).getDurationNanos());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(30), slowest.get(2).getDurationNanos());
+    }
+
+    @Test
+    public void testFastRequestsAreRejectedOnceFull() {
+        SlowRequestRecorder recorder = new SlowRequestRecorder(2, WINDOW);
+        assertTrue(recorder.admits(SERVICE_ID, 1, NOW));
+
+        recorder.record(request(NOW, 20));
+        assertTrue("A free slot admits any request", recorder.admits(SERVICE_ID, 1, NOW));
+        recorder.record(request(NOW, 30));
+
+        assertFalse(recorder.admits(SERVICE_ID, TimeUnit.MILLISECONDS.toNanos(10), NOW));
+        assertFalse(recorder.admits(SERVICE_ID, TimeUnit.MILLISECONDS.toNanos(20), NOW));
+        assertTrue(recorder.admits(SERVICE_ID, TimeUnit.MILLISECONDS.toNanos(25), NOW));
+        assertFalse(recorder.record(request(NOW, 10)));
+    }
+
+    @Test
+    public void testOldRequestsExpire() {
+        SlowRequestRecorder recorder = new SlowRequestRecorder(2, WINDOW);
+        recorder.record(request(NOW, 500));
+        recorder.record(request(NOW + 1000, 400));
+
+        long later = NOW + WINDOW;
+        assertTrue("The oldest entry has left the window", recorder.admits(SERVICE_ID, 1, later));
+        assertTrue(recorder.record(request(later, 1)));
+
+        List<SlowRequestRecorder.SlowRequest> slowest = recorder.getSlowest(SERVICE_ID, later);
+        assertEquals(2, slowest.size());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(400), slowest.get(0).getDurationNanos());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), slowest.get(1).getDurationNanos());
+        assertTrue(recorder.getSlowest(SERVICE_ID, later + WINDOW).isEmpty());
+    }
+
+    @Test
+    public void testStageTimerRecordsRequestDetails() {
+        RequestMetrics.StageTimer timer = RequestMetrics.getInstance().startRequest(SERVICE_ID);
+        timer.payload("{\"name\":\"Jane Doe\"}");
+        timer.stage("parse");
+        timer.stage("subforms");
+        timer.recordForm("subform", "farmerBasicInfo", true, System.nanoTime());
+        timer.stage("grids");
+        timer.gridRows("householdMembers", 3);
+        timer.complete();
+
+        List<SlowRequestRecorder.SlowRequest> slowest =
+                SlowRequestRecorder.getInstance().getSlowest(SERVICE_ID, System.currentTimeMillis());
+        assertEquals(1, slowest.size());
+        SlowRequestRecorder.SlowRequest request = slowest.get(0);
+        assertEquals(4, request.getStages().size());
+        assertEquals("parse", request.getStages().get(0).getStage());
+        assertEquals("subform", request.getStages().get(1).getStage());
+        assertEquals(Collections.singleton("farmerBasicInfo"), request.getForms());
+        assertEquals(Integer.valueOf(3), request.getGridRows().get("householdMembers"));
+        assertEquals(16, request.getPayloadFingerprint().length());
+
+        String dump = SlowRequestRecorder.getInstance().toJson(System.currentTimeMillis()).toString();
+        assertFalse("The payload itself is never kept", dump.contains("Jane Doe"));
+    }
+
+    @Test
+    public void testJsonDump() {
+        SlowRequestRecorder recorder = new SlowRequestRecorder(2, WINDOW);
+        recorder.record(request(NOW, 12));
+
+        JSONObject dump = recorder.toJson(NOW);
+        assertEquals(2, dump.getInt("capacity"));
+        assertEquals(900, dump.getLong("windowSeconds"));
+
+        JSONArray requests = dump.getJSONObject("services").getJSONArray(SERVICE_ID);
+        assertEquals(1, requests.length());
+        JSONObject entry = requests.getJSONObject(0);
+        assertEquals(12.0, ((Number) entry.get("durationMillis")).doubleValue(), 0.001);
+        assertEquals(RequestMetrics.OUTCOME_SUCCESS, entry.getString("outcome"));
+        assertEquals(42, entry.getInt("payloadBytes"));
+        assertEquals("mapping", entry.getJSONArray("stages").getJSONObject(0).getString("stage"));
+        assertEquals(7, entry.getJSONObject("gridRows").getInt("crops"));
+        assertEquals("farmerBasicInfo", entry.getJSONArray("forms").getString(0));
+    }
+
+    private static SlowRequestRecorder.SlowRequest request(long recordedAt, long millis) {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return new SlowRequestRecorder.SlowRequest(SERVICE_ID, recordedAt, nanos, RequestMetrics.OUTCOME_SUCCESS,
+                42, "0123456789abcdef",
+                Collections.singletonList(new SlowRequestRecorder.StageTiming("mapping", "farmerBasicInfo", nanos)),
+                Collections.singletonMap("crops", 7));
+    }
+}
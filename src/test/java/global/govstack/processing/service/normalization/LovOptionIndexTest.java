@@ -0,0 +1,166 @@
+package global.govstack.processing.service.normalization;
+
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import global.govstack.registration.receiver.service.normalization.LovOptionIndex;
+import global.govstack.registration.receiver.service.normalization.ValueNormalizer;
+import org.joget.apps.app.model.AppDefinition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for LovOptionIndex and its use in ValueNormalizer
+ */
+public class LovOptionIndexTest {
+
+    private Map<String, String> forms;
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        forms = new HashMap<>();
+        forms.put("farmerAgriculture", form(
+                radio("cropProduction", "yes", "no"),
+                radio("livestockProduction", "1", "2"),
+                radio("farmingMethod", "Conventional", "Organic", "Mixed")));
+        cacheDir = Files.createTempDirectory("lov-index-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        LovOptionIndex.clearShared();
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDir.delete();
+    }
+
+    private static String radio(String id, String... values) {
+        StringBuilder options = new StringBuilder();
+        for (String value : values) {
+            if (options.length() > 0) {
+                options.append(',');
+            }
+            options.append("{\"value\":\"").append(value).append("\",\"label\":\"").append(value).append("\"}");
+        }
+        return "{\"className\":\"org.joget.apps.form.lib.Radio\",\"properties\":{\"id\":\"" + id
+                + "\",\"options\":[" + options + "]}}";
+    }
+
+    private static String form(String... elements) {
+        return "{\"className\":\"org.joget.apps.form.model.Form\",\"properties\":{\"id\":\"form\"},"
+                + "\"elements\":[{\"className\":\"org.joget.apps.form.model.Section\",\"properties\":{},"
+                + "\"elements\":[" + String.join(",", elements) + "]}]}";
+    }
+
+    @Test
+    public void testBuildClassifiesOptions() throws Exception {
+        LovOptionIndex index = LovOptionIndex.build(forms);
+
+        assertEquals(3, index.size());
+        assertEquals(LovOptionIndex.LovType.YES_NO, index.getOptions("cropProduction").getType());
+        assertEquals(LovOptionIndex.LovType.ONE_TWO, index.getOptions("farmerAgriculture", "livestockProduction").getType());
+        assertEquals(LovOptionIndex.LovType.CUSTOM, index.getOptions("farmingMethod").getType());
+        assertNull(index.getOptions("unknownField"));
+    }
+
+    @Test
+    public void testResolveOption() throws Exception {
+        LovOptionIndex.FieldOptions options = LovOptionIndex.build(forms).getOptions("farmingMethod");
+
+        assertEquals("Organic", options.resolve("Organic"));
+        assertEquals("Organic", options.resolve(" organic "));
+        assertNull(options.resolve("Hydroponic"));
+    }
+
+    @Test
+    public void testLoadUsesDiskCacheForUnchangedForms() throws Exception {
+        LovOptionIndex built = LovOptionIndex.load(forms, cacheDir);
+        File cacheFile = new File(cacheDir, "lov-index-" + built.getContentHash() + ".json");
+        assertTrue("Index should be written to the cache", cacheFile.isFile());
+
+        LovOptionIndex cached = LovOptionIndex.load(forms, cacheDir);
+        assertEquals(built.getContentHash(), cached.getContentHash());
+        assertEquals(built.size(), cached.size());
+        assertEquals(LovOptionIndex.LovType.ONE_TWO, cached.getOptions("livestockProduction").getType());
+
+        forms.put("farmerAgriculture", form(radio("cropProduction", "yes", "no")));
+        LovOptionIndex changed = LovOptionIndex.load(forms, cacheDir);
+        assertNotEquals(built.getContentHash(), changed.getContentHash());
+        assertEquals(1, changed.size());
+    }
+
+    @Test
+    public void testSharedIndexIsKeptPerApp() throws Exception {
+        AppDefinition first = new AppDefinition();
+        first.setId("firstApp");
+        first.setVersion(1L);
+        AppDefinition second = new AppDefinition();
+        second.setId("secondApp");
+        second.setVersion(1L);
+        Map<String, String> secondForms = new HashMap<>();
+        secondForms.put("farmerAgriculture", form(radio("cropProduction", "yes", "no")));
+        AtomicInteger reads = new AtomicInteger();
+
+        LovOptionIndex firstIndex = LovOptionIndex.getOrLoadShared(first, () -> {
+            reads.incrementAndGet();
+            return forms;
+        }, null);
+        LovOptionIndex secondIndex = LovOptionIndex.getOrLoadShared(second, () -> secondForms, null);
+
+        assertEquals(3, firstIndex.size());
+        assertEquals(1, secondIndex.size());
+        assertSame(firstIndex, LovOptionIndex.getOrLoadShared(first, () -> {
+            reads.incrementAndGet();
+            return forms;
+        }, null));
+        assertEquals("Forms are not read again within the check interval", 1, reads.get());
+        assertSame(secondIndex, LovOptionIndex.getShared(second));
+
+        LovOptionIndex.clearShared();
+        assertNull(LovOptionIndex.getShared(first));
+    }
+
+    @Test
+    public void testValueNormalizerUsesIndex() throws Exception {
+        ValueNormalizer normalizer = new ValueNormalizer();
+        normalizer.setLovOptionIndex(LovOptionIndex.build(forms));
+
+        assertEquals("yes", normalizer.normalizeToLOV(BooleanNode.TRUE, "cropProduction"));
+        assertEquals("2", normalizer.normalizeToLOV(BooleanNode.FALSE, "livestockProduction"));
+        assertEquals("Organic", normalizer.normalizeToLOV(TextNode.valueOf("organic"), "farmingMethod"));
+        assertEquals("Hydroponic", normalizer.normalizeToLOV(TextNode.valueOf("Hydroponic"), "farmingMethod"));
+
+        // Explicit configuration still wins over the index
+        normalizer.addFieldConfig("cropProduction", new ValueNormalizer.NormalizationConfig("1", "2"));
+        assertEquals("1", normalizer.normalizeToLOV(BooleanNode.TRUE, "cropProduction"));
+    }
+
+    @Test
+    public void testSharedFieldIdResolvesByForm() throws Exception {
+        forms.put("livestockDetailsForm", form(radio("farmingMethod", "Pastoral", "Ranching")));
+        LovOptionIndex index = LovOptionIndex.build(forms);
+        ValueNormalizer normalizer = new ValueNormalizer();
+        normalizer.setLovOptionIndex(index);
+
+        assertEquals("Organic", normalizer.normalizeToLOV(TextNode.valueOf("organic"), "farmerAgriculture", "farmingMethod"));
+        assertEquals("Ranching", normalizer.normalizeToLOV(TextNode.valueOf("ranching"), "livestockDetailsForm", "farmingMethod"));
+        assertEquals("organic", normalizer.normalizeToLOV(TextNode.valueOf("organic"), "livestockDetailsForm", "farmingMethod"));
+
+        // Without the form the field is ambiguous and left unresolved
+        assertNull(index.getOptions("farmingMethod"));
+        assertEquals(LovOptionIndex.LovType.YES_NO, index.getOptions("cropProduction").getType());
+    }
+}
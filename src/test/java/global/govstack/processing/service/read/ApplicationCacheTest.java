@@ -0,0 +1,107 @@
+package global.govstack.processing.service.read;
+
+import global.govstack.registration.receiver.service.read.ApplicationCache;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ApplicationCache
+ */
+public class ApplicationCacheTest {
+
+    private static final String SERVICE_ID = "farmers_registry";
+    private static final long TTL = TimeUnit.MINUTES.toMillis(5);
+
+    @Test
+    public void testLoadsOnceUntilInvalidated() throws Exception {
+        ApplicationCache cache = new ApplicationCache(10, TTL);
+        AtomicInteger loads = new AtomicInteger();
+        ApplicationCache.Loader loader = () -> "{\"version\":" + loads.incrementAndGet() + "}";
+
+        assertEquals("{\"version\":1}", cache.get(SERVICE_ID, "app-1", loader));
+        assertEquals("{\"version\":1}", cache.get(SERVICE_ID, "app-1", loader));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.invalidate(SERVICE_ID, "app-1");
+        assertEquals("{\"version\":2}", cache.get(SERVICE_ID, "app-1", loader));
+        assertEquals("Services do not share entries", "{\"version\":3}", cache.get("other_registry", "app-1", loader));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        ApplicationCache cache = new ApplicationCache(2, TTL);
+        cache.get(SERVICE_ID, "a", () -> "a");
+        cache.get(SERVICE_ID, "b", () -> "b");
+        cache.get(SERVICE_ID, "a", () -> "reloaded");
+        cache.get(SERVICE_ID, "c", () -> "c");
+
+        assertEquals(2, cache.size());
+        assertEquals("a", cache.get(SERVICE_ID, "a", () -> "reloaded"));
+        assertEquals("reloaded", cache.get(SERVICE_ID, "b", () -> "reloaded"));
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception {
+        ApplicationCache cache = new ApplicationCache(10, 1);
+        cache.get(SERVICE_ID, "a", () -> "old");
+        Thread.sleep(5);
+
+        assertEquals("new", cache.get(SERVICE_ID, "a", () -> "new"));
+    }
+
+    @Test
+    public void testLoadRacingAWriteIsNotCached() throws Exception {
+        ApplicationCache cache = new ApplicationCache(10, TTL);
+
+        // The application is written and invalidated while the read is loading it
+        String stale = cache.get(SERVICE_ID, "a", () -> {
+            cache.invalidate(SERVICE_ID, "a");
+            return "stale";
+        });
+
+        assertEquals("stale", stale);
+        assertEquals("fresh", cache.get(SERVICE_ID, "a", () -> "fresh"));
+    }
+
+    @Test
+    public void testWriteToAnotherApplicationDoesNotBlockCaching() throws Exception {
+        ApplicationCache cache = new ApplicationCache(10, TTL);
+
+        cache.get(SERVICE_ID, "a", () -> {
+            cache.invalidate(SERVICE_ID, "b");
+            cache.invalidate("other_registry", "a");
+            return "loaded";
+        });
+
+        assertEquals("loaded", cache.get(SERVICE_ID, "a", () -> "reloaded"));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testFailedLoadDoesNotAffectLaterLoads() throws Exception {
+        ApplicationCache cache = new ApplicationCache(10, TTL);
+        try {
+            cache.get(SERVICE_ID, "a", () -> {
+                throw new IllegalStateException("database unavailable");
+            });
+            fail("The loader's exception should propagate");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+
+        cache.get(SERVICE_ID, "a", () -> "loaded");
+        assertEquals("loaded", cache.get(SERVICE_ID, "a", () -> "reloaded"));
+    }
+
+    @Test
+    public void testMissingApplicationIsNotCached() throws Exception {
+        ApplicationCache cache = new ApplicationCache(10, TTL);
+        assertNull(cache.get(SERVICE_ID, "a", () -> null));
+        assertEquals(0, cache.size());
+    }
+}
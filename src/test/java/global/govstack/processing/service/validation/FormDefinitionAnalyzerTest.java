@@ -0,0 +1,150 @@
+package global.govstack.processing.service.validation;
+
+import global.govstack.registration.receiver.service.validation.FieldTypeClassifier;
+import global.govstack.registration.receiver.service.validation.FormDefinitionAnalyzer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for FormDefinitionAnalyzer
+ */
+public class FormDefinitionAnalyzerTest {
+
+    private static final File DOC_FORMS = new File("doc-forms");
+
+    private File formDir;
+
+    @Before
+    public void setUp() throws Exception {
+        formDir = Files.createTempDirectory("form-analyzer-test").toFile();
+        write("farmerAgriculture.json", form(
+                radio("cropProduction", "yes", "no"),
+                radio("livestockProduction", "1", "2")));
+        write("farmerIncome.json", form(
+                "{\"className\":\"org.joget.apps.form.lib.SelectBox\",\"properties\":{\"id\":\"mainSourceIncome\","
+                        + "\"validator\":{\"className\":\"DefaultValidator\",\"properties\":{\"mandatory\":\"true\"}},"
+                        + "\"optionsBinder\":{\"className\":\"org.joget.apps.form.lib.FormOptionsBinder\","
+                        + "\"properties\":{\"formDefId\":\"incomeSource\"}}}}"));
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = formDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        formDir.delete();
+    }
+
+    private void write(String name, String content) throws Exception {
+        Files.write(new File(formDir, name).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String radio(String id, String... values) {
+        StringBuilder options = new StringBuilder();
+        for (String value : values) {
+            if (options.length() > 0) {
+                options.append(',');
+            }
+            options.append("{\"value\":\"").append(value).append("\",\"label\":\"").append(value).append("\"}");
+        }
+        return "{\"className\":\"org.joget.apps.form.lib.Radio\",\"properties\":{\"id\":\"" + id
+                + "\",\"options\":[" + options + "]}}";
+    }
+
+    private static String form(String... elements) {
+        return "{\"className\":\"org.joget.apps.form.model.Form\",\"properties\":{\"id\":\"form\"},"
+                + "\"elements\":[{\"className\":\"org.joget.apps.form.model.Section\",\"properties\":{},"
+                + "\"elements\":[{\"className\":\"org.joget.apps.form.model.Column\",\"properties\":{},"
+                + "\"elements\":[" + String.join(",", elements) + "]}]}]}";
+    }
+
+    @Test
+    public void testClassifiesFields() throws Exception {
+        FieldTypeClassifier classifier = new FieldTypeClassifier();
+        for (FormDefinitionAnalyzer.FormAnalysis form : new FormDefinitionAnalyzer().analyzeDirectory(formDir)) {
+            classifier.registerFields(form.getFields());
+        }
+
+        assertEquals(FieldTypeClassifier.FieldType.LOV_YES_NO, classifier.getFieldType("cropProduction"));
+        assertEquals(FieldTypeClassifier.FieldType.LOV_ONE_TWO, classifier.getFieldType("livestockProduction"));
+        assertTrue(classifier.isMasterdataField("mainSourceIncome"));
+
+        FieldTypeClassifier.FieldInfo income = classifier.getFieldRegistry().get("mainSourceIncome");
+        assertEquals("farmerIncome", income.formId);
+        assertEquals("incomeSource", income.masterdataSource);
+        assertTrue(income.mandatory);
+    }
+
+    @Test
+    public void testMatchesTreeClassificationOfDocForms() throws Exception {
+        assertTrue("doc-forms should be present", DOC_FORMS.isDirectory());
+
+        FieldTypeClassifier expected = new FieldTypeClassifier();
+        File[] files = DOC_FORMS.listFiles((d, name) -> name.endsWith(".json"));
+        Arrays.sort(files);
+        for (File file : files) {
+            expected.analyzeFormJson(file.getName().replace(".json", ""),
+                    new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        }
+
+        FieldTypeClassifier streamed = new FieldTypeClassifier();
+        streamed.analyzeFormFiles(DOC_FORMS.getPath());
+
+        Map<String, FieldTypeClassifier.FieldInfo> expectedFields = expected.getFieldRegistry();
+        Map<String, FieldTypeClassifier.FieldInfo> streamedFields = streamed.getFieldRegistry();
+        assertEquals(expectedFields.keySet(), streamedFields.keySet());
+        for (Map.Entry<String, FieldTypeClassifier.FieldInfo> entry : expectedFields.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue().toString(), streamedFields.get(entry.getKey()).toString());
+            assertEquals(entry.getKey(), entry.getValue().mandatory, streamedFields.get(entry.getKey()).mandatory);
+        }
+        assertEquals(expected.getLovYesNoFields(), streamed.getLovYesNoFields());
+        assertEquals(expected.getMasterdataFields(), streamed.getMasterdataFields());
+    }
+
+    @Test
+    public void testOnlyChangedFormsAreParsedAgain() throws Exception {
+        FormDefinitionAnalyzer analyzer = new FormDefinitionAnalyzer();
+        analyzer.analyzeDirectory(formDir);
+        assertEquals(2, analyzer.getParsedCount());
+
+        write("farmerAgriculture.json", form(radio("cropProduction", "1", "2")));
+        List<FormDefinitionAnalyzer.FormAnalysis> results = analyzer.analyzeDirectory(formDir);
+
+        assertEquals(1, analyzer.getParsedCount());
+        assertEquals(1, analyzer.getReusedCount());
+        assertEquals(FieldTypeClassifier.FieldType.LOV_ONE_TWO, results.get(0).getFields().get(0).type);
+    }
+
+    @Test
+    public void testCacheFileIsReusedBetweenRuns() throws Exception {
+        File cacheFile = new File(formDir, "form-analysis.cache");
+
+        FormDefinitionAnalyzer first = new FormDefinitionAnalyzer();
+        first.setCacheFile(cacheFile);
+        first.analyzeDirectory(formDir);
+        assertTrue(cacheFile.isFile());
+
+        FormDefinitionAnalyzer second = new FormDefinitionAnalyzer();
+        second.setCacheFile(cacheFile);
+        List<FormDefinitionAnalyzer.FormAnalysis> results = second.analyzeDirectory(formDir);
+
+        assertEquals(0, second.getParsedCount());
+        assertEquals(2, second.getReusedCount());
+        FieldTypeClassifier.FieldInfo income = results.get(1).getFields().get(0);
+        assertEquals(FieldTypeClassifier.FieldType.MASTERDATA, income.type);
+        assertEquals("incomeSource", income.masterdataSource);
+    }
+}
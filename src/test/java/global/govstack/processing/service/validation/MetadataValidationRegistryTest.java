@@ -0,0 +1,99 @@
+package global.govstack.processing.service.validation;
+
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.service.validation.MetadataValidationRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MetadataValidationRegistry
+ */
+public class MetadataValidationRegistryTest {
+
+    private MetadataValidationRegistry registry;
+    private YamlMetadataService metadataService;
+    private DataSource dataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        registry = MetadataValidationRegistry.getInstance();
+        registry.shutdown();
+
+        metadataService = new YamlMetadataService();
+        metadataService.loadMetadata("farmers_registry");
+
+        // Database is unavailable - every section validates as missing its table
+        dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+                    if ("getConnection".equals(method.getName())) {
+                        throw new SQLException("database unavailable");
+                    }
+                    if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    }
+                    if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    }
+                    return null;
+                });
+    }
+
+    @After
+    public void tearDown() {
+        registry.shutdown();
+    }
+
+    private void awaitValidation() throws InterruptedException {
+        for (int i = 0; i < 100 && registry.isPending("farmers_registry"); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse("Validation should complete", registry.isPending("farmers_registry"));
+    }
+
+    @Test
+    public void testContentHashIsStable() throws Exception {
+        YamlMetadataService other = new YamlMetadataService();
+        other.loadMetadata("farmers_registry");
+
+        assertNotNull(metadataService.getContentHash());
+        assertEquals(64, metadataService.getContentHash().length());
+        assertEquals(metadataService.getContentHash(), other.getContentHash());
+    }
+
+    @Test
+    public void testValidatesInBackgroundOnce() throws Exception {
+        assertNull(registry.getEntry("farmers_registry"));
+
+        registry.validateIfChanged(metadataService, dataSource);
+        awaitValidation();
+
+        MetadataValidationRegistry.Entry entry = registry.getEntry("farmers_registry");
+        assertNotNull(entry);
+        assertEquals(metadataService.getContentHash(), entry.getContentHash());
+        assertFalse(entry.getResult().valid);
+
+        // Same YAML and schema version - the cached result is kept
+        registry.validateIfChanged(metadataService, dataSource);
+        assertFalse(registry.isPending("farmers_registry"));
+        assertSame(entry, registry.getEntry("farmers_registry"));
+    }
+
+    @Test
+    public void testRevalidateReplacesResult() throws Exception {
+        registry.validateIfChanged(metadataService, dataSource);
+        awaitValidation();
+        MetadataValidationRegistry.Entry first = registry.getEntry("farmers_registry");
+
+        registry.revalidate(metadataService, dataSource);
+        awaitValidation();
+
+        assertNotSame(first, registry.getEntry("farmers_registry"));
+    }
+}
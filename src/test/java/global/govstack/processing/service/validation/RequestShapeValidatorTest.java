@@ -0,0 +1,162 @@
+package global.govstack.processing.service.validation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import global.govstack.registration.receiver.service.metadata.GovStackDataMapper;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.service.validation.RequestShapeValidator;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RequestShapeValidator
+ */
+public class RequestShapeValidatorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private YamlMetadataService metadataService;
+    private RequestShapeValidator validator;
+
+    @Before
+    public void setUp() throws Exception {
+        metadataService = new YamlMetadataService();
+        metadataService.loadMetadata("farmers_registry");
+        validator = RequestShapeValidator.compile(metadataService);
+    }
+
+    private ObjectNode loadTestData() throws Exception {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("docs-metadata/test-data.json")) {
+            assertNotNull("test-data.json should be on the classpath", in);
+            return (ObjectNode) GovStackDataMapper.unwrapTestData(objectMapper.readTree(in));
+        }
+    }
+
+    private static Map<String, RequestShapeValidator.Violation> byPath(List<RequestShapeValidator.Violation> violations) {
+        Map<String, RequestShapeValidator.Violation> result = new HashMap<>();
+        for (RequestShapeValidator.Violation violation : violations) {
+            result.put(violation.path, violation);
+        }
+        return result;
+    }
+
+    @Test
+    public void testSampleRequestIsValid() throws Exception {
+        List<RequestShapeValidator.Violation> violations = validator.validate(loadTestData());
+        assertTrue("Sample data should pass: " + violations, violations.isEmpty());
+    }
+
+    @Test
+    public void testReportsAllMissingRequiredFields() throws Exception {
+        JsonNode root = objectMapper.readTree(getClass().getClassLoader().getResourceAsStream("test-missing-fields.json"));
+        Map<String, RequestShapeValidator.Violation> violations =
+                byPath(validator.validate(GovStackDataMapper.unwrapTestData(root)));
+
+        assertEquals("national_id", violations.get("identifiers[0].value").field);
+        assertEquals("required", violations.get("name.given[0]").code);
+        assertTrue(violations.containsKey("address[0].district"));
+        assertTrue(violations.containsKey("address[0].city"));
+        assertTrue(violations.containsKey("extension.declaration.declarationDate"));
+        assertTrue("Every required field is reported at once", violations.size() > 10);
+    }
+
+    @Test
+    public void testNationalIdIsSelectedByType() throws Exception {
+        ObjectNode data = loadTestData();
+        ArrayNode identifiers = (ArrayNode) data.get("identifiers");
+        ObjectNode nationalId = (ObjectNode) identifiers.remove(0);
+        identifiers.add(nationalId);
+        assertTrue(validator.validate(data).isEmpty());
+
+        nationalId.put("type", "Passport");
+        assertEquals("national_id", validator.validate(data).get(0).field);
+    }
+
+    @Test
+    public void testTypeMismatchesInFieldsAndArrays() throws Exception {
+        ObjectNode data = loadTestData();
+        ObjectNode income = (ObjectNode) data.get("extension").get("income");
+        income.put("averageAnnualIncome", "not a number");
+        ((ObjectNode) data.get("extension").get("declaration")).put("declarationDate", "22/01/2025");
+        ArrayNode crops = (ArrayNode) data.get("extension").get("agriculturalData").get("crops");
+        ((ObjectNode) crops.get(0)).remove("cropType");
+        ((ObjectNode) crops.get(0)).put("fertilizerApplied", "maybe");
+
+        Map<String, RequestShapeValidator.Violation> violations = byPath(validator.validate(data));
+
+        assertEquals("type", violations.get("extension.income.averageAnnualIncome").code);
+        assertEquals("type", violations.get("extension.declaration.declarationDate").code);
+        assertEquals("required", violations.get("extension.agriculturalData.crops[0].cropType").code);
+        assertEquals("type", violations.get("extension.agriculturalData.crops[0].fertilizerApplied").code);
+        assertEquals(4, violations.size());
+
+        JSONObject details = RequestShapeValidator.toDetails(validator.validate(data));
+        assertEquals(4, details.getInt("errorCount"));
+    }
+
+    @Test
+    public void testTransformationWithoutTypeFallsBackToItsName() throws Exception {
+        YamlMetadataService untyped = new YamlMetadataService() {
+            @Override
+            public Map<String, Map<String, Object>> getTransformations() {
+                Map<String, Map<String, Object>> transformations = new HashMap<>();
+                for (Map.Entry<String, Map<String, Object>> entry : super.getTransformations().entrySet()) {
+                    Map<String, Object> definition = new HashMap<>(entry.getValue());
+                    definition.remove("type");
+                    transformations.put(entry.getKey(), definition);
+                }
+                return transformations;
+            }
+        };
+        untyped.loadMetadata("farmers_registry");
+        ObjectNode data = loadTestData();
+        ((ObjectNode) data.get("extension").get("declaration")).put("declarationDate", "22/01/2025");
+
+        Map<String, RequestShapeValidator.Violation> violations = byPath(RequestShapeValidator.compile(untyped).validate(data));
+
+        assertEquals("type", violations.get("extension.declaration.declarationDate").code);
+    }
+
+    @Test
+    public void testViolationTextLeavesOutTheValue() throws Exception {
+        ObjectNode data = loadTestData();
+        ((ObjectNode) data.get("extension").get("income")).put("averageAnnualIncome", "Lešoto secret");
+
+        List<RequestShapeValidator.Violation> violations = validator.validate(data);
+
+        assertEquals(1, violations.size());
+        assertFalse(violations.toString().contains("secret"));
+        assertTrue(violations.get(0).message.contains("secret"));
+    }
+
+    @Test
+    public void testArraySectionShape() throws Exception {
+        ObjectNode data = loadTestData();
+        ObjectNode agriculturalData = (ObjectNode) data.get("extension").get("agriculturalData");
+        agriculturalData.put("crops", "maize");
+
+        List<RequestShapeValidator.Violation> violations = validator.validate(data);
+        assertEquals(1, violations.size());
+        assertEquals("extension.agriculturalData.crops", violations.get(0).path);
+
+        // Livestock rows are only checked when the control field enables the section
+        ObjectNode extension = (ObjectNode) data.get("extension");
+        agriculturalData.remove("crops");
+        extension.put("hasLivestock", "no");
+        ArrayNode livestock = extension.putArray("livestockDetails");
+        livestock.addObject().put("numberOfMale", 3);
+        assertTrue(validator.validate(data).isEmpty());
+
+        extension.put("hasLivestock", "yes");
+        assertEquals("extension.livestockDetails[0].livestockType", validator.validate(data).get(0).path);
+    }
+}
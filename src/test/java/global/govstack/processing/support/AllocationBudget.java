@@ -0,0 +1,73 @@
+package global.govstack.processing.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Allocation budgets in bytes per operation
+ *
+ * Budgets are read from allocation-budgets.properties on the test classpath with keys
+ * of the form {@code <serviceId>.<component>}; {@code default.<component>} applies to
+ * services without their own entry. Any entry can be overridden with the system
+ * property {@code allocation.budget.<key>}.
+ */
+public class AllocationBudget {
+
+    public static final String RESOURCE = "allocation-budgets.properties";
+    private static final String OVERRIDE_PREFIX = "allocation.budget.";
+    private static final int OFFENDERS_SHOWN = 10;
+
+    private final Properties budgets = new Properties();
+
+    public AllocationBudget() throws IOException {
+        try (InputStream in = AllocationBudget.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Allocation budgets not found on classpath: " + RESOURCE);
+            }
+            budgets.load(in);
+        }
+    }
+
+    /**
+     * Budget of a component of a service
+     * @return Bytes per operation
+     * @throws IllegalStateException if neither the service nor the default has a budget
+     */
+    public long get(String serviceId, String component) {
+        String key = serviceId + "." + component;
+        String value = System.getProperty(OVERRIDE_PREFIX + key, budgets.getProperty(key));
+        if (value == null) {
+            String defaultKey = "default." + component;
+            value = System.getProperty(OVERRIDE_PREFIX + defaultKey, budgets.getProperty(defaultKey));
+        }
+        if (value == null) {
+            throw new IllegalStateException("No allocation budget for " + key + " in " + RESOURCE);
+        }
+        return Long.parseLong(value.trim());
+    }
+
+    /**
+     * Compare a measurement against its budget
+     * @param measured Bytes per operation
+     * @param breakdown Bytes per operation of the parts of the measured work, the largest are reported
+     * @return A report of the measurement and its biggest offenders, starting with "OVER BUDGET" if exceeded
+     */
+    public static String report(String name, long measured, long budget, Map<String, Long> breakdown) {
+        StringBuilder report = new StringBuilder();
+        report.append(measured > budget ? "OVER BUDGET " : "")
+                .append(name).append(": ").append(measured).append(" bytes per operation, budget ")
+                .append(budget).append(" (").append(budget > 0 ? measured * 100 / budget : 0).append("%)");
+
+        List<Map.Entry<String, Long>> offenders = new ArrayList<>(breakdown.entrySet());
+        offenders.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        for (int i = 0; i < offenders.size() && i < OFFENDERS_SHOWN; i++) {
+            report.append("\n  ").append(String.format("%10d", offenders.get(i).getValue()))
+                    .append("  ").append(offenders.get(i).getKey());
+        }
+        return report.toString();
+    }
+}
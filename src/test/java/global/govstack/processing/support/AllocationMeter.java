@@ -0,0 +1,70 @@
+package global.govstack.processing.support;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures bytes allocated by the calling thread per operation
+ *
+ * Uses the HotSpot thread allocation counter, which counts every TLAB and direct heap
+ * allocation of a thread. The operation is warmed up first so JIT-compiled code, with
+ * its escape analysis, is what gets measured.
+ */
+public final class AllocationMeter {
+
+    /**
+     * Operation to measure
+     */
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS = supportedBean();
+
+    private AllocationMeter() {
+    }
+
+    private static com.sun.management.ThreadMXBean supportedBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        }
+        return null;
+    }
+
+    /**
+     * Whether this JVM can count allocations per thread
+     */
+    public static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    /**
+     * Bytes allocated by the calling thread so far
+     */
+    public static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Average bytes allocated per run of an operation
+     * @param warmup Unmeasured runs before measuring
+     * @param iterations Measured runs
+     */
+    public static long bytesPerOperation(int warmup, int iterations, Operation operation) throws Exception {
+        if (!isSupported()) {
+            throw new IllegalStateException("Thread allocation counting is not supported by this JVM");
+        }
+        for (int i = 0; i < warmup; i++) {
+            operation.run();
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+        return (allocatedBytes() - before) / iterations;
+    }
+}
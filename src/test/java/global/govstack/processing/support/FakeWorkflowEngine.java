@@ -0,0 +1,281 @@
+package global.govstack.processing.support;
+
+import org.joget.workflow.model.WorkflowActivity;
+import org.joget.workflow.model.WorkflowProcess;
+import org.joget.workflow.model.WorkflowProcessResult;
+import org.joget.workflow.model.service.WorkflowManager;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Linear workflow engine standing in for Joget's WorkflowManager
+ *
+ * Every process runs the same sequence of activities. Starting a process opens the
+ * first activity; force-completing an activity closes it and opens the next one, and
+ * the process completes after the last. Assignments and process variables are kept
+ * so tests can check them.
+ */
+public class FakeWorkflowEngine {
+
+    public static final String STATE_OPEN = "open.not_running.not_started";
+    public static final String STATE_RUNNING = "open.running";
+    public static final String STATE_COMPLETED = "closed.completed";
+
+    private final List<String> activityDefIds;
+    private final SimulatedLatency latency;
+    private final ConcurrentMap<String, ProcessInstance> processes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ProcessInstance> processesByActivity = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param activityDefIds Activities every process runs through, in order
+     */
+    public FakeWorkflowEngine(SimulatedLatency latency, String... activityDefIds) {
+        this.latency = latency;
+        this.activityDefIds = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(activityDefIds)));
+    }
+
+    /**
+     * Number of processes started
+     */
+    public int getProcessCount() {
+        return processes.size();
+    }
+
+    /**
+     * State of a process, or null if unknown
+     */
+    public String getProcessState(String processId) {
+        ProcessInstance process = processes.get(processId);
+        return process != null ? process.state : null;
+    }
+
+    /**
+     * Variables of a process, or null if unknown
+     */
+    public Map<String, String> getProcessVariables(String processId) {
+        ProcessInstance process = processes.get(processId);
+        if (process == null) {
+            return null;
+        }
+        synchronized (process) {
+            return new HashMap<>(process.variables);
+        }
+    }
+
+    /**
+     * Remove all processes
+     */
+    public void clear() {
+        processes.clear();
+        processesByActivity.clear();
+    }
+
+    /**
+     * WorkflowManager backed by this engine
+     */
+    public WorkflowManager asWorkflowManager() {
+        return InMemoryFormStore.proxy(WorkflowManager.class, this::invoke);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object invoke(Method method, Object[] args) {
+        latency.pause(SimulatedLatency.Operation.WORKFLOW);
+        switch (method.getName()) {
+            case "getConvertedLatestProcessDefId":
+                return args[0] != null ? ((String) args[0]).replace("#latest#", "#1#") : null;
+            case "processStart":
+                return start((String) args[0], (Map<String, String>) args[2]);
+            case "getActivityList":
+                return openActivities((String) args[0]);
+            case "activityStart":
+                return startActivity((String) args[0], (String) args[1]);
+            case "getActivityById":
+            case "getRunningActivityInfo":
+                return findActivity((String) args[0]);
+            case "processVariables":
+                ProcessInstance process = processes.get((String) args[0]);
+                if (process != null && args[1] != null) {
+                    synchronized (process) {
+                        process.variables.putAll((Map<String, String>) args[1]);
+                    }
+                }
+                return null;
+            case "assignmentForceComplete":
+                complete((String) args[1], (String) args[2]);
+                return null;
+            case "assignmentReassign":
+                reassign((String) args[2], (String) args[3]);
+                return null;
+            case "reevaluateAssignmentsForProcess":
+            case "reevaluateAssignmentsForActivity":
+                return null;
+            case "getRunningProcessById":
+                return describe(processes.get((String) args[0]));
+            case "getProcess":
+                return null;
+            default:
+                throw InMemoryFormStore.unsupported(method);
+        }
+    }
+
+    private WorkflowProcessResult start(String processDefId, Map<String, String> variables) {
+        String processId = sequence.incrementAndGet() + "_" + processDefId.replace('#', '_');
+        ProcessInstance process = new ProcessInstance(processId, processDefId);
+        if (variables != null) {
+            process.variables.putAll(variables);
+        }
+        processes.put(processId, process);
+        openNext(process);
+
+        WorkflowProcessResult result = new WorkflowProcessResult();
+        result.setProcess(describe(process));
+        return result;
+    }
+
+    private Collection<WorkflowActivity> openActivities(String processId) {
+        ProcessInstance process = processes.get(processId);
+        List<WorkflowActivity> activities = new ArrayList<>();
+        if (process != null) {
+            synchronized (process) {
+                for (ActivityInstance activity : process.activities) {
+                    if (!STATE_COMPLETED.equals(activity.state)) {
+                        activities.add(activity.describe(process.id));
+                    }
+                }
+            }
+        }
+        return activities;
+    }
+
+    private boolean startActivity(String processId, String activityDefId) {
+        ProcessInstance process = processes.get(processId);
+        if (process == null) {
+            return false;
+        }
+        synchronized (process) {
+            for (ActivityInstance activity : process.activities) {
+                if (activity.defId.equals(activityDefId) && STATE_OPEN.equals(activity.state)) {
+                    activity.state = STATE_RUNNING;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private WorkflowActivity findActivity(String activityId) {
+        ProcessInstance process = activityId != null ? processesByActivity.get(activityId) : null;
+        if (process == null) {
+            return null;
+        }
+        synchronized (process) {
+            ActivityInstance activity = process.find(activityId);
+            return activity != null ? activity.describe(process.id) : null;
+        }
+    }
+
+    private void complete(String processId, String activityId) {
+        ProcessInstance process = processes.get(processId);
+        if (process == null) {
+            throw new IllegalArgumentException("Unknown process: " + processId);
+        }
+        synchronized (process) {
+            ActivityInstance activity = process.find(activityId);
+            if (activity == null || STATE_COMPLETED.equals(activity.state)) {
+                throw new IllegalStateException("Activity not open: " + activityId);
+            }
+            activity.state = STATE_COMPLETED;
+            openNext(process);
+        }
+    }
+
+    private void reassign(String activityId, String username) {
+        ProcessInstance process = processesByActivity.get(activityId);
+        if (process == null) {
+            throw new IllegalArgumentException("Unknown activity: " + activityId);
+        }
+        synchronized (process) {
+            process.find(activityId).assignees = new String[]{username};
+        }
+    }
+
+    private void openNext(ProcessInstance process) {
+        synchronized (process) {
+            int next = process.activities.size();
+            if (next >= activityDefIds.size()) {
+                process.state = STATE_COMPLETED;
+                return;
+            }
+            String activityId = process.id + "_" + (next + 1) + "_" + activityDefIds.get(next);
+            process.activities.add(new ActivityInstance(activityId, activityDefIds.get(next)));
+            processesByActivity.put(activityId, process);
+        }
+    }
+
+    private static WorkflowProcess describe(ProcessInstance process) {
+        if (process == null) {
+            return null;
+        }
+        WorkflowProcess result = new WorkflowProcess();
+        result.setId(process.defId);
+        result.setInstanceId(process.id);
+        result.setState(process.state);
+        return result;
+    }
+
+    private static final class ProcessInstance {
+        final String id;
+        final String defId;
+        final Map<String, String> variables = new HashMap<>();
+        final List<ActivityInstance> activities = new ArrayList<>();
+        volatile String state = STATE_RUNNING;
+
+        ProcessInstance(String id, String defId) {
+            this.id = id;
+            this.defId = defId;
+        }
+
+        ActivityInstance find(String activityId) {
+            for (ActivityInstance activity : activities) {
+                if (activity.id.equals(activityId)) {
+                    return activity;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class ActivityInstance {
+        final String id;
+        final String defId;
+        String state = STATE_OPEN;
+        String[] assignees = new String[0];
+
+        ActivityInstance(String id, String defId) {
+            this.id = id;
+            this.defId = defId;
+        }
+
+        WorkflowActivity describe(String processId) {
+            WorkflowActivity activity = new WorkflowActivity();
+            activity.setId(id);
+            activity.setName(defId);
+            activity.setActivityDefId(defId);
+            activity.setProcessId(processId);
+            activity.setState(state);
+            activity.setAssignmentUsers(assignees.clone());
+            return activity;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package global.govstack.processing.support;
+
+import org.joget.apps.app.service.AppService;
+import org.joget.apps.form.dao.FormDataDao;
+import org.joget.apps.form.model.Form;
+import org.joget.apps.form.model.FormRow;
+import org.joget.apps.form.model.FormRowSet;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Concurrent map-backed form data store standing in for Joget's AppService and FormDataDao
+ *
+ * Rows are kept per table and keyed by row ID. Only the calls the plugin makes are
+ * supported; any other method of the Joget interfaces throws UnsupportedOperationException
+ * so a test fails loudly when production code starts relying on something new.
+ *
+ * Find conditions are limited to no condition or a single "WHERE c_column = ?". The only SQL
+ * understood is the identifier scan, "SELECT id, c_column FROM table [WHERE id > ?] ORDER BY id";
+ * any other statement fails with an SQLException as if there were no database.
+ */
+public class InMemoryFormStore {
+
+    private static final Pattern SINGLE_COLUMN_CONDITION =
+            Pattern.compile("\\s*WHERE\\s+(?:c_)?(\\w+)\\s*=\\s*\\?\\s*", Pattern.CASE_INSENSITIVE);
+    private static final Pattern KEYSET_SCAN = Pattern.compile(
+            "SELECT id, c_(\\w+) FROM (?:app_fd_)?(\\w+)( WHERE id > \\?)? ORDER BY id", Pattern.CASE_INSENSITIVE);
+
+    private final ConcurrentMap<String, ConcurrentMap<String, FormRow>> tables = new ConcurrentHashMap<>();
+    private final Map<String, String> tableNames;
+    private final SimulatedLatency latency;
+
+    /**
+     * @param tableNames Map of form ID to table name, forms not listed use their ID
+     */
+    public InMemoryFormStore(Map<String, String> tableNames, SimulatedLatency latency) {
+        this.tableNames = tableNames;
+        this.latency = latency;
+    }
+
+    /**
+     * Table used for a form
+     */
+    public String getTableName(String formId) {
+        String tableName = tableNames.get(formId);
+        return tableName != null ? tableName : formId;
+    }
+
+    /**
+     * Insert rows directly, e.g. master data code tables
+     */
+    public void seed(String formId, Collection<FormRow> rows) {
+        ConcurrentMap<String, FormRow> table = table(getTableName(formId));
+        for (FormRow row : rows) {
+            table.put(row.getId(), copy(row));
+        }
+    }
+
+    /**
+     * Stored row by ID
+     * @return A copy of the row, or null if not stored
+     */
+    public FormRow getRow(String formId, String id) {
+        FormRow row = table(getTableName(formId)).get(id);
+        return row != null ? copy(row) : null;
+    }
+
+    /**
+     * All stored rows of a form
+     * @return Copies of the rows, in no particular order
+     */
+    public List<FormRow> getRows(String formId) {
+        List<FormRow> rows = new ArrayList<>();
+        for (FormRow row : table(getTableName(formId)).values()) {
+            rows.add(copy(row));
+        }
+        return rows;
+    }
+
+    /**
+     * Number of rows stored for a form
+     */
+    public int count(String formId) {
+        return table(getTableName(formId)).size();
+    }
+
+    /**
+     * Remove all stored rows
+     */
+    public void clear() {
+        tables.clear();
+    }
+
+    /**
+     * AppService backed by this store
+     */
+    public AppService asAppService() {
+        return proxy(AppService.class, this::invokeAppService);
+    }
+
+    /**
+     * FormDataDao backed by this store
+     */
+    public FormDataDao asFormDataDao() {
+        return proxy(FormDataDao.class, this::invokeFormDataDao);
+    }
+
+    /**
+     * DataSource whose connections only run the identifier scan over this store
+     */
+    public DataSource asDataSource() {
+        return proxy(DataSource.class, (method, args) -> {
+            if ("getConnection".equals(method.getName())) {
+                return proxy(Connection.class, this::invokeConnection);
+            }
+            throw unsupported(method);
+        });
+    }
+
+    private Object invokeConnection(Method method, Object[] args) throws SQLException {
+        switch (method.getName()) {
+            case "prepareStatement":
+                Matcher matcher = KEYSET_SCAN.matcher((String) args[0]);
+                if (!matcher.matches()) {
+                    throw new SQLException("No database in the in-memory Joget: " + args[0]);
+                }
+                return keysetScan(matcher.group(2), matcher.group(1), matcher.group(3) != null);
+            case "close":
+                return null;
+            default:
+                throw new SQLException("No database in the in-memory Joget");
+        }
+    }
+
+    private PreparedStatement keysetScan(String tableName, String column, boolean after) {
+        Object[] state = {null, 0};
+        return proxy(PreparedStatement.class, (method, args) -> {
+            switch (method.getName()) {
+                case "setString":
+                    state[0] = args[1];
+                    return null;
+                case "setMaxRows":
+                    state[1] = args[0];
+                    return null;
+                case "setFetchSize":
+                case "close":
+                    return null;
+                case "executeQuery":
+                    latency.pause(SimulatedLatency.Operation.QUERY);
+                    List<FormRow> rows = new ArrayList<>();
+                    for (FormRow row : table(tableName).values()) {
+                        if (!after || row.getId().compareTo((String) state[0]) > 0) {
+                            rows.add(row);
+                        }
+                    }
+                    rows.sort(Comparator.comparing(FormRow::getId));
+                    int maxRows = (Integer) state[1];
+                    return resultSet(rows.subList(0, maxRows > 0 ? Math.min(maxRows, rows.size()) : rows.size()), column);
+                default:
+                    throw unsupported(method);
+            }
+        });
+    }
+
+    private static ResultSet resultSet(List<FormRow> rows, String column) {
+        int[] position = {-1};
+        return proxy(ResultSet.class, (method, args) -> {
+            switch (method.getName()) {
+                case "next":
+                    return ++position[0] < rows.size();
+                case "getString":
+                    FormRow row = rows.get(position[0]);
+                    return (Integer) args[0] == 1 ? row.getId() : row.getProperty(column);
+                case "close":
+                    return null;
+                default:
+                    throw unsupported(method);
+            }
+        });
+    }
+
+    private Object invokeAppService(Method method, Object[] args) {
+        switch (method.getName()) {
+            case "viewDataForm":
+                latency.pause(SimulatedLatency.Operation.FORM_LOAD);
+                return form((String) args[2]);
+            case "storeFormData":
+                latency.pause(SimulatedLatency.Operation.FORM_STORE);
+                return store(((Form) args[0]).getPropertyString("tableName"), (FormRowSet) args[1], (String) args[2]);
+            case "loadFormData":
+                latency.pause(SimulatedLatency.Operation.QUERY);
+                if (args.length == 2) {
+                    return load(((Form) args[0]).getPropertyString("tableName"), (String) args[1]);
+                }
+                return load(getTableName((String) args[2]), (String) args[3]);
+            case "getFormTableName":
+                return getTableName((String) args[1]);
+            default:
+                throw unsupported(method);
+        }
+    }
+
+    private Object invokeFormDataDao(Method method, Object[] args) {
+        String tableName = args.length > 1 && args[1] instanceof String ? (String) args[1] : null;
+        switch (method.getName()) {
+            case "find":
+                latency.pause(SimulatedLatency.Operation.QUERY);
+                return page(find(tableName, (String) args[2], (Object[]) args[3]), (Integer) args[6], (Integer) args[7]);
+            case "count":
+                latency.pause(SimulatedLatency.Operation.QUERY);
+                return (long) find(tableName, (String) args[2], (Object[]) args[3]).size();
+            case "load":
+                latency.pause(SimulatedLatency.Operation.QUERY);
+                FormRowSet loaded = load(tableName, (String) args[2]);
+                return loaded.isEmpty() ? null : loaded.get(0);
+            case "delete":
+                latency.pause(SimulatedLatency.Operation.QUERY);
+                ConcurrentMap<String, FormRow> table = table(tableName);
+                for (FormRow row : (FormRowSet) args[2]) {
+                    table.remove(row.getId());
+                }
+                return null;
+            case "saveOrUpdate":
+                latency.pause(SimulatedLatency.Operation.FORM_STORE);
+                store(tableName, (FormRowSet) args[2], null);
+                return null;
+            default:
+                throw unsupported(method);
+        }
+    }
+
+    private Form form(String formId) {
+        Form form = new Form();
+        form.setProperty("id", formId);
+        form.setProperty("tableName", getTableName(formId));
+        return form;
+    }
+
+    private FormRowSet store(String tableName, FormRowSet rows, String primaryKey) {
+        ConcurrentMap<String, FormRow> table = table(tableName);
+        FormRowSet stored = new FormRowSet();
+        stored.setMultiRow(rows.isMultiRow());
+        for (FormRow row : rows) {
+            FormRow copy = copy(row);
+            if (copy.getId() == null || copy.getId().isEmpty()) {
+                copy.setId(primaryKey);
+            }
+            // Joget merges the submitted fields into an existing row
+            table.merge(copy.getId(), copy, (existing, update) -> {
+                FormRow merged = copy(existing);
+                merged.putAll(update);
+                return merged;
+            });
+            stored.add(copy);
+        }
+        return stored;
+    }
+
+    private FormRowSet load(String tableName, String id) {
+        FormRowSet result = new FormRowSet();
+        FormRow row = id != null ? table(tableName).get(id) : null;
+        if (row != null) {
+            result.add(copy(row));
+        }
+        return result;
+    }
+
+    private FormRowSet find(String tableName, String condition, Object[] params) {
+        String column = null;
+        Object value = null;
+        if (condition != null && !condition.trim().isEmpty()) {
+            Matcher matcher = SINGLE_COLUMN_CONDITION.matcher(condition);
+            if (!matcher.matches() || params == null || params.length != 1) {
+                throw new UnsupportedOperationException("Unsupported find condition: " + condition);
+            }
+            column = matcher.group(1);
+            value = params[0];
+        }
+
+        FormRowSet result = new FormRowSet();
+        for (FormRow row : table(tableName).values()) {
+            if (column == null || String.valueOf(value).equals(row.getProperty(column))) {
+                result.add(copy(row));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Apply a find's start and rows, ordering by id so consecutive pages do not overlap
+     */
+    private static FormRowSet page(FormRowSet rows, Integer start, Integer count) {
+        if (start == null && count == null) {
+            return rows;
+        }
+        List<FormRow> sorted = new ArrayList<>(rows);
+        sorted.sort(Comparator.comparing(FormRow::getId, Comparator.nullsFirst(Comparator.<String>naturalOrder())));
+        int from = Math.min(start != null ? start : 0, sorted.size());
+        int to = count != null && count >= 0 ? Math.min(from + count, sorted.size()) : sorted.size();
+        FormRowSet page = new FormRowSet();
+        page.addAll(sorted.subList(from, to));
+        return page;
+    }
+
+    private ConcurrentMap<String, FormRow> table(String tableName) {
+        return tables.computeIfAbsent(tableName, name -> new ConcurrentHashMap<>());
+    }
+
+    private static FormRow copy(FormRow row) {
+        FormRow copy = new FormRow();
+        copy.putAll(row);
+        return copy;
+    }
+
+    static UnsupportedOperationException unsupported(Method method) {
+        return new UnsupportedOperationException("Not supported by the in-memory Joget: "
+                + method.getDeclaringClass().getSimpleName() + "." + method.getName());
+    }
+
+    /**
+     * Handler for the interface methods of a stand-in, Object methods are answered by the proxy
+     */
+    interface Dispatcher {
+        Object invoke(Method method, Object[] args) throws Exception;
+    }
+
+    static <T> T proxy(Class<T> type, Dispatcher dispatcher) {
+        Object instance = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "InMemory" + type.getSimpleName();
+                }
+            }
+            return dispatcher.invoke(method, args != null ? args : new Object[0]);
+        });
+        return type.cast(instance);
+    }
+}
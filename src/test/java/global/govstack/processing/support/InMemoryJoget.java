@@ -0,0 +1,190 @@
+package global.govstack.processing.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import global.govstack.registration.receiver.service.masterdata.MasterDataCache;
+import global.govstack.registration.receiver.service.metadata.YamlMetadataService;
+import global.govstack.registration.receiver.util.FormDefinitionReader;
+import org.joget.apps.app.model.AppDefinition;
+import org.joget.apps.app.model.FormDefinition;
+import org.joget.apps.app.service.AppUtil;
+import org.joget.apps.form.model.FormRow;
+import org.joget.workflow.model.service.WorkflowUserManager;
+import org.springframework.context.ApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory stand-in for the Joget services the plugin uses
+ *
+ * Installs an application context whose appService and formDataDao beans are backed
+ * by an {@link InMemoryFormStore}, whose workflowManager is a {@link FakeWorkflowEngine}
+ * and whose workflowUserManager keeps the current user per thread. The app definition
+ * carries the form definitions of a directory of exported forms (doc-forms), so the
+ * LOV option index and table names work as on a server. There is no database: the
+ * setupDataSource bean only runs the identifier index scan, so background schema
+ * validation only logs.
+ *
+ * AppUtil keeps the current app definition per thread, so every thread that calls the
+ * plugin must call {@link #bindCurrentThread()} first.
+ */
+public class InMemoryJoget implements AutoCloseable {
+
+    /** Activities of the registration process in server-config.json */
+    public static final String[] REGISTRATION_ACTIVITIES = {"submitFarmerApplication", "cheifReviewApplication"};
+
+    private final AppDefinition appDefinition;
+    private final SimulatedLatency latency = new SimulatedLatency();
+    private final InMemoryFormStore formStore;
+    private final FakeWorkflowEngine workflowEngine;
+    private final ThreadUserManager userManager = new ThreadUserManager();
+    private final Map<String, Object> beans = new HashMap<>();
+
+    /**
+     * @param formDirectory Directory of exported form definitions, may be null for an app without forms
+     */
+    public InMemoryJoget(File formDirectory) throws IOException {
+        Map<String, String> forms = formDirectory != null
+                ? FormDefinitionReader.readFromDirectory(formDirectory) : new HashMap<>();
+        Map<String, String> tableNames = new HashMap<>();
+        List<FormDefinition> definitions = new ArrayList<>();
+        ObjectMapper mapper = new ObjectMapper();
+
+        for (Map.Entry<String, String> form : forms.entrySet()) {
+            JsonNode tableName = mapper.readTree(form.getValue()).path("properties").path("tableName");
+            FormDefinition definition = new FormDefinition();
+            definition.setId(form.getKey());
+            definition.setJson(form.getValue());
+            if (!tableName.asText().isEmpty()) {
+                definition.setTableName(tableName.asText());
+                tableNames.put(form.getKey(), tableName.asText());
+            }
+            definitions.add(definition);
+        }
+
+        this.appDefinition = new AppDefinition();
+        appDefinition.setId("inMemoryApp");
+        appDefinition.setVersion(1L);
+        appDefinition.setFormDefinitionList(definitions);
+
+        this.formStore = new InMemoryFormStore(tableNames, latency);
+        this.workflowEngine = new FakeWorkflowEngine(latency, REGISTRATION_ACTIVITIES);
+
+        beans.put("appService", formStore.asAppService());
+        beans.put("formDataDao", formStore.asFormDataDao());
+        beans.put("workflowManager", workflowEngine.asWorkflowManager());
+        beans.put("workflowUserManager", userManager);
+        beans.put("setupDataSource", formStore.asDataSource());
+    }
+
+    /**
+     * Make this the application context seen through AppUtil and bind the calling thread
+     * @return this, for chaining
+     */
+    public InMemoryJoget install() {
+        new AppUtil().setApplicationContext(InMemoryFormStore.proxy(ApplicationContext.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getBean":
+                    Object bean = args[0] instanceof String ? beans.get(args[0]) : null;
+                    if (bean == null) {
+                        throw new IllegalArgumentException("No bean in the in-memory Joget: " + args[0]);
+                    }
+                    return bean;
+                case "containsBean":
+                    return beans.containsKey(args[0]);
+                default:
+                    throw InMemoryFormStore.unsupported(method);
+            }
+        }));
+        bindCurrentThread();
+        return this;
+    }
+
+    /**
+     * Fill the master data code tables of a service with the given codes
+     * Each code becomes a row whose code and label are the code itself
+     */
+    public void seedMasterData(YamlMetadataService metadataService, Collection<String> codes) {
+        for (Map<String, String> config : metadataService.getMasterDataSources().values()) {
+            MasterDataCache.Source source = MasterDataCache.Source.fromConfig(config);
+            List<FormRow> rows = new ArrayList<>();
+            for (String code : codes) {
+                FormRow row = new FormRow();
+                row.setId(code);
+                row.setProperty(source.getCodeColumn(), code);
+                row.setProperty(source.getLabelColumn(), code);
+                rows.add(row);
+            }
+            formStore.seed(source.getFormId(), rows);
+        }
+    }
+
+    /**
+     * Set the current app definition of the calling thread
+     */
+    public void bindCurrentThread() {
+        AppUtil.setCurrentAppDefinition(appDefinition);
+    }
+
+    /**
+     * Remove the application context and unbind the calling thread
+     */
+    @Override
+    public void close() {
+        AppUtil.setCurrentAppDefinition(null);
+        new AppUtil().setApplicationContext(null);
+    }
+
+    public AppDefinition getAppDefinition() {
+        return appDefinition;
+    }
+
+    public SimulatedLatency getLatency() {
+        return latency;
+    }
+
+    public InMemoryFormStore getFormStore() {
+        return formStore;
+    }
+
+    public FakeWorkflowEngine getWorkflowEngine() {
+        return workflowEngine;
+    }
+
+    public WorkflowUserManager getUserManager() {
+        return userManager;
+    }
+
+    /**
+     * Workflow user manager that only tracks the current user of each thread
+     */
+    static class ThreadUserManager extends WorkflowUserManager {
+        private final ThreadLocal<String> currentUser = new ThreadLocal<>();
+
+        @Override
+        public String getCurrentUsername() {
+            return currentUser.get();
+        }
+
+        @Override
+        public void setCurrentThreadUser(String username) {
+            currentUser.set(username);
+        }
+
+        @Override
+        public void clearCurrentThreadUser() {
+            currentUser.remove();
+        }
+
+        @Override
+        public void setSystemThreadUser(boolean system) {
+            // No permissions are checked in memory, so the system user needs no state
+        }
+    }
+}
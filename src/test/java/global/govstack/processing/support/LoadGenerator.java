@@ -0,0 +1,212 @@
+package global.govstack.processing.support;
+
+import global.govstack.registration.receiver.service.metrics.LatencyHistogram;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load generator
+ *
+ * Runs a fixed number of requests on a fixed number of threads, each thread sending
+ * its next request as soon as the previous one returns. Warm-up requests run first
+ * on the same threads and are not measured. The report gives throughput, latency
+ * percentiles and the bytes allocated per request where the JVM can measure them.
+ */
+public class LoadGenerator {
+
+    private static final int MAX_RECORDED_ERRORS = 10;
+
+    /**
+     * One request of the load
+     */
+    public interface Request {
+        /**
+         * @param sequence Number of the request, from 0; warm-up requests are numbered after the measured ones
+         */
+        void send(int sequence) throws Exception;
+    }
+
+    private final int concurrency;
+    private final int requests;
+    private int warmupRequests;
+    private Runnable threadSetup = () -> { };
+
+    public LoadGenerator(int concurrency, int requests) {
+        if (concurrency < 1 || requests < 1) {
+            throw new IllegalArgumentException("Concurrency and request count must be positive");
+        }
+        this.concurrency = concurrency;
+        this.requests = requests;
+    }
+
+    /**
+     * Unmeasured requests to send before the measured ones
+     */
+    public LoadGenerator withWarmup(int warmupRequests) {
+        this.warmupRequests = Math.max(0, warmupRequests);
+        return this;
+    }
+
+    /**
+     * Code to run once on each load thread before its first request, e.g. binding thread-local context
+     */
+    public LoadGenerator withThreadSetup(Runnable threadSetup) {
+        this.threadSetup = threadSetup;
+        return this;
+    }
+
+    /**
+     * Run the load and wait for it to finish
+     */
+    public Report run(Request request) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) threads : null;
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        AtomicInteger warmupCounter = new AtomicInteger();
+        AtomicInteger counter = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicLong allocatedBytes = new AtomicLong();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        CountDownLatch warmedUp = new CountDownLatch(concurrency);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(concurrency);
+
+        for (int t = 0; t < concurrency; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    threadSetup.run();
+                    for (int i = warmupCounter.getAndIncrement(); i < warmupRequests; i = warmupCounter.getAndIncrement()) {
+                        send(request, requests + i, null, null);
+                    }
+                    warmedUp.countDown();
+                    start.await();
+
+                    long threadId = Thread.currentThread().getId();
+                    long allocatedBefore = allocations != null ? allocations.getThreadAllocatedBytes(threadId) : 0;
+                    for (int i = counter.getAndIncrement(); i < requests; i = counter.getAndIncrement()) {
+                        long begin = System.nanoTime();
+                        if (!send(request, i, failures, errors)) {
+                            continue;
+                        }
+                        latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin));
+                    }
+                    if (allocations != null) {
+                        allocatedBytes.addAndGet(allocations.getThreadAllocatedBytes(threadId) - allocatedBefore);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    warmedUp.countDown();
+                    done.countDown();
+                }
+            }, "load-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        warmedUp.await();
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsedNanos = System.nanoTime() - begin;
+
+        return new Report(concurrency, requests, failures.get(), elapsedNanos, latencies,
+                allocations != null ? allocatedBytes.get() : -1, errors);
+    }
+
+    private static boolean send(Request request, int sequence, AtomicInteger failures, List<String> errors) {
+        try {
+            request.send(sequence);
+            return true;
+        } catch (Exception e) {
+            if (failures != null) {
+                failures.incrementAndGet();
+                if (errors.size() < MAX_RECORDED_ERRORS) {
+                    errors.add(sequence + ": " + e);
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Outcome of a load run
+     */
+    public static class Report {
+        private final int concurrency;
+        private final int requests;
+        private final int failures;
+        private final long elapsedNanos;
+        private final LatencyHistogram latencies;
+        private final long allocatedBytes;
+        private final List<String> errors;
+
+        Report(int concurrency, int requests, int failures, long elapsedNanos,
+               LatencyHistogram latencies, long allocatedBytes, List<String> errors) {
+            this.concurrency = concurrency;
+            this.requests = requests;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+            this.allocatedBytes = allocatedBytes;
+            this.errors = new ArrayList<>(errors);
+        }
+
+        public int getRequests() {
+            return requests;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * First errors of the run, at most ten
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public double getThroughputPerSecond() {
+            return requests / (elapsedNanos / 1_000_000_000.0);
+        }
+
+        /**
+         * Latency of successful requests at a quantile, in microseconds
+         */
+        public long getLatencyMicros(double quantile) {
+            return latencies.getValueAtQuantile(quantile);
+        }
+
+        /**
+         * Bytes allocated by the load threads per request, or -1 if the JVM cannot measure it
+         */
+        public long getAllocatedBytesPerRequest() {
+            return allocatedBytes < 0 ? -1 : allocatedBytes / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%d requests on %d threads in %.2f s: %.1f req/s, %d failed, "
+                            + "latency p50=%.2f ms p90=%.2f ms p99=%.2f ms max=%.2f ms, %s allocated per request",
+                    requests, concurrency, elapsedNanos / 1_000_000_000.0, getThroughputPerSecond(), failures,
+                    getLatencyMicros(0.5) / 1000.0, getLatencyMicros(0.9) / 1000.0,
+                    getLatencyMicros(0.99) / 1000.0, latencies.getMaxMicros() / 1000.0,
+                    allocatedBytes < 0 ? "unknown bytes" : (getAllocatedBytesPerRequest() / 1024) + " KB");
+        }
+    }
+}
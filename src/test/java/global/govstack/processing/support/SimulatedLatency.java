@@ -0,0 +1,71 @@
+package global.govstack.processing.support;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Artificial latency for the in-memory Joget stand-ins
+ *
+ * Each operation type can be given a base delay and a random jitter so load tests
+ * can approximate the database and workflow engine of a real server. All delays
+ * default to zero.
+ */
+public class SimulatedLatency {
+
+    /**
+     * Operation types that can be delayed
+     */
+    public enum Operation {
+        /** Loading a form definition (appService.viewDataForm) */
+        FORM_LOAD,
+        /** Storing form rows (appService.storeFormData, formDataDao.saveOrUpdate) */
+        FORM_STORE,
+        /** Reading or deleting rows (formDataDao.find, load, delete) */
+        QUERY,
+        /** Any workflow engine call */
+        WORKFLOW
+    }
+
+    private final Map<Operation, long[]> delays = new EnumMap<>(Operation.class);
+
+    /**
+     * Set the delay of an operation type
+     * @param baseMicros Fixed delay in microseconds
+     * @param jitterMicros Random extra delay of up to this many microseconds
+     * @return this, for chaining
+     */
+    public synchronized SimulatedLatency set(Operation operation, long baseMicros, long jitterMicros) {
+        delays.put(operation, new long[]{Math.max(0, baseMicros), Math.max(0, jitterMicros)});
+        return this;
+    }
+
+    /**
+     * Set the same delay for every operation type
+     */
+    public synchronized SimulatedLatency setAll(long baseMicros, long jitterMicros) {
+        for (Operation operation : Operation.values()) {
+            set(operation, baseMicros, jitterMicros);
+        }
+        return this;
+    }
+
+    /**
+     * Block the calling thread for the configured delay of an operation
+     */
+    public void pause(Operation operation) {
+        long[] delay;
+        synchronized (this) {
+            delay = delays.get(operation);
+        }
+        if (delay == null) {
+            return;
+        }
+        long micros = delay[0] + (delay[1] > 0 ? ThreadLocalRandom.current().nextLong(delay[1] + 1) : 0);
+        if (micros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package global.govstack.processing.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import global.govstack.registration.receiver.util.DatabaseSchemaExtractor;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for DatabaseSchemaExtractor bulk extraction and streaming output
+ * Uses a minimal in-memory JDBC fake that answers the INFORMATION_SCHEMA queries
+ */
+public class DatabaseSchemaExtractorTest {
+
+    private static final int TABLE_COUNT = 7;
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger maxOpenConnections = new AtomicInteger();
+    private final AtomicInteger countQueries = new AtomicInteger();
+    private DataSource dataSource;
+    // Bulk key query fails for batches containing this table
+    private String failingTable;
+    private boolean metadataFails;
+    private String productName = "MySQL";
+
+    @Before
+    public void setUp() {
+        dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+                    if ("getConnection".equals(method.getName())) {
+                        maxOpenConnections.accumulateAndGet(openConnections.incrementAndGet(), Math::max);
+                        return connection();
+                    }
+                    if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    }
+                    if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    }
+                    return null;
+                });
+    }
+
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getCatalog":
+                            return "jwdb";
+                        case "prepareStatement":
+                            return statement((String) args[0]);
+                        case "getMetaData":
+                            return metaData();
+                        case "createStatement":
+                            return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                                    new Class<?>[]{Statement.class}, (p, m, a) -> {
+                                        if ("executeQuery".equals(m.getName())) {
+                                            countQueries.incrementAndGet();
+                                            return resultSet(Collections.singletonList(row("1", 42L)));
+                                        }
+                                        return null;
+                                    });
+                        case "close":
+                            openConnections.decrementAndGet();
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private PreparedStatement statement(String sql) {
+        List<String> params = new ArrayList<>();
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setString":
+                            params.add((String) args[1]);
+                            return null;
+                        case "executeQuery":
+                            return resultSet(rowsFor(sql, params.subList(1, params.size())));
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    /**
+     * DatabaseMetaData for the per-table fallback
+     */
+    private DatabaseMetaData metaData() {
+        return (DatabaseMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{DatabaseMetaData.class}, (proxy, method, args) -> {
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    switch (method.getName()) {
+                        case "getDatabaseProductName":
+                            return productName;
+                        case "getColumns":
+                            if (metadataFails) {
+                                throw new SQLException("metadata unavailable");
+                            }
+                            String pattern = (String) args[2];
+                            for (int i = 0; i < TABLE_COUNT; i++) {
+                                String table = "app_fd_form" + i;
+                                if (pattern.endsWith("%") || pattern.equals(table)) {
+                                    rows.add(row("TABLE_NAME", table, "COLUMN_NAME", "id", "TYPE_NAME", "varchar"));
+                                }
+                            }
+                            return resultSet(rows);
+                        case "getPrimaryKeys":
+                            rows.add(row("COLUMN_NAME", "id"));
+                            return resultSet(rows);
+                        case "getImportedKeys":
+                        case "getIndexInfo":
+                            return resultSet(rows);
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private List<Map<String, Object>> rowsFor(String sql, List<String> tables) throws SQLException {
+        if (sql.contains("KEY_COLUMN_USAGE") && tables.contains(failingTable)) {
+            throw new SQLException("bulk query failed");
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        if (sql.contains("COUNT(")) {
+            countQueries.incrementAndGet();
+        } else if (sql.contains("INFORMATION_SCHEMA.TABLES")) {
+            for (int i = 0; i < TABLE_COUNT; i++) {
+                rows.add(row("TABLE_NAME", "app_fd_form" + i, "TABLE_ROWS", 1000L * i));
+            }
+            rows.add(row("TABLE_NAME", "dir_user", "TABLE_ROWS", 5L));
+        } else if (sql.contains("INFORMATION_SCHEMA.COLUMNS")) {
+            for (String table : tables) {
+                rows.add(row("TABLE_NAME", table, "COLUMN_NAME", "id", "DATA_TYPE", "varchar",
+                        "CHARACTER_MAXIMUM_LENGTH", 255, "IS_NULLABLE", "NO"));
+                rows.add(row("TABLE_NAME", table, "COLUMN_NAME", "c_parent_id", "DATA_TYPE", "varchar",
+                        "CHARACTER_MAXIMUM_LENGTH", 255, "IS_NULLABLE", "YES"));
+            }
+        } else if (sql.contains("KEY_COLUMN_USAGE")) {
+            for (String table : tables) {
+                rows.add(row("TABLE_NAME", table, "COLUMN_NAME", "id", "CONSTRAINT_NAME", "PRIMARY"));
+                rows.add(row("TABLE_NAME", table, "COLUMN_NAME", "c_parent_id", "CONSTRAINT_NAME", "fk_parent",
+                        "REFERENCED_TABLE_NAME", "app_fd_form0", "REFERENCED_COLUMN_NAME", "id"));
+            }
+        } else if (sql.contains("STATISTICS")) {
+            for (String table : tables) {
+                rows.add(row("TABLE_NAME", table, "INDEX_NAME", "PRIMARY", "COLUMN_NAME", "id"));
+            }
+        }
+        return rows;
+    }
+
+    private static Map<String, Object> row(Object... keyValues) {
+        Map<String, Object> row = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            row.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return row;
+    }
+
+    private ResultSet resultSet(List<Map<String, Object>> rows) {
+        Iterator<Map<String, Object>> iterator = rows.iterator();
+        Map<String, Object>[] current = new Map[1];
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            current[0] = iterator.hasNext() ? iterator.next() : null;
+                            return current[0] != null;
+                        case "getString":
+                            Object value = current[0].get(args[0]);
+                            return value != null ? value.toString() : null;
+                        case "getInt":
+                            Object number = current[0].get(args[0]);
+                            return number != null ? ((Number) number).intValue() : 0;
+                        case "getLong":
+                            Object longValue = current[0].get(String.valueOf(args[0]));
+                            return longValue != null ? ((Number) longValue).longValue() : 0L;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    public void testBulkExtractionReadsAllTablesInBatches() {
+        DatabaseSchemaExtractor extractor = new DatabaseSchemaExtractor(dataSource);
+        extractor.setBatchSize(3);
+        extractor.setParallelism(2);
+
+        Map<String, DatabaseSchemaExtractor.TableInfo> schema = extractor.extractSchemaBulk("APP_FD_");
+
+        assertEquals(TABLE_COUNT, schema.size());
+        assertFalse(schema.containsKey("dir_user"));
+
+        DatabaseSchemaExtractor.TableInfo table = schema.get("app_fd_form3");
+        assertEquals(2, table.columns.size());
+        assertEquals("c_parent_id", table.columns.get(1).name);
+        assertTrue(table.columns.get(1).nullable);
+        assertEquals(Arrays.asList("id"), table.primaryKeys);
+        assertEquals("app_fd_form0", table.foreignKeys.get(0).referencedTable);
+        assertEquals(Arrays.asList("id"), table.indexes.get("PRIMARY"));
+        assertEquals(3000L, table.rowCount);
+        assertTrue(table.rowCountEstimated);
+
+        assertEquals("Row counts must come from statistics", 0, countQueries.get());
+        assertEquals("All connections must be closed", 0, openConnections.get());
+        // One table-list connection plus at most two batch connections
+        assertTrue(maxOpenConnections.get() <= 3);
+    }
+
+    @Test
+    public void testStreamingReportAndJson() throws Exception {
+        DatabaseSchemaExtractor extractor = new DatabaseSchemaExtractor(dataSource);
+        Map<String, DatabaseSchemaExtractor.TableInfo> schema = new LinkedHashMap<>(extractor.extractSchemaBulk(null));
+
+        StringWriter report = new StringWriter();
+        extractor.writeSchemaReport(schema, report);
+        assertTrue(report.toString().contains("Total Tables: " + (TABLE_COUNT + 1)));
+        assertTrue(report.toString().contains("### Table: `app_fd_form2`"));
+        assertTrue(report.toString().contains("- Row Count: ~2000"));
+        assertTrue(extractor.generateSchemaReport(schema).endsWith(report.toString().substring(report.toString().indexOf("## Summary"))));
+
+        StringWriter json = new StringWriter();
+        extractor.writeSchemaJson(schema, json);
+        JsonNode parsed = new ObjectMapper().readTree(json.toString());
+        assertEquals(TABLE_COUNT + 1, parsed.size());
+        assertEquals("id", parsed.get("app_fd_form1").get("primaryKeys").get(0).asText());
+    }
+
+    @Test
+    public void testFailedBatchFallsBackToPerTableExtraction() {
+        failingTable = "app_fd_form4";
+        DatabaseSchemaExtractor extractor = new DatabaseSchemaExtractor(dataSource);
+        extractor.setBatchSize(3);
+
+        Map<String, DatabaseSchemaExtractor.TableInfo> schema = extractor.extractSchemaBulk("app_fd_");
+
+        assertEquals(TABLE_COUNT, schema.size());
+        // Tables of the failed batch are read one by one, without counting rows
+        DatabaseSchemaExtractor.TableInfo table = schema.get("app_fd_form4");
+        assertEquals(1, table.columns.size());
+        assertEquals(Arrays.asList("id"), table.primaryKeys);
+        assertEquals(-1L, table.rowCount);
+        assertFalse(table.rowCountEstimated);
+        assertTrue(schema.get("app_fd_form0").rowCountEstimated);
+        assertEquals("Row counts must not be queried", 0, countQueries.get());
+        assertEquals("All connections must be closed", 0, openConnections.get());
+    }
+
+    @Test
+    public void testOtherDatabasesUsePerTableExtraction() throws Exception {
+        productName = "PostgreSQL";
+        DatabaseSchemaExtractor extractor = new DatabaseSchemaExtractor(dataSource);
+
+        Map<String, DatabaseSchemaExtractor.TableInfo> schema = extractor.extractSchemaBulk("app_fd_");
+
+        assertEquals(TABLE_COUNT, schema.size());
+        DatabaseSchemaExtractor.TableInfo table = schema.get("app_fd_form3");
+        assertEquals(1, table.columns.size());
+        assertTrue("MySQL-only foreign key columns must not be queried", table.foreignKeys.isEmpty());
+        assertEquals(-1L, table.rowCount);
+        assertEquals("Row counts must not be queried", 0, countQueries.get());
+
+        StringWriter report = new StringWriter();
+        extractor.writeSchemaReport(schema, report);
+        assertTrue(report.toString().contains("- Row Count: -\n"));
+        assertEquals("All connections must be closed", 0, openConnections.get());
+    }
+
+    @Test
+    public void testUnreadableTableFailsInsteadOfPartialSchema() {
+        failingTable = "app_fd_form4";
+        metadataFails = true;
+        DatabaseSchemaExtractor extractor = new DatabaseSchemaExtractor(dataSource);
+        extractor.setBatchSize(3);
+
+        try {
+            extractor.extractSchemaBulk("app_fd_");
+            fail("A table that cannot be read must fail the extraction");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertEquals("{}", extractor.getSchemaAsJson());
+    }
+}
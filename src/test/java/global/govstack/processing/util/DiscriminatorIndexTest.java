@@ -0,0 +1,57 @@
+package global.govstack.processing.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import global.govstack.registration.receiver.util.DiscriminatorIndex;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for DiscriminatorIndex typed array element selection
+ */
+public class DiscriminatorIndexTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private DiscriminatorIndex index(String json) throws Exception {
+        JsonNode root = mapper.readTree(json);
+        return new DiscriminatorIndex(root);
+    }
+
+    @Test
+    public void testSelectsByTypeRegardlessOfOrder() throws Exception {
+        DiscriminatorIndex index = index("{\"telecom\":["
+                + "{\"system\":\"email\",\"value\":\"farmer@example.org\"},"
+                + "{\"system\":\"phone\",\"value\":\"+26659876543\"}]}");
+
+        assertEquals("+26659876543", index.extractValue("telecom[0].value", "telecom[0].system", "phone"));
+        assertEquals("farmer@example.org", index.extractValue("telecom[1].value", "telecom[1].system", "email"));
+    }
+
+    @Test
+    public void testMissingTypeReturnsNull() throws Exception {
+        DiscriminatorIndex index = index("{\"identifiers\":[{\"type\":\"NationalId\",\"value\":\"8712248901234\"}]}");
+
+        assertEquals("8712248901234", index.extractValue("identifiers[0].value", "identifiers[0].type", "NationalId"));
+        assertNull("Must not fall back to another element's value",
+                index.extractValue("identifiers[1].value", "identifiers[1].type", "BeneficiaryCode"));
+    }
+
+    @Test
+    public void testUntypedArrayFallsBackToPosition() throws Exception {
+        DiscriminatorIndex index = index("{\"telecom\":[{\"value\":\"+266111\"},{\"value\":\"a@b.org\"}]}");
+
+        assertEquals("a@b.org", index.extractValue("telecom[1].value", "telecom[1].system", "email"));
+    }
+
+    @Test
+    public void testNestedArrayAndPlainPaths() throws Exception {
+        DiscriminatorIndex index = index("{\"name\":{\"given\":[\"Thabo\"]},\"extension\":{\"contacts\":["
+                + "{\"kind\":\"home\",\"detail\":{\"city\":\"Maseru\"}}]}}");
+
+        assertEquals("Maseru", index.extractValue("extension.contacts[3].detail.city",
+                "extension.contacts[3].kind", "home"));
+        assertEquals("Thabo", index.extractValue("name.given[0]", null, null));
+    }
+}
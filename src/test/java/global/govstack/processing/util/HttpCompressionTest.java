@@ -0,0 +1,90 @@
+package global.govstack.processing.util;
+
+import global.govstack.registration.receiver.util.HttpCompression;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for HttpCompression
+ */
+public class HttpCompressionTest {
+
+    private static String body(int applications) {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < applications; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append("{\"id\":\"farmer-").append(i).append("\",\"name\":{\"given\":[\"Thabo\"],\"family\":\"Mokoena\"},")
+                    .append("\"address\":[{\"district\":\"Maseru ").append(i % 7).append("\"}]}");
+        }
+        return body.append(']').toString();
+    }
+
+    private static String gunzipWithJdk(byte[] compressed) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testCompressedBodyIsReadableByGzipTools() throws Exception {
+        String body = body(2000) + " Lešoto ✓";
+        byte[] compressed = HttpCompression.gzip(body);
+
+        assertTrue("Repetitive JSON compresses well", compressed.length < body.length() / 5);
+        assertEquals(body, gunzipWithJdk(compressed));
+    }
+
+    @Test
+    public void testRepeatedUseGivesTheSameResult() throws Exception {
+        // Pooled deflaters are reset between bodies
+        String body = body(100);
+        byte[] first = HttpCompression.gzip(body);
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals(first, HttpCompression.gzip(body));
+        }
+        assertEquals(body, gunzipWithJdk(first));
+    }
+
+    @Test
+    public void testFlushedStreamIsDecodableSoFar() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = HttpCompression.gzip(bytes);
+        out.write("{\"page\":1}\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        int flushed = bytes.size();
+        assertTrue(flushed > 10);
+
+        out.write("{\"page\":2}\n".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        assertEquals("{\"page\":1}\n{\"page\":2}\n", gunzipWithJdk(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testAcceptEncoding() {
+        assertTrue(HttpCompression.acceptsGzip("gzip"));
+        assertTrue(HttpCompression.acceptsGzip("br, gzip, deflate"));
+        assertTrue(HttpCompression.acceptsGzip("GZIP;q=0.5"));
+        assertTrue(HttpCompression.acceptsGzip("*"));
+        assertFalse(HttpCompression.acceptsGzip(null));
+        assertFalse(HttpCompression.acceptsGzip("identity"));
+        assertFalse(HttpCompression.acceptsGzip("zstd, br"));
+        assertFalse(HttpCompression.acceptsGzip("gzip;q=0"));
+    }
+}
@@ -0,0 +1,116 @@
+package global.govstack.processing.util;
+
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import global.govstack.registration.receiver.util.ProcessingLog;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ProcessingLog
+ */
+public class ProcessingLogTest {
+
+    private final ProcessingLog log = ProcessingLog.getLogger(ProcessingLogTest.class);
+
+    @After
+    public void tearDown() {
+        ProcessingLog.endRequest();
+    }
+
+    private static Map<String, Object> settings(Object... keyValues) {
+        Map<String, Object> settings = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            settings.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return settings;
+    }
+
+    @Test
+    public void testFormatsPlaceholdersWithRequestContext() {
+        assertEquals("Saved 3 rows to grid crops", ProcessingLog.format("Saved {} rows to grid {}", 3, "crops"));
+        assertEquals("No arguments {}", ProcessingLog.format("No arguments {}"));
+        assertEquals("Extra a", ProcessingLog.format("Extra {}", "a", "b"));
+
+        ProcessingLog.RequestContext context = ProcessingLog.beginRequest("farmers_registry");
+        assertEquals("[serviceId=farmers_registry] Mapping", ProcessingLog.format("Mapping"));
+
+        context.setApplicationId("app-1");
+        assertEquals("[serviceId=farmers_registry applicationId=app-1] Saved null",
+                ProcessingLog.format("Saved {}", (Object) null));
+    }
+
+    @Test
+    public void testVerboseOnlyInsideVerboseRequest() {
+        assertFalse(log.isVerbose());
+
+        ProcessingLog.beginRequest("farmers_registry").applySettings(settings("verbose", true));
+        assertTrue(log.isVerbose());
+
+        ProcessingLog.endRequest();
+        assertFalse(log.isVerbose());
+        assertNull(ProcessingLog.currentRequest());
+    }
+
+    @Test
+    public void testDebugHeaderOnlyHonouredWhenAllowed() {
+        ProcessingLog.RequestContext context = ProcessingLog.beginRequest("farmers_registry");
+        context.setDebugRequested(true);
+        context.applySettings(null);
+        assertFalse("The header is ignored unless the service allows it", context.isVerbose());
+
+        context = ProcessingLog.beginRequest("farmers_registry");
+        context.setDebugRequested(true);
+        context.applySettings(settings("allowDebugHeader", false));
+        assertFalse(context.isVerbose());
+
+        context = ProcessingLog.beginRequest("farmers_registry");
+        context.setDebugRequested(true);
+        context.applySettings(settings("allowDebugHeader", "true"));
+        assertFalse(context.isVerbose());
+
+        context = ProcessingLog.beginRequest("farmers_registry");
+        context.setDebugRequested(true);
+        context.applySettings(settings("allowDebugHeader", true));
+        assertTrue(context.isVerbose());
+
+        context = ProcessingLog.beginRequest("farmers_registry");
+        context.applySettings(settings("allowDebugHeader", true));
+        assertFalse(context.isVerbose());
+    }
+
+    @Test
+    public void testSampleRateSelectsRequests() {
+        int verbose = 0;
+        for (int i = 0; i < 1000; i++) {
+            ProcessingLog.RequestContext context = ProcessingLog.beginRequest("farmers_registry");
+            context.applySettings(settings("verboseSampleRate", 0.1));
+            if (context.isVerbose()) {
+                verbose++;
+            }
+        }
+        assertTrue("sampled " + verbose, verbose > 40 && verbose < 200);
+
+        ProcessingLog.RequestContext never = ProcessingLog.beginRequest("farmers_registry");
+        never.applySettings(settings("verboseSampleRate", 0.0));
+        assertFalse(never.isVerbose());
+    }
+
+    @Test
+    public void testDescribeDoesNotRevealValues() {
+        assertEquals("null", ProcessingLog.describe(null));
+        assertEquals("text(10)", ProcessingLog.describe("1985-04-12"));
+        assertEquals("text(4)", ProcessingLog.describe(TextNode.valueOf("Jane")));
+        assertEquals("number", ProcessingLog.describe(IntNode.valueOf(3)));
+        assertEquals("boolean", ProcessingLog.describe(BooleanNode.TRUE));
+        assertEquals("array(2)", ProcessingLog.describe(Arrays.asList("a", "b")));
+        assertEquals("object(1)", ProcessingLog.describe(settings("nationalId", "123")));
+    }
+}
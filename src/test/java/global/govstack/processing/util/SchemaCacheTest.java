@@ -0,0 +1,154 @@
+package global.govstack.processing.util;
+
+import global.govstack.registration.receiver.util.DatabaseSchemaExtractor;
+import global.govstack.registration.receiver.util.SchemaCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for SchemaCache
+ */
+public class SchemaCacheTest {
+
+    private Map<String, List<DatabaseSchemaExtractor.ColumnInfo>> schema;
+    private int loadCount;
+    private int signatureCount;
+
+    private final SchemaCache.Loader loader = new SchemaCache.Loader() {
+        @Override
+        public Map<String, List<DatabaseSchemaExtractor.ColumnInfo>> loadColumns() {
+            loadCount++;
+            return new HashMap<>(schema);
+        }
+
+        @Override
+        public long signature() {
+            signatureCount++;
+            long signature = 0;
+            for (Map.Entry<String, List<DatabaseSchemaExtractor.ColumnInfo>> table : schema.entrySet()) {
+                for (DatabaseSchemaExtractor.ColumnInfo column : table.getValue()) {
+                    signature += (table.getKey() + "." + column.name + ":" + column.dataType).hashCode();
+                }
+            }
+            return signature & Long.MAX_VALUE;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        schema = new HashMap<>();
+        schema.put("app_fd_farms_registry", columns("id", "c_national_id", "c_first_name"));
+        schema.put("APP_FD_HOUSEHOLD", columns("id", "c_parent_id", "C_MemberName"));
+    }
+
+    private static List<DatabaseSchemaExtractor.ColumnInfo> columns(String... names) {
+        List<DatabaseSchemaExtractor.ColumnInfo> columns = new ArrayList<>();
+        for (String name : names) {
+            DatabaseSchemaExtractor.ColumnInfo column = new DatabaseSchemaExtractor.ColumnInfo();
+            column.name = name;
+            column.dataType = "varchar";
+            columns.add(column);
+        }
+        return columns;
+    }
+
+    @Test
+    public void testLoadsAllTablesOnce() {
+        SchemaCache cache = new SchemaCache(loader, 300);
+
+        assertTrue(cache.getColumnNames("app_fd_farms_registry").contains("c_national_id"));
+        assertTrue(cache.getColumnNames("app_fd_household").contains("c_membername"));
+        assertEquals(2, cache.getTableNames().size());
+        assertEquals("All lookups should be served by one load", 1, loadCount);
+    }
+
+    @Test
+    public void testCaseInsensitiveLookup() {
+        SchemaCache cache = new SchemaCache(loader, 300);
+
+        SchemaCache.TableColumns table = cache.getTable("App_Fd_Household");
+        assertNotNull(table);
+        assertEquals("APP_FD_HOUSEHOLD", table.getTableName());
+        assertEquals("C_MemberName", table.findColumn("c_membername"));
+        assertNull(table.findColumn("c_unknown"));
+        assertTrue(cache.getColumnNames("app_fd_missing").isEmpty());
+    }
+
+    @Test
+    public void testExpiredCacheReloadsOnlyWhenSignatureChanges() {
+        SchemaCache cache = new SchemaCache(loader, 0);
+
+        cache.getColumnNames("app_fd_farms_registry");
+        cache.getColumnNames("app_fd_farms_registry");
+        assertEquals("Unchanged signature should not reload", 1, loadCount);
+        assertTrue(signatureCount > 1);
+
+        schema.put("app_fd_farms_registry", columns("id", "c_national_id", "c_first_name", "c_gender"));
+        assertTrue(cache.getColumnNames("app_fd_farms_registry").contains("c_gender"));
+        assertEquals(2, loadCount);
+    }
+
+    @Test
+    public void testInvalidateForcesReload() {
+        SchemaCache cache = new SchemaCache(loader, 300);
+        cache.getColumnNames("app_fd_farms_registry");
+
+        schema.put("app_fd_new_form", columns("id", "c_value"));
+        cache.invalidate();
+
+        assertTrue(cache.getColumnNames("app_fd_new_form").contains("c_value"));
+        assertEquals(2, loadCount);
+    }
+
+    @Test
+    public void testTypeChangeIsDetected() {
+        SchemaCache cache = new SchemaCache(loader, 0);
+        cache.getColumnNames("app_fd_farms_registry");
+
+        List<DatabaseSchemaExtractor.ColumnInfo> changed = columns("id", "c_national_id", "c_first_name");
+        changed.get(1).dataType = "int";
+        schema.put("app_fd_farms_registry", changed);
+
+        assertEquals("int", cache.getTable("app_fd_farms_registry").getColumns().get(1).dataType);
+        assertEquals(2, loadCount);
+    }
+
+    @Test
+    public void testCheckVersionNoticesChangeAfterTtl() {
+        SchemaCache cache = new SchemaCache(loader, 0);
+        long version = cache.checkVersion();
+        assertTrue("A TTL of zero is stale at once", cache.isStale());
+
+        schema.put("app_fd_new_form", columns("id", "c_value"));
+        assertEquals("getVersion does not look at the database", version, cache.getVersion());
+        assertEquals(version + 1, cache.checkVersion());
+
+        SchemaCache cached = new SchemaCache(loader, 300);
+        cached.checkVersion();
+        assertFalse(cached.isStale());
+    }
+
+    @Test
+    public void testVersionOnlyChangesWithSchema() {
+        SchemaCache cache = new SchemaCache(loader, 300);
+        cache.getColumnNames("app_fd_farms_registry");
+        long version = cache.getVersion();
+
+        cache.invalidate();
+        cache.getColumnNames("app_fd_farms_registry");
+        assertEquals(2, loadCount);
+        assertEquals("A reload that changed nothing keeps the version", version, cache.getVersion());
+
+        schema.put("app_fd_new_form", columns("id", "c_value"));
+        cache.invalidate();
+        cache.getColumnNames("app_fd_new_form");
+        assertEquals(version + 1, cache.getVersion());
+    }
+}